@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.encrypt.PasswordEncoder;
+
+/**
+ * A PasswordEncoder that runs the PasswordEncoder it decorates on a bounded pool of threads sized to the available processors.
+ * Password hashing is deliberately expensive; running it here rather than on the calling request thread caps the CPU a burst of sign-ins can consume and leaves the rest of the site responsive.
+ * When the pool's queue is full a hash is refused immediately with a {@link TaskRejectedException} instead of being queued behind the burst.
+ * @author Keith Donald
+ */
+@ManagedResource(description = "Password hashing executor")
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+	private final PasswordEncoder passwordEncoder;
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates a bounded password encoder with a thread per available processor and a queue of 16 hashes per thread.
+	 */
+	public BoundedPasswordEncoder(PasswordEncoder passwordEncoder) {
+		this(passwordEncoder, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 16);
+	}
+
+	/**
+	 * Creates a bounded password encoder.
+	 * @param passwordEncoder the encoder that does the hashing
+	 * @param threads the number of threads hashing at once
+	 * @param queueCapacity the number of hashes that may wait for a thread before further hashes are refused
+	 */
+	public BoundedPasswordEncoder(PasswordEncoder passwordEncoder, int threads, int queueCapacity) {
+		this.passwordEncoder = passwordEncoder;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "password-hashing-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public String encode(final String rawPassword) {
+		return execute(new Callable<String>() {
+			public String call() {
+				return passwordEncoder.encode(rawPassword);
+			}
+		});
+	}
+
+	public boolean matches(final String rawPassword, final String encodedPassword) {
+		return execute(new Callable<Boolean>() {
+			public Boolean call() {
+				return passwordEncoder.matches(rawPassword, encodedPassword);
+			}
+		});
+	}
+
+	@ManagedAttribute(description = "Hashes waiting for a thread")
+	public int getQueued() {
+		return executor.getQueue().size();
+	}
+
+	@ManagedAttribute(description = "Hashes in progress")
+	public int getActive() {
+		return executor.getActiveCount();
+	}
+
+	@ManagedAttribute(description = "Hashes completed since startup")
+	public long getCompleted() {
+		return executor.getCompletedTaskCount();
+	}
+
+	@ManagedAttribute(description = "Hashes refused because the queue was full since startup")
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	// implementing DisposableBean
+
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	// internal helpers
+
+	private <T> T execute(Callable<T> hash) {
+		Future<T> future;
+		try {
+			future = executor.submit(hash);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new TaskRejectedException("Too many passwords waiting to be hashed", e);
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new TaskRejectedException("Interrupted waiting for password to be hashed", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException("Password hashing failed", cause);
+			}
+		}
+	}
+
+}
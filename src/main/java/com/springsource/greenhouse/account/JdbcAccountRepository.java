@@ -27,6 +27,7 @@ import org.springframework.security.encrypt.PasswordEncoder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.utils.EmailUtils;
 
 /**
@@ -42,19 +43,22 @@ public class JdbcAccountRepository implements AccountRepository {
 
 	private final AccountMapper accountMapper;
 
+	private final BlockIdAllocator idAllocator;
+
 	@Autowired
-	public JdbcAccountRepository(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder, AccountMapper accountMapper) {
+	public JdbcAccountRepository(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder, AccountMapper accountMapper, BlockIdAllocator idAllocator) {
 		this.jdbcTemplate = jdbcTemplate;
 		this.passwordEncoder = passwordEncoder;
 		this.accountMapper = accountMapper;
+		this.idAllocator = idAllocator;
 	}
 
 	@Transactional
 	public Account createAccount(Person person) throws EmailAlreadyOnFileException {
 		try {
-			jdbcTemplate.update("insert into Member (firstName, lastName, email, password, gender, birthdate) values (?, ?, ?, ?, ?, ?)",
-				person.getFirstName(), person.getLastName(), person.getEmail(), passwordEncoder.encode(person.getPassword()), person.getGender().code(), person.getBirthdate().toString());
-			Long accountId = jdbcTemplate.queryForLong("call identity()");
+			Long accountId = idAllocator.nextId("Member");
+			jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (?, ?, ?, ?, ?, ?, ?)",
+				accountId, person.getFirstName(), person.getLastName(), person.getEmail(), passwordEncoder.encode(person.getPassword()), person.getGender().code(), person.getBirthdate().toString());
 			return accountMapper.newAccount(accountId, person);
 		} catch (DuplicateKeyException e) {
 			throw new EmailAlreadyOnFileException(person.getEmail());
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Admission control for sign-in attempts.
+ * Keeps a token bucket per remote address and per sign-in name; an attempt is admitted only if both buckets have a token.
+ * A credential-stuffing burst from one address, or spread across many addresses against one account, is refused before any password is hashed.
+ * At most {@link #setMaxTrackedKeys(int) maxTrackedKeys} addresses and sign-in names are tracked; beyond that the least recently used bucket is dropped.
+ * @author Keith Donald
+ */
+@ManagedResource(description = "Sign-in admission control")
+public class SigninThrottle {
+
+	private final Map<String, TokenBucket> addressBuckets = new BucketMap();
+
+	private final Map<String, TokenBucket> signinBuckets = new BucketMap();
+
+	private final AtomicLong admitted = new AtomicLong();
+
+	private final AtomicLong throttledByAddress = new AtomicLong();
+
+	private final AtomicLong throttledBySignin = new AtomicLong();
+
+	private final AtomicLong evicted = new AtomicLong();
+
+	private int addressCapacity = 30;
+
+	private int addressAttemptsPerMinute = 30;
+
+	private int signinCapacity = 5;
+
+	private int signinAttemptsPerMinute = 5;
+
+	private int maxTrackedKeys = 100000;
+
+	/**
+	 * The largest burst of attempts admitted from one remote address.
+	 * Defaults to 30.
+	 */
+	public void setAddressCapacity(int addressCapacity) {
+		this.addressCapacity = addressCapacity;
+	}
+
+	/**
+	 * The sustained rate of attempts admitted from one remote address.
+	 * Defaults to 30 a minute.
+	 */
+	public void setAddressAttemptsPerMinute(int addressAttemptsPerMinute) {
+		this.addressAttemptsPerMinute = addressAttemptsPerMinute;
+	}
+
+	/**
+	 * The largest burst of attempts admitted against one sign-in name.
+	 * Defaults to 5.
+	 */
+	public void setSigninCapacity(int signinCapacity) {
+		this.signinCapacity = signinCapacity;
+	}
+
+	/**
+	 * The sustained rate of attempts admitted against one sign-in name.
+	 * Defaults to 5 a minute.
+	 */
+	public void setSigninAttemptsPerMinute(int signinAttemptsPerMinute) {
+		this.signinAttemptsPerMinute = signinAttemptsPerMinute;
+	}
+
+	/**
+	 * The most addresses, and the most sign-in names, tracked at once; the least recently used bucket is dropped to make room for a new one.
+	 * Defaults to 100,000.
+	 */
+	public void setMaxTrackedKeys(int maxTrackedKeys) {
+		this.maxTrackedKeys = maxTrackedKeys;
+	}
+
+	/**
+	 * Admit a sign-in attempt.
+	 * @param remoteAddress the address the attempt came from; may be null if not known
+	 * @param signin the username or email the attempt is for
+	 * @return true if the attempt may proceed to password verification, false if it should be refused
+	 */
+	public boolean tryAcquire(String remoteAddress, String signin) {
+		return tryAcquire(remoteAddress, signin, System.nanoTime());
+	}
+
+	boolean tryAcquire(String remoteAddress, String signin, long now) {
+		if (remoteAddress != null && !bucket(addressBuckets, remoteAddress, addressCapacity, addressAttemptsPerMinute, now).tryTake(now)) {
+			throttledByAddress.incrementAndGet();
+			return false;
+		}
+		if (signin != null && !bucket(signinBuckets, signin.toLowerCase(), signinCapacity, signinAttemptsPerMinute, now).tryTake(now)) {
+			throttledBySignin.incrementAndGet();
+			return false;
+		}
+		admitted.incrementAndGet();
+		return true;
+	}
+
+	@ManagedAttribute(description = "Sign-in attempts admitted since startup")
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	@ManagedAttribute(description = "Sign-in attempts refused for exceeding the per-address rate since startup")
+	public long getThrottledByAddress() {
+		return throttledByAddress.get();
+	}
+
+	@ManagedAttribute(description = "Sign-in attempts refused for exceeding the per-signin rate since startup")
+	public long getThrottledBySignin() {
+		return throttledBySignin.get();
+	}
+
+	@ManagedAttribute(description = "Buckets dropped to stay within the tracked key limit since startup")
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	@ManagedAttribute(description = "Remote addresses currently tracked")
+	public int getTrackedAddresses() {
+		synchronized (addressBuckets) {
+			return addressBuckets.size();
+		}
+	}
+
+	@ManagedAttribute(description = "Sign-in names currently tracked")
+	public int getTrackedSignins() {
+		synchronized (signinBuckets) {
+			return signinBuckets.size();
+		}
+	}
+
+	// internal helpers
+
+	private TokenBucket bucket(Map<String, TokenBucket> buckets, String key, int capacity, int tokensPerMinute, long now) {
+		synchronized (buckets) {
+			TokenBucket bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new TokenBucket(capacity, tokensPerMinute, now);
+				buckets.put(key, bucket);
+			}
+			return bucket;
+		}
+	}
+
+	// buckets in least recently used order; guarded by its own monitor
+	@SuppressWarnings("serial")
+	private final class BucketMap extends LinkedHashMap<String, TokenBucket> {
+
+		public BucketMap() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+			if (size() > maxTrackedKeys) {
+				evicted.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * A sign-in attempt was refused before the password was checked, either because too many attempts have been made recently or because the server is too busy verifying passwords.
+ * The client should try again later.
+ * @author Keith Donald
+ */
+@SuppressWarnings("serial")
+public final class SigninThrottledException extends AuthenticationException {
+
+	public SigninThrottledException(String message) {
+		super(message);
+	}
+
+	public SigninThrottledException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
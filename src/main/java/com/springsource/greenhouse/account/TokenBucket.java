@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+/**
+ * A bucket of tokens that refills at a steady rate up to its capacity.
+ * Each admitted attempt takes a token; an attempt that finds the bucket empty is refused.
+ * @author Keith Donald
+ */
+class TokenBucket {
+
+	private final int capacity;
+
+	private final double tokensPerNano;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	/**
+	 * Creates a full bucket.
+	 * @param capacity the most tokens the bucket holds, i.e. the largest burst admitted
+	 * @param tokensPerMinute the rate tokens are added back
+	 * @param now the current {@link System#nanoTime() nano time}
+	 */
+	public TokenBucket(int capacity, int tokensPerMinute, long now) {
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerMinute / 60e9;
+		this.tokens = capacity;
+		this.lastRefill = now;
+	}
+
+	/**
+	 * Take a token if one is available.
+	 * @return true if a token was taken, false if the bucket is empty
+	 */
+	public synchronized boolean tryTake(long now) {
+		refill(now);
+		if (tokens < 1) {
+			return false;
+		}
+		tokens--;
+		return true;
+	}
+
+	// internal helpers
+
+	private void refill(long now) {
+		long elapsed = now - lastRefill;
+		if (elapsed > 0) {
+			tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+			lastRefill = now;
+		}
+	}
+
+}
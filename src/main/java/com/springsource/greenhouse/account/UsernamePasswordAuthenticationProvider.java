@@ -19,30 +19,43 @@ import java.util.List;
 
 import javax.inject.Inject;
 
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
 
 /**
  * Adapts {@link AccountRepository#authenticate(String, String)} to the SpringSecurity AuthenticationProvider SPI.
  * Allows the AccountRepository to drive authentication in a Spring Security environment.
  * The authenticated Account is treated as the {@link Authentication#getPrincipal() Authentication Principal}.
+ * When configured with a {@link SigninThrottle}, attempts over the per-address or per-signin rate are refused before the password is checked.
  * @author Keith Donald
  */
 public class UsernamePasswordAuthenticationProvider implements AuthenticationProvider {
 
 	private AccountRepository accountRepository;
-	
-	@Inject
+
+	private SigninThrottle signinThrottle;
+
 	public UsernamePasswordAuthenticationProvider(AccountRepository accountRepository) {
+		this(accountRepository, null);
+	}
+
+	@Inject
+	public UsernamePasswordAuthenticationProvider(AccountRepository accountRepository, SigninThrottle signinThrottle) {
 		this.accountRepository = accountRepository;
+		this.signinThrottle = signinThrottle;
 	}
 
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
 		UsernamePasswordAuthenticationToken token = (UsernamePasswordAuthenticationToken) authentication;
+		if (signinThrottle != null && !signinThrottle.tryAcquire(remoteAddress(authentication), token.getName())) {
+			throw new SigninThrottledException("Too many sign-in attempts");
+		}
 		try {
 			Account account = accountRepository.authenticate(token.getName(), (String) token.getCredentials());
 			return authenticatedToken(account, authentication);
@@ -50,6 +63,8 @@ public class UsernamePasswordAuthenticationProvider implements AuthenticationPro
 			throw new org.springframework.security.core.userdetails.UsernameNotFoundException(token.getName(), e);
 		} catch (InvalidPasswordException e) {
 			throw new BadCredentialsException("Invalid password", e);
+		} catch (TaskRejectedException e) {
+			throw new SigninThrottledException("Too busy verifying passwords", e);
 		}
 	}
 
@@ -58,7 +73,12 @@ public class UsernamePasswordAuthenticationProvider implements AuthenticationPro
 	}
 	
 	// internal helpers
-	
+
+	private String remoteAddress(Authentication authentication) {
+		Object details = authentication.getDetails();
+		return details instanceof WebAuthenticationDetails ? ((WebAuthenticationDetails) details).getRemoteAddress() : null;
+	}
+
 	private Authentication authenticatedToken(Account account, Authentication original) {
 		List<GrantedAuthority> authorities = null;
 		UsernamePasswordAuthenticationToken authenticated = new UsernamePasswordAuthenticationToken(account, null, authorities);
@@ -16,6 +16,7 @@
 package com.springsource.greenhouse.activity.action;
 
 import org.joda.time.DateTime;
+import org.springframework.util.ClassUtils;
 
 import com.springsource.greenhouse.account.Account;
 import com.springsource.greenhouse.utils.Location;
@@ -73,5 +74,22 @@ public abstract class Action {
 	public Location getLocation() {
 		return location;
 	}
-	
+
+	/**
+	 * The type of Action recorded in the MemberAction table.
+	 * Defaults to the simple class name without its Action suffix e.g. EventTweet.
+	 */
+	public String getType() {
+		return typeOf(getClass());
+	}
+
+	/**
+	 * The type recorded for Actions of the given class e.g. EventTweet for EventTweetAction.
+	 */
+	public static String typeOf(Class<? extends Action> actionClass) {
+		String shortName = ClassUtils.getShortName(actionClass);
+		int actionPart = shortName.lastIndexOf("Action");
+		return actionPart == -1 ? shortName : shortName.substring(0, actionPart);
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.action;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * Writes MemberAction records to the database, either inline or behind the caller.
+ * Actions written behind are queued and inserted in JDBC batches by a background writer thread, so the request that performed the action does not wait on the insert.
+ * When a journal file is configured, queued actions are also appended to a memory-mapped journal and replayed on startup if the process died before writing them.
+ * Code that is about to insert a row referencing an action must first {@link #flush(Long) flush} it.
+ * An action stays pending until the batch holding it commits; a batch that cannot be written is retried, and the journal is never checkpointed past an action that has not been written.
+ * @author Keith Donald
+ */
+public class ActionJournal implements InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(ActionJournal.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ConcurrentMap<Long, JournaledAction> pending = new ConcurrentHashMap<Long, JournaledAction>();
+
+	private final Object appendLock = new Object();
+
+	private final Object drainLock = new Object();
+
+	private final List<JournaledAction> retry = new ArrayList<JournaledAction>();
+
+	private final AtomicLong writtenBehind = new AtomicLong();
+
+	private final AtomicLong writtenInline = new AtomicLong();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private int capacity = 10000;
+
+	private int batchSize = 500;
+
+	private String journalFile;
+
+	private int journalSize = 16 * 1024 * 1024;
+
+	private long retryInterval = 1000;
+
+	private BlockingQueue<JournaledAction> queue;
+
+	private MappedActionJournal journal;
+
+	private Thread writer;
+
+	private volatile boolean running;
+
+	@Inject
+	public ActionJournal(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+	}
+
+	/**
+	 * The most actions that may wait to be written; once full, callers write their actions inline.
+	 * Defaults to 10000.
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * The most actions inserted in a single JDBC batch.
+	 * Defaults to 500.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The path of the memory-mapped journal file; if not set, actions waiting to be written are lost if the process dies.
+	 */
+	public void setJournalFile(String journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * The size of the journal file in bytes.
+	 * Defaults to 16MB.
+	 */
+	public void setJournalSize(int journalSize) {
+		this.journalSize = journalSize;
+	}
+
+	/**
+	 * How long the background writer waits before retrying after a batch could not be written, in milliseconds.
+	 * Defaults to 1000.
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		queue = new ArrayBlockingQueue<JournaledAction>(capacity);
+		if (StringUtils.hasText(journalFile)) {
+			journal = new MappedActionJournal(new File(journalFile), journalSize);
+			replay(journal.recover());
+			journal.reset();
+		}
+		running = true;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				while (running) {
+					try {
+						awaitActions();
+						drain(batchSize);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} catch (RuntimeException e) {
+						logger.error("Could not write actions; retrying in " + retryInterval + "ms", e);
+						try {
+							Thread.sleep(retryInterval);
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			}
+		}, "action-journal-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void destroy() throws Exception {
+		running = false;
+		if (writer != null) {
+			writer.join();
+		}
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.error("Could not write " + pending.size() + " pending actions on shutdown; they will be replayed from the journal if one is configured", e);
+		}
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Insert the action now, in the caller's transaction if there is one.
+	 */
+	public void write(Long id, String type, DateTime performTime, Location location, Long member) {
+		insert(new JournaledAction(id, type, performTime, location, member));
+		writtenInline.incrementAndGet();
+	}
+
+	/**
+	 * Queue the action to be inserted by the background writer.
+	 * Falls back to an inline write if the journal is not running or the writer has fallen too far behind.
+	 */
+	public void writeBehind(Long id, String type, DateTime performTime, Location location, Long member) {
+		JournaledAction action = new JournaledAction(id, type, performTime, location, member);
+		boolean queued = false;
+		if (running) {
+			synchronized (appendLock) {
+				if (journal == null || journal.append(action)) {
+					pending.put(id, action);
+					queued = queue.offer(action);
+					appendLock.notify();
+				}
+			}
+		}
+		if (!queued) {
+			pending.remove(id);
+			insert(action);
+			writtenInline.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Make sure the action has been inserted, writing it now if it is still waiting in the queue.
+	 * If the action is in a batch being written, waits for that batch to commit.
+	 */
+	public void flush(Long actionId) {
+		if (!pending.containsKey(actionId)) {
+			return;
+		}
+		synchronized (drainLock) {
+			JournaledAction action = pending.get(actionId);
+			if (action != null) {
+				insert(action);
+				pending.remove(actionId);
+				writtenInline.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Write every queued action now.
+	 * @throws RuntimeException if an action could not be written; it remains queued to be retried
+	 */
+	public void flush() {
+		while (drain(Integer.MAX_VALUE) > 0) {
+		}
+	}
+
+	/**
+	 * The number of actions waiting to be written.
+	 */
+	public int getQueueSize() {
+		return queue != null ? queue.size() : 0;
+	}
+
+	/**
+	 * The number of actions written by the background writer.
+	 */
+	public long getWrittenBehind() {
+		return writtenBehind.get();
+	}
+
+	/**
+	 * The number of actions written on the caller's thread.
+	 */
+	public long getWrittenInline() {
+		return writtenInline.get();
+	}
+
+	/**
+	 * The number of batches written by the background writer.
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	// internal helpers
+
+	private void awaitActions() throws InterruptedException {
+		synchronized (appendLock) {
+			if (queue.isEmpty()) {
+				appendLock.wait(100);
+			}
+		}
+	}
+
+	private int drain(int maxActions) {
+		synchronized (drainLock) {
+			List<JournaledAction> batch = new ArrayList<JournaledAction>(retry);
+			retry.clear();
+			if (batch.size() < maxActions) {
+				queue.drainTo(batch, maxActions - batch.size());
+			}
+			if (batch.isEmpty()) {
+				return 0;
+			}
+			List<JournaledAction> owned = new ArrayList<JournaledAction>(batch.size());
+			for (JournaledAction action : batch) {
+				if (pending.containsKey(action.getId())) {
+					owned.add(action);
+				}
+			}
+			if (!owned.isEmpty()) {
+				try {
+					insertBatch(owned);
+				} catch (RuntimeException e) {
+					logger.warn("Batch insert of " + owned.size() + " actions failed; inserting them one at a time", e);
+					insertEach(batch);
+				}
+				for (JournaledAction action : owned) {
+					pending.remove(action.getId());
+				}
+			}
+			checkpoint(batch.get(batch.size() - 1));
+			return batch.size();
+		}
+	}
+
+	private void insertBatch(final List<JournaledAction> actions) {
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				jdbcTemplate.batchUpdate(INSERT_ACTION, new BatchPreparedStatementSetter() {
+					public void setValues(PreparedStatement ps, int i) throws SQLException {
+						JournaledAction action = actions.get(i);
+						ps.setLong(1, action.getId());
+						ps.setString(2, action.getType());
+						ps.setTimestamp(3, new Timestamp(action.getPerformTime().getMillis()));
+						Location location = action.getLocation();
+						if (location != null) {
+							ps.setDouble(4, location.getLatitude());
+							ps.setDouble(5, location.getLongitude());
+						} else {
+							ps.setNull(4, Types.DOUBLE);
+							ps.setNull(5, Types.DOUBLE);
+						}
+						ps.setLong(6, action.getMember());
+					}
+					public int getBatchSize() {
+						return actions.size();
+					}
+				});
+			}
+		});
+		writtenBehind.addAndGet(actions.size());
+		batches.incrementAndGet();
+	}
+
+	// inserts the batch in order, stopping at the first action that could not be written so it and the rest are retried
+	private void insertEach(List<JournaledAction> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			JournaledAction action = batch.get(i);
+			if (!pending.containsKey(action.getId())) {
+				continue;
+			}
+			try {
+				insert(action);
+				writtenBehind.incrementAndGet();
+			} catch (DuplicateKeyException e) {
+				// already written, e.g. replayed from the journal
+			} catch (DataIntegrityViolationException e) {
+				// can never be written, e.g. the member no longer exists
+				logger.error("Dropping action " + action.getId() + " of type " + action.getType() + " that violates a constraint", e);
+			} catch (RuntimeException e) {
+				if (i > 0) {
+					checkpoint(batch.get(i - 1));
+				}
+				retry.addAll(batch.subList(i, batch.size()));
+				throw e;
+			}
+			pending.remove(action.getId());
+		}
+	}
+
+	private void checkpoint(JournaledAction lastWritten) {
+		if (journal != null) {
+			journal.checkpoint(lastWritten.getJournalEnd());
+		}
+	}
+
+	private void insert(JournaledAction action) {
+		Location location = action.getLocation();
+		Double latitude = location != null ? location.getLatitude() : null;
+		Double longitude = location != null ? location.getLongitude() : null;
+		jdbcTemplate.update(INSERT_ACTION, action.getId(), action.getType(), action.getPerformTime().toDate(), latitude, longitude, action.getMember());
+	}
+
+	private void replay(List<JournaledAction> actions) {
+		for (JournaledAction action : actions) {
+			if (jdbcTemplate.queryForInt("select count(*) from MemberAction where id = ?", action.getId()) == 0) {
+				insert(action);
+			}
+		}
+		if (!actions.isEmpty()) {
+			logger.info("Replayed " + actions.size() + " journaled actions");
+		}
+	}
+
+	private static final String INSERT_ACTION = "insert into MemberAction (id, actionType, performTime, latitude, longitude, member) values (?, ?, ?, ?, ?, ?)";
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.action;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.events.EventTweetAction;
+import com.springsource.greenhouse.invite.InviteAcceptAction;
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * RowMapper that rebuilds a stored MemberAction as the Action it was recorded from.
+ * EventTweet and InviteAccept actions are mapped to their own types; any other action is mapped to a {@link SimpleAction}.
+ * Designed to be used with {@link #SELECT_ACTION}, which joins in the member and the details of each action type.
+ * @author Keith Donald
+ */
+public class ActionMapper implements RowMapper<Action> {
+
+	/**
+	 * SELECT and FROM clauses for Action fields; append a WHERE clause to restrict the actions returned.
+	 */
+	public static final String SELECT_ACTION = "select a.id as actionId, a.actionType, a.performTime, a.latitude, a.longitude, " +
+			"m.id, m.firstName, m.lastName, m.email, m.username, m.gender, m.pictureSet, " +
+			"t.event, e.title as eventTitle, t.session, s.title as sessionTitle, t.tweet, i.sentBy, i.sentTime " +
+			"from MemberAction a inner join Member m on a.member = m.id " +
+			"left outer join EventTweetAction t on a.id = t.memberAction left outer join Event e on t.event = e.id left outer join EventSession s on t.event = s.event and t.session = s.id " +
+			"left outer join InviteAcceptAction ia on a.id = ia.memberAction left outer join Invite i on ia.invite = i.token";
+
+	private final AccountMapper accountMapper;
+
+	@Inject
+	public ActionMapper(AccountMapper accountMapper) {
+		this.accountMapper = accountMapper;
+	}
+
+	public Action mapRow(ResultSet rs, int row) throws SQLException {
+		Long id = rs.getLong("actionId");
+		String type = rs.getString("actionType");
+		DateTime time = new DateTime(rs.getTimestamp("performTime"), DateTimeZone.UTC);
+		double latitude = rs.getDouble("latitude");
+		Location location = rs.wasNull() ? null : new Location(latitude, rs.getDouble("longitude"));
+		Account account = accountMapper.mapRow(rs, row);
+		long event = rs.getLong("event");
+		if (!rs.wasNull() && Action.typeOf(EventTweetAction.class).equals(type)) {
+			short session = rs.getShort("session");
+			if (rs.wasNull()) {
+				return new EventTweetAction(id, time, account, location, event, rs.getString("eventTitle"), rs.getString("tweet"));
+			} else {
+				return new EventTweetAction(id, time, account, location, event, rs.getString("eventTitle"), session, rs.getString("sessionTitle"), rs.getString("tweet"));
+			}
+		}
+		long sentBy = rs.getLong("sentBy");
+		if (!rs.wasNull() && Action.typeOf(InviteAcceptAction.class).equals(type)) {
+			return new InviteAcceptAction(id, time, account, location, sentBy, new DateTime(rs.getTimestamp("sentTime"), DateTimeZone.UTC));
+		}
+		return new SimpleAction(type, id, time, account, location);
+	}
+
+}
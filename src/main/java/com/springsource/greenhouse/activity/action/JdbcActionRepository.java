@@ -19,41 +19,47 @@ import javax.inject.Inject;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.ClassUtils;
 
 import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.utils.Location;
 
 /**
  * An ActionRepository that records Action information in a relational database using the JDBC API.
+ * Records are written through the {@link ActionJournal}.
  * @author Keith Donald
  */
 public class JdbcActionRepository implements ActionRepository {
 
-	private final JdbcTemplate jdbcTemplate;
-	
 	private final ActionGateway actionGateway;
 	
+	private final BlockIdAllocator idAllocator;
+	
+	private final ActionJournal actionJournal;
+	
 	@Inject
-	public JdbcActionRepository(JdbcTemplate jdbcTemplate, ActionGateway actionGateway) {
-		this.jdbcTemplate = jdbcTemplate;
+	public JdbcActionRepository(ActionGateway actionGateway, BlockIdAllocator idAllocator, ActionJournal actionJournal) {
 		this.actionGateway = actionGateway;
+		this.idAllocator = idAllocator;
+		this.actionJournal = actionJournal;
 	}
 
-	public SimpleAction saveSimpleAction(final String type, Account account) {
-		SimpleAction action = doSaveAction(SimpleAction.class, account, new ActionFactory<SimpleAction>() {
-			public SimpleAction createAction(Long id, DateTime time, Account account, Location location) {
-				return new SimpleAction(type, id, time, account, location);
-			}			
-		}, type, Location.getCurrentLocation(), new DateTime(DateTimeZone.UTC));
+	/**
+	 * Simple actions are written behind: nothing else is inserted with them, so the action can be published before its record is.
+	 */
+	public SimpleAction saveSimpleAction(String type, Account account) {
+		Long id = idAllocator.nextId("MemberAction");
+		DateTime time = new DateTime(DateTimeZone.UTC);
+		Location location = Location.getCurrentLocation();
+		actionJournal.writeBehind(id, type, time, location, account.getId());
+		SimpleAction action = new SimpleAction(type, id, time, account, location);
 		actionGateway.actionPerformed(action);
 		return action;
 	}
 
 	public <A extends Action> A saveAction(Class<A> actionClass, Account account, ActionFactory<A> actionFactory) {
-		A action = doSaveAction(actionClass, account, actionFactory, actionType(actionClass), Location.getCurrentLocation(), new DateTime(DateTimeZone.UTC));
+		A action = doSaveAction(actionClass, account, actionFactory, Action.typeOf(actionClass), Location.getCurrentLocation(), new DateTime(DateTimeZone.UTC));
 		actionGateway.actionPerformed(action);
 		return action;
 	}
@@ -67,16 +73,9 @@ public class JdbcActionRepository implements ActionRepository {
 	}
 
 	private Long insertAction(String type, DateTime performTime, Account account, Location location) {
-		Double latitude = location != null ? location.getLatitude() : null;
-		Double longitude = location != null ? location.getLongitude() : null;
-		jdbcTemplate.update("insert into MemberAction (actionType, performTime, latitude, longitude, member) values (?, ?, ?, ?, ?)", type, performTime.toDate(), latitude, longitude, account.getId());
-		return jdbcTemplate.queryForLong("call identity()");
-	}
-	
-	private String actionType(Class<? extends Action> actionClass) {
-		String shortName = ClassUtils.getShortName(actionClass);
-		int actionPart = shortName.lastIndexOf("Action");
-		return actionPart == -1 ? shortName : shortName.substring(0, actionPart);
+		Long id = idAllocator.nextId("MemberAction");
+		actionJournal.write(id, type, performTime, location, account.getId());
+		return id;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.action;
+
+import org.joda.time.DateTime;
+
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * A MemberAction record waiting in the {@link ActionJournal} to be written.
+ * @author Keith Donald
+ */
+final class JournaledAction {
+
+	private final Long id;
+
+	private final String type;
+
+	private final DateTime performTime;
+
+	private final Location location;
+
+	private final Long member;
+
+	private long journalEnd = -1;
+
+	public JournaledAction(Long id, String type, DateTime performTime, Location location, Long member) {
+		this.id = id;
+		this.type = type;
+		this.performTime = performTime;
+		this.location = location;
+		this.member = member;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public DateTime getPerformTime() {
+		return performTime;
+	}
+
+	public Location getLocation() {
+		return location;
+	}
+
+	public Long getMember() {
+		return member;
+	}
+
+	/**
+	 * The position in the journal file just past this record's entry; -1 if the action was not journaled.
+	 */
+	public long getJournalEnd() {
+		return journalEnd;
+	}
+
+	void setJournalEnd(long journalEnd) {
+		this.journalEnd = journalEnd;
+	}
+
+}
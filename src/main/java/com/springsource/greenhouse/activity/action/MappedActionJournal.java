@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * A circular log of pending actions kept in a memory-mapped file, so actions not yet written to the database survive a crash of the process.
+ * The header holds the position of the oldest entry not yet known to be written; entries are appended after it and the writer moves it forward as batches commit.
+ * Each entry is a length, the action fields, then a zero length marking the end of the log; a length of -1 means the log continues at the start of the file.
+ * The mapping is not forced to disk on every append, so an operating system crash may lose the most recent entries.
+ * @author Keith Donald
+ */
+class MappedActionJournal {
+
+	private static final int HEADER = 16;
+
+	private static final int WRAP = -1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	private int tail;
+
+	private int write;
+
+	public MappedActionJournal(File journalFile, int capacity) throws IOException {
+		this.file = new RandomAccessFile(journalFile, "rw");
+		if (file.length() < capacity) {
+			file.setLength(capacity);
+		}
+		this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		this.capacity = capacity;
+		long storedTail = buffer.getLong(0);
+		this.tail = storedTail >= HEADER && storedTail < capacity ? (int) storedTail : HEADER;
+		this.write = tail;
+	}
+
+	/**
+	 * The entries left over from the last run that were not known to be written, oldest first.
+	 * Call {@link #reset()} once they have been written.
+	 */
+	public synchronized List<JournaledAction> recover() {
+		List<JournaledAction> actions = new ArrayList<JournaledAction>();
+		int position = tail;
+		int scanned = 0;
+		while (scanned < capacity) {
+			int length = buffer.getInt(position);
+			if (length == WRAP) {
+				scanned += capacity - position;
+				position = HEADER;
+				continue;
+			}
+			if (length <= 0 || position + 4 + length > capacity) {
+				break;
+			}
+			actions.add(readEntry(position + 4));
+			position += 4 + length;
+			scanned += 4 + length;
+		}
+		return actions;
+	}
+
+	/**
+	 * Empty the journal.
+	 */
+	public synchronized void reset() {
+		tail = HEADER;
+		write = HEADER;
+		buffer.putInt(HEADER, 0);
+		buffer.putLong(0, tail);
+	}
+
+	/**
+	 * Append the action to the journal and record the position just past its entry.
+	 * @return false if the journal has no room for the entry because the writer has fallen behind
+	 */
+	public synchronized boolean append(JournaledAction action) {
+		byte[] type = action.getType().getBytes(UTF8);
+		int length = 8 + 8 + 8 + 1 + 8 + 8 + 2 + type.length;
+		int size = 4 + length;
+		int position;
+		if (write >= tail) {
+			if (write + size + 4 <= capacity) {
+				position = write;
+			} else if (HEADER + size + 4 < tail || (tail == write && HEADER + size + 4 <= capacity)) {
+				position = HEADER;
+			} else {
+				return false;
+			}
+		} else if (write + size + 4 < tail) {
+			position = write;
+		} else {
+			return false;
+		}
+		writeEntry(position + 4, action, type);
+		buffer.putInt(position + size, 0);
+		buffer.putInt(position, length);
+		if (position != write) {
+			buffer.putInt(write, WRAP);
+		}
+		write = position + size;
+		action.setJournalEnd(write);
+		return true;
+	}
+
+	/**
+	 * Record that every entry up to the position has been written to the database.
+	 */
+	public synchronized void checkpoint(long position) {
+		tail = (int) position;
+		buffer.putLong(0, tail);
+	}
+
+	public synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	// internal helpers
+
+	private void writeEntry(int position, JournaledAction action, byte[] type) {
+		buffer.putLong(position, action.getId());
+		buffer.putLong(position + 8, action.getPerformTime().getMillis());
+		buffer.putLong(position + 16, action.getMember());
+		Location location = action.getLocation();
+		if (location != null) {
+			buffer.put(position + 24, (byte) 1);
+			buffer.putDouble(position + 25, location.getLatitude());
+			buffer.putDouble(position + 33, location.getLongitude());
+		} else {
+			buffer.put(position + 24, (byte) 0);
+		}
+		buffer.putShort(position + 41, (short) type.length);
+		for (int i = 0; i < type.length; i++) {
+			buffer.put(position + 43 + i, type[i]);
+		}
+	}
+
+	private JournaledAction readEntry(int position) {
+		Long id = buffer.getLong(position);
+		DateTime performTime = new DateTime(buffer.getLong(position + 8), DateTimeZone.UTC);
+		Long member = buffer.getLong(position + 16);
+		Location location = buffer.get(position + 24) == 1 ? new Location(buffer.getDouble(position + 25), buffer.getDouble(position + 33)) : null;
+		byte[] type = new byte[buffer.getShort(position + 41)];
+		for (int i = 0; i < type.length; i++) {
+			type[i] = buffer.get(position + 43 + i);
+		}
+		return new JournaledAction(id, new String(type, UTF8), performTime, location, member);
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.archive;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.inject.Inject;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.joda.time.DateTime;
+import org.springframework.data.FileStorage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Reads member actions back out of the archive.
+ * Only the segments covering the requested time range are opened, and within them only the blocks that may hold the requested member's actions are decompressed.
+ * Actions are streamed to a handler as they are read, so the size of the history read does not matter.
+ * @author Keith Donald
+ */
+public class ActionArchive {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final FileStorage archiveStorage;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Inject
+	public ActionArchive(JdbcTemplate jdbcTemplate, FileStorage archiveStorage) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.archiveStorage = archiveStorage;
+	}
+
+	/**
+	 * Read the archived actions performed by the member in the time range.
+	 * Actions are handed over segment by segment, oldest segment first; within a segment they are ordered by member then time.
+	 * @param member the id of the member; null to read the actions of every member
+	 * @param start the start of the range, inclusive
+	 * @param end the end of the range, exclusive
+	 * @param handler receives each action read
+	 */
+	public void readActions(Long member, DateTime start, DateTime end, ArchivedActionHandler handler) {
+		List<String> segments = jdbcTemplate.queryForList("select name from ActionArchiveSegment where startTime < ? and endTime > ? order by startTime, name", String.class,
+				new Timestamp(end.getMillis()), new Timestamp(start.getMillis()));
+		for (String segment : segments) {
+			try {
+				readSegment(segment, member, start.getMillis(), end.getMillis(), handler);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read archive segment " + segment, e);
+			}
+		}
+	}
+
+	// internal helpers
+
+	private void readSegment(String segment, Long member, long start, long end, ArchivedActionHandler handler) throws IOException {
+		SegmentIndex index;
+		InputStream indexStream = archiveStorage.readFile(segment + INDEX_SUFFIX, 0);
+		try {
+			index = SegmentIndex.read(indexStream);
+		} finally {
+			indexStream.close();
+		}
+		for (SegmentIndex.Block block : index.getBlocks()) {
+			if (block.overlaps(member, start, end)) {
+				readBlock(segment, block, member, start, end, handler);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readBlock(String segment, SegmentIndex.Block block, Long member, long start, long end, ArchivedActionHandler handler) throws IOException {
+		InputStream blockStream = new BoundedInputStream(archiveStorage.readFile(segment, block.getOffset()), block.getLength());
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(blockStream), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				ArchivedAction action = ArchivedAction.fromRecord(objectMapper.readValue(line, Map.class));
+				long time = action.getTime().getMillis();
+				if ((member == null || member.equals(action.getMember())) && time >= start && time < end) {
+					handler.handleAction(action);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Segment index files are stored alongside their segment, with this suffix appended to its name.
+	 */
+	static final String INDEX_SUFFIX = ".idx";
+
+	private static final class BoundedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		public BoundedInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = super.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.archive;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.FileData;
+import org.springframework.data.FileStorage;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.invite.InviteAcceptAction;
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * Moves member actions older than the retention period out of the MemberAction table and into archive segments in FileStorage.
+ * Actions are archived a calendar month (UTC) at a time; each run writes one segment per month, sorted by member then time, plus an index of its blocks.
+ * Once a segment is stored, it is recorded in ActionArchiveSegment and its actions are deleted in the same transaction, so a failed run leaves the actions in place to be archived again.
+ * Per-member counts of the archived actions are kept in ArchivedActionCount, so threshold badges and reputation still count them; event 0 holds the count across all events.
+ * Actions that earned a badge and invite acceptances stay in the hot tables, since AwardedBadge and the invite graph refer to them.
+ * @author Keith Donald
+ * @see ActionArchive
+ */
+@ManagedResource(description = "Archives old member actions into compressed segments")
+public class ActionArchiver implements InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(ActionArchiver.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final FileStorage archiveStorage;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private int retentionDays = 365;
+
+	private int blockSize = 1000;
+
+	private int fetchSize = 1000;
+
+	private long archiveInterval = 24;
+
+	private ScheduledExecutorService scheduler;
+
+	private volatile long archivedActions;
+
+	@Inject
+	public ActionArchiver(JdbcTemplate jdbcTemplate, FileStorage archiveStorage) {
+		this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		this.archiveStorage = archiveStorage;
+	}
+
+	/**
+	 * Actions performed more than this many days ago are archived, a whole month at a time.
+	 * Defaults to 365.
+	 */
+	public void setRetentionDays(int retentionDays) {
+		this.retentionDays = retentionDays;
+	}
+
+	/**
+	 * The number of actions compressed together in a segment block.
+	 * Smaller blocks make reading a single member's history cheaper; larger blocks compress better.
+	 * Defaults to 1000.
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * The number of rows fetched from the database at a time.
+	 * Defaults to 1000.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Hours between archive runs; 0 to only archive when asked through JMX.
+	 * Defaults to 24.
+	 */
+	public void setArchiveInterval(long archiveInterval) {
+		this.archiveInterval = archiveInterval;
+	}
+
+	public void afterPropertiesSet() {
+		jdbcTemplate.setFetchSize(fetchSize);
+		if (archiveInterval > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "action-archiver");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						archive();
+					} catch (RuntimeException e) {
+						logger.error("Could not archive member actions", e);
+					}
+				}
+			}, archiveInterval, archiveInterval, TimeUnit.HOURS);
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Archive every whole month of actions performed before the retention period.
+	 * @return the number of segments written
+	 */
+	@ManagedOperation(description = "Archive actions older than the retention period now")
+	public synchronized int archive() {
+		DateTime now = new DateTime(DateTimeZone.UTC);
+		DateTime horizon = monthStart(now.minusDays(retentionDays));
+		int segments = 0;
+		while (true) {
+			Timestamp oldest = jdbcTemplate.queryForObject(SELECT_OLDEST_ARCHIVABLE, Timestamp.class, new Timestamp(horizon.getMillis()));
+			if (oldest == null) {
+				return segments;
+			}
+			DateTime start = monthStart(new DateTime(oldest, DateTimeZone.UTC));
+			if (archiveMonth(start, start.plusMonths(1)) == 0) {
+				return segments;
+			}
+			segments++;
+		}
+	}
+
+	/**
+	 * The number of actions archived since startup.
+	 */
+	@ManagedAttribute(description = "Actions archived since startup")
+	public long getArchivedActions() {
+		return archivedActions;
+	}
+
+	// internal helpers
+
+	private int archiveMonth(DateTime start, DateTime end) {
+		final SegmentWriter writer = new SegmentWriter(objectMapper, blockSize);
+		final Map<List<Object>, int[]> counts = new HashMap<List<Object>, int[]>();
+		jdbcTemplate.query(SELECT_ARCHIVABLE_ACTIONS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				ArchivedAction action = mapAction(rs);
+				try {
+					writer.write(action);
+				} catch (IOException e) {
+					throw new IllegalStateException("Could not write archive segment", e);
+				}
+				if (action.getMember() != null) {
+					count(counts, action.getMember(), action.getType(), 0L);
+					if (action.getEvent() != null) {
+						count(counts, action.getMember(), action.getType(), action.getEvent());
+					}
+				}
+			}
+		}, new Timestamp(start.getMillis()), new Timestamp(end.getMillis()));
+		if (writer.getActionCount() == 0) {
+			return 0;
+		}
+		final long[] ids = writer.getIds();
+		final String segment = segmentName(start, ids);
+		try {
+			archiveStorage.storeFile(new FileData(segment, writer.finish(), "application/x-gzip"));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write archive segment " + segment, e);
+		}
+		archiveStorage.storeFile(new FileData(segment + ActionArchive.INDEX_SUFFIX, writer.getIndex().toBytes(), "application/octet-stream"));
+		final Timestamp startTime = new Timestamp(start.getMillis());
+		final Timestamp endTime = new Timestamp(end.getMillis());
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				jdbcTemplate.update("insert into ActionArchiveSegment (name, startTime, endTime, actionCount) values (?, ?, ?, ?)", segment, startTime, endTime, ids.length);
+				for (Map.Entry<List<Object>, int[]> count : counts.entrySet()) {
+					List<Object> key = count.getKey();
+					if (jdbcTemplate.update("update ArchivedActionCount set actionCount = actionCount + ? where member = ? and actionType = ? and event = ?", count.getValue()[0], key.get(0), key.get(1), key.get(2)) == 0) {
+						jdbcTemplate.update("insert into ArchivedActionCount (member, actionType, event, actionCount) values (?, ?, ?, ?)", key.get(0), key.get(1), key.get(2), count.getValue()[0]);
+					}
+				}
+				deleteByAction("delete from EventTweetAction where memberAction = ?", ids);
+				int deleted = sum(deleteByAction("delete from MemberAction where id = ?", ids));
+				if (deleted != ids.length) {
+					throw new IllegalStateException("Expected to delete " + ids.length + " archived actions but deleted " + deleted + "; rolling back");
+				}
+			}
+		});
+		archivedActions += ids.length;
+		logger.info("Archived " + ids.length + " member actions performed in " + start.toString("yyyy-MM") + " to " + segment);
+		return ids.length;
+	}
+
+	private ArchivedAction mapAction(ResultSet rs) throws SQLException {
+		long member = rs.getLong("member");
+		Long memberId = rs.wasNull() ? null : member;
+		double latitude = rs.getDouble("latitude");
+		Location location = rs.wasNull() ? null : new Location(latitude, rs.getDouble("longitude"));
+		long event = rs.getLong("event");
+		Long eventId = rs.wasNull() ? null : event;
+		short session = rs.getShort("session");
+		Short sessionId = rs.wasNull() ? null : session;
+		return new ArchivedAction(rs.getLong("id"), rs.getString("actionType"), new DateTime(rs.getTimestamp("performTime"), DateTimeZone.UTC), memberId, location, eventId, sessionId, rs.getString("tweet"));
+	}
+
+	private void count(Map<List<Object>, int[]> counts, Long member, String type, Long event) {
+		List<Object> key = Arrays.<Object>asList(member, type, event);
+		int[] count = counts.get(key);
+		if (count == null) {
+			count = new int[1];
+			counts.put(key, count);
+		}
+		count[0]++;
+	}
+
+	private int[] deleteByAction(String sql, final long[] ids) {
+		return jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				ps.setLong(1, ids[i]);
+			}
+			public int getBatchSize() {
+				return ids.length;
+			}
+		});
+	}
+
+	private int sum(int[] counts) {
+		int sum = 0;
+		for (int count : counts) {
+			sum += count;
+		}
+		return sum;
+	}
+
+	private String segmentName(DateTime month, long[] ids) {
+		long first = ids[0];
+		long last = ids[0];
+		for (long id : ids) {
+			first = Math.min(first, id);
+			last = Math.max(last, id);
+		}
+		return "actions/" + month.toString("yyyy/MM") + "/" + first + "-" + last + ".ndjson.gz";
+	}
+
+	private DateTime monthStart(DateTime time) {
+		return new DateTime(time.getYear(), time.getMonthOfYear(), 1, 0, 0, 0, 0, DateTimeZone.UTC);
+	}
+
+	private static final String ARCHIVABLE = "a.actionType <> '" + Action.typeOf(InviteAcceptAction.class) + "' and not exists (select 1 from AwardedBadge b where b.memberAction = a.id)";
+
+	private static final String SELECT_OLDEST_ARCHIVABLE = "select min(a.performTime) from MemberAction a where a.performTime < ? and " + ARCHIVABLE;
+
+	private static final String SELECT_ARCHIVABLE_ACTIONS = "select a.id, a.actionType, a.performTime, a.latitude, a.longitude, a.member, t.event, t.session, t.tweet " +
+			"from MemberAction a left outer join EventTweetAction t on a.id = t.memberAction " +
+			"where a.performTime >= ? and a.performTime < ? and " + ARCHIVABLE + " order by a.member, a.performTime, a.id";
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.archive;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * A member action that has been moved out of the MemberAction table into the archive.
+ * Carries the action's stored fields rather than a full Action, since the member who performed it is referenced by id only.
+ * @author Keith Donald
+ */
+public final class ArchivedAction {
+
+	private final Long id;
+
+	private final String type;
+
+	private final DateTime time;
+
+	private final Long member;
+
+	private final Location location;
+
+	private final Long event;
+
+	private final Short session;
+
+	private final String tweet;
+
+	public ArchivedAction(Long id, String type, DateTime time, Long member, Location location, Long event, Short session, String tweet) {
+		this.id = id;
+		this.type = type;
+		this.time = time;
+		this.member = member;
+		this.location = location;
+		this.event = event;
+		this.session = session;
+		this.tweet = tweet;
+	}
+
+	/**
+	 * The id of the action.
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * The type of action e.g. SignedUp or EventTweet.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * When the action was performed.
+	 */
+	public DateTime getTime() {
+		return time;
+	}
+
+	/**
+	 * The id of the member who performed the action.
+	 */
+	public Long getMember() {
+		return member;
+	}
+
+	/**
+	 * Where the action was performed; may be null.
+	 */
+	public Location getLocation() {
+		return location;
+	}
+
+	/**
+	 * The event the action was performed at; null if the action was not performed at an event.
+	 */
+	public Long getEvent() {
+		return event;
+	}
+
+	/**
+	 * The session the action was performed in; null if the action was not performed in a session.
+	 */
+	public Short getSession() {
+		return session;
+	}
+
+	/**
+	 * The text tweeted, for EventTweet actions.
+	 */
+	public String getTweet() {
+		return tweet;
+	}
+
+	public String toString() {
+		return "Archived " + type + " action " + id + " by member " + member;
+	}
+
+	// internal helpers
+
+	/**
+	 * The action as an archive record: a map of its non-null fields, written as one line of JSON.
+	 */
+	Map<String, Object> toRecord() {
+		Map<String, Object> record = new LinkedHashMap<String, Object>();
+		record.put("id", id);
+		record.put("type", type);
+		record.put("time", time.getMillis());
+		put(record, "member", member);
+		if (location != null) {
+			record.put("latitude", location.getLatitude());
+			record.put("longitude", location.getLongitude());
+		}
+		put(record, "event", event);
+		put(record, "session", session);
+		put(record, "tweet", tweet);
+		return record;
+	}
+
+	/**
+	 * Rebuild an action from an archive record.
+	 */
+	static ArchivedAction fromRecord(Map<String, Object> record) {
+		Location location = null;
+		if (record.containsKey("latitude")) {
+			location = new Location(((Number) record.get("latitude")).doubleValue(), ((Number) record.get("longitude")).doubleValue());
+		}
+		Number session = (Number) record.get("session");
+		return new ArchivedAction(longValue(record.get("id")), (String) record.get("type"), new DateTime(longValue(record.get("time")), DateTimeZone.UTC),
+				longValue(record.get("member")), location, longValue(record.get("event")), session != null ? session.shortValue() : null, (String) record.get("tweet"));
+	}
+
+	private static void put(Map<String, Object> record, String key, Object value) {
+		if (value != null) {
+			record.put(key, value);
+		}
+	}
+
+	private static Long longValue(Object value) {
+		return value != null ? ((Number) value).longValue() : null;
+	}
+
+}
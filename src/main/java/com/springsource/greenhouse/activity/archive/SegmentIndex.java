@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The index of an archive segment: where each compressed block starts, and the range of members and times it holds.
+ * Blocks are sorted by member then time, so a reader looking for one member's actions only decompresses the blocks whose member range includes them.
+ * @author Keith Donald
+ */
+final class SegmentIndex {
+
+	private static final int INDEX_MAGIC = 0x47484958;
+
+	private final List<Block> blocks = new ArrayList<Block>();
+
+	/**
+	 * Add the next block in the segment.
+	 */
+	public void add(Block block) {
+		blocks.add(block);
+	}
+
+	/**
+	 * The segment's blocks, in the order they appear in the segment.
+	 */
+	public List<Block> getBlocks() {
+		return Collections.unmodifiableList(blocks);
+	}
+
+	/**
+	 * The index in its stored form.
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(blocks.size());
+			for (Block block : blocks) {
+				out.writeLong(block.offset);
+				out.writeInt(block.length);
+				out.writeInt(block.count);
+				out.writeLong(block.firstMember);
+				out.writeLong(block.lastMember);
+				out.writeLong(block.minTime);
+				out.writeLong(block.maxTime);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write segment index", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read an index in its stored form.
+	 */
+	public static SegmentIndex read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != INDEX_MAGIC) {
+			throw new IOException("Not an archive segment index");
+		}
+		SegmentIndex index = new SegmentIndex();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			index.add(new Block(in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+		}
+		return index;
+	}
+
+	/**
+	 * A gzip-compressed run of NDJSON records within a segment.
+	 * Members are identified by id; actions not performed by a member are recorded as member 0.
+	 */
+	public static final class Block {
+
+		private final long offset;
+
+		private final int length;
+
+		private final int count;
+
+		private final long firstMember;
+
+		private final long lastMember;
+
+		private final long minTime;
+
+		private final long maxTime;
+
+		public Block(long offset, int length, int count, long firstMember, long lastMember, long minTime, long maxTime) {
+			this.offset = offset;
+			this.length = length;
+			this.count = count;
+			this.firstMember = firstMember;
+			this.lastMember = lastMember;
+			this.minTime = minTime;
+			this.maxTime = maxTime;
+		}
+
+		/**
+		 * Where the block starts in the segment.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * The compressed length of the block.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * The number of actions in the block.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Whether the block may hold actions by the member performed in the time range.
+		 * @param member the member id; null for any member
+		 * @param start the start of the range, inclusive, in milliseconds
+		 * @param end the end of the range, exclusive, in milliseconds
+		 */
+		public boolean overlaps(Long member, long start, long end) {
+			if (member != null && (member < firstMember || member > lastMember)) {
+				return false;
+			}
+			return minTime < end && maxTime >= start;
+		}
+
+	}
+
+}
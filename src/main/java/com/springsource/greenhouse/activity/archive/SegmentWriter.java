@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Writes archived actions into a segment: NDJSON records, gzip-compressed in blocks of a fixed number of records.
+ * Each block is a complete gzip member, so a block can be decompressed on its own given its offset, and the segment as a whole is still a valid gzip file.
+ * Actions must be written sorted by member then time.
+ * @author Keith Donald
+ */
+final class SegmentWriter {
+
+	private final ObjectMapper objectMapper;
+
+	private final int blockSize;
+
+	private final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+
+	private final SegmentIndex index = new SegmentIndex();
+
+	private long[] ids = new long[1024];
+
+	private int actionCount;
+
+	private GZIPOutputStream gzip;
+
+	private Writer writer;
+
+	private long blockOffset;
+
+	private int blockCount;
+
+	private long firstMember;
+
+	private long lastMember;
+
+	private long minTime;
+
+	private long maxTime;
+
+	public SegmentWriter(ObjectMapper objectMapper, int blockSize) {
+		this.objectMapper = objectMapper;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Append the action to the segment.
+	 */
+	public void write(ArchivedAction action) throws IOException {
+		if (writer == null) {
+			startBlock();
+		}
+		long member = action.getMember() != null ? action.getMember() : 0;
+		long time = action.getTime().getMillis();
+		if (blockCount == 0) {
+			firstMember = member;
+			minTime = time;
+			maxTime = time;
+		}
+		lastMember = member;
+		minTime = Math.min(minTime, time);
+		maxTime = Math.max(maxTime, time);
+		writer.write(objectMapper.writeValueAsString(action.toRecord()));
+		writer.write('\n');
+		blockCount++;
+		if (actionCount == ids.length) {
+			long[] grown = new long[ids.length * 2];
+			System.arraycopy(ids, 0, grown, 0, ids.length);
+			ids = grown;
+		}
+		ids[actionCount++] = action.getId();
+		if (blockCount == blockSize) {
+			finishBlock();
+		}
+	}
+
+	/**
+	 * Complete the segment.
+	 * @return the segment's content
+	 */
+	public byte[] finish() throws IOException {
+		if (writer != null) {
+			finishBlock();
+		}
+		return segment.toByteArray();
+	}
+
+	/**
+	 * The segment's index; complete once the segment is finished.
+	 */
+	public SegmentIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * The ids of the actions written, in the order written.
+	 */
+	public long[] getIds() {
+		long[] written = new long[actionCount];
+		System.arraycopy(ids, 0, written, 0, actionCount);
+		return written;
+	}
+
+	/**
+	 * The number of actions written.
+	 */
+	public int getActionCount() {
+		return actionCount;
+	}
+
+	// internal helpers
+
+	private void startBlock() throws IOException {
+		blockOffset = segment.size();
+		blockCount = 0;
+		gzip = new GZIPOutputStream(segment);
+		writer = new OutputStreamWriter(gzip, "UTF-8");
+	}
+
+	private void finishBlock() throws IOException {
+		writer.flush();
+		gzip.finish();
+		index.add(new SegmentIndex.Block(blockOffset, (int) (segment.size() - blockOffset), blockCount, firstMember, lastMember, minTime, maxTime));
+		writer = null;
+		gzip = null;
+	}
+
+}
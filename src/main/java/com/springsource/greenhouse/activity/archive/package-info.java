@@ -0,0 +1,4 @@
+/**
+ * Archival of old member actions into compressed segment files, and a streaming reader over the archived history.
+ */
+package com.springsource.greenhouse.activity.archive;
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.badge;
+
+import com.springsource.greenhouse.activity.action.Action;
+
+/**
+ * Counts the actions a member has performed, for badges awarded when a member reaches a number of actions.
+ * Counting does not record the action; the counter is expected to have been told of it before a badge rule asks.
+ * @author Keith Donald
+ */
+public interface ActionCounter {
+
+	/**
+	 * The number of actions of the same type as this one the member has performed, up to and including this one.
+	 */
+	long countActions(Action action);
+
+	/**
+	 * The number of actions of the same type as this one the member has performed at the same event, up to and including this one.
+	 * Returns 0 if the action was not performed at an event.
+	 * @see com.springsource.greenhouse.activity.action.EventAction
+	 */
+	long countEventActions(Action action);
+
+}
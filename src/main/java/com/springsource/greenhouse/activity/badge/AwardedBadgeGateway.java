@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.badge;
+
+import org.springframework.integration.annotation.Gateway;
+
+/**
+ * Spring Integration Message Gateway for sending awarded badge Messages for badges awarded outside the action pipeline, such as by the {@link BadgeBackfill}.
+ * @author Keith Donald
+ */
+public interface AwardedBadgeGateway {
+
+	/**
+	 * Called once the awarded badge is recorded, so subscribers such as the reputation scorer can account for it.
+	 */
+	@Gateway
+	void badgeAwarded(AwardedBadge badge);
+
+}
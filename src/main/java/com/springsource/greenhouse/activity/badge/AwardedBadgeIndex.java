@@ -0,0 +1,207 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.badge;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * In-memory index of the badges members have been awarded, so badge awarders can skip badges already awarded without querying the AwardedBadge table.
+ * Entries are keyed by member, badge and an optional scope such as the event the badge was earned at.
+ * A Bloom filter in front of a compact open-addressing set answers most "not awarded" checks without taking a lock.
+ * Loaded from the AwardedBadge table at startup and kept current by the BadgeRepository as badges are awarded.
+ * @author Keith Donald
+ */
+public class AwardedBadgeIndex implements InitializingBean {
+
+	private static final int HASHES = 4;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final ConcurrentMap<String, Integer> badgeIndexes = new ConcurrentHashMap<String, Integer>();
+
+	private final AtomicInteger badgeCount = new AtomicInteger();
+
+	private final AtomicLongArray filter;
+
+	private final int filterMask;
+
+	private long[] members = new long[64];
+
+	private long[] keys = new long[64];
+
+	private int size;
+
+	@Inject
+	public AwardedBadgeIndex(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, 1 << 23);
+	}
+
+	/**
+	 * Creates an index with a Bloom filter of the given number of bits, rounded up to a power of two.
+	 * Around ten bits per awarded badge keeps false positives near one percent.
+	 */
+	public AwardedBadgeIndex(JdbcTemplate jdbcTemplate, int filterBits) {
+		this.jdbcTemplate = jdbcTemplate;
+		int bits = Integer.highestOneBit(Math.max(64, filterBits - 1)) << 1;
+		this.filter = new AtomicLongArray(bits / 64);
+		this.filterMask = bits - 1;
+	}
+
+	public void afterPropertiesSet() {
+		jdbcTemplate.query(SELECT_AWARDED_BADGES, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long event = rs.getLong(3);
+				add(rs.getLong(1), rs.getString(2), rs.wasNull() ? null : event);
+			}
+		});
+	}
+
+	/**
+	 * True if the member has been awarded the badge within the scope.
+	 * @param member the member id
+	 * @param badge the badge name
+	 * @param scope the id of the scope the badge is awarded within e.g. an event; null if the badge is awarded once per member
+	 */
+	public boolean contains(Long member, String badge, Long scope) {
+		Integer badgeIndex = badgeIndexes.get(badge);
+		if (badgeIndex == null) {
+			return false;
+		}
+		long key = key(badgeIndex, scope);
+		long hash = mix(member * 31 + key);
+		if (!mightContain(hash)) {
+			return false;
+		}
+		synchronized (this) {
+			return keys[find(member, key)] != 0;
+		}
+	}
+
+	/**
+	 * Record that the member has been awarded the badge within the scope.
+	 */
+	public void add(Long member, String badge, Long scope) {
+		long key = key(badgeIndex(badge), scope);
+		long hash = mix(member * 31 + key);
+		synchronized (this) {
+			int slot = find(member, key);
+			if (keys[slot] == 0) {
+				if ((size + 1) * 2 > keys.length) {
+					resize();
+					slot = find(member, key);
+				}
+				members[slot] = member;
+				keys[slot] = key;
+				size++;
+			}
+		}
+		addToFilter(hash);
+	}
+
+	/**
+	 * The number of (member, badge, scope) entries in the index.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	// internal helpers
+
+	private int badgeIndex(String badge) {
+		Integer index = badgeIndexes.get(badge);
+		if (index == null) {
+			synchronized (badgeIndexes) {
+				index = badgeIndexes.get(badge);
+				if (index == null) {
+					index = badgeCount.incrementAndGet();
+					badgeIndexes.put(badge, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private boolean mightContain(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = (h1 + i * h2) & filterMask;
+			if ((filter.get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addToFilter(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = (h1 + i * h2) & filterMask;
+			long mask = 1L << bit;
+			long word = filter.get(bit >>> 6);
+			while ((word & mask) == 0 && !filter.compareAndSet(bit >>> 6, word, word | mask)) {
+				word = filter.get(bit >>> 6);
+			}
+		}
+	}
+
+	private int find(long member, long key) {
+		int mask = keys.length - 1;
+		int slot = (int) (mix(member * 31 + key) & mask);
+		while (keys[slot] != 0 && (keys[slot] != key || members[slot] != member)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldMembers = members;
+		long[] oldKeys = keys;
+		members = new long[oldKeys.length * 2];
+		keys = new long[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = find(oldMembers[i], oldKeys[i]);
+				members[slot] = oldMembers[i];
+				keys[slot] = oldKeys[i];
+			}
+		}
+	}
+
+	private static long key(int badgeIndex, Long scope) {
+		return ((long) badgeIndex << 40) | (scope != null ? (scope + 1) & ((1L << 40) - 1) : 0);
+	}
+
+	private static long mix(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return value ^ (value >>> 29);
+	}
+
+	private static final String SELECT_AWARDED_BADGES = "select b.member, b.badge, t.event from AwardedBadge b left outer join EventTweetAction t on b.memberAction = t.memberAction";
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.badge;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.StringUtils;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.ActionJournal;
+import com.springsource.greenhouse.activity.action.ActionMapper;
+import com.springsource.greenhouse.activity.action.EventAction;
+import com.springsource.greenhouse.database.BlockIdAllocator;
+
+/**
+ * Awards badges for actions members performed before a badge rule existed, by replaying the MemberAction history through the badge rules.
+ * Streams MemberAction joined with its typed detail tables in id order and hands the actions out in chunks to worker threads partitioned by member, so each member's actions are evaluated in order.
+ * The badges awarded in a chunk are batch-inserted in one transaction and then sent through the {@link AwardedBadgeGateway}, so reputation accounts for them like badges awarded as actions happen;
+ * then the id of the chunk's last action is saved to the progress file so a later run resumes after it.
+ * Badges already awarded are skipped using the AwardedBadgeIndex, so running the backfill again never awards a badge twice.
+ * Threshold rules count the replayed actions with a counter of the backfill's own, warmed with the actions up to where the run resumes.
+ * Started through JMX; progress is logged and exposed as attributes.
+ * @author Keith Donald
+ */
+@ManagedResource(description = "Awards badges for historical member actions")
+public class BadgeBackfill {
+
+	private static final Log logger = LogFactory.getLog(BadgeBackfill.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ActionMapper actionMapper;
+
+	private final AwardedBadgeIndex awardedBadgeIndex;
+
+	private final BlockIdAllocator idAllocator;
+
+	private final ActionJournal actionJournal;
+
+	private final AwardedBadgeGateway awardedBadgeGateway;
+
+	private final AtomicLong processedActions = new AtomicLong();
+
+	private final AtomicLong awardedBadges = new AtomicLong();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private int chunkSize = 10000;
+
+	private int fetchSize = 1000;
+
+	private String progressFile;
+
+	private volatile boolean running;
+
+	private volatile long lastActionId;
+
+	private volatile double actionsPerSecond;
+
+	@Inject
+	public BadgeBackfill(JdbcTemplate jdbcTemplate, AccountMapper accountMapper, AwardedBadgeIndex awardedBadgeIndex, BlockIdAllocator idAllocator, ActionJournal actionJournal, AwardedBadgeGateway awardedBadgeGateway) {
+		this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		this.actionMapper = new ActionMapper(accountMapper);
+		this.awardedBadgeIndex = awardedBadgeIndex;
+		this.idAllocator = idAllocator;
+		this.actionJournal = actionJournal;
+		this.awardedBadgeGateway = awardedBadgeGateway;
+	}
+
+	/**
+	 * The number of worker threads evaluating badge rules.
+	 * Defaults to the number of processors.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * The number of actions evaluated between progress checkpoints.
+	 * Defaults to 10000.
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * The number of rows fetched from the database at a time.
+	 * Defaults to 1000.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * The file recording the id of the last action backfilled; if not set, every run starts from the first action.
+	 */
+	public void setProgressFile(String progressFile) {
+		this.progressFile = progressFile;
+	}
+
+	/**
+	 * Start the backfill in the background, resuming after the last action recorded in the progress file.
+	 */
+	@ManagedOperation(description = "Start the backfill, resuming where the last run stopped")
+	public synchronized String start() {
+		if (running) {
+			return "Backfill already running; at action " + lastActionId;
+		}
+		running = true;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					BadgeBackfill.this.run();
+				} catch (Exception e) {
+					logger.error("Badge backfill failed after action " + lastActionId, e);
+				}
+			}
+		}, "badge-backfill");
+		thread.setDaemon(true);
+		thread.start();
+		return "Backfill started after action " + readProgress();
+	}
+
+	/**
+	 * Forget the progress of earlier runs, so the next run replays every action.
+	 */
+	@ManagedOperation(description = "Forget earlier progress so the next run starts from the first action")
+	public void reset() throws IOException {
+		writeProgress(0);
+	}
+
+	/**
+	 * Run the backfill on the calling thread.
+	 */
+	public void run() throws Exception {
+		running = true;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			actionJournal.flush();
+			processedActions.set(0);
+			awardedBadges.set(0);
+			final long startTime = System.nanoTime();
+			long resumeAfter = readProgress();
+			final BatchingBadgeRepository badgeRepository = new BatchingBadgeRepository();
+			// threshold rules count the replayed history, not the live counts
+			final StripedActionCounter actionCounter = new StripedActionCounter(jdbcTemplate);
+			actionCounter.warmThrough(resumeAfter);
+			final BadgeSystem badgeSystem = new BadgeSystemFactoryBean(badgeRepository, actionCounter).getObject();
+			final Chunker chunker = new Chunker(executor, badgeSystem, actionCounter, badgeRepository, startTime);
+			logger.info("Starting badge backfill after action " + resumeAfter);
+			jdbcTemplate.setFetchSize(fetchSize);
+			jdbcTemplate.query(SELECT_ACTIONS, new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					chunker.add(actionMapper.mapRow(rs, rs.getRow()));
+				}
+			}, resumeAfter);
+			chunker.finish();
+			logger.info("Badge backfill complete: " + processedActions.get() + " actions, " + awardedBadges.get() + " badges awarded");
+		} finally {
+			executor.shutdownNow();
+			running = false;
+		}
+	}
+
+	@ManagedAttribute(description = "True while a backfill is running")
+	public boolean isRunning() {
+		return running;
+	}
+
+	@ManagedAttribute(description = "Actions evaluated by the current or last run")
+	public long getProcessedActions() {
+		return processedActions.get();
+	}
+
+	@ManagedAttribute(description = "Badges awarded by the current or last run")
+	public long getAwardedBadges() {
+		return awardedBadges.get();
+	}
+
+	@ManagedAttribute(description = "Id of the last action checkpointed")
+	public long getLastActionId() {
+		return lastActionId;
+	}
+
+	@ManagedAttribute(description = "Actions evaluated per second by the current or last run")
+	public double getActionsPerSecond() {
+		return actionsPerSecond;
+	}
+
+	// internal helpers
+
+	private long readProgress() {
+		if (!StringUtils.hasText(progressFile) || !new File(progressFile).exists()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(FileCopyUtils.copyToString(new FileReader(progressFile)).trim());
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read backfill progress from " + progressFile, e);
+		}
+	}
+
+	private void writeProgress(long actionId) throws IOException {
+		lastActionId = actionId;
+		if (StringUtils.hasText(progressFile)) {
+			FileCopyUtils.copy(String.valueOf(actionId), new FileWriter(progressFile));
+		}
+	}
+
+	private final class Chunker {
+
+		private final ExecutorService executor;
+
+		private final BadgeSystem badgeSystem;
+
+		private final StripedActionCounter actionCounter;
+
+		private final BatchingBadgeRepository badgeRepository;
+
+		private final long startTime;
+
+		private final List<List<Action>> partitions = new ArrayList<List<Action>>();
+
+		private int size;
+
+		private long lastId;
+
+		public Chunker(ExecutorService executor, BadgeSystem badgeSystem, StripedActionCounter actionCounter, BatchingBadgeRepository badgeRepository, long startTime) {
+			this.executor = executor;
+			this.badgeSystem = badgeSystem;
+			this.actionCounter = actionCounter;
+			this.badgeRepository = badgeRepository;
+			this.startTime = startTime;
+			for (int i = 0; i < threads; i++) {
+				partitions.add(new ArrayList<Action>());
+			}
+		}
+
+		public void add(Action action) {
+			int partition = (int) ((action.getAccount().getId() & Long.MAX_VALUE) % partitions.size());
+			partitions.get(partition).add(action);
+			lastId = action.getId();
+			if (++size == chunkSize) {
+				finish();
+			}
+		}
+
+		public void finish() {
+			if (size == 0) {
+				return;
+			}
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (final List<Action> partition : partitions) {
+					if (!partition.isEmpty()) {
+						futures.add(executor.submit(new Callable<Object>() {
+							public Object call() {
+								for (Action action : partition) {
+									actionCounter.actionPerformed(action);
+									badgeSystem.awardBadgeForAction(action);
+								}
+								return null;
+							}
+						}));
+					}
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+				awardedBadges.addAndGet(badgeRepository.flush());
+				processedActions.addAndGet(size);
+				writeProgress(lastId);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Badge backfill interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Badge rule failed during backfill", e.getCause());
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not record backfill progress", e);
+			}
+			for (List<Action> partition : partitions) {
+				partition.clear();
+			}
+			size = 0;
+			actionsPerSecond = processedActions.get() * 1e9 / (System.nanoTime() - startTime);
+			logger.info("Badge backfill at action " + lastId + ": " + processedActions.get() + " actions, " + awardedBadges.get() + " badges awarded, " + Math.round(actionsPerSecond) + " actions/s");
+		}
+
+	}
+
+	/**
+	 * Collects the badges awarded while evaluating a chunk, to be inserted in one batch.
+	 * Skips badges the member was already awarded, so the backfill is idempotent.
+	 */
+	private final class BatchingBadgeRepository implements BadgeRepository {
+
+		private final List<AwardedBadge> pending = Collections.synchronizedList(new ArrayList<AwardedBadge>());
+
+		private final Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		public AwardedBadge createAwardedBadge(String badge, Account account, Action action) {
+			Long scope = action instanceof EventAction ? ((EventAction) action).getEventId() : null;
+			if (alreadyAwarded(badge, account, scope) || !pendingKeys.add(key(badge, account.getId(), scope))) {
+				return null;
+			}
+			AwardedBadge awardedBadge = new AwardedBadge(idAllocator.nextId("AwardedBadge"), badge, action.getTime(), null, account, action);
+			pending.add(awardedBadge);
+			return awardedBadge;
+		}
+
+		public boolean alreadyAwarded(String badge, Account account, Long scope) {
+			return awardedBadgeIndex.contains(account.getId(), badge, scope) || pendingKeys.contains(key(badge, account.getId(), scope));
+		}
+
+		public int flush() {
+			final List<AwardedBadge> badges = new ArrayList<AwardedBadge>(pending);
+			if (!badges.isEmpty()) {
+				transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						jdbcTemplate.batchUpdate(INSERT_AWARDED_BADGE, new BatchPreparedStatementSetter() {
+							public void setValues(PreparedStatement ps, int i) throws SQLException {
+								AwardedBadge badge = badges.get(i);
+								ps.setLong(1, badge.getId());
+								ps.setString(2, badge.getName());
+								ps.setTimestamp(3, new Timestamp(badge.getAwardTime().getMillis()));
+								ps.setLong(4, badge.getAccount().getId());
+								ps.setLong(5, badge.getAction().getId());
+							}
+							public int getBatchSize() {
+								return badges.size();
+							}
+						});
+					}
+				});
+				for (AwardedBadge badge : badges) {
+					Action action = badge.getAction();
+					awardedBadgeIndex.add(badge.getAccount().getId(), badge.getName(), action instanceof EventAction ? ((EventAction) action).getEventId() : null);
+					awardedBadgeGateway.badgeAwarded(badge);
+				}
+			}
+			pending.clear();
+			pendingKeys.clear();
+			return badges.size();
+		}
+
+		private String key(String badge, Long member, Long scope) {
+			return member + ":" + badge + ":" + scope;
+		}
+
+	}
+
+	private static final String SELECT_ACTIONS = ActionMapper.SELECT_ACTION + " where a.id > ? order by a.id";
+
+	private static final String INSERT_AWARDED_BADGE = "insert into AwardedBadge (id, badge, awardTime, member, memberAction) values (?, ?, ?, ?, ?)";
+
+}
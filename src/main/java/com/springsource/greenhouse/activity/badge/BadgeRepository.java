@@ -32,5 +32,13 @@ public interface BadgeRepository {
 	 * @param action the action that is cause for the award
 	 */
 	AwardedBadge createAwardedBadge(String badge, Account account, Action action);
+
+	/**
+	 * True if the member has already been awarded the badge.
+	 * @param badge the name of the badge
+	 * @param account the member account
+	 * @param scope the id of the event the badge is awarded at, for badges awarded once per event; null for badges awarded once per member
+	 */
+	boolean alreadyAwarded(String badge, Account account, Long scope);
 	
 }
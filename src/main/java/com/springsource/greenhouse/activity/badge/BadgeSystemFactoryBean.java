@@ -19,6 +19,10 @@ import javax.inject.Inject;
 
 import org.springframework.beans.factory.FactoryBean;
 
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.ActionClassMatcher;
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.ThresholdMatcher;
+import com.springsource.greenhouse.events.EventTweetAction;
+
 /**
  * Factory that configures the BadgeSystem and returns it as a Bean that can be invoked by the integration-activity.xml pipeline.
  * Registers the various badge award rules.
@@ -28,9 +32,12 @@ public class BadgeSystemFactoryBean implements FactoryBean<BadgeSystem> {
 
 	private final BadgeRepository badgeRepository;
 	
+	private final ActionCounter actionCounter;
+	
 	@Inject
-	public BadgeSystemFactoryBean(BadgeRepository badgeRepository) {
+	public BadgeSystemFactoryBean(BadgeRepository badgeRepository, ActionCounter actionCounter) {
 		this.badgeRepository = badgeRepository;
+		this.actionCounter = actionCounter;
 	}
 
 	public Class<?> getObjectType() {
@@ -44,6 +51,7 @@ public class BadgeSystemFactoryBean implements FactoryBean<BadgeSystem> {
 	public BadgeSystem getObject() throws Exception {
 		StandardBadgeSystem badgeSystem = new StandardBadgeSystem();
 		badgeSystem.add(new SimpleBadgeAwarder("Newbie", badgeRepository), "SignedUp");
+		badgeSystem.add(new SimpleBadgeAwarder("Chatterbox", badgeRepository), new ThresholdMatcher(new ActionClassMatcher(EventTweetAction.class), 10, actionCounter, true));
 		return badgeSystem;
 	}
 
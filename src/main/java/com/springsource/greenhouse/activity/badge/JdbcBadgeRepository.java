@@ -22,8 +22,13 @@ import org.joda.time.DateTimeZone;
 import org.springframework.jdbc.core.JdbcTemplate;
 import com.springsource.greenhouse.account.Account;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.ActionJournal;
+import com.springsource.greenhouse.activity.action.EventAction;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 
 /**
  * ActionRepository implementation that stores records of Awarded badges in a relational database using the JDBC API.
@@ -33,19 +38,48 @@ public class JdbcBadgeRepository implements BadgeRepository {
 
 	private final JdbcTemplate jdbcTemplate;
 	
+	private final BlockIdAllocator idAllocator;
+	
+	private final ActionJournal actionJournal;
+	
+	private final AwardedBadgeIndex awardedBadgeIndex;
+	
 	@Inject
-	public JdbcBadgeRepository(JdbcTemplate jdbcTemplate) {
+	public JdbcBadgeRepository(JdbcTemplate jdbcTemplate, BlockIdAllocator idAllocator, ActionJournal actionJournal, AwardedBadgeIndex awardedBadgeIndex) {
 		this.jdbcTemplate = jdbcTemplate;
+		this.idAllocator = idAllocator;
+		this.actionJournal = actionJournal;
+		this.awardedBadgeIndex = awardedBadgeIndex;
 	}
 	
 	@Transactional
 	public AwardedBadge createAwardedBadge(String badge, Account account, Action action) {
 		DateTime awardTime = new DateTime(DateTimeZone.UTC);
-		jdbcTemplate.update("insert into AwardedBadge (badge, awardTime, member, memberAction) values (?, ?, ?, ?)", badge, awardTime.toDate(), account.getId(), action.getId());
-		Long id = jdbcTemplate.queryForLong("call identity()");
+		Long id = idAllocator.nextId("AwardedBadge");
+		actionJournal.flush(action.getId());
+		jdbcTemplate.update("insert into AwardedBadge (id, badge, awardTime, member, memberAction) values (?, ?, ?, ?, ?)", id, badge, awardTime.toDate(), account.getId(), action.getId());
+		indexAwardedBadge(account.getId(), badge, action instanceof EventAction ? ((EventAction) action).getEventId() : null);
 		// TODO dont hardcode
 		String imageUrl = "http://images.greenhouse.springsource.org/activity/icon-default-badge.png";
 		return new AwardedBadge(id, badge, awardTime, imageUrl, account, action);
 	}
 
+	public boolean alreadyAwarded(String badge, Account account, Long scope) {
+		return awardedBadgeIndex.contains(account.getId(), badge, scope);
+	}
+
+	// internal helpers
+
+	private void indexAwardedBadge(final Long member, final String badge, final Long scope) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				public void afterCommit() {
+					awardedBadgeIndex.add(member, badge, scope);
+				}
+			});
+		} else {
+			awardedBadgeIndex.add(member, badge, scope);
+		}
+	}
+
 }
\ No newline at end of file
@@ -15,58 +15,100 @@
  */
 package com.springsource.greenhouse.activity.badge;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.springframework.core.GenericTypeResolver;
+import org.springframework.util.ObjectUtils;
 
 import com.springsource.greenhouse.activity.action.Action;
 import com.springsource.greenhouse.activity.action.SimpleAction;
 
 /**
  * Standard implementation of the BadgeSystem.
+ * Badge awarders are registered with a matcher that names the class of action and, optionally, the type of action it applies to.
+ * The registered rules are compiled into a dispatch table keyed by action class and type, so an action is only matched against the rules that could apply to it.
+ * Rules are tried in the order they were added; the first awarder to award a badge wins.
  * @author Keith Donald
  */
 class StandardBadgeSystem implements BadgeSystem {
 
-	private final Map<Class<? extends Action>, BadgeAwarder<? extends Action>> badgeAwarders = new HashMap<Class<? extends Action>, BadgeAwarder<? extends Action>>();
+	private final List<Rule> rules = new CopyOnWriteArrayList<Rule>();
 
-	private final Map<String, SimpleBadgeAwarder> simpleActionBadgeAwarders = new HashMap<String, SimpleBadgeAwarder>();
+	private final ConcurrentMap<DispatchKey, Rule[]> dispatchTable = new ConcurrentHashMap<DispatchKey, Rule[]>();
 
 	public void add(BadgeAwarder<? extends Action> badgeAwarder) {
 		Class<? extends Action> actionType = (Class<? extends Action>) GenericTypeResolver.resolveTypeArgument(badgeAwarder.getClass(), BadgeAwarder.class);
-		badgeAwarders.put(actionType, badgeAwarder);		
+		add(badgeAwarder, new ActionClassMatcher(actionType));
 	}
 
 	public void add(SimpleBadgeAwarder badgeAwarder, String simpleActionType) {
-		simpleActionBadgeAwarders.put(simpleActionType, badgeAwarder);
+		add(badgeAwarder, new SimpleActionTypeMatcher(simpleActionType));
 	}
 
 	public void add(BadgeAwarder<? extends Action> badgeAwarder, BadgeAwarderMatcher matcher) {
-		throw new UnsupportedOperationException("Not yet implemented");
+		rules.add(new Rule(badgeAwarder, matcher));
+		dispatchTable.clear();
 	}
-	
+
 	public AwardedBadge awardBadgeForAction(Action action) {
-		if (action instanceof SimpleAction) {
-			String simpleActionType = ((SimpleAction)action).getType();
-			return invokeBadgeAwarder(simpleActionBadgeAwarders.get(simpleActionType), action);
-		} else {
-			return invokeBadgeAwarder(badgeAwarders.get(action.getClass()), action);
+		for (Rule rule : candidateRules(action)) {
+			if (rule.matcher.matches(action)) {
+				AwardedBadge badge = rule.awarder.awardBadgeForAction(action);
+				if (badge != null) {
+					return badge;
+				}
+			}
 		}
+		return null;
 	}
 
-	private AwardedBadge invokeBadgeAwarder(BadgeAwarder awarder, Action action) {
-		if (awarder == null) {
-			return null;
+	// internal helpers
+
+	private Rule[] candidateRules(Action action) {
+		DispatchKey key = new DispatchKey(action.getClass(), action.getType());
+		Rule[] candidates = dispatchTable.get(key);
+		if (candidates == null) {
+			List<Rule> matching = new ArrayList<Rule>();
+			for (Rule rule : rules) {
+				if (rule.matcher.getActionClass().isAssignableFrom(key.actionClass) && (rule.matcher.getActionType() == null || rule.matcher.getActionType().equals(key.actionType))) {
+					matching.add(rule);
+				}
+			}
+			candidates = matching.toArray(new Rule[matching.size()]);
+			dispatchTable.put(key, candidates);
 		}
-		return awarder.awardBadgeForAction(action);
+		return candidates;
 	}
-	
+
+	/**
+	 * Decides if a badge awarder applies to an action.
+	 * The action class and type a matcher declares index it in the dispatch table; {@link #matches(Action)} is only called for actions of that class and type.
+	 */
 	public interface BadgeAwarderMatcher {
+
+		/**
+		 * The class of Action this matcher applies to, including its subclasses.
+		 */
+		Class<? extends Action> getActionClass();
+
+		/**
+		 * The type of Action this matcher applies to, or null if it applies to any type.
+		 * @see Action#getType()
+		 */
+		String getActionType();
+
 		boolean matches(Action action);
+
 	}
-	
-	private final class SimpleActionTypeMatcher implements BadgeAwarderMatcher {
+
+	/**
+	 * Matches SimpleActions of a type e.g. SignedUp.
+	 */
+	static final class SimpleActionTypeMatcher implements BadgeAwarderMatcher {
 		
 		private final String type;
 		
@@ -74,27 +116,123 @@ class StandardBadgeSystem implements BadgeSystem {
 			this.type = type;
 		}
 
+		public Class<? extends Action> getActionClass() {
+			return SimpleAction.class;
+		}
+
+		public String getActionType() {
+			return type;
+		}
+
 		public boolean matches(Action action) {
-			if (!(action instanceof SimpleAction)) {
-				return false;
-			}
-			SimpleAction simple = (SimpleAction) action;
-			return simple.getType().equals(type);
+			return true;
 		}
+
 	}
-	
-	private final class ActionClassMatcher implements BadgeAwarderMatcher {
+
+	/**
+	 * Matches Actions of a class or any of its subclasses.
+	 */
+	static final class ActionClassMatcher implements BadgeAwarderMatcher {
 		
 		private final Class<? extends Action> actionClass;
 
 		public ActionClassMatcher(Class<? extends Action> actionClass) {
 			this.actionClass = actionClass;
 		}
-		
+
+		public Class<? extends Action> getActionClass() {
+			return actionClass;
+		}
+
+		public String getActionType() {
+			return null;
+		}
+
 		public boolean matches(Action action) {
-			return actionClass.isInstance(action);
-		}		
-		
+			return true;
+		}
+
+	}
+
+	/**
+	 * Matches the nth Action a member performs that another matcher matches e.g. their 10th EventTweetAction, optionally counting only actions at the same event.
+	 * Counts the member's actions of the same type with the ActionCounter, so matches exactly once per member (and event) as long as each action is counted once, before it is matched.
+	 */
+	static final class ThresholdMatcher implements BadgeAwarderMatcher {
+
+		private final BadgeAwarderMatcher matcher;
+
+		private final long threshold;
+
+		private final ActionCounter actionCounter;
+
+		private final boolean perEvent;
+
+		public ThresholdMatcher(BadgeAwarderMatcher matcher, long threshold, ActionCounter actionCounter) {
+			this(matcher, threshold, actionCounter, false);
+		}
+
+		public ThresholdMatcher(BadgeAwarderMatcher matcher, long threshold, ActionCounter actionCounter, boolean perEvent) {
+			this.matcher = matcher;
+			this.threshold = threshold;
+			this.actionCounter = actionCounter;
+			this.perEvent = perEvent;
+		}
+
+		public Class<? extends Action> getActionClass() {
+			return matcher.getActionClass();
+		}
+
+		public String getActionType() {
+			return matcher.getActionType();
+		}
+
+		public boolean matches(Action action) {
+			if (!matcher.matches(action)) {
+				return false;
+			}
+			return (perEvent ? actionCounter.countEventActions(action) : actionCounter.countActions(action)) == threshold;
+		}
+
+	}
+
+	private static final class Rule {
+
+		private final BadgeAwarder awarder;
+
+		private final BadgeAwarderMatcher matcher;
+
+		public Rule(BadgeAwarder<? extends Action> awarder, BadgeAwarderMatcher matcher) {
+			this.awarder = awarder;
+			this.matcher = matcher;
+		}
+
+	}
+
+	private static final class DispatchKey {
+
+		private final Class<? extends Action> actionClass;
+
+		private final String actionType;
+
+		public DispatchKey(Class<? extends Action> actionClass, String actionType) {
+			this.actionClass = actionClass;
+			this.actionType = actionType;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof DispatchKey)) {
+				return false;
+			}
+			DispatchKey other = (DispatchKey) o;
+			return actionClass.equals(other.actionClass) && ObjectUtils.nullSafeEquals(actionType, other.actionType);
+		}
+
+		public int hashCode() {
+			return actionClass.hashCode() * 29 + ObjectUtils.nullSafeHashCode(actionType);
+		}
+
 	}
 
-}
\ No newline at end of file
+}
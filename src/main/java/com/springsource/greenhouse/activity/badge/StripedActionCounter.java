@@ -0,0 +1,502 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.badge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.StringUtils;
+
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.EventAction;
+
+/**
+ * ActionCounter that keeps per-member action counts in memory, so threshold badges are decided without counting MemberAction records.
+ * Counts are keyed by member and action type, and also by event for actions performed at an event.
+ * Warmed from the MemberAction table at startup and kept current by {@link #actionPerformed(Action)} subscribed to the action channel.
+ * Actions are only counted by {@link #actionPerformed(Action)}; {@link #countActions(Action)} and {@link #countEventActions(Action)} just read the counts,
+ * so the counter must be subscribed to the action channel ahead of the badge system for a badge rule to see the action it is deciding on.
+ * When a snapshot file is configured, the counts are checkpointed to it periodically along with a cut-off time, the checkpoint time less the {@link #setCheckpointOverlap(long) overlap},
+ * and the ids of the actions performed since the cut-off that were counted. Startup loads the snapshot and counts the actions performed since the cut-off that it does not list,
+ * so actions whose ids arrive out of order or whose records are written behind are neither lost nor counted twice, as long as each action is counted within the overlap of being performed.
+ * A snapshot in an older format is ignored and the counts are warmed from scratch.
+ * Counts reflect the actions performed through this application instance since the last warm-up.
+ * @author Keith Donald
+ */
+public class StripedActionCounter implements ActionCounter, InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(StripedActionCounter.class);
+
+	private static final int SNAPSHOT_MAGIC = 0x41435453;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final ConcurrentMap<String, Integer> typeIndexes = new ConcurrentHashMap<String, Integer>();
+
+	private final List<String> types = new ArrayList<String>();
+
+	private CounterTable[] stripes;
+
+	private String snapshotFile;
+
+	private long checkpointInterval = 300;
+
+	private long checkpointOverlap = 600;
+
+	private ScheduledExecutorService checkpointer;
+
+	@Inject
+	public StripedActionCounter(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+		setStripes(64);
+	}
+
+	/**
+	 * The number of independently locked counter tables; rounded up to a power of two.
+	 * Defaults to 64.
+	 */
+	public void setStripes(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.stripes = new CounterTable[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new CounterTable();
+		}
+	}
+
+	/**
+	 * The path of the file the counts are checkpointed to; if not set, counts are always warmed from the full MemberAction table.
+	 */
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * Seconds between checkpoints.
+	 * Defaults to 300.
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Seconds before a checkpoint from which the ids of counted actions are kept with it; an action must be counted within this long of being performed.
+	 * Defaults to 600.
+	 */
+	public void setCheckpointOverlap(long checkpointOverlap) {
+		this.checkpointOverlap = checkpointOverlap;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		Set<Long> counted = new HashSet<Long>();
+		long cutoff = -1;
+		if (StringUtils.hasText(snapshotFile) && new File(snapshotFile).exists()) {
+			cutoff = loadSnapshot(new File(snapshotFile), counted);
+		}
+		if (cutoff == -1) {
+			cutoff = cutoff();
+			warmArchived();
+			warmBefore(cutoff);
+		}
+		warmSince(cutoff, counted);
+		if (StringUtils.hasText(snapshotFile)) {
+			checkpointer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "action-counter-checkpoint");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			checkpointer.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						checkpoint();
+					} catch (IOException e) {
+						logger.warn("Could not checkpoint action counts", e);
+					}
+				}
+			}, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (checkpointer != null) {
+			checkpointer.shutdown();
+			checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Count the action; subscribed to the action channel.
+	 */
+	public void actionPerformed(Action action) {
+		record(action);
+	}
+
+	public long countActions(Action action) {
+		return count(action.getAccount().getId(), action.getType());
+	}
+
+	public long countEventActions(Action action) {
+		if (!(action instanceof EventAction)) {
+			return 0;
+		}
+		return count(action.getAccount().getId(), action.getType(), ((EventAction) action).getEventId());
+	}
+
+	/**
+	 * The number of actions of the type the member has performed.
+	 */
+	public long count(Long member, String type) {
+		Integer typeIndex = typeIndexes.get(type);
+		return typeIndex != null ? stripe(member).get(member, key(typeIndex, null)) : 0;
+	}
+
+	/**
+	 * The number of actions of the type the member has performed at the event.
+	 */
+	public long count(Long member, String type, Long event) {
+		Integer typeIndex = typeIndexes.get(type);
+		return typeIndex != null ? stripe(member).get(member, key(typeIndex, event)) : 0;
+	}
+
+	/**
+	 * Count only the archived actions and the actions with ids up to the one given; for replaying the actions after it in id order.
+	 * Used in place of {@link #afterPropertiesSet()}, with no snapshot file.
+	 */
+	void warmThrough(long lastActionId) {
+		warmArchived();
+		jdbcTemplate.query("select member, actionType, count(*) from MemberAction where member is not null and id <= ? group by member, actionType", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long member = rs.getLong(1);
+				stripe(member).add(member, key(typeIndex(rs.getString(2)), null), rs.getLong(3));
+			}
+		}, lastActionId);
+		jdbcTemplate.query("select a.member, a.actionType, t.event, count(*) from MemberAction a inner join EventTweetAction t on a.id = t.memberAction where a.member is not null and a.id <= ? group by a.member, a.actionType, t.event", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long member = rs.getLong(1);
+				stripe(member).add(member, key(typeIndex(rs.getString(2)), rs.getLong(3)), rs.getLong(4));
+			}
+		}, lastActionId);
+	}
+
+	/**
+	 * Write the counts to the snapshot file.
+	 */
+	public void checkpoint() throws IOException {
+		if (!StringUtils.hasText(snapshotFile)) {
+			return;
+		}
+		File file = new File(snapshotFile);
+		File temp = new File(file.getPath() + ".tmp");
+		long cutoff = cutoff();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(cutoff);
+			for (CounterTable stripe : stripes) {
+				out.writeBoolean(true);
+				stripe.writeTo(out, cutoff);
+			}
+			out.writeBoolean(false);
+			List<String> types = types();
+			out.writeInt(types.size());
+			for (String type : types) {
+				out.writeUTF(type);
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Could not replace action count snapshot " + file);
+			}
+		}
+	}
+
+	// internal helpers
+
+	private void record(Action action) {
+		Long eventId = action instanceof EventAction ? ((EventAction) action).getEventId() : null;
+		record(action.getId(), action.getTime().getMillis(), action.getAccount().getId(), action.getType(), eventId);
+	}
+
+	private void record(long id, long time, long member, String type, Long event) {
+		int typeIndex = typeIndex(type);
+		// the ids of recent actions are only needed by checkpoints
+		stripe(member).count(member, key(typeIndex, null), event != null ? key(typeIndex, event) : 0, StringUtils.hasText(snapshotFile) ? id : null, time);
+	}
+
+	// checkpoints keep the ids of the actions performed from this time on
+	private long cutoff() {
+		return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(checkpointOverlap);
+	}
+
+	// aggregate counts of the actions performed before the cut-off; their ids need not be kept
+	private void warmBefore(long cutoff) {
+		Timestamp before = new Timestamp(cutoff);
+		jdbcTemplate.query("select member, actionType, count(*) from MemberAction where member is not null and performTime < ? group by member, actionType", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long member = rs.getLong(1);
+				stripe(member).add(member, key(typeIndex(rs.getString(2)), null), rs.getLong(3));
+			}
+		}, before);
+		jdbcTemplate.query("select a.member, a.actionType, t.event, count(*) from MemberAction a inner join EventTweetAction t on a.id = t.memberAction where a.member is not null and a.performTime < ? group by a.member, a.actionType, t.event", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long member = rs.getLong(1);
+				stripe(member).add(member, key(typeIndex(rs.getString(2)), rs.getLong(3)), rs.getLong(4));
+			}
+		}, before);
+	}
+
+	// the actions performed since the cut-off, one at a time so those already counted are skipped and the rest are kept for the next checkpoint
+	private void warmSince(long cutoff, final Set<Long> counted) {
+		jdbcTemplate.query("select a.id, a.performTime, a.member, a.actionType, t.event from MemberAction a left outer join EventTweetAction t on a.id = t.memberAction where a.member is not null and a.performTime >= ?", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long id = rs.getLong(1);
+				if (!counted.contains(id)) {
+					long event = rs.getLong(5);
+					record(id, rs.getTimestamp(2).getTime(), rs.getLong(3), rs.getString(4), rs.wasNull() ? null : event);
+				}
+			}
+		}, new Timestamp(cutoff));
+	}
+
+	private void warmArchived() {
+		jdbcTemplate.query("select member, actionType, event, actionCount from ArchivedActionCount", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long member = rs.getLong(1);
+				long event = rs.getLong(3);
+				stripe(member).add(member, key(typeIndex(rs.getString(2)), event != 0 ? event : null), rs.getLong(4));
+			}
+		});
+	}
+
+	// returns the snapshot's cut-off and adds the ids it lists to counted, or returns -1 if the snapshot is in an unknown format
+	private long loadSnapshot(File file, Set<Long> counted) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				logger.warn("Ignoring action count snapshot " + file + " in an unknown format");
+				return -1;
+			}
+			long cutoff = in.readLong();
+			List<long[]> entries = new ArrayList<long[]>();
+			for (int stripe = 0; in.readBoolean(); stripe++) {
+				while (in.readBoolean()) {
+					entries.add(new long[] { in.readLong(), in.readLong(), in.readLong() });
+				}
+				// kept again so the next checkpoint still lists them; any stripe will do as they are already counted
+				while (in.readBoolean()) {
+					long id = in.readLong();
+					stripes[stripe & (stripes.length - 1)].remember(id, in.readLong());
+					counted.add(id);
+				}
+			}
+			String[] snapshotTypes = new String[in.readInt() + 1];
+			for (int i = 1; i < snapshotTypes.length; i++) {
+				snapshotTypes[i] = in.readUTF();
+			}
+			for (long[] entry : entries) {
+				int snapshotTypeIndex = (int) (entry[1] >>> EVENT_BITS);
+				long key = ((long) typeIndex(snapshotTypes[snapshotTypeIndex]) << EVENT_BITS) | (entry[1] & EVENT_MASK);
+				stripe(entry[0]).add(entry[0], key, entry[2]);
+			}
+			return cutoff;
+		} finally {
+			in.close();
+		}
+	}
+
+	private int typeIndex(String type) {
+		Integer index = typeIndexes.get(type);
+		if (index == null) {
+			synchronized (types) {
+				index = typeIndexes.get(type);
+				if (index == null) {
+					types.add(type);
+					index = types.size();
+					typeIndexes.put(type, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private List<String> types() {
+		synchronized (types) {
+			return new ArrayList<String>(types);
+		}
+	}
+
+	private CounterTable stripe(long member) {
+		return stripes[(int) (mix(member) & (stripes.length - 1))];
+	}
+
+	private static final int EVENT_BITS = 40;
+
+	private static final long EVENT_MASK = (1L << EVENT_BITS) - 1;
+
+	private static long key(int typeIndex, Long event) {
+		return ((long) typeIndex << EVENT_BITS) | (event != null ? (event + 1) & EVENT_MASK : 0);
+	}
+
+	private static long mix(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return value ^ (value >>> 32);
+	}
+
+	/**
+	 * An open-addressing table of counters keyed by member and (type, event), guarded by its own lock.
+	 * A key of 0 marks an empty slot; real keys always carry a type index of 1 or more.
+	 * Also keeps the ids and times of the actions it counted since the last checkpoint's cut-off, updated under the same lock as the counts
+	 * so a checkpoint of the table always lists exactly the recent actions its counts include.
+	 */
+	private static final class CounterTable {
+
+		private long[] members = new long[16];
+
+		private long[] keys = new long[16];
+
+		private long[] counts = new long[16];
+
+		private int size;
+
+		private final Map<Long, Long> recent = new HashMap<Long, Long>();
+
+		public synchronized long get(long member, long key) {
+			int slot = find(member, key);
+			return keys[slot] != 0 ? counts[slot] : 0;
+		}
+
+		/**
+		 * Count one action under its member key and, if not 0, its event key; the action is kept as a recent action unless its id is null.
+		 */
+		public synchronized void count(long member, long key, long eventKey, Long actionId, long time) {
+			add(member, key, 1);
+			if (eventKey != 0) {
+				add(member, eventKey, 1);
+			}
+			if (actionId != null) {
+				recent.put(actionId, time);
+			}
+		}
+
+		public synchronized void remember(long actionId, long time) {
+			recent.put(actionId, time);
+		}
+
+		public synchronized long add(long member, long key, long delta) {
+			int slot = find(member, key);
+			if (keys[slot] == 0) {
+				if ((size + 1) * 2 > keys.length) {
+					resize();
+					slot = find(member, key);
+				}
+				members[slot] = member;
+				keys[slot] = key;
+				size++;
+			}
+			counts[slot] += delta;
+			return counts[slot];
+		}
+
+		/**
+		 * Write the counters, then the recent actions performed from the cut-off on, forgetting those performed before it.
+		 */
+		public synchronized void writeTo(DataOutputStream out, long cutoff) throws IOException {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0) {
+					out.writeBoolean(true);
+					out.writeLong(members[i]);
+					out.writeLong(keys[i]);
+					out.writeLong(counts[i]);
+				}
+			}
+			out.writeBoolean(false);
+			for (Iterator<Map.Entry<Long, Long>> actions = recent.entrySet().iterator(); actions.hasNext();) {
+				Map.Entry<Long, Long> action = actions.next();
+				if (action.getValue() < cutoff) {
+					actions.remove();
+				} else {
+					out.writeBoolean(true);
+					out.writeLong(action.getKey());
+					out.writeLong(action.getValue());
+				}
+			}
+			out.writeBoolean(false);
+		}
+
+		private int find(long member, long key) {
+			int mask = keys.length - 1;
+			int slot = (int) (mix(member * 31 + key) & mask);
+			while (keys[slot] != 0 && (keys[slot] != key || members[slot] != member)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void resize() {
+			long[] oldMembers = members;
+			long[] oldKeys = keys;
+			long[] oldCounts = counts;
+			members = new long[oldKeys.length * 2];
+			keys = new long[oldKeys.length * 2];
+			counts = new long[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int slot = find(oldMembers[i], oldKeys[i]);
+					members[slot] = oldMembers[i];
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageDeliveryException;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * A publish-subscribe channel that delivers messages to its subscribers on a fixed set of partition threads.
+ * Messages are assigned a partition by a key expression evaluated against the message e.g. <code>payload.account.id</code>,
+ * so messages with the same key are handled one at a time in the order they were sent, while messages with different keys are handled in parallel.
+ * Each partition has a bounded queue; a sender blocks when its partition's queue is full, so a slow subscriber pushes back instead of dropping messages.
+ * A failing subscriber is logged and does not stop the message from reaching the other subscribers.
+ * @author Keith Donald
+ */
+@ManagedResource(description = "Partitioned publish-subscribe channel")
+public class PartitionedPublishSubscribeChannel extends AbstractSubscribableChannel implements DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(PartitionedPublishSubscribeChannel.class);
+
+	private final Expression partitionKey;
+
+	private final PartitionedDispatcher dispatcher = new PartitionedDispatcher();
+
+	private int partitions = Runtime.getRuntime().availableProcessors() * 2;
+
+	private int capacity = 1000;
+
+	private volatile Partition[] workers;
+
+	/**
+	 * Creates a new partitioned channel.
+	 * @param partitionKey the expression that extracts the partition key from a message e.g. payload.account.id
+	 */
+	public PartitionedPublishSubscribeChannel(String partitionKey) {
+		this.partitionKey = new SpelExpressionParser().parseExpression(partitionKey);
+	}
+
+	/**
+	 * The number of partitions, each served by its own thread.
+	 * Defaults to twice the number of processors.
+	 */
+	public void setPartitions(int partitions) {
+		this.partitions = partitions;
+	}
+
+	/**
+	 * The most messages that may wait in a single partition.
+	 * Defaults to 1000.
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * The number of messages waiting in each partition.
+	 */
+	@ManagedAttribute(description = "Messages waiting in each partition")
+	public int[] getQueueSizes() {
+		Partition[] workers = this.workers;
+		int[] sizes = new int[workers != null ? workers.length : 0];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = workers[i].queue.size();
+		}
+		return sizes;
+	}
+
+	/**
+	 * The time in milliseconds the most recently handled message of each partition waited in its queue.
+	 */
+	@ManagedAttribute(description = "Milliseconds the last message handled by each partition waited")
+	public long[] getLags() {
+		Partition[] workers = this.workers;
+		long[] lags = new long[workers != null ? workers.length : 0];
+		for (int i = 0; i < lags.length; i++) {
+			lags[i] = TimeUnit.NANOSECONDS.toMillis(workers[i].lag);
+		}
+		return lags;
+	}
+
+	/**
+	 * The longest time in milliseconds any message of each partition has waited in its queue.
+	 */
+	@ManagedAttribute(description = "Longest milliseconds any message of each partition waited")
+	public long[] getMaxLags() {
+		Partition[] workers = this.workers;
+		long[] lags = new long[workers != null ? workers.length : 0];
+		for (int i = 0; i < lags.length; i++) {
+			lags[i] = TimeUnit.NANOSECONDS.toMillis(workers[i].maxLag.get());
+		}
+		return lags;
+	}
+
+	/**
+	 * The number of messages handled by each partition.
+	 */
+	@ManagedAttribute(description = "Messages handled by each partition")
+	public long[] getHandledCounts() {
+		Partition[] workers = this.workers;
+		long[] counts = new long[workers != null ? workers.length : 0];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = workers[i].handled.get();
+		}
+		return counts;
+	}
+
+	public void destroy() throws Exception {
+		Partition[] workers = this.workers;
+		this.workers = null;
+		if (workers != null) {
+			for (Partition worker : workers) {
+				worker.running = false;
+			}
+			for (Partition worker : workers) {
+				worker.thread.join();
+			}
+		}
+	}
+
+	// overriding AbstractSubscribableChannel
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Partition[] workers = new Partition[partitions];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Partition(getComponentName() + "-" + i);
+		}
+		this.workers = workers;
+	}
+
+	@Override
+	protected MessageDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	// internal helpers
+
+	private Partition partitionFor(Message<?> message) {
+		Partition[] workers = this.workers;
+		if (workers == null) {
+			throw new MessageDeliveryException(message, "Channel '" + getComponentName() + "' is not running");
+		}
+		Object key = partitionKey.getValue(message);
+		int hash = key != null ? key.hashCode() : 0;
+		hash ^= (hash >>> 16);
+		return workers[(hash & Integer.MAX_VALUE) % workers.length];
+	}
+
+	private final class PartitionedDispatcher implements MessageDispatcher {
+
+		private final List<MessageHandler> handlers = new CopyOnWriteArrayList<MessageHandler>();
+
+		public boolean addHandler(MessageHandler handler) {
+			return handlers.add(handler);
+		}
+
+		public boolean removeHandler(MessageHandler handler) {
+			return handlers.remove(handler);
+		}
+
+		public boolean dispatch(Message<?> message) {
+			try {
+				partitionFor(message).queue.put(new Envelope(message));
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessageDeliveryException(message, "Interrupted while waiting for room in a partition of channel '" + getComponentName() + "'");
+			}
+		}
+
+		public void handle(Message<?> message) {
+			for (MessageHandler handler : handlers) {
+				try {
+					handler.handleMessage(message);
+				} catch (RuntimeException e) {
+					logger.error("Failure handling message " + message + " from channel '" + getComponentName() + "'", e);
+				}
+			}
+		}
+
+	}
+
+	private static final class Envelope {
+
+		private final Message<?> message;
+
+		private final long sent = System.nanoTime();
+
+		public Envelope(Message<?> message) {
+			this.message = message;
+		}
+
+	}
+
+	private final class Partition implements Runnable {
+
+		private final BlockingQueue<Envelope> queue = new LinkedBlockingQueue<Envelope>(capacity);
+
+		private final AtomicLong handled = new AtomicLong();
+
+		private final AtomicLong maxLag = new AtomicLong();
+
+		private final Thread thread;
+
+		private volatile long lag;
+
+		private volatile boolean running = true;
+
+		public Partition(String name) {
+			thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void run() {
+			List<Envelope> batch = new ArrayList<Envelope>();
+			while (running || !queue.isEmpty()) {
+				try {
+					Envelope first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						continue;
+					}
+					batch.add(first);
+					queue.drainTo(batch);
+					for (Envelope envelope : batch) {
+						recordLag(System.nanoTime() - envelope.sent);
+						dispatcher.handle(envelope.message);
+						handled.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} finally {
+					batch.clear();
+				}
+			}
+		}
+
+		private void recordLag(long nanos) {
+			lag = nanos;
+			long max = maxLag.get();
+			while (nanos > max && !maxLag.compareAndSet(max, nanos)) {
+				max = maxLag.get();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Message channels that carry member activity through the activity pipeline.
+ */
+package com.springsource.greenhouse.activity.channel;
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.export;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.DateTime;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.LocalFileStorage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.springsource.greenhouse.activity.archive.ActionArchive;
+
+/**
+ * Command line export of member activity to a file, for dumps too large to download.
+ * <pre>
+ * java com.springsource.greenhouse.activity.export.ActionExport --url=jdbc:h2:tcp://localhost/greenhouse --username=sa --out=activity.ndjson.gz [--password=] [--event=1] [--start=2010-10-19T00:00:00Z] [--end=2010-10-23T00:00:00Z] [--archive=/var/greenhouse/archive] [--fetchSize=1000]
+ * </pre>
+ * The output is gzipped when the file name ends with .gz.
+ * @author Keith Donald
+ */
+public final class ActionExport {
+
+	private ActionExport() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		String url = null;
+		String username = "sa";
+		String password = "";
+		String out = null;
+		Long event = null;
+		DateTime start = null;
+		DateTime end = null;
+		String archive = null;
+		int fetchSize = 1000;
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals == -1) {
+				usage("Unrecognized argument " + arg);
+			}
+			String name = arg.substring(2, equals);
+			String value = arg.substring(equals + 1);
+			if (name.equals("url")) {
+				url = value;
+			} else if (name.equals("username")) {
+				username = value;
+			} else if (name.equals("password")) {
+				password = value;
+			} else if (name.equals("out")) {
+				out = value;
+			} else if (name.equals("event")) {
+				event = Long.valueOf(value);
+			} else if (name.equals("start")) {
+				start = new DateTime(value);
+			} else if (name.equals("end")) {
+				end = new DateTime(value);
+			} else if (name.equals("archive")) {
+				archive = value;
+			} else if (name.equals("fetchSize")) {
+				fetchSize = Integer.parseInt(value);
+			} else {
+				usage("Unrecognized argument " + arg);
+			}
+		}
+		if (url == null || out == null) {
+			usage("--url and --out are required");
+		}
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(url, username, password));
+		ActionArchive actionArchive = null;
+		if (archive != null) {
+			actionArchive = new ActionArchive(jdbcTemplate, new LocalFileStorage("file:" + archive + "/", new FileSystemResource(archive + "/")));
+		}
+		ActionExporter exporter = new ActionExporter(jdbcTemplate, actionArchive);
+		exporter.setFetchSize(fetchSize);
+		long startTime = System.currentTimeMillis();
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(out), 65536);
+		try {
+			if (out.endsWith(".gz")) {
+				GZIPOutputStream gzip = new GZIPOutputStream(os, 65536);
+				long count = exporter.export(event, start, end, gzip);
+				gzip.finish();
+				report(count, out, startTime);
+			} else {
+				report(exporter.export(event, start, end, os), out, startTime);
+			}
+		} finally {
+			os.close();
+		}
+	}
+
+	// internal helpers
+
+	private static void report(long count, String out, long startTime) {
+		System.out.println("Exported " + count + " actions to " + out + " in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: ActionExport --url=<jdbc url> --out=<file> [--username=sa] [--password=] [--event=<id>] [--start=<ISO time>] [--end=<ISO time>] [--archive=<archive directory>] [--fetchSize=1000]");
+		System.exit(1);
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.springsource.greenhouse.activity.archive.ActionArchive;
+import com.springsource.greenhouse.activity.archive.ArchivedAction;
+import com.springsource.greenhouse.activity.archive.ArchivedActionHandler;
+
+/**
+ * Exports member actions as newline-delimited JSON, one action per line.
+ * Rows are read through a forward-only cursor a fetch at a time and written out as they are read, so memory use does not depend on the number of actions exported.
+ * The cursor is read in a read-only transaction, which drivers such as PostgreSQL's need before they will stream rather than buffer the result.
+ * When an {@link ActionArchive} is configured, archived actions in the time range are exported first.
+ * For an event export the archive is only read around the event's dates; see {@link #setEventArchiveMarginDays(int)}.
+ * @author Keith Donald
+ */
+public class ActionExporter {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ActionArchive actionArchive;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	private int eventArchiveMarginDays = 7;
+
+	/**
+	 * Creates an exporter of the actions in the database only.
+	 */
+	public ActionExporter(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, null);
+	}
+
+	/**
+	 * Creates an exporter of the actions in the database and the archive.
+	 */
+	@Inject
+	public ActionExporter(JdbcTemplate jdbcTemplate, ActionArchive actionArchive) {
+		this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+		this.jdbcTemplate.setFetchSize(1000);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		this.transactionTemplate.setReadOnly(true);
+		this.actionArchive = actionArchive;
+		jsonFactory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+	}
+
+	/**
+	 * The number of rows fetched from the database at a time.
+	 * Defaults to 1000.
+	 */
+	public void setFetchSize(int fetchSize) {
+		jdbcTemplate.setFetchSize(fetchSize);
+	}
+
+	/**
+	 * How many days either side of an event's dates archived actions at the event are looked for, e.g. tweets posted once the event has ended.
+	 * Bounds the archive segments decompressed for an event export; live actions are not affected.
+	 * Defaults to 7.
+	 */
+	public void setEventArchiveMarginDays(int eventArchiveMarginDays) {
+		this.eventArchiveMarginDays = eventArchiveMarginDays;
+	}
+
+	/**
+	 * Whether the member organizes the event i.e. leads the group holding it.
+	 */
+	public boolean isOrganizer(Long event, Long member) {
+		return jdbcTemplate.queryForInt("select count(*) from Event e inner join MemberGroup g on e.memberGroup = g.id where e.id = ? and g.leader = ?", event, member) > 0;
+	}
+
+	/**
+	 * Write the actions to the stream as UTF-8 NDJSON.
+	 * Archived actions come first, segment by segment oldest first, ordered by member then time within a segment; the actions still in the database follow in the order they were recorded.
+	 * The stream is flushed but not closed.
+	 * @param event the id of the event to export the actions performed at; null to export every action
+	 * @param start the earliest time to export actions from, inclusive; null for no lower bound
+	 * @param end the time to export actions up to, exclusive; null for no upper bound
+	 * @param out the stream to write to
+	 * @return the number of actions written
+	 */
+	public long export(final Long event, final DateTime start, final DateTime end, OutputStream out) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		final long[] written = new long[1];
+		try {
+			if (actionArchive != null) {
+				DateTime archiveStart = start != null ? start : new DateTime(0, DateTimeZone.UTC);
+				DateTime archiveEnd = end != null ? end : new DateTime(DateTimeZone.UTC);
+				if (event != null) {
+					DateTime[] eventRange = eventArchiveRange(event);
+					if (eventRange == null) {
+						archiveEnd = archiveStart;
+					} else {
+						archiveStart = latest(archiveStart, eventRange[0]);
+						archiveEnd = earliest(archiveEnd, eventRange[1]);
+					}
+				}
+				if (archiveStart.isBefore(archiveEnd)) {
+					actionArchive.readActions(null, archiveStart, archiveEnd, new ArchivedActionHandler() {
+						public void handleAction(ArchivedAction action) {
+							if (event == null || event.equals(action.getEvent())) {
+								Double latitude = action.getLocation() != null ? action.getLocation().getLatitude() : null;
+								Double longitude = action.getLocation() != null ? action.getLocation().getLongitude() : null;
+								write(writer, action.getId(), action.getType(), action.getTime().getMillis(), action.getMember(), latitude, longitude, action.getEvent(), action.getSession(), action.getTweet());
+								written[0]++;
+							}
+						}
+					});
+				}
+			}
+			final StringBuilder sql = new StringBuilder(SELECT_ACTIONS);
+			final List<Object> args = new ArrayList<Object>();
+			String separator = " where ";
+			if (event != null) {
+				sql.append(separator).append("t.event = ?");
+				args.add(event);
+				separator = " and ";
+			}
+			if (start != null) {
+				sql.append(separator).append("a.performTime >= ?");
+				args.add(new Timestamp(start.getMillis()));
+				separator = " and ";
+			}
+			if (end != null) {
+				sql.append(separator).append("a.performTime < ?");
+				args.add(new Timestamp(end.getMillis()));
+			}
+			sql.append(" order by a.id");
+			transactionTemplate.execute(new TransactionCallback<Void>() {
+				public Void doInTransaction(TransactionStatus status) {
+					jdbcTemplate.query(sql.toString(), new RowCallbackHandler() {
+						public void processRow(ResultSet rs) throws SQLException {
+							write(writer, rs.getLong("id"), rs.getString("actionType"), rs.getTimestamp("performTime").getTime(), nullableLong(rs, "member"),
+									nullableDouble(rs, "latitude"), nullableDouble(rs, "longitude"), nullableLong(rs, "event"), nullableShort(rs, "session"), rs.getString("tweet"));
+							written[0]++;
+						}
+					}, args.toArray());
+					return null;
+				}
+			});
+		} catch (WriteFailedException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+		return written[0];
+	}
+
+	// internal helpers
+
+	private void write(Writer writer, Long id, String type, long time, Long member, Double latitude, Double longitude, Long event, Short session, String tweet) {
+		try {
+			JsonGenerator json = jsonFactory.createJsonGenerator(writer);
+			json.writeStartObject();
+			json.writeNumberField("id", id);
+			json.writeStringField("type", type);
+			json.writeStringField("time", new DateTime(time, DateTimeZone.UTC).toString());
+			if (member != null) {
+				json.writeNumberField("member", member);
+			}
+			if (latitude != null && longitude != null) {
+				json.writeNumberField("latitude", latitude);
+				json.writeNumberField("longitude", longitude);
+			}
+			if (event != null) {
+				json.writeNumberField("event", event);
+			}
+			if (session != null) {
+				json.writeNumberField("session", session);
+			}
+			if (tweet != null) {
+				json.writeStringField("tweet", tweet);
+			}
+			json.writeEndObject();
+			json.close();
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new WriteFailedException(e);
+		}
+	}
+
+	// the event's dates widened by the margin; null if there is no such event
+	private DateTime[] eventArchiveRange(Long event) {
+		List<DateTime[]> ranges = jdbcTemplate.query(SELECT_EVENT_DATES, new RowMapper<DateTime[]>() {
+			public DateTime[] mapRow(ResultSet rs, int row) throws SQLException {
+				DateTime startTime = new DateTime(rs.getTimestamp("startTime"), DateTimeZone.UTC);
+				DateTime endTime = new DateTime(rs.getTimestamp("endTime"), DateTimeZone.UTC);
+				return new DateTime[] { startTime.minusDays(eventArchiveMarginDays), endTime.plusDays(eventArchiveMarginDays) };
+			}
+		}, event);
+		return ranges.isEmpty() ? null : ranges.get(0);
+	}
+
+	private DateTime latest(DateTime first, DateTime second) {
+		return first.isAfter(second) ? first : second;
+	}
+
+	private DateTime earliest(DateTime first, DateTime second) {
+		return first.isBefore(second) ? first : second;
+	}
+
+	private Long nullableLong(ResultSet rs, String column) throws SQLException {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private Double nullableDouble(ResultSet rs, String column) throws SQLException {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private Short nullableShort(ResultSet rs, String column) throws SQLException {
+		short value = rs.getShort(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	// carries a failed write, e.g. the client going away, out of the row callback
+	@SuppressWarnings("serial")
+	private static final class WriteFailedException extends RuntimeException {
+
+		public WriteFailedException(IOException cause) {
+			super(cause);
+		}
+
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+
+	}
+
+	private static final String SELECT_ACTIONS = "select a.id, a.actionType, a.performTime, a.latitude, a.longitude, a.member, t.event, t.session, t.tweet " +
+			"from MemberAction a left outer join EventTweetAction t on a.id = t.memberAction";
+
+	private static final String SELECT_EVENT_DATES = "select startTime, endTime from Event where id = ?";
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.joda.time.DateTime;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.springsource.greenhouse.account.Account;
+
+/**
+ * Streams the activity at an event to its organizer as newline-delimited JSON.
+ * The export is gzipped on the fly when the client accepts it.
+ * @author Keith Donald
+ */
+@Controller
+public class ExportController {
+
+	private final ActionExporter actionExporter;
+
+	@Inject
+	public ExportController(ActionExporter actionExporter) {
+		this.actionExporter = actionExporter;
+	}
+
+	/**
+	 * Write the actions performed at the event in the time range to the response.
+	 * Only the event's organizer may export its activity.
+	 * @param event the id of the event
+	 * @param start the earliest time to export actions from; if not specified, the export starts at the first action
+	 * @param end the time to export actions up to; if not specified, the export runs to the last action
+	 */
+	@RequestMapping(value="/activity/export", method=RequestMethod.GET)
+	public void export(@RequestParam Long event, @RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) DateTime start,
+			@RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) DateTime end, Account account, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!actionExporter.isOrganizer(event, account.getId())) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		response.setContentType("application/x-ndjson");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=\"activity-" + event + ".ndjson\"");
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			response.setHeader("Content-Encoding", "gzip");
+			GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream(), 8192);
+			actionExporter.export(event, start, end, out);
+			out.finish();
+		} else {
+			OutputStream out = response.getOutputStream();
+			actionExporter.export(event, start, end, out);
+		}
+	}
+
+}
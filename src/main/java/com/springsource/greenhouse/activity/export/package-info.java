@@ -0,0 +1,4 @@
+/**
+ * Streaming exports of member activity as newline-delimited JSON, for event organizers.
+ */
+package com.springsource.greenhouse.activity.export;
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.EventAction;
+import com.springsource.greenhouse.utils.Location;
+
+/**
+ * Aggregates where member actions are performed, as they are performed.
+ * Subscribed to the action channel; each action with a location is counted in its geohash cell, in a per-minute slot covering the last hour and a per-hour slot covering the last two days.
+ * Actions performed at an event are also counted in a heatmap of their own for the event.
+ * Everything is kept in memory, so heatmaps are served without querying MemberAction, and start empty after a restart.
+ * @author Keith Donald
+ */
+public class ActivityHeatmap {
+
+	private static final long MINUTE = 60 * 1000;
+
+	private static final long HOUR = 60 * MINUTE;
+
+	/**
+	 * The longest window a heatmap can be found for, in minutes.
+	 */
+	public static final int MAX_WINDOW = 48 * 60;
+
+	private final Heatmap heatmap = new Heatmap();
+
+	private final ConcurrentMap<Long, Heatmap> eventHeatmaps = new ConcurrentHashMap<Long, Heatmap>();
+
+	private int precision = 7;
+
+	/**
+	 * The number of geohash characters identifying a cell.
+	 * Each extra character makes cells about 32 times smaller; 7 characters is roughly 150 by 150 meters, 8 roughly 40 by 20.
+	 * Defaults to 7.
+	 */
+	public void setPrecision(int precision) {
+		if (precision < 1 || precision > GeoHash.MAX_PRECISION) {
+			throw new IllegalArgumentException("Precision must be between 1 and " + GeoHash.MAX_PRECISION);
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * Count the action in its cell; subscribed to the action channel.
+	 */
+	public void actionPerformed(Action action) {
+		Location location = action.getLocation();
+		if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+			return;
+		}
+		long cell = GeoHash.encode(location.getLatitude(), location.getLongitude(), precision);
+		long time = action.getTime().getMillis();
+		heatmap.add(time, cell);
+		if (action instanceof EventAction && ((EventAction) action).getEventId() != null) {
+			eventHeatmap(((EventAction) action).getEventId()).add(time, cell);
+		}
+	}
+
+	/**
+	 * The cells actions were performed in during the window, busiest first.
+	 * Windows of an hour or less are counted by the minute; longer windows by the hour, so they cover the current hour up to now and whole hours before it.
+	 * @param event the id of the event to find the heatmap of; null for actions performed anywhere
+	 * @param window the number of minutes before now to count actions in, up to {@link #MAX_WINDOW}
+	 */
+	public List<HeatmapCell> findHeatmap(Long event, int window) {
+		return findHeatmap(event, window, System.currentTimeMillis());
+	}
+
+	// internal helpers
+
+	List<HeatmapCell> findHeatmap(Long event, int window, long now) {
+		Heatmap heatmap = event != null ? eventHeatmaps.get(event) : this.heatmap;
+		if (heatmap == null) {
+			return Collections.emptyList();
+		}
+		CellCounts totals = new CellCounts();
+		heatmap.sum(now, Math.max(1, Math.min(window, MAX_WINDOW)), totals);
+		final List<HeatmapCell> cells = new ArrayList<HeatmapCell>(totals.size());
+		totals.forEach(new CellCounts.CellVisitor() {
+			public void visit(long cell, int count) {
+				double[] center = GeoHash.decode(cell, precision);
+				cells.add(new HeatmapCell(GeoHash.toString(cell, precision), center[0], center[1], count));
+			}
+		});
+		Collections.sort(cells, BUSIEST_FIRST);
+		return cells;
+	}
+
+	private Heatmap eventHeatmap(Long event) {
+		Heatmap heatmap = eventHeatmaps.get(event);
+		if (heatmap == null) {
+			heatmap = new Heatmap();
+			Heatmap existing = eventHeatmaps.putIfAbsent(event, heatmap);
+			if (existing != null) {
+				heatmap = existing;
+			}
+		}
+		return heatmap;
+	}
+
+	private static final class Heatmap {
+
+		private final TimeSlots minutes = new TimeSlots(MINUTE, 60);
+
+		private final TimeSlots hours = new TimeSlots(HOUR, 48);
+
+		public void add(long time, long cell) {
+			minutes.add(time, cell);
+			hours.add(time, cell);
+		}
+
+		public void sum(long now, int window, CellCounts totals) {
+			if (window <= minutes.getCount()) {
+				minutes.sum(now, window, totals);
+			} else {
+				hours.sum(now, (int) ((window * MINUTE + HOUR - 1) / HOUR), totals);
+			}
+		}
+
+	}
+
+	private static final Comparator<HeatmapCell> BUSIEST_FIRST = new Comparator<HeatmapCell>() {
+		public int compare(HeatmapCell cell, HeatmapCell other) {
+			if (cell.getCount() != other.getCount()) {
+				return cell.getCount() > other.getCount() ? -1 : 1;
+			}
+			return cell.getGeohash().compareTo(other.getGeohash());
+		}
+	};
+
+}
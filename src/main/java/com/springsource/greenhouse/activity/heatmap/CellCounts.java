@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+import java.util.Arrays;
+
+/**
+ * Counts actions per geohash cell for one slice of time.
+ * An open-addressing table of primitive longs and ints; cleared and reused when its ring slot moves on to a new slice.
+ * Not thread-safe; guarded by its {@link TimeSlots}.
+ * @author Keith Donald
+ */
+final class CellCounts {
+
+	private long[] cells = new long[16];
+
+	private int[] counts = new int[16];
+
+	private boolean[] used = new boolean[16];
+
+	private int size;
+
+	/**
+	 * Count an action in the cell.
+	 */
+	public void increment(long cell) {
+		add(cell, 1);
+	}
+
+	/**
+	 * Add these counts into the totals.
+	 */
+	public void addTo(CellCounts totals) {
+		for (int i = 0; i < cells.length; i++) {
+			if (used[i]) {
+				totals.add(cells[i], counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Visit each cell counted.
+	 */
+	public void forEach(CellVisitor visitor) {
+		for (int i = 0; i < cells.length; i++) {
+			if (used[i]) {
+				visitor.visit(cells[i], counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * The number of cells counted.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forget every count, keeping the table's capacity.
+	 */
+	public void clear() {
+		Arrays.fill(used, false);
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	// internal helpers
+
+	private void add(long cell, int count) {
+		if ((size + 1) * 2 > cells.length) {
+			resize();
+		}
+		int slot = find(cell);
+		if (!used[slot]) {
+			used[slot] = true;
+			cells[slot] = cell;
+			size++;
+		}
+		counts[slot] += count;
+	}
+
+	private int find(long cell) {
+		int mask = cells.length - 1;
+		int slot = (int) ((cell * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (used[slot] && cells[slot] != cell) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldCells = cells;
+		int[] oldCounts = counts;
+		boolean[] oldUsed = used;
+		cells = new long[oldCells.length * 2];
+		counts = new int[oldCells.length * 2];
+		used = new boolean[oldCells.length * 2];
+		for (int i = 0; i < oldCells.length; i++) {
+			if (oldUsed[i]) {
+				int slot = find(oldCells[i]);
+				used[slot] = true;
+				cells[slot] = oldCells[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/**
+	 * Receives each cell and its count.
+	 */
+	interface CellVisitor {
+
+		void visit(long cell, int count);
+
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+/**
+ * Encodes locations as geohashes: each character halves the cell along alternating longitude and latitude axes five times.
+ * Geohashes are handled as longs holding 5 bits per character, so bucketing a location allocates nothing.
+ * @author Keith Donald
+ */
+final class GeoHash {
+
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+	/**
+	 * The longest geohash that fits in a long.
+	 */
+	public static final int MAX_PRECISION = 12;
+
+	private GeoHash() {
+	}
+
+	/**
+	 * The geohash of the cell containing the location.
+	 * @param precision the number of geohash characters
+	 */
+	public static long encode(double latitude, double longitude, int precision) {
+		double minLatitude = -90, maxLatitude = 90;
+		double minLongitude = -180, maxLongitude = 180;
+		long hash = 0;
+		for (int bit = 0; bit < precision * 5; bit++) {
+			hash <<= 1;
+			if (bit % 2 == 0) {
+				double middle = (minLongitude + maxLongitude) / 2;
+				if (longitude >= middle) {
+					hash |= 1;
+					minLongitude = middle;
+				} else {
+					maxLongitude = middle;
+				}
+			} else {
+				double middle = (minLatitude + maxLatitude) / 2;
+				if (latitude >= middle) {
+					hash |= 1;
+					minLatitude = middle;
+				} else {
+					maxLatitude = middle;
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * The center of the cell with the geohash.
+	 * @return the latitude and longitude of the center, in that order
+	 */
+	public static double[] decode(long hash, int precision) {
+		double minLatitude = -90, maxLatitude = 90;
+		double minLongitude = -180, maxLongitude = 180;
+		int bits = precision * 5;
+		for (int bit = 0; bit < bits; bit++) {
+			boolean set = ((hash >>> (bits - 1 - bit)) & 1) != 0;
+			if (bit % 2 == 0) {
+				double middle = (minLongitude + maxLongitude) / 2;
+				if (set) {
+					minLongitude = middle;
+				} else {
+					maxLongitude = middle;
+				}
+			} else {
+				double middle = (minLatitude + maxLatitude) / 2;
+				if (set) {
+					minLatitude = middle;
+				} else {
+					maxLatitude = middle;
+				}
+			}
+		}
+		return new double[] { (minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2 };
+	}
+
+	/**
+	 * The geohash in its usual base 32 form.
+	 */
+	public static String toString(long hash, int precision) {
+		char[] chars = new char[precision];
+		for (int i = precision - 1; i >= 0; i--) {
+			chars[i] = BASE32[(int) (hash & 31)];
+			hash >>>= 5;
+		}
+		return new String(chars);
+	}
+
+}
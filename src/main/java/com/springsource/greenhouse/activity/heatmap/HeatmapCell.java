@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+/**
+ * The number of actions performed in a geohash cell.
+ * @author Keith Donald
+ */
+public final class HeatmapCell {
+
+	private final String geohash;
+
+	private final double latitude;
+
+	private final double longitude;
+
+	private final int count;
+
+	public HeatmapCell(String geohash, double latitude, double longitude, int count) {
+		this.geohash = geohash;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.count = count;
+	}
+
+	/**
+	 * The geohash of the cell.
+	 */
+	public String getGeohash() {
+		return geohash;
+	}
+
+	/**
+	 * The latitude of the center of the cell.
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * The longitude of the center of the cell.
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * The number of actions performed in the cell.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+}
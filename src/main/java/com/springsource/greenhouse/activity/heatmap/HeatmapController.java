@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Serves activity heatmaps e.g. for dashboards on a venue floor.
+ * @author Keith Donald
+ */
+@Controller
+public class HeatmapController {
+
+	private final ActivityHeatmap activityHeatmap;
+
+	@Inject
+	public HeatmapController(ActivityHeatmap activityHeatmap) {
+		this.activityHeatmap = activityHeatmap;
+	}
+
+	/**
+	 * Write the heatmap to the response as JSON, busiest cell first.
+	 * @param event the id of the event to show the heatmap of; if not specified, actions performed anywhere are shown
+	 * @param window the number of minutes of activity to show, up to two days
+	 */
+	@RequestMapping(value="/activity/heatmap", method=RequestMethod.GET, headers="Accept=application/json")
+	public @ResponseBody List<HeatmapCell> heatmap(@RequestParam(required=false) Long event, @RequestParam(defaultValue="60") int window) {
+		return activityHeatmap.findHeatmap(event, window);
+	}
+
+}
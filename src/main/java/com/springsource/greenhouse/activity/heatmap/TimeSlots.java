@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.heatmap;
+
+/**
+ * A ring of fixed-width time slots, each counting actions per geohash cell.
+ * A slot is reused once the ring comes back around to it, so only the most recent slots are kept and memory stays bounded.
+ * Each slot is locked separately, so actions counted in the current slot do not contend with reads of older ones for long.
+ * @author Keith Donald
+ */
+final class TimeSlots {
+
+	private final long width;
+
+	private final long[] epochs;
+
+	private final CellCounts[] slots;
+
+	/**
+	 * Creates a ring of slots.
+	 * @param width the length of time each slot covers, in milliseconds
+	 * @param count the number of slots kept
+	 */
+	public TimeSlots(long width, int count) {
+		this.width = width;
+		this.epochs = new long[count];
+		this.slots = new CellCounts[count];
+		for (int i = 0; i < count; i++) {
+			epochs[i] = Long.MIN_VALUE;
+			slots[i] = new CellCounts();
+		}
+	}
+
+	/**
+	 * Count an action performed in the cell at the time.
+	 * Actions older than the oldest slot kept are ignored.
+	 */
+	public void add(long time, long cell) {
+		long epoch = time / width;
+		int index = index(epoch);
+		CellCounts slot = slots[index];
+		synchronized (slot) {
+			if (epochs[index] != epoch) {
+				if (epoch < epochs[index]) {
+					return;
+				}
+				slot.clear();
+				epochs[index] = epoch;
+			}
+			slot.increment(cell);
+		}
+	}
+
+	/**
+	 * Add the counts of the most recent slots, up to and including the one covering the given time, into the totals.
+	 * @param now the current time
+	 * @param count the number of slots to add; at most the number kept
+	 */
+	public void sum(long now, int count, CellCounts totals) {
+		long current = now / width;
+		for (long epoch = current - Math.min(count, slots.length) + 1; epoch <= current; epoch++) {
+			int index = index(epoch);
+			CellCounts slot = slots[index];
+			synchronized (slot) {
+				if (epochs[index] == epoch) {
+					slot.addTo(totals);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The number of slots kept.
+	 */
+	public int getCount() {
+		return slots.length;
+	}
+
+	// internal helpers
+
+	private int index(long epoch) {
+		return (int) (((epoch % slots.length) + slots.length) % slots.length);
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Live heatmaps of where member actions are being performed, bucketed by geohash cell and time.
+ */
+package com.springsource.greenhouse.activity.heatmap;
@@ -15,13 +15,17 @@
  */
 package com.springsource.greenhouse.activity.recent;
 
+import java.io.Serializable;
+
 /**
  * Models a recent activity that occurred in the application.
  * Represents an item in a recent activity feed.
+ * Serializable so it may be broadcast to the other nodes of a cluster.
  * TODO: the structure of this object may be too HTML presentation-centric.
  * @author Keith Donald
  */
-public class RecentActivity {
+@SuppressWarnings("serial")
+public class RecentActivity implements Serializable {
 
 	private final String memberPictureUrl;
 	
@@ -15,13 +15,22 @@
  */
 package com.springsource.greenhouse.activity.recent;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.integration.Message;
 import org.springframework.integration.annotation.Transformer;
+import org.springframework.integration.comet.AsyncHttpRequestHandlingMessageAdapter;
+import org.springframework.integration.comet.TopicIndex;
+import org.springframework.integration.support.MessageBuilder;
 
 import com.springsource.greenhouse.activity.action.Action;
 import com.springsource.greenhouse.activity.badge.AwardedBadge;
+import com.springsource.greenhouse.events.EventTweetAction;
 
 /**
- * Transforms Actions and AwardedBadges to RecentActivity objects.
+ * Transforms Actions and AwardedBadges to RecentActivity messages.
+ * Each message names the topics it is about in its topics header, so comet subscribers filtering by member or event only receive relevant activity.
  * @author Keith Donald
  */
 public class RecentActivityTransformer {
@@ -29,19 +38,33 @@ public class RecentActivityTransformer {
 	// TODO text should be localized
 	
 	@Transformer
-	public RecentActivity forAction(Action action) {
+	public Message<RecentActivity> forAction(Action action) {
 		String memberPictureUrl = action.getAccount().getPictureUrl();
 		// TODO don't hardcode
 		String imageUrl = "http://images.greenhouse.springsource.org/activity/icon-default-action.png";
 		RecentActivity activity = new RecentActivity(memberPictureUrl, action.toString(), imageUrl);
-		return activity;
+		return MessageBuilder.withPayload(activity).setHeader(AsyncHttpRequestHandlingMessageAdapter.TOPICS_HEADER, topics(action)).build();
 	}
 	
 	@Transformer
-	public RecentActivity forAwardedBadge(AwardedBadge badge) {
+	public Message<RecentActivity> forAwardedBadge(AwardedBadge badge) {
 		String memberPictureUrl = badge.getAccount().getPictureUrl();
 		String text = badge.getAccount().getFullName() + " was awarded the " + badge.getName() + " badge";
 		RecentActivity activity = new RecentActivity(memberPictureUrl, text, badge.getImageUrl());
-		return activity;
+		Set<String> topics = badge.getAction() != null ? topics(badge.getAction()) : new HashSet<String>();
+		topics.add(TopicIndex.topic("member", badge.getAccount().getId()));
+		return MessageBuilder.withPayload(activity).setHeader(AsyncHttpRequestHandlingMessageAdapter.TOPICS_HEADER, topics).build();
 	}
+
+	// internal helpers
+	
+	private Set<String> topics(Action action) {
+		Set<String> topics = new HashSet<String>();
+		topics.add(TopicIndex.topic("member", action.getAccount().getId()));
+		if (action instanceof EventTweetAction) {
+			topics.add(TopicIndex.topic("event", ((EventTweetAction) action).getEventId()));
+		}
+		return topics;
+	}
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.recent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.joda.time.DateTime;
+import org.springframework.integration.Message;
+
+/**
+ * In memory recent activity repository backed by a bounded ring buffer of the most recent activity.
+ * Subscribed to the recentActivity channel; writes are serialized, and each slot is replaced atomically so readers never lock.
+ * A reader detects a slot overwritten while it was reading by the slot's sequence number, and retries.
+ * Activity is timestamped in arrival order, so findNext can binary search by time.
+ * @author Keith Donald
+ */
+public class RingBufferRecentActivityRepository implements RecentActivityRepository {
+
+	private final AtomicReferenceArray<Entry> ring;
+
+	private final int mask;
+
+	private final int initialCount;
+
+	// the number of entries ever written; the newest entry has sequence published - 1
+	private volatile long published;
+
+	private long lastTime;
+
+	/**
+	 * Creates a repository holding the 1024 most recent activities that returns the 5 most recent initially.
+	 */
+	public RingBufferRecentActivityRepository() {
+		this(1024, 5);
+	}
+
+	/**
+	 * Creates a repository holding at least the given number of most recent activities.
+	 * @param capacity the number of activities to keep; rounded up to a power of two
+	 * @param initialCount the number of most recent activities {@link #findInitial()} returns
+	 */
+	public RingBufferRecentActivityRepository(int capacity, int initialCount) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.ring = new AtomicReferenceArray<Entry>(size);
+		this.mask = size - 1;
+		this.initialCount = initialCount;
+	}
+
+	/**
+	 * Records activity published to the recentActivity channel, timestamped with the message's timestamp.
+	 */
+	public void activityPublished(Message<RecentActivity> message) {
+		Long timestamp = message.getHeaders().getTimestamp();
+		add(message.getPayload(), timestamp != null ? timestamp : System.currentTimeMillis());
+	}
+
+	/**
+	 * Records activity that occurred at the given time.
+	 * Times earlier than the last recorded time are moved up to it, so the buffer stays ordered by time.
+	 */
+	public synchronized void add(RecentActivity activity, long time) {
+		long sequence = published;
+		lastTime = Math.max(lastTime, time);
+		ring.set((int) (sequence & mask), new Entry(sequence, lastTime, activity));
+		published = sequence + 1;
+	}
+
+	public List<RecentActivity> findInitial() {
+		while (true) {
+			long end = published;
+			long start = Math.max(oldest(end), end - initialCount);
+			List<RecentActivity> recent = new ArrayList<RecentActivity>((int) (end - start));
+			boolean overwritten = false;
+			for (long sequence = end - 1; sequence >= start; sequence--) {
+				Entry entry = ring.get((int) (sequence & mask));
+				if (entry.sequence != sequence) {
+					overwritten = true;
+					break;
+				}
+				recent.add(entry.activity);
+			}
+			if (!overwritten) {
+				return recent;
+			}
+		}
+	}
+
+	public RecentActivity findNext(DateTime last) {
+		long time = last.getMillis();
+		while (true) {
+			long end = published;
+			long low = oldest(end);
+			long high = end;
+			boolean overwritten = false;
+			// find the first entry later than the given time
+			while (low < high) {
+				long middle = (low + high) >>> 1;
+				Entry entry = ring.get((int) (middle & mask));
+				if (entry.sequence != middle) {
+					overwritten = true;
+					break;
+				}
+				if (entry.time <= time) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			if (overwritten) {
+				continue;
+			}
+			if (low == end) {
+				return null;
+			}
+			Entry next = ring.get((int) (low & mask));
+			if (next.sequence == low) {
+				return next.activity;
+			}
+		}
+	}
+
+	// internal helpers
+
+	private long oldest(long end) {
+		return Math.max(0, end - ring.length());
+	}
+
+	private static final class Entry {
+
+		private final long sequence;
+
+		private final long time;
+
+		private final RecentActivity activity;
+
+		public Entry(long sequence, long time, RecentActivity activity) {
+			this.sequence = sequence;
+			this.time = time;
+			this.activity = activity;
+		}
+
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.reputation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Ranks members by score.
+ * Scores are kept in a concurrent skip list ordered from highest to lowest, so changing a member's score is O(log n) and reading the top N is O(N).
+ * Updates to the same member are serialized by a striped lock; readers never block, and may briefly miss a member whose score is being changed.
+ * @author Keith Donald
+ */
+public class Leaderboard {
+
+	private final ConcurrentSkipListSet<Score> ranking = new ConcurrentSkipListSet<Score>();
+
+	private final ConcurrentMap<Long, Long> scores = new ConcurrentHashMap<Long, Long>();
+
+	private final Object[] locks = new Object[64];
+
+	public Leaderboard() {
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Add points to the member's score.
+	 * @return the member's new score
+	 */
+	public long add(Long member, long points) {
+		synchronized (lock(member)) {
+			Long previous = scores.get(member);
+			long score = (previous != null ? previous : 0) + points;
+			if (previous != null) {
+				ranking.remove(new Score(member, previous));
+			}
+			ranking.add(new Score(member, score));
+			scores.put(member, score);
+			return score;
+		}
+	}
+
+	/**
+	 * The member's score; 0 if the member has not scored.
+	 */
+	public long getScore(Long member) {
+		Long score = scores.get(member);
+		return score != null ? score : 0;
+	}
+
+	/**
+	 * The members with the highest scores, highest first.
+	 * @param count the number of members to return
+	 */
+	public List<Score> top(int count) {
+		List<Score> top = new ArrayList<Score>(count);
+		Iterator<Score> it = ranking.iterator();
+		while (it.hasNext() && top.size() < count) {
+			top.add(it.next());
+		}
+		return top;
+	}
+
+	/**
+	 * The number of members on the leaderboard.
+	 */
+	public int size() {
+		return scores.size();
+	}
+
+	// internal helpers
+
+	private Object lock(Long member) {
+		return locks[(member.hashCode() & Integer.MAX_VALUE) % locks.length];
+	}
+
+	/**
+	 * A member's score; orders from highest to lowest score, then by member id.
+	 */
+	public static final class Score implements Comparable<Score> {
+
+		private final Long member;
+
+		private final long score;
+
+		public Score(Long member, long score) {
+			this.member = member;
+			this.score = score;
+		}
+
+		/**
+		 * The member's id.
+		 */
+		public Long getMember() {
+			return member;
+		}
+
+		/**
+		 * The member's score.
+		 */
+		public long getScore() {
+			return score;
+		}
+
+		public int compareTo(Score other) {
+			if (score != other.score) {
+				return score > other.score ? -1 : 1;
+			}
+			return member.compareTo(other.member);
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Score)) {
+				return false;
+			}
+			Score other = (Score) o;
+			return member.equals(other.member) && score == other.score;
+		}
+
+		public int hashCode() {
+			return member.hashCode() * 29 + (int) (score ^ (score >>> 32));
+		}
+
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.reputation;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Serves the members with the most reputation, overall or at an event.
+ * @author Keith Donald
+ */
+@Controller
+public class LeaderboardController {
+
+	private static final int MAX_SIZE = 100;
+
+	private final ReputationScorer reputationScorer;
+
+	@Inject
+	public LeaderboardController(ReputationScorer reputationScorer) {
+		this.reputationScorer = reputationScorer;
+	}
+
+	/**
+	 * Write the leaderboard to the response as JSON.
+	 * @param event the id of the event to rank members at; if not specified, members are ranked by overall reputation
+	 * @param size the number of members to include, up to 100
+	 */
+	@RequestMapping(value="/members/leaderboard", method=RequestMethod.GET, headers="Accept=application/json")
+	public @ResponseBody List<Standing> leaderboard(@RequestParam(required=false) Long event, @RequestParam(defaultValue="10") int size) {
+		return reputationScorer.findStandings(event, Math.max(1, Math.min(size, MAX_SIZE)));
+	}
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.reputation;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.account.ProfileReference;
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.EventAction;
+import com.springsource.greenhouse.activity.badge.AwardedBadge;
+
+/**
+ * Maintains member reputation incrementally as actions are performed and badges are awarded.
+ * Subscribed to the action and awarded badge channels; each action is worth the points configured for its type, and each badge a fixed number of points.
+ * Keeps an overall leaderboard and one per event, for actions performed at an event and the badges awarded for them.
+ * Overall reputation is written to the Member table in batches as the points earned since the last write, so nodes sharing the table add to each other's totals rather than overwrite them.
+ * It is loaded from there at startup, and event leaderboards are rebuilt from the action history, including the counts of archived actions.
+ * The Reputation upgrade seeds the Member table once from the action history, archived counts and awarded badges, using the default points.
+ * @author Keith Donald
+ */
+public class ReputationScorer implements InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(ReputationScorer.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final AccountMapper accountMapper;
+
+	private final Leaderboard leaderboard = new Leaderboard();
+
+	private final ConcurrentMap<Long, Leaderboard> eventLeaderboards = new ConcurrentHashMap<Long, Leaderboard>();
+
+	private final ConcurrentMap<Long, AtomicLong> unflushed = new ConcurrentHashMap<Long, AtomicLong>();
+
+	private Map<String, Integer> actionPoints = new HashMap<String, Integer>();
+
+	private int badgePoints = 10;
+
+	private long flushInterval = 10;
+
+	private ScheduledExecutorService flusher;
+
+	@Inject
+	public ReputationScorer(JdbcTemplate jdbcTemplate, AccountMapper accountMapper) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		this.accountMapper = accountMapper;
+		actionPoints.put("SignedUp", 1);
+		actionPoints.put("InviteAccept", 3);
+		actionPoints.put("EventTweet", 2);
+	}
+
+	/**
+	 * The points earned for each type of action; actions of other types earn none.
+	 * Defaults to 1 for SignedUp, 3 for InviteAccept and 2 for EventTweet.
+	 * Overall reputation earned before the scorer was deployed is seeded with the defaults, so change them only on a fresh install.
+	 */
+	public void setActionPoints(Map<String, Integer> actionPoints) {
+		this.actionPoints = new HashMap<String, Integer>(actionPoints);
+	}
+
+	/**
+	 * The points earned for each badge awarded.
+	 * Defaults to 10.
+	 */
+	public void setBadgePoints(int badgePoints) {
+		this.badgePoints = badgePoints;
+	}
+
+	/**
+	 * Seconds between writes of changed reputation to the Member table.
+	 * Defaults to 10.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public void afterPropertiesSet() {
+		warm();
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "reputation-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					logger.warn("Could not write member reputation", e);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.SECONDS);
+	}
+
+	public void destroy() throws Exception {
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		flush();
+	}
+
+	/**
+	 * Score the action; subscribed to the action channel.
+	 */
+	public void actionPerformed(Action action) {
+		Integer points = actionPoints.get(action.getType());
+		if (points != null) {
+			score(action.getAccount().getId(), eventOf(action), points);
+		}
+	}
+
+	/**
+	 * Score the awarded badge; subscribed to the awarded badge channel.
+	 */
+	public void badgeAwarded(AwardedBadge badge) {
+		score(badge.getAccount().getId(), eventOf(badge.getAction()), badgePoints);
+	}
+
+	/**
+	 * The member's overall reputation.
+	 */
+	public long getReputation(Long member) {
+		return leaderboard.getScore(member);
+	}
+
+	/**
+	 * The members with the most reputation, highest first.
+	 * @param event the id of the event to rank members at; null to rank by overall reputation
+	 * @param count the number of members to return
+	 */
+	public List<Standing> findStandings(Long event, int count) {
+		Leaderboard board = event != null ? eventLeaderboards.get(event) : leaderboard;
+		if (board == null) {
+			return Collections.emptyList();
+		}
+		List<Leaderboard.Score> top = board.top(count);
+		if (top.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Map<Long, ProfileReference> profiles = findProfiles(top);
+		List<Standing> standings = new ArrayList<Standing>(top.size());
+		for (Leaderboard.Score score : top) {
+			ProfileReference profile = profiles.get(score.getMember());
+			if (profile != null) {
+				standings.add(new Standing(standings.size() + 1, profile, score.getScore()));
+			}
+		}
+		return standings;
+	}
+
+	/**
+	 * Add the reputation earned since the last write to the Member table.
+	 * If the write fails the points are kept and written by the next flush.
+	 */
+	public void flush() {
+		final List<Long> members = new ArrayList<Long>();
+		final List<Long> points = new ArrayList<Long>();
+		for (Map.Entry<Long, AtomicLong> entry : unflushed.entrySet()) {
+			long earned = entry.getValue().getAndSet(0);
+			if (earned != 0) {
+				members.add(entry.getKey());
+				points.add(earned);
+			}
+		}
+		if (members.isEmpty()) {
+			return;
+		}
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					jdbcTemplate.batchUpdate(UPDATE_REPUTATION, new BatchPreparedStatementSetter() {
+						public void setValues(PreparedStatement ps, int i) throws SQLException {
+							ps.setLong(1, points.get(i));
+							ps.setLong(2, members.get(i));
+						}
+						public int getBatchSize() {
+							return members.size();
+						}
+					});
+				}
+			});
+		} catch (RuntimeException e) {
+			for (int i = 0; i < members.size(); i++) {
+				unflushed(members.get(i)).addAndGet(points.get(i));
+			}
+			throw e;
+		}
+	}
+
+	// internal helpers
+
+	private void score(Long member, Long event, int points) {
+		leaderboard.add(member, points);
+		unflushed(member).addAndGet(points);
+		if (event != null) {
+			eventLeaderboard(event).add(member, points);
+		}
+	}
+
+	private AtomicLong unflushed(Long member) {
+		AtomicLong points = unflushed.get(member);
+		if (points == null) {
+			points = new AtomicLong();
+			AtomicLong existing = unflushed.putIfAbsent(member, points);
+			if (existing != null) {
+				points = existing;
+			}
+		}
+		return points;
+	}
+
+	private Leaderboard eventLeaderboard(Long event) {
+		Leaderboard board = eventLeaderboards.get(event);
+		if (board == null) {
+			board = new Leaderboard();
+			Leaderboard existing = eventLeaderboards.putIfAbsent(event, board);
+			if (existing != null) {
+				board = existing;
+			}
+		}
+		return board;
+	}
+
+	private Long eventOf(Action action) {
+		return action instanceof EventAction ? ((EventAction) action).getEventId() : null;
+	}
+
+	private void warm() {
+		jdbcTemplate.query("select id, reputation from Member where reputation > 0", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				leaderboard.add(rs.getLong(1), rs.getLong(2));
+			}
+		});
+		jdbcTemplate.query("select a.member, t.event, a.actionType, count(*) from MemberAction a inner join EventTweetAction t on a.id = t.memberAction group by a.member, t.event, a.actionType", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				Integer points = actionPoints.get(rs.getString(3));
+				if (points != null) {
+					eventLeaderboard(rs.getLong(2)).add(rs.getLong(1), points * rs.getLong(4));
+				}
+			}
+		});
+		jdbcTemplate.query("select member, event, actionType, actionCount from ArchivedActionCount where event <> 0", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				Integer points = actionPoints.get(rs.getString(3));
+				if (points != null) {
+					eventLeaderboard(rs.getLong(2)).add(rs.getLong(1), points * rs.getLong(4));
+				}
+			}
+		});
+		jdbcTemplate.query("select b.member, t.event, count(*) from AwardedBadge b inner join EventTweetAction t on b.memberAction = t.memberAction group by b.member, t.event", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				eventLeaderboard(rs.getLong(2)).add(rs.getLong(1), badgePoints * rs.getLong(3));
+			}
+		});
+	}
+
+	private Map<Long, ProfileReference> findProfiles(List<Leaderboard.Score> scores) {
+		List<Object> ids = new ArrayList<Object>(scores.size());
+		for (Leaderboard.Score score : scores) {
+			ids.add(score.getMember());
+		}
+		final Map<Long, ProfileReference> profiles = new HashMap<Long, ProfileReference>();
+		String placeholders = StringUtils.collectionToCommaDelimitedString(Collections.nCopies(ids.size(), "?"));
+		jdbcTemplate.query(AccountMapper.SELECT_ACCOUNT_REFERENCE + " where id in (" + placeholders + ")", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				profiles.put(rs.getLong("id"), accountMapper.getReferenceMapper().mapRow(rs, rs.getRow()));
+			}
+		}, ids.toArray());
+		return profiles;
+	}
+
+	private static final String UPDATE_REPUTATION = "update Member set reputation = reputation + ? where id = ?";
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.reputation;
+
+import com.springsource.greenhouse.account.ProfileReference;
+
+/**
+ * A member's place on a leaderboard.
+ * @author Keith Donald
+ */
+public final class Standing {
+
+	private final int rank;
+
+	private final ProfileReference member;
+
+	private final long reputation;
+
+	public Standing(int rank, ProfileReference member, long reputation) {
+		this.rank = rank;
+		this.member = member;
+		this.reputation = reputation;
+	}
+
+	/**
+	 * The member's position on the leaderboard, starting at 1.
+	 */
+	public int getRank() {
+		return rank;
+	}
+
+	/**
+	 * A reference to the member's public profile.
+	 */
+	public ProfileReference getMember() {
+		return member;
+	}
+
+	/**
+	 * The reputation the member has earned.
+	 */
+	public long getReputation() {
+		return reputation;
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Member reputation earned by participating in the community, and the leaderboards that rank members by it.
+ */
+package com.springsource.greenhouse.activity.reputation;
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.StringUtils;
+
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.ActionJournal;
+import com.springsource.greenhouse.activity.action.ActionMapper;
+import com.springsource.greenhouse.activity.action.EventAction;
+import com.springsource.greenhouse.invite.InviteAcceptAction;
+
+/**
+ * TimelineRepository that builds timelines as actions are published rather than when they are read.
+ * Each published action is added to the timeline of every follower of the member who performed it and of the event it was performed at ("fan-out-on-write"), so reading a timeline is a scan of one in-memory ring.
+ * Members and events with more followers than the fan-out limit are not fanned out; their actions are kept in a timeline of their own that their followers merge in when reading ("fan-out-on-read").
+ * Timelines hold action ids only; the actions on the page being read are loaded in a single query.
+ * Members follow the members they invited or were invited by, and the events they have favorited sessions at or tweeted about.
+ * Follows are added as they happen; a member who unfavorites every session at an event keeps following it until the graph is next loaded, at startup.
+ * Timelines are rebuilt from the most recent actions at startup.
+ * @author Keith Donald
+ */
+public class FanOutTimelineRepository implements TimelineRepository, InitializingBean {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final ActionMapper actionMapper;
+
+	private final ActionJournal actionJournal;
+
+	private final FollowGraph followGraph = new FollowGraph();
+
+	private final ConcurrentMap<Long, Timeline> memberTimelines = new ConcurrentHashMap<Long, Timeline>();
+
+	private final ConcurrentMap<Long, Timeline> memberActions = new ConcurrentHashMap<Long, Timeline>();
+
+	private final ConcurrentMap<Long, Timeline> eventActions = new ConcurrentHashMap<Long, Timeline>();
+
+	private int capacity = 256;
+
+	private int fanOutLimit = 1000;
+
+	private int warmActions = 10000;
+
+	@Inject
+	public FanOutTimelineRepository(JdbcTemplate jdbcTemplate, AccountMapper accountMapper, ActionJournal actionJournal) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.actionMapper = new ActionMapper(accountMapper);
+		this.actionJournal = actionJournal;
+	}
+
+	/**
+	 * The number of actions kept per timeline; older actions fall off.
+	 * Defaults to 256.
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Members and events with more followers than this are read by their followers instead of written to each follower's timeline.
+	 * Defaults to 1000.
+	 */
+	public void setFanOutLimit(int fanOutLimit) {
+		this.fanOutLimit = fanOutLimit;
+	}
+
+	/**
+	 * The number of most recent actions replayed into the timelines at startup.
+	 * Defaults to 10000.
+	 */
+	public void setWarmActions(int warmActions) {
+		this.warmActions = warmActions;
+	}
+
+	public void afterPropertiesSet() {
+		loadFollowGraph();
+		replayRecentActions();
+	}
+
+	/**
+	 * Add the action to the timelines of the member's and event's followers; subscribed to the action channel.
+	 */
+	public void actionPerformed(Action action) {
+		Long member = action.getAccount().getId();
+		Long event = action instanceof EventAction ? ((EventAction) action).getEventId() : null;
+		if (action instanceof InviteAcceptAction) {
+			Long sentBy = ((InviteAcceptAction) action).getSentBy();
+			followGraph.followMember(member, sentBy);
+			followGraph.followMember(sentBy, member);
+		}
+		if (event != null) {
+			followGraph.followEvent(member, event);
+		}
+		publish(action.getId(), action.getTime().getMillis(), member, event);
+	}
+
+	public void followEvent(Long member, Long event) {
+		followGraph.followEvent(member, event);
+	}
+
+	public List<TimelineEntry> findTimeline(Long member, DateTime before, int count) {
+		long beforeTime = before != null ? before.getMillis() : Long.MAX_VALUE;
+		List<Entry> entries = new ArrayList<Entry>();
+		read(memberTimelines.get(member), beforeTime, count, entries);
+		for (Long followed : followGraph.getFollowedMembers(member)) {
+			if (followGraph.getMemberFollowers(followed).size() > fanOutLimit) {
+				read(memberActions.get(followed), beforeTime, count, entries);
+			}
+		}
+		for (Long followed : followGraph.getFollowedEvents(member)) {
+			if (followGraph.getEventFollowers(followed).size() > fanOutLimit) {
+				read(eventActions.get(followed), beforeTime, count, entries);
+			}
+		}
+		Collections.sort(entries);
+		List<Long> ids = new ArrayList<Long>(count);
+		Set<Long> seen = new HashSet<Long>();
+		for (Entry entry : entries) {
+			if (ids.size() == count) {
+				break;
+			}
+			if (seen.add(entry.id)) {
+				ids.add(entry.id);
+			}
+		}
+		return hydrate(ids);
+	}
+
+	// internal helpers
+
+	private void publish(long id, long time, Long member, Long event) {
+		timeline(memberActions, member).add(id, time);
+		Set<Long> recipients = new HashSet<Long>();
+		recipients.add(member);
+		Set<Long> followers = followGraph.getMemberFollowers(member);
+		if (followers.size() <= fanOutLimit) {
+			recipients.addAll(followers);
+		}
+		if (event != null) {
+			timeline(eventActions, event).add(id, time);
+			followers = followGraph.getEventFollowers(event);
+			if (followers.size() <= fanOutLimit) {
+				recipients.addAll(followers);
+			}
+		}
+		for (Long recipient : recipients) {
+			timeline(memberTimelines, recipient).add(id, time);
+		}
+	}
+
+	private Timeline timeline(ConcurrentMap<Long, Timeline> timelines, Long key) {
+		Timeline timeline = timelines.get(key);
+		if (timeline == null) {
+			timeline = new Timeline(capacity);
+			Timeline existing = timelines.putIfAbsent(key, timeline);
+			if (existing != null) {
+				timeline = existing;
+			}
+		}
+		return timeline;
+	}
+
+	private void read(Timeline timeline, long before, int count, List<Entry> entries) {
+		if (timeline == null) {
+			return;
+		}
+		long[] ids = new long[count];
+		long[] times = new long[count];
+		int read = timeline.read(before, ids, times);
+		for (int i = 0; i < read; i++) {
+			entries.add(new Entry(ids[i], times[i]));
+		}
+	}
+
+	private List<TimelineEntry> hydrate(List<Long> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Map<Long, Action> actions = findActions(ids);
+		if (actions.size() < ids.size()) {
+			// simple actions are written behind; make sure any still queued are in the database
+			List<Long> missing = new ArrayList<Long>();
+			for (Long id : ids) {
+				if (!actions.containsKey(id)) {
+					actionJournal.flush(id);
+					missing.add(id);
+				}
+			}
+			actions.putAll(findActions(missing));
+		}
+		List<TimelineEntry> timeline = new ArrayList<TimelineEntry>(ids.size());
+		for (Long id : ids) {
+			Action action = actions.get(id);
+			if (action != null) {
+				timeline.add(new TimelineEntry(action.getId(), action.getTime(), action.getAccount().getPictureUrl(), action.toString()));
+			}
+		}
+		return timeline;
+	}
+
+	private Map<Long, Action> findActions(List<Long> ids) {
+		final Map<Long, Action> actions = new HashMap<Long, Action>();
+		String placeholders = StringUtils.collectionToCommaDelimitedString(Collections.nCopies(ids.size(), "?"));
+		jdbcTemplate.query(ActionMapper.SELECT_ACTION + " where a.id in (" + placeholders + ")", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				Action action = actionMapper.mapRow(rs, rs.getRow());
+				actions.put(action.getId(), action);
+			}
+		}, ids.toArray());
+		return actions;
+	}
+
+	private void loadFollowGraph() {
+		jdbcTemplate.query(SELECT_FAVORITED_EVENTS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				followGraph.followEvent(rs.getLong(1), rs.getLong(2));
+			}
+		});
+		jdbcTemplate.query(SELECT_TWEETED_EVENTS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				followGraph.followEvent(rs.getLong(1), rs.getLong(2));
+			}
+		});
+		jdbcTemplate.query(SELECT_ARCHIVED_EVENTS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				followGraph.followEvent(rs.getLong(1), rs.getLong(2));
+			}
+		});
+		jdbcTemplate.query(SELECT_ACCEPTED_INVITES, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				followGraph.followMember(rs.getLong(1), rs.getLong(2));
+				followGraph.followMember(rs.getLong(2), rs.getLong(1));
+			}
+		});
+	}
+
+	private void replayRecentActions() {
+		final List<Object[]> recent = new ArrayList<Object[]>();
+		jdbcTemplate.query(SELECT_RECENT_ACTIONS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				long event = rs.getLong("event");
+				Long eventId = rs.wasNull() ? null : event;
+				long time = new DateTime(rs.getTimestamp("performTime"), DateTimeZone.UTC).getMillis();
+				recent.add(new Object[] { rs.getLong("id"), time, rs.getLong("member"), eventId });
+			}
+		}, warmActions);
+		for (int i = recent.size() - 1; i >= 0; i--) {
+			Object[] action = recent.get(i);
+			publish((Long) action[0], (Long) action[1], (Long) action[2], (Long) action[3]);
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+
+		private final long id;
+
+		private final long time;
+
+		public Entry(long id, long time) {
+			this.id = id;
+			this.time = time;
+		}
+
+		// newest first
+		public int compareTo(Entry other) {
+			if (time != other.time) {
+				return time > other.time ? -1 : 1;
+			}
+			return id > other.id ? -1 : (id == other.id ? 0 : 1);
+		}
+
+	}
+
+	private static final String SELECT_FAVORITED_EVENTS = "select distinct attendee, event from EventSessionFavorite";
+
+	private static final String SELECT_TWEETED_EVENTS = "select distinct a.member, t.event from MemberAction a inner join EventTweetAction t on a.id = t.memberAction";
+
+	private static final String SELECT_ARCHIVED_EVENTS = "select distinct member, event from ArchivedActionCount where event <> 0";
+
+	private static final String SELECT_ACCEPTED_INVITES = "select i.sentBy, a.member from InviteAcceptAction ia inner join Invite i on ia.invite = i.token inner join MemberAction a on ia.memberAction = a.id";
+
+	private static final String SELECT_RECENT_ACTIONS = "select a.id, a.performTime, a.member, t.event from MemberAction a left outer join EventTweetAction t on a.id = t.memberAction order by a.id desc limit ?";
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Who follows whom: members follow other members and events.
+ * Held in memory as adjacency sets in both directions, so the followers of a source and the sources a member follows are both a single lookup.
+ * @author Keith Donald
+ */
+final class FollowGraph {
+
+	private final ConcurrentMap<Long, Set<Long>> memberFollowers = new ConcurrentHashMap<Long, Set<Long>>();
+
+	private final ConcurrentMap<Long, Set<Long>> eventFollowers = new ConcurrentHashMap<Long, Set<Long>>();
+
+	private final ConcurrentMap<Long, Set<Long>> followedMembers = new ConcurrentHashMap<Long, Set<Long>>();
+
+	private final ConcurrentMap<Long, Set<Long>> followedEvents = new ConcurrentHashMap<Long, Set<Long>>();
+
+	/**
+	 * Record that the follower follows the member; members do not follow themselves.
+	 */
+	public void followMember(Long follower, Long member) {
+		if (!follower.equals(member)) {
+			edges(memberFollowers, member).add(follower);
+			edges(followedMembers, follower).add(member);
+		}
+	}
+
+	/**
+	 * Record that the follower follows the event.
+	 */
+	public void followEvent(Long follower, Long event) {
+		edges(eventFollowers, event).add(follower);
+		edges(followedEvents, follower).add(event);
+	}
+
+	public Set<Long> getMemberFollowers(Long member) {
+		return get(memberFollowers, member);
+	}
+
+	public Set<Long> getEventFollowers(Long event) {
+		return get(eventFollowers, event);
+	}
+
+	public Set<Long> getFollowedMembers(Long member) {
+		return get(followedMembers, member);
+	}
+
+	public Set<Long> getFollowedEvents(Long member) {
+		return get(followedEvents, member);
+	}
+
+	// internal helpers
+
+	private Set<Long> edges(ConcurrentMap<Long, Set<Long>> edges, Long from) {
+		Set<Long> to = edges.get(from);
+		if (to == null) {
+			to = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+			Set<Long> existing = edges.putIfAbsent(from, to);
+			if (existing != null) {
+				to = existing;
+			}
+		}
+		return to;
+	}
+
+	private Set<Long> get(ConcurrentMap<Long, Set<Long>> edges, Long from) {
+		Set<Long> to = edges.get(from);
+		return to != null ? to : Collections.<Long>emptySet();
+	}
+
+}
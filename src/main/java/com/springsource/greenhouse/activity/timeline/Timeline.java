@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+/**
+ * A bounded ring of action ids and perform times; once full, each new action overwrites the oldest.
+ * Kept as primitive arrays so a timeline costs 16 bytes per entry and nothing per action beyond that.
+ * @author Keith Donald
+ */
+final class Timeline {
+
+	private final long[] ids;
+
+	private final long[] times;
+
+	private final int mask;
+
+	// the number of actions ever added; the newest is at (count - 1) & mask
+	private long count;
+
+	/**
+	 * Creates a timeline holding at least the given number of actions.
+	 * @param capacity the number of actions to keep; rounded up to a power of two
+	 */
+	public Timeline(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.ids = new long[size];
+		this.times = new long[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Add an action to the timeline.
+	 */
+	public synchronized void add(long id, long time) {
+		int index = (int) (count & mask);
+		ids[index] = id;
+		times[index] = time;
+		count++;
+	}
+
+	/**
+	 * Copy the newest actions performed before the given time into the given arrays, newest first.
+	 * @return the number of actions copied; at most the length of the arrays
+	 */
+	public synchronized int read(long before, long[] idsOut, long[] timesOut) {
+		int read = 0;
+		long oldest = Math.max(0, count - ids.length);
+		for (long sequence = count - 1; sequence >= oldest && read < idsOut.length; sequence--) {
+			int index = (int) (sequence & mask);
+			if (times[index] < before) {
+				idsOut[read] = ids[index];
+				timesOut[read] = times[index];
+				read++;
+			}
+		}
+		return read;
+	}
+
+}
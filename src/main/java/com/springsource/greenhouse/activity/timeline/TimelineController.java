@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.springsource.greenhouse.account.Account;
+
+/**
+ * Serves the signed-in member's activity timeline.
+ * @author Keith Donald
+ */
+@Controller
+public class TimelineController {
+
+	private static final int MAX_SIZE = 100;
+
+	private final TimelineRepository timelineRepository;
+
+	@Inject
+	public TimelineController(TimelineRepository timelineRepository) {
+		this.timelineRepository = timelineRepository;
+	}
+
+	/**
+	 * Write the member's timeline to the response as JSON, newest first.
+	 * @param before pages back through the timeline; pass the time of the oldest entry already shown
+	 * @param size the number of entries to include, up to 100
+	 */
+	@RequestMapping(value="/activity/timeline", method=RequestMethod.GET, headers="Accept=application/json")
+	public @ResponseBody List<TimelineEntry> timeline(Account account, @RequestParam(required=false) @DateTimeFormat(iso=ISO.DATE_TIME) DateTime before, @RequestParam(defaultValue="20") int size) {
+		return timelineRepository.findTimeline(account.getId(), before, Math.max(1, Math.min(size, MAX_SIZE)));
+	}
+
+}
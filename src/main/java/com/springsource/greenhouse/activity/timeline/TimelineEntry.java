@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+import org.joda.time.DateTime;
+
+/**
+ * An action on a member's timeline.
+ * @author Keith Donald
+ */
+public final class TimelineEntry {
+
+	private final Long id;
+
+	private final DateTime time;
+
+	private final String memberPictureUrl;
+
+	private final String text;
+
+	public TimelineEntry(Long id, DateTime time, String memberPictureUrl, String text) {
+		this.id = id;
+		this.time = time;
+		this.memberPictureUrl = memberPictureUrl;
+		this.text = text;
+	}
+
+	/**
+	 * The id of the action.
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * When the action was performed.
+	 */
+	public DateTime getTime() {
+		return time;
+	}
+
+	/**
+	 * The picture of the member who performed the action.
+	 */
+	public String getMemberPictureUrl() {
+		return memberPictureUrl;
+	}
+
+	/**
+	 * A description of the action.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public String toString() {
+		return "Timeline Entry: " + text;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.activity.timeline;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+/**
+ * Data access interface for member timelines.
+ * @author Keith Donald
+ */
+public interface TimelineRepository {
+
+	/**
+	 * The member's timeline: the actions of the member and of the members and events the member follows, newest first.
+	 * @param member the id of the member
+	 * @param before only actions performed before this time are returned; if null, the newest actions are returned
+	 * @param count the maximum number of actions to return
+	 */
+	List<TimelineEntry> findTimeline(Long member, DateTime before, int count);
+
+	/**
+	 * Record that the member now follows the event, e.g. because the member favorited a session at it.
+	 * Actions performed at the event from now on appear in the member's timeline.
+	 * @param member the id of the member
+	 * @param event the id of the event
+	 */
+	void followEvent(Long member, Long event);
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Per-member timelines of activity from the members and events each member follows.
+ */
+package com.springsource.greenhouse.activity.timeline;
@@ -26,6 +26,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.encrypt.StringEncryptor;
+import org.springframework.security.encrypt.StringIndexer;
 import org.springframework.stereotype.Repository;
 
 import com.springsource.greenhouse.account.Account;
@@ -34,6 +35,7 @@ import com.springsource.greenhouse.account.ProfileReference;
 
 /**
  * Stores Account connection information in a relational database using the JDBC API.
+ * Access tokens and secrets are encrypted for storage; access tokens are looked up by a blind index computed by a {@link StringIndexer}.
  * @author Keith Donald
  */
 @Repository
@@ -42,17 +44,20 @@ public class JdbcAccountConnectionRepository implements AccountConnectionReposit
 	private final JdbcTemplate jdbcTemplate;
 
 	private final StringEncryptor encryptor;
+
+	private final StringIndexer indexer;
 	
 	private final AccountMapper accountMapper;
 
-	public JdbcAccountConnectionRepository(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, AccountMapper accountMapper) {
+	public JdbcAccountConnectionRepository(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, StringIndexer indexer, AccountMapper accountMapper) {
 		this.jdbcTemplate = jdbcTemplate;
 		this.encryptor = encryptor;
+		this.indexer = indexer;
 		this.accountMapper = accountMapper;
 	}
 
 	public void addConnection(Long accountId, String provider, OAuthToken accessToken, String providerAccountId, String providerProfileUrl) {
-		jdbcTemplate.update(INSERT_ACCOUNT_CONNECTION, accountId, provider, encryptor.encrypt(accessToken.getValue()), encryptIfPresent(accessToken.getSecret()), providerAccountId, providerProfileUrl);
+		jdbcTemplate.update(INSERT_ACCOUNT_CONNECTION, accountId, provider, encryptor.encrypt(accessToken.getValue()), indexer.index(accessToken.getValue()), encryptIfPresent(accessToken.getSecret()), providerAccountId, providerProfileUrl);
 	}
 
 	public boolean isConnected(Long accountId, String provider) {
@@ -81,7 +86,7 @@ public class JdbcAccountConnectionRepository implements AccountConnectionReposit
 
 	public Account findAccountByConnection(String provider, String accessToken) throws NoSuchAccountConnectionException {
 		try {
-			return jdbcTemplate.queryForObject(AccountMapper.SELECT_ACCOUNT + " where id = (select member from AccountConnection where provider = ? and accessToken = ?)", accountMapper, provider, encryptor.encrypt(accessToken));
+			return jdbcTemplate.queryForObject(AccountMapper.SELECT_ACCOUNT + " where id = (select member from AccountConnection where provider = ? and accessTokenIndex = ?)", accountMapper, provider, indexer.index(accessToken));
 		} catch (EmptyResultDataAccessException e) {
 			throw new NoSuchAccountConnectionException(accessToken);
 		}
@@ -109,7 +114,7 @@ public class JdbcAccountConnectionRepository implements AccountConnectionReposit
 
 	private static final String SELECT_ACCOUNT_CONNECTION_COUNT = "select exists(select 1 from AccountConnection where member = ? and provider = ?)";
 
-	private static final String INSERT_ACCOUNT_CONNECTION = "insert into AccountConnection (member, provider, accessToken, secret, accountId, profileUrl) values (?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_ACCOUNT_CONNECTION = "insert into AccountConnection (member, provider, accessToken, accessTokenIndex, secret, accountId, profileUrl) values (?, ?, ?, ?, ?, ?, ?)";
 
 	private static final String DELETE_ACCOUNT_CONNECTION = "delete from AccountConnection where member = ? and provider = ?";
 
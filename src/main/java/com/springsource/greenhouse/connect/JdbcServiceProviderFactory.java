@@ -24,6 +24,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.encrypt.StringEncryptor;
+import org.springframework.security.encrypt.StringIndexer;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.ClassUtils;
 
@@ -43,10 +44,10 @@ public class JdbcServiceProviderFactory implements ServiceProviderFactory {
 	private final JdbcAccountConnectionRepository connectionRepository;
 	
 	@Autowired
-	public JdbcServiceProviderFactory(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, AccountMapper accountMapper) {
+	public JdbcServiceProviderFactory(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, StringIndexer indexer, AccountMapper accountMapper) {
 		this.jdbcTemplate = jdbcTemplate;
 		this.encryptor = encryptor;
-		this.connectionRepository = new JdbcAccountConnectionRepository(jdbcTemplate, encryptor, accountMapper);
+		this.connectionRepository = new JdbcAccountConnectionRepository(jdbcTemplate, encryptor, indexer, accountMapper);
 	}
 
 	public ServiceProvider<?> getServiceProvider(String name) {
@@ -75,7 +75,7 @@ public class BaseDatabaseUpgrader {
 	}
 
 	private void addInstallChangeSet(GenericDatabaseUpgrader upgrader) {
-		DatabaseChangeSetBuilder builder = new DatabaseChangeSetBuilder(DatabaseVersion.valueOf("2"));
+		DatabaseChangeSetBuilder builder = new DatabaseChangeSetBuilder(DatabaseVersion.valueOf("7"));
 		builder.addChange(databaseResource("install/Member.sql"));
 		builder.addChange(databaseResource("install/Group.sql"));
 		builder.addChange(databaseResource("install/Activity.sql"));
@@ -85,12 +85,18 @@ public class BaseDatabaseUpgrader {
 		builder.addChange(databaseResource("install/Invite.sql"));		
 		builder.addChange(databaseResource("install/Venue.sql"));
 		builder.addChange(databaseResource("install/Event.sql"));
+		builder.addChange(databaseResource("install/IdSequence.sql"));
 		addInstallChanges(builder);
 		upgrader.addChangeSet(builder.getChangeSet());
 	}
 
 	private void addUpgradeChangeSets(GenericDatabaseUpgrader upgrader) {
 		upgrader.addChangeSet(singletonChangeSet("2", databaseResource("upgrade/475.sql")));
+		upgrader.addChangeSet(singletonChangeSet("3", databaseResource("upgrade/IdSequence.sql")));
+		upgrader.addChangeSet(singletonChangeSet("4", databaseResource("upgrade/ActionArchive.sql")));
+		upgrader.addChangeSet(singletonChangeSet("5", databaseResource("upgrade/BlindIndex.sql")));
+		upgrader.addChangeSet(singletonChangeSet("6", databaseResource("upgrade/ThresholdBadges.sql")));
+		upgrader.addChangeSet(singletonChangeSet("7", databaseResource("upgrade/Reputation.sql")));
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.encrypt.StringEncryptor;
+import org.springframework.security.encrypt.StringIndexer;
+
+/**
+ * Fills in the blind index of App apiKeys and of App and Account connection accessTokens stored before those indexes were introduced.
+ * The index is computed from the decrypted value, which SQL alone cannot do, so this runs once the database has been upgraded.
+ * Rows that already have an index are left alone; once every row is indexed this does nothing.
+ * @author Keith Donald
+ */
+public class BlindIndexBackfill {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlindIndexBackfill.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final StringEncryptor encryptor;
+
+	private final StringIndexer indexer;
+
+	@Inject
+	public BlindIndexBackfill(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, StringIndexer indexer) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.encryptor = encryptor;
+		this.indexer = indexer;
+	}
+
+	@PostConstruct
+	public void run() {
+		backfill("App", "apiKey", "apiKeyIndex", "id");
+		backfill("AppConnection", "accessToken", "accessTokenIndex", "app", "member");
+		backfill("AccountConnection", "accessToken", "accessTokenIndex", "member", "provider", "accessToken");
+	}
+
+	// internal helpers
+
+	private void backfill(String table, final String column, String indexColumn, final String... keyColumns) {
+		List<Object[]> unindexed = jdbcTemplate.query("select " + column + ", " + columns(keyColumns) + " from " + table + " where " + indexColumn + " is null", new RowMapper<Object[]>() {
+			public Object[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+				Object[] row = new Object[keyColumns.length + 1];
+				row[0] = rs.getString(column);
+				for (int i = 0; i < keyColumns.length; i++) {
+					row[i + 1] = rs.getObject(keyColumns[i]);
+				}
+				return row;
+			}
+		});
+		String update = "update " + table + " set " + indexColumn + " = ? where " + keyColumns[0] + " = ?" + andKeys(keyColumns);
+		int indexed = 0;
+		for (Object[] row : unindexed) {
+			try {
+				row[0] = indexer.index(encryptor.decrypt((String) row[0]));
+			} catch (RuntimeException e) {
+				logger.warn("Unable to decrypt " + table + " " + column + " to index it; skipping", e);
+				continue;
+			}
+			indexed += jdbcTemplate.update(update, row);
+		}
+		if (indexed > 0 && logger.isInfoEnabled()) {
+			logger.info("Indexed " + indexed + " " + table + " " + column + "s");
+		}
+	}
+
+	private String columns(String[] keyColumns) {
+		StringBuilder columns = new StringBuilder(keyColumns[0]);
+		for (int i = 1; i < keyColumns.length; i++) {
+			columns.append(", ").append(keyColumns[i]);
+		}
+		return columns.toString();
+	}
+
+	private String andKeys(String[] keyColumns) {
+		StringBuilder where = new StringBuilder();
+		for (int i = 1; i < keyColumns.length; i++) {
+			where.append(" and ").append(keyColumns[i]).append(" = ?");
+		}
+		return where.toString();
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.database;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Allocates record identifiers in memory from blocks reserved in the IdSequence table (hi/lo style), so ids are known before a record is inserted.
+ * Saves the round trip to read back a generated key after every insert and allows inserts to be batched.
+ * Each sequence is named after the table whose id column it supplies; a sequence not yet in the IdSequence table starts after the table's greatest id.
+ * Blocks are reserved in their own transaction, so a rolled back insert never returns its block; the unused ids in a block are lost on restart.
+ * Safe for use by several application instances sharing one database.
+ * @author Keith Donald
+ */
+public class BlockIdAllocator {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int blockSize;
+
+	private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
+
+	public BlockIdAllocator(DataSource dataSource) {
+		this(dataSource, 100);
+	}
+
+	public BlockIdAllocator(DataSource dataSource, int blockSize) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Allocate the next identifier of the named sequence.
+	 * @param sequence the name of the table the identifier is for e.g. MemberAction
+	 */
+	public Long nextId(String sequence) {
+		Block block = blocks.get(sequence);
+		if (block == null) {
+			block = new Block();
+			Block existing = blocks.putIfAbsent(sequence, block);
+			if (existing != null) {
+				block = existing;
+			}
+		}
+		synchronized (block) {
+			if (block.next == block.limit) {
+				block.limit = reserveBlock(sequence);
+				block.next = block.limit - blockSize;
+			}
+			return block.next++;
+		}
+	}
+
+	// internal helpers
+
+	private long reserveBlock(final String sequence) {
+		return transactionTemplate.execute(new TransactionCallback<Long>() {
+			public Long doInTransaction(TransactionStatus status) {
+				if (jdbcTemplate.update(RESERVE_BLOCK, blockSize, sequence) == 0) {
+					try {
+						jdbcTemplate.update("insert into IdSequence (name, nextValue) select ?, coalesce(max(id), 0) + 1 from " + sequence, sequence);
+					} catch (DuplicateKeyException e) {
+						// started by another application instance
+					}
+					jdbcTemplate.update(RESERVE_BLOCK, blockSize, sequence);
+				}
+				return jdbcTemplate.queryForLong("select nextValue from IdSequence where name = ?", sequence);
+			}
+		});
+	}
+
+	private static final class Block {
+
+		private long next;
+
+		private long limit;
+
+	}
+
+	private static final String RESERVE_BLOCK = "update IdSequence set nextValue = nextValue + ? where name = ?";
+
+}
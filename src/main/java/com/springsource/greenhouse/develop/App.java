@@ -15,6 +15,8 @@
  */
 package com.springsource.greenhouse.develop;
 
+import org.springframework.security.encrypt.EncryptedString;
+
 /**
  * Details about a client application that can invoke the API of the server application on behalf of a member.
  * @author Keith Donald
@@ -23,13 +25,20 @@ public class App {
 	
 	private final AppSummary summary;
 
-	private final String apiKey;
+	private final EncryptedString apiKey;
 	
-	private final String secret;
+	private final EncryptedString secret;
 	
 	private final String callbackUrl;
 
 	public App(AppSummary summary, String apiKey, String secret, String callbackUrl) {
+		this(summary, EncryptedString.decrypted(apiKey), EncryptedString.decrypted(secret), callbackUrl);
+	}
+
+	/**
+	 * Creates an App whose apiKey and secret are decrypted only when read.
+	 */
+	App(AppSummary summary, EncryptedString apiKey, EncryptedString secret, String callbackUrl) {
 		this.summary = summary;
 		this.apiKey = apiKey;
 		this.secret = secret;
@@ -49,7 +58,7 @@ public class App {
 	 * Should only be known to the application's development team and not shared with others.
 	 */
 	public String getApiKey() {
-		return apiKey;
+		return apiKey.getValue();
 	}
 
 	/**
@@ -57,7 +66,7 @@ public class App {
 	 * Only used for OAuth 1.0-based client applications.
 	 */
 	public String getSecret() {
-		return secret;
+		return secret.getValue();
 	}
 
 	/**
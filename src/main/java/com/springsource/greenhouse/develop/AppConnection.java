@@ -15,6 +15,8 @@
  */
 package com.springsource.greenhouse.develop;
 
+import org.springframework.security.encrypt.EncryptedString;
+
 /**
  * A connection between a client Application and a member Account.
  * While the connection remains established, the client Application is authorized to read and update data on behalf of the member.
@@ -25,13 +27,20 @@ public final class AppConnection {
 
 	private final Long accountId;
 	
-	private final String apiKey;
+	private final EncryptedString apiKey;
 
-	private final String accessToken;
+	private final EncryptedString accessToken;
 	
-	private final String secret;
+	private final EncryptedString secret;
 	
 	public AppConnection(Long accountId, String apiKey, String accessToken, String secret) {
+		this(accountId, EncryptedString.decrypted(apiKey), EncryptedString.decrypted(accessToken), EncryptedString.decrypted(secret));
+	}
+
+	/**
+	 * Creates an AppConnection whose apiKey, accessToken and secret are decrypted only when read.
+	 */
+	AppConnection(Long accountId, EncryptedString apiKey, EncryptedString accessToken, EncryptedString secret) {
 		this.accountId = accountId;
 		this.apiKey = apiKey;
 		this.accessToken = accessToken;
@@ -49,21 +58,21 @@ public final class AppConnection {
 	 * The api key identifying the client application.
 	 */
 	public String getApiKey() {
-		return apiKey;
+		return apiKey.getValue();
 	}
 
 	/**
 	 * The access token identifying the connection.
 	 */
 	public String getAccessToken() {
-		return accessToken;
+		return accessToken.getValue();
 	}
 
 	/**
 	 * The access token secret, used for signature verification for OAuth 1.0-based clients.
 	 */
 	public String getSecret() {
-		return secret;
+		return secret.getValue();
 	}
 
 }
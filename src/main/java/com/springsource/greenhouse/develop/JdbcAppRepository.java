@@ -24,16 +24,20 @@ import javax.inject.Inject;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.encrypt.EncryptedString;
 import org.springframework.security.encrypt.SecureRandomStringKeyGenerator;
 import org.springframework.security.encrypt.StringEncryptor;
+import org.springframework.security.encrypt.StringIndexer;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.springsource.greenhouse.connect.NoSuchAccountConnectionException;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.utils.SlugUtils;
 
 /**
  * AppRepository implementation that stores App data in a relational database using the JDBC API.
  * ApiKeys and secrets, as well as accessTokens and secrets, are encrypted for storage using a {@link StringEncryptor}.
+ * ApiKeys and accessTokens are looked up by a blind index computed by a {@link StringIndexer}, and stored values are decrypted only when read.
  * @author Keith Donald
  */
 // TODO this is disabled because it's needed in root-context for Spring Security yet scanned by app-servlet-context. not very clean: revisit this.
@@ -44,13 +48,19 @@ public class JdbcAppRepository implements AppRepository {
 	private JdbcTemplate jdbcTemplate;
 	
 	private StringEncryptor encryptor;
+
+	private StringIndexer indexer;
 	
 	private SecureRandomStringKeyGenerator keyGenerator;
 
+	private BlockIdAllocator idAllocator;
+
 	@Inject
-	public JdbcAppRepository(JdbcTemplate jdbcTemplate, StringEncryptor encryptor) {
+	public JdbcAppRepository(JdbcTemplate jdbcTemplate, StringEncryptor encryptor, StringIndexer indexer, BlockIdAllocator idAllocator) {
 		this.jdbcTemplate = jdbcTemplate;
 		this.encryptor = encryptor;
+		this.indexer = indexer;
+		this.idAllocator = idAllocator;
 		this.keyGenerator = new SecureRandomStringKeyGenerator();
 	}
 
@@ -62,9 +72,13 @@ public class JdbcAppRepository implements AppRepository {
 		return jdbcTemplate.queryForObject(SELECT_APP_BY_SLUG, appMapper, accountId, slug);
 	}
 
-	public App findAppByApiKey(String apiKey) throws InvalidApiKeyException {
+	public App findAppByApiKey(final String apiKey) throws InvalidApiKeyException {
 		try {
-			return jdbcTemplate.queryForObject(SELECT_APP_BY_API_KEY, appMapper, encryptor.encrypt(apiKey));
+			return jdbcTemplate.queryForObject(SELECT_APP_BY_API_KEY, new RowMapper<App>() {
+				public App mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return new App(appSummaryMapper.mapRow(rs, rowNum), EncryptedString.decrypted(apiKey), encrypted(rs.getString("secret")), rs.getString("callbackUrl"));
+				}
+			}, indexer.index(apiKey));
 		} catch (EmptyResultDataAccessException e) {
 			throw new InvalidApiKeyException(apiKey);
 		}
@@ -91,10 +105,10 @@ public class JdbcAppRepository implements AppRepository {
 	@Transactional
 	public String createApp(Long accountId, AppForm form) {
 		String slug = createSlug(form.getName());
-		String encryptedApiKey = encryptor.encrypt(keyGenerator.generateKey());
+		String apiKey = keyGenerator.generateKey();
 		String encryptedSecret = encryptor.encrypt(keyGenerator.generateKey());
-		jdbcTemplate.update(INSERT_APP, form.getName(), slug, form.getDescription(), form.getOrganization(), form.getWebsite(), encryptedApiKey, encryptedSecret, form.getCallbackUrl());
-		Long appId = jdbcTemplate.queryForLong("call identity()");
+		Long appId = idAllocator.nextId("App");
+		jdbcTemplate.update(INSERT_APP, appId, form.getName(), slug, form.getDescription(), form.getOrganization(), form.getWebsite(), encryptor.encrypt(apiKey), indexer.index(apiKey), encryptedSecret, form.getCallbackUrl());
 		jdbcTemplate.update(INSERT_APP_DEVELOPER, appId, accountId);
 		return slug;
 	}
@@ -105,26 +119,25 @@ public class JdbcAppRepository implements AppRepository {
 		String secret = keyGenerator.generateKey();
 		Long appId = findAppIdByApiKey(apiKey);
 		jdbcTemplate.update("delete from AppConnection where app = ? and member = ?", appId, accountId);
-		jdbcTemplate.update("insert into AppConnection (app, member, accessToken, secret) values (?, ?, ?, ?)", appId, accountId, encryptor.encrypt(accessToken), encryptor.encrypt(secret));
+		jdbcTemplate.update("insert into AppConnection (app, member, accessToken, accessTokenIndex, secret) values (?, ?, ?, ?, ?)", appId, accountId, encryptor.encrypt(accessToken), indexer.index(accessToken), encryptor.encrypt(secret));
 		return new AppConnection(accountId, apiKey, accessToken, secret);
 	}
 
-	public AppConnection findAppConnection(String accessToken) throws NoSuchAccountConnectionException {
+	public AppConnection findAppConnection(final String accessToken) throws NoSuchAccountConnectionException {
 		try {
-			return jdbcTemplate.queryForObject("select c.member, a.apiKey, c.accessToken, c.secret from AppConnection c inner join App a on c.app = a.id where c.accessToken = ?",
+			return jdbcTemplate.queryForObject("select c.member, a.apiKey, c.secret from AppConnection c inner join App a on c.app = a.id where c.accessTokenIndex = ?",
 				new RowMapper<AppConnection>() {
 					public AppConnection mapRow(ResultSet rs, int rowNum) throws SQLException {
-						return new AppConnection(rs.getLong("member"), encryptor.decrypt(rs.getString("apiKey")),
-								encryptor.decrypt(rs.getString("accessToken")), encryptor.decrypt(rs.getString("secret")));
+						return new AppConnection(rs.getLong("member"), encrypted(rs.getString("apiKey")), EncryptedString.decrypted(accessToken), encrypted(rs.getString("secret")));
 					}
-				}, encryptor.encrypt(accessToken));
+				}, indexer.index(accessToken));
 		} catch (EmptyResultDataAccessException e) {
 			throw new NoSuchAccountConnectionException(accessToken);
 		}
 	}
 
 	public void disconnectApp(Long accountId, String accessToken) {
-		jdbcTemplate.update("delete from AppConnection where accessToken = ? and member = ?", accessToken, accountId);
+		jdbcTemplate.update("delete from AppConnection where accessTokenIndex = ? and member = ?", indexer.index(accessToken), accountId);
 	}
 
 	// internal helpers
@@ -132,10 +145,14 @@ public class JdbcAppRepository implements AppRepository {
 	private String createSlug(String appName) {
 		return SlugUtils.toSlug(appName);
 	}
+
+	private EncryptedString encrypted(String encrypted) {
+		return EncryptedString.encrypted(encrypted, encryptor);
+	}
 	
 	private Long findAppIdByApiKey(String apiKey) throws InvalidApiKeyException {
 		try {
-			return jdbcTemplate.queryForLong("select id from App where apiKey = ?", encryptor.encrypt(apiKey));
+			return jdbcTemplate.queryForLong("select id from App where apiKeyIndex = ?", indexer.index(apiKey));
 		} catch (EmptyResultDataAccessException e) {
 			throw new InvalidApiKeyException(apiKey);
 		}		
@@ -145,7 +162,7 @@ public class JdbcAppRepository implements AppRepository {
 
 	private static final String SELECT_APP_BY_SLUG = "select a.name, a.slug, a.description, a.apiKey, a.secret, a.callbackUrl from App a inner join AppDeveloper d on a.id = d.app where d.member = ? and a.slug = ?";
 
-	private static final String SELECT_APP_BY_API_KEY = "select a.name, a.slug, a.description, a.apiKey, a.secret, a.callbackUrl from App a where a.apiKey = ?";
+	private static final String SELECT_APP_BY_API_KEY = "select a.name, a.slug, a.description, a.secret, a.callbackUrl from App a where a.apiKeyIndex = ?";
 
 	private static final String SELECT_APP_FORM = "select a.name, a.description, a.organization, a.website, a.callbackUrl from App a inner join AppDeveloper d on a.id = d.app where d.member = ? and a.slug = ?";
 
@@ -153,7 +170,7 @@ public class JdbcAppRepository implements AppRepository {
 
 	private static final String DELETE_APP = "delete from App where exists(select 1 from AppDeveloper where member = ?) and slug = ?";
 
-	private static final String INSERT_APP = "insert into App (name, slug, description, organization, website, apiKey, secret, callbackUrl) values (?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_APP = "insert into App (id, name, slug, description, organization, website, apiKey, apiKeyIndex, secret, callbackUrl) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
 	private static final String INSERT_APP_DEVELOPER = "insert into AppDeveloper (app, member) values (?, ?)";
 
@@ -167,7 +184,7 @@ public class JdbcAppRepository implements AppRepository {
 
 	private RowMapper<App> appMapper = new RowMapper<App>() {
 		public App mapRow(ResultSet rs, int rowNum) throws SQLException {
-			return new App(appSummaryMapper.mapRow(rs, rowNum), encryptor.decrypt(rs.getString("apiKey")), encryptor.decrypt(rs.getString("secret")), rs.getString("callbackUrl"));
+			return new App(appSummaryMapper.mapRow(rs, rowNum), encrypted(rs.getString("apiKey")), encrypted(rs.getString("secret")), rs.getString("callbackUrl"));
 		}
 	};
 
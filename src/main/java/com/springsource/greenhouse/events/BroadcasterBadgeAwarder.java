@@ -47,7 +47,7 @@ public class BroadcasterBadgeAwarder implements BadgeAwarder<EventTweetAction> {
 	// internal helpers
 	
 	private boolean alreadyAwarded(Account account, Long eventId) {
-		return false;
+		return badgeRepository.alreadyAwarded(BADGE_NAME, account, eventId);
 	}
 	
 	private static final String BADGE_NAME = "Broadcaster";
@@ -19,6 +19,7 @@ import org.joda.time.DateTime;
 import com.springsource.greenhouse.account.Account;
 
 import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.EventAction;
 import com.springsource.greenhouse.utils.Location;
 
 /**
@@ -26,7 +27,7 @@ import com.springsource.greenhouse.utils.Location;
  * TODO: this class is not yet used
  * @author Keith Donald
  */
-public final class EventTweetAction extends Action {
+public final class EventTweetAction extends Action implements EventAction {
 	
 	private final Long eventId;
 	
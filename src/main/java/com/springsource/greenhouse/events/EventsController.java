@@ -37,6 +37,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.timeline.TimelineRepository;
 import com.springsource.greenhouse.utils.Location;
 
 /**
@@ -49,11 +50,14 @@ public class EventsController {
 	private final EventRepository eventRepository;
 	
 	private final TwitterOperations twitterApi;
+	
+	private final TimelineRepository timelineRepository;
 		
 	@Inject
-	public EventsController(EventRepository eventRepository, TwitterOperations twitterApi) {
+	public EventsController(EventRepository eventRepository, TwitterOperations twitterApi, TimelineRepository timelineRepository) {
 		this.eventRepository = eventRepository;
 		this.twitterApi = twitterApi;
+		this.timelineRepository = timelineRepository;
 	}
 	
 	// for web service (JSON) clients
@@ -125,10 +129,15 @@ public class EventsController {
 	/**
 	 * Toggle a session as an attendee favorite.
 	 * Write the new favorite status to the body of the response.
+	 * Favoriting a session makes the attendee follow the event in their timeline.
 	 */
 	@RequestMapping(value="/events/{eventId}/sessions/{sessionId}/favorite", method=RequestMethod.PUT)
 	public @ResponseBody Boolean toggleFavorite(@PathVariable Long eventId, @PathVariable Integer sessionId, Account account) {
-		return eventRepository.toggleFavorite(eventId, sessionId, account.getId());
+		boolean favorite = eventRepository.toggleFavorite(eventId, sessionId, account.getId());
+		if (favorite) {
+			timelineRepository.followEvent(account.getId(), eventId);
+		}
+		return favorite;
 	}
 
 	/**
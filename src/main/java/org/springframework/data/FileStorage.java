@@ -15,6 +15,8 @@
  */
 package org.springframework.data;
 
+import java.io.InputStream;
+
 /**
  * Portable service abstraction for storing files.
  * @author Keith Donald
@@ -35,5 +37,13 @@ public interface FileStorage {
 	 */
 	// TODO exception hierarchy
 	String storeFile(FileData file);
+
+	/**
+	 * Read a file from storage.
+	 * @param fileName the relative file name
+	 * @param offset the number of bytes at the start of the file to skip
+	 * @return the file data from the offset on; the caller is responsible for closing it
+	 */
+	InputStream readFile(String fileName, long offset);
 	
 }
@@ -16,9 +16,11 @@
 package org.springframework.data;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.LinkedList;
 
 import org.springframework.core.io.Resource;
@@ -45,7 +47,7 @@ public class LocalFileStorage implements FileStorage {
 		try {
 			this.storageDirectory = storageDirectory.getFile();
 			this.storageDirectory.deleteOnExit();
-			this.storageDirectory.createNewFile();
+			this.storageDirectory.mkdirs();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -86,7 +88,11 @@ public class LocalFileStorage implements FileStorage {
  		try {
  			file.createNewFile();
  			FileOutputStream os = new FileOutputStream(file);
-			os.write(fileData.getBytes());
+			try {
+				os.write(fileData.getBytes());
+			} finally {
+				os.close();
+			}
 		} catch (FileNotFoundException e) {
 			throw new RuntimeException(e);
 		} catch (IOException e) {
@@ -94,5 +100,24 @@ public class LocalFileStorage implements FileStorage {
 		}
 		return file.toURI().toString();
 	}
+
+	public InputStream readFile(String fileName, long offset) {
+		try {
+			FileInputStream is = new FileInputStream(new File(storageDirectory, fileName));
+			long skipped = 0;
+			while (skipped < offset) {
+				long n = is.skip(offset - skipped);
+				if (n <= 0) {
+					break;
+				}
+				skipped += n;
+			}
+			return is;
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 	
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 package org.springframework.data;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
@@ -38,6 +39,8 @@ public class S3FileStorage implements FileStorage {
 	private final AWSCredentials awsCredentials;
 
 	private final String bucketName;
+
+	private boolean publicRead = true;
 	
 	/**
 	 * Creates a S3-based file storage.
@@ -50,6 +53,14 @@ public class S3FileStorage implements FileStorage {
 		this.bucketName = bucketName;
 	}
 	
+	/**
+	 * Whether stored files may be read by anyone.
+	 * Set to false for files that should only be read back through {@link #readFile(String, long)}.  Defaults to true.
+	 */
+	public void setPublicRead(boolean publicRead) {
+		this.publicRead = publicRead;
+	}
+
 	public String absoluteUrl(String fileName) {
 		return "http://" + bucketName + "/" + fileName;
 	}
@@ -66,10 +77,12 @@ public class S3FileStorage implements FileStorage {
 		object.setDataInputStream(new ByteArrayInputStream(file.getBytes()));
 		object.setContentLength(file.getBytes().length);
 		object.setContentType(file.getContentType());		
-		AccessControlList acl = new AccessControlList();
-		acl.setOwner(bucket.getOwner());
-		acl.grantPermission(GroupGrantee.ALL_USERS, Permission.PERMISSION_READ);
-		object.setAcl(acl);
+		if (publicRead) {
+			AccessControlList acl = new AccessControlList();
+			acl.setOwner(bucket.getOwner());
+			acl.grantPermission(GroupGrantee.ALL_USERS, Permission.PERMISSION_READ);
+			object.setAcl(acl);
+		}
 		try {
 			s3.putObject(bucket, object);
 		} catch (S3ServiceException e) {
@@ -78,6 +91,16 @@ public class S3FileStorage implements FileStorage {
 		return absoluteUrl(file.getName());
 	}
 	
+	public InputStream readFile(String fileName, long offset) {
+		S3Service s3 = createS3Service();
+		try {
+			S3Object object = s3.getObject(new S3Bucket(bucketName), fileName, null, null, null, null, offset > 0 ? offset : null, null);
+			return object.getDataInputStream();
+		} catch (S3ServiceException e) {
+			throw new RuntimeException("Unable to get object from S3", e);
+		}
+	}
+
 	// internal helpers
 	
 	private S3Service createS3Service() {
@@ -16,11 +16,19 @@
 package org.springframework.integration.comet;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -34,15 +42,13 @@ import org.atmosphere.cpr.Broadcaster;
 import org.atmosphere.cpr.BroadcasterFactory;
 import org.atmosphere.cpr.DefaultBroadcaster;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.converter.HttpMessageConverter;
-import org.springframework.http.server.ServletServerHttpRequest;
-import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.comet.cluster.BroadcastBus;
+import org.springframework.integration.comet.cluster.BroadcastBusListener;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.core.PollableChannel;
 import org.springframework.integration.core.SubscribableChannel;
@@ -64,7 +70,24 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 	
 	public static final String ENDPOINT_PATH_HEADER = "endpoint-path";
 	
+	/**
+	 * Message header naming the topics a message is about, as a collection of Strings such as <code>event:12</code>.
+	 * Subscribers that registered topic filters only receive messages about those topics.
+	 * @see TopicIndex
+	 */
+	public static final String TOPICS_HEADER = "topics";
+	
+	/**
+	 * The request parameters a subscriber may use to register topic filters; each value becomes a topic such as <code>event:12</code>.
+	 */
+	private static final String[] TOPIC_PARAMETERS = { "event", "group", "member" };
+	
+	private static final String SUBSCRIBED_TOPICS_ATTRIBUTE = AsyncHttpRequestHandlingMessageAdapter.class.getName() + ".SUBSCRIBED_TOPICS";
+	
 	private static final Log log = LogFactory.getLog(AsyncHttpRequestHandlingMessageAdapter.class);
+	
+	// HttpMessageBroadcaster merges each batch of broadcast messages into a single list payload
+	private static final Class<?> BROADCAST_PAYLOAD_TYPE = ArrayList.class;
 
 	private volatile MessageChannel messageChannel;
 
@@ -83,13 +106,70 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 	
 	private volatile BlockingQueue<HttpBroadcastMessage> messageQueue;
 	
+	private final SlowConsumerMonitor slowConsumerMonitor = new SlowConsumerMonitor();
+	
+	// seeded with the clock so event ids keep increasing across restarts; local to this node, so a cluster needs sticky sessions for replay
+	private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+	
+	private final TopicIndex topicIndex = new TopicIndex();
+	
+	private final MessageReplayBuffer replayBuffer = new MessageReplayBuffer(100);
+	
+	// held while a batch is buffered for replay and handed to the broadcaster, and while a reconnecting event stream is replayed to and suspended
+	private final Object replayLock = new Object();
+	
+	private volatile long eventStreamRetry = 3000;
+	
+	private volatile BroadcastBus broadcastBus;
+	
+	private volatile CometMetrics metrics = new CometMetrics();
+	
+	// ids of the messages recently broadcast on this node, so messages arriving more than once from the cluster are only broadcast once
+	private final Set<UUID> recentMessageIds = Collections.newSetFromMap(new LinkedHashMap<UUID, Boolean>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+			return size() > 10000;
+		}
+	});
+	
 	public void handleMessage(Message<?> message)
 			throws MessageRejectedException, MessageHandlingException,
 			MessageDeliveryException {
+		firstDelivery(message);
+		broadcastLocally(message);
+		BroadcastBus broadcastBus = this.broadcastBus;
+		if (broadcastBus != null) {
+			broadcastBus.publish(message);
+		}
+	}
+
+	/**
+	 * Broadcasts messages published by other nodes of the cluster to the subscribers of this node, without publishing them again.
+	 */
+	private void handleRemoteMessages(List<Message<?>> messages) {
+		for (Message<?> message : messages) {
+			if (firstDelivery(message)) {
+				try {
+					broadcastLocally(message);
+				} catch (RuntimeException ex) {
+					log.warn("Unable to broadcast message " + message.getHeaders().getId() + " received from the cluster", ex);
+				}
+			}
+		}
+	}
+
+	private boolean firstDelivery(Message<?> message) {
+		synchronized (this.recentMessageIds) {
+			return this.recentMessageIds.add(message.getHeaders().getId());
+		}
+	}
+
+	private void broadcastLocally(Message<?> message) {
 		try {
 			HttpBroadcastMessage httpMessage = new HttpBroadcastMessage(MessageBuilder.fromMessage(message).setHeaderIfAbsent(ENDPOINT_PATH_HEADER, 
-					this.getComponentName()).build(), this.extractResponsePayload, this.headerMapper);
+					this.getComponentName()).build(), this.extractResponsePayload, this.headerMapper, this.sequence.incrementAndGet());
 			messageQueue.add(httpMessage);
+			this.metrics.queued();
 			if (messageQueue.size() >= messageThreshold) {
 				Broadcaster broadcaster = BroadcasterFactory.getDefault().lookup(DefaultBroadcaster.class, this.getComponentName());
 				if (broadcaster == null) {
@@ -100,13 +180,21 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 				List<HttpBroadcastMessage> broadcastMessages = new ArrayList<HttpBroadcastMessage>();
 				messageQueue.drainTo(broadcastMessages);
 				if (broadcastMessages.size() > 0) {
-					if (log.isInfoEnabled()) {
-						log.info("Broadcasting message "+message.toString()+" to "+broadcaster.getAtmosphereResources().size()+ " suspended resources.");
+					if (log.isDebugEnabled()) {
+						log.debug("Broadcasting message "+message.toString()+" to "+broadcaster.getAtmosphereResources().size()+ " suspended resources.");
+					}
+					long fanOutStart = System.nanoTime();
+					List<Future<Object>> futures;
+					synchronized (this.replayLock) {
+						this.replayBuffer.add(broadcastMessages);
+						futures = this.topicIndex.broadcast(broadcaster, broadcastMessages);
 					}
-					Future<Object> future = broadcaster.broadcast(broadcastMessages);
-					if (future != null) {
-						future.get();
+					for (Future<Object> future : futures) {
+						if (future != null) {
+							future.get();
+						}
 					}
+					this.metrics.broadcast(broadcastMessages.size(), System.nanoTime() - fanOutStart);
 					if (log.isDebugEnabled()) {
 						log.debug("Broadcast operation for "+broadcastMessages+" executed.");
 					}
@@ -125,6 +213,11 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 		if (!this.getComponentName().equals(resource.getBroadcaster().getID())) {
 			resource.getBroadcaster().setID(this.getComponentName());
 		}
+		if (resource.getBroadcaster() instanceof HttpMessageBroadcaster) {
+			((HttpMessageBroadcaster) resource.getBroadcaster()).setSlowConsumerMonitor(this.slowConsumerMonitor);
+			((HttpMessageBroadcaster) resource.getBroadcaster()).setTopicIndex(this.topicIndex);
+			((HttpMessageBroadcaster) resource.getBroadcaster()).setMetrics(this.metrics);
+		}
 		
 		if (request.getMethod().equalsIgnoreCase("GET")) {
 			subscribe(resource);
@@ -143,47 +236,116 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 			this.consumerEndpoint = new EventDrivenConsumer(
 					(SubscribableChannel) this.messageChannel, this);
 		}
+		this.metrics.setBroadcasterId(this.getComponentName());
+		this.metrics.setSlowConsumerMonitor(this.slowConsumerMonitor);
+		if (this.broadcastBus != null) {
+			this.broadcastBus.setListener(new BroadcastBusListener() {
+				public void onMessages(List<Message<?>> messages) {
+					handleRemoteMessages(messages);
+				}
+			});
+		}
 	}
 
 	private void subscribe(
-			AtmosphereResource<HttpServletRequest, HttpServletResponse> resource) {
-		if (log.isInfoEnabled()) {
-			log.info("Handling subscription request for resource with broadcaster ID: "+resource.getBroadcaster().getID());
+			AtmosphereResource<HttpServletRequest, HttpServletResponse> resource) throws IOException {
+		if (log.isDebugEnabled()) {
+			log.debug("Handling subscription request for resource with broadcaster ID: "+resource.getBroadcaster().getID());
 		}
-		//Write a content type (for all future responses) as best guessed from the configured converters, since this is our
-		//only chance to write the headers.
-		ServletServerHttpRequest request = new ServletServerHttpRequest(resource.getRequest());
-		ServletServerHttpResponse response = new ServletServerHttpResponse(resource.getResponse());
-		for (HttpMessageConverter<?> converter : this.messageMapper.getMessageConverters()) {
-			for (MediaType acceptType : request.getHeaders().getAccept()) {
-				for (MediaType supportedMediaType : converter.getSupportedMediaTypes()) {
-					if (!MediaType.ALL.equals(supportedMediaType) && supportedMediaType.isCompatibleWith(acceptType)) {
-						if (!supportedMediaType.isWildcardType() && !supportedMediaType.isWildcardSubtype()) {
-							response.getHeaders().setContentType(supportedMediaType);
-						} else {
-							//Try to guess the "default" type for the converter
-							MediaType defaultType = converter.getSupportedMediaTypes().get(0);
-							if (!defaultType.isWildcardType() && !defaultType.isWildcardSubtype()) {
-								response.getHeaders().setContentType(defaultType);
-							}
-						}
-						doSuspend(resource);
-						if (log.isInfoEnabled()) {
-							log.info("Resource with broadcaster ID: "+resource.getBroadcaster().getID()+" suspended.");
-						}
-						return;							
-					}
-				}
+		resource.getRequest().setAttribute(CometMetrics.TRANSPORT_ATTRIBUTE, transport(resource.getRequest()));
+		this.metrics.subscribed();
+		Set<String> topics = subscribedTopics(resource.getRequest());
+		resource.getRequest().setAttribute(SUBSCRIBED_TOPICS_ATTRIBUTE, topics);
+		if (ServerSentEvents.isEventStream(resource.getRequest())) {
+			subscribeEventStream(resource, topics);
+			return;
+		}
+		this.topicIndex.register(resource, topics);
+		//Negotiate the converter for all future broadcasts once, and write the content type, since this is our only chance to write the headers.
+		HttpServletRequest request = resource.getRequest();
+		NegotiatedConverter negotiated = this.messageMapper.negotiate(request.getHeader("Accept"), BROADCAST_PAYLOAD_TYPE);
+		if (negotiated != null) {
+			request.setAttribute(NegotiatedConverter.NEGOTIATED_CONVERTER_ATTRIBUTE, negotiated);
+			if (negotiated.getContentType() != null) {
+				resource.getResponse().setContentType(negotiated.getContentType().toString());
 			}
+			doSuspend(resource);
+			if (log.isDebugEnabled()) {
+				log.debug("Resource with broadcaster ID: "+resource.getBroadcaster().getID()+" suspended.");
+			}
+			return;
 		}
 		
 		doSuspend(resource);
 		
-		if (log.isInfoEnabled()) {
-			log.info("Resource with broadcaster ID: "+resource.getBroadcaster().getID()+" suspended without writing a Content-Type.");
+		if (log.isDebugEnabled()) {
+			log.debug("Resource with broadcaster ID: "+resource.getBroadcaster().getID()+" suspended without writing a Content-Type.");
 		}
 	}
 
+	private void subscribeEventStream(
+			AtmosphereResource<HttpServletRequest, HttpServletResponse> resource, Set<String> topics) throws IOException {
+		HttpServletRequest request = resource.getRequest();
+		HttpServletResponse response = resource.getResponse();
+		NegotiatedConverter negotiated = this.messageMapper.negotiate(ServerSentEvents.DATA_TYPE, BROADCAST_PAYLOAD_TYPE);
+		Assert.state(negotiated != null, "No HttpMessageConverter is able to write event data as " + ServerSentEvents.DATA_TYPE);
+		request.setAttribute(NegotiatedConverter.NEGOTIATED_CONVERTER_ATTRIBUTE, negotiated);
+		response.setContentType(ServerSentEvents.CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+		OutputStream out = response.getOutputStream();
+		out.write(ServerSentEvents.retry(this.eventStreamRetry));
+		long lastEventId = ServerSentEvents.lastEventId(request);
+		//Replay and suspend together, so every message is either in the replay or broadcast to the suspended resource
+		synchronized (this.replayLock) {
+			if (lastEventId != -1) {
+				List<HttpBroadcastMessage> missed = this.replayBuffer.since(lastEventId, topics);
+				if (!missed.isEmpty()) {
+					long replayedSequence = missed.get(missed.size() - 1).getSequence();
+					//A broadcast issued before the suspend may still reach this resource; it must not deliver the replayed messages twice
+					request.setAttribute(ServerSentEvents.REPLAYED_SEQUENCE_ATTRIBUTE, replayedSequence);
+					byte[] data = this.messageMapper.writeContent(HttpMessageBroadcaster.mergeMessagesForBroadcast(missed).getPayload(), negotiated);
+					out.write(ServerSentEvents.frame(replayedSequence, data));
+					if (log.isDebugEnabled()) {
+						log.debug("Replayed "+missed.size()+" messages after event "+lastEventId+" to reconnecting event stream subscriber.");
+					}
+				}
+			}
+			out.flush();
+			this.topicIndex.register(resource, topics);
+			//An event stream is never resumed on broadcast, and must not be padded with comments the event stream parser does not understand
+			resource.suspend(-1L, false);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Event stream resource with broadcaster ID: "+resource.getBroadcaster().getID()+" suspended.");
+		}
+	}
+
+	private String transport(HttpServletRequest request) {
+		if (ServerSentEvents.isEventStream(request)) {
+			return CometMetrics.EVENT_STREAM;
+		} else if (isLongPolling(request)) {
+			return CometMetrics.LONG_POLLING;
+		} else if ("Upgrade".equalsIgnoreCase(request.getHeader("Connection"))) {
+			return CometMetrics.WEBSOCKET;
+		}
+		return CometMetrics.STREAMING;
+	}
+
+	private Set<String> subscribedTopics(HttpServletRequest request) {
+		Set<String> topics = new HashSet<String>();
+		for (String parameter : TOPIC_PARAMETERS) {
+			String[] values = request.getParameterValues(parameter);
+			if (values != null) {
+				for (String value : values) {
+					if (StringUtils.hasText(value)) {
+						topics.add(TopicIndex.topic(parameter, value.trim()));
+					}
+				}
+			}
+		}
+		return topics;
+	}
+
 	private void doSuspend(
 			AtmosphereResource<HttpServletRequest, HttpServletResponse> resource) {
 		boolean flushComment = isFlushCommentsRequired(resource.getRequest());
@@ -241,11 +403,17 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 	protected void doStart() {
 		this.messageQueue = new LinkedBlockingQueue<HttpBroadcastMessage>();
 		this.consumerEndpoint.start();
+		if (this.broadcastBus != null) {
+			this.broadcastBus.start();
+		}
 	}
 
 	@Override
 	protected void doStop() {
 		this.consumerEndpoint.stop();
+		if (this.broadcastBus != null) {
+			this.broadcastBus.stop();
+		}
 	}
 
 	public void setMessageChannel(MessageChannel messageChannel) {
@@ -255,4 +423,80 @@ public class AsyncHttpRequestHandlingMessageAdapter extends AbstractEndpoint
 	public void setMessageThreshold(int messageThreshold) {
 		this.messageThreshold = messageThreshold;
 	}
+
+	/**
+	 * The longest a single write to a subscriber may take, in milliseconds, before the subscriber is considered slow.
+	 * @see SlowConsumerMonitor#setMaxWriteTime(long)
+	 */
+	public void setMaxWriteTime(long maxWriteTime) {
+		this.slowConsumerMonitor.setMaxWriteTime(maxWriteTime);
+	}
+
+	/**
+	 * What to do with subscribers that cannot keep up.
+	 * @see SlowConsumerMonitor#setPolicy(SlowConsumerPolicy)
+	 */
+	public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+		this.slowConsumerMonitor.setPolicy(slowConsumerPolicy);
+	}
+
+	/**
+	 * The number of recently broadcast messages kept for replay to reconnecting event stream subscribers.
+	 * Defaults to 100.
+	 */
+	public void setReplayBufferSize(int replayBufferSize) {
+		this.replayBuffer.setCapacity(replayBufferSize);
+	}
+
+	/**
+	 * How long event stream clients should wait before reconnecting after losing their connection, in milliseconds.
+	 * Defaults to 3000.
+	 */
+	public void setEventStreamRetry(long eventStreamRetry) {
+		this.eventStreamRetry = eventStreamRetry;
+	}
+
+	/**
+	 * Strings subscribers negotiating the compact binary encoding know up front, such as field names and common URL prefixes.
+	 * @see CompactHttpMessageConverter#setDictionary(List)
+	 */
+	public void setCompactDictionary(List<String> dictionary) {
+		this.messageMapper.setCompactDictionary(dictionary);
+	}
+
+	/**
+	 * The bus fanning messages out to the other nodes of a cluster, so their subscribers see messages received on this node and vice versa.
+	 * Not set by default, for a single node.
+	 * Event stream ids are sequences local to each node, so a reconnecting event stream subscriber is only replayed what it missed
+	 * when it returns to the same node; route subscribers with sticky sessions.
+	 */
+	public void setBroadcastBus(BroadcastBus broadcastBus) {
+		this.broadcastBus = broadcastBus;
+	}
+
+	/**
+	 * The index routing broadcasts to the subscribers interested in them.
+	 */
+	public TopicIndex getTopicIndex() {
+		return this.topicIndex;
+	}
+
+	/**
+	 * The metrics to record this endpoint's subscriptions, broadcasts and writes in.
+	 * Share a {@link CometMetrics} bean to export them over JMX or render them with a {@link CometMetricsRequestHandler}.
+	 */
+	public void setMetrics(CometMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public CometMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * The monitor tracking eviction counts and per-subscriber lag for this endpoint.
+	 */
+	public SlowConsumerMonitor getSlowConsumerMonitor() {
+		return this.slowConsumerMonitor;
+	}
 }
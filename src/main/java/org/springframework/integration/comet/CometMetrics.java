@@ -0,0 +1,273 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.ServletRequest;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.atmosphere.cpr.DefaultBroadcaster;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Counters and timings for a comet endpoint: suspended resources by transport, subscribe and resume rates,
+ * messages queued and broadcast, fan-out time and bytes written.
+ * Updated on the broadcast path with atomic increments only; exported over JMX and rendered as JSON by {@link CometMetricsRequestHandler}.
+ * @author Jeremy Grelle
+ */
+@ManagedResource(description = "Comet endpoint metrics")
+public class CometMetrics {
+
+	/**
+	 * Request attribute naming the transport a suspended resource subscribed with.
+	 */
+	public static final String TRANSPORT_ATTRIBUTE = CometMetrics.class.getName() + ".TRANSPORT";
+
+	public static final String LONG_POLLING = "long-polling";
+
+	public static final String STREAMING = "streaming";
+
+	public static final String EVENT_STREAM = "event-stream";
+
+	public static final String WEBSOCKET = "websocket";
+
+	private final Rate subscribes = new Rate();
+
+	private final Rate resumes = new Rate();
+
+	private final AtomicLong messagesQueued = new AtomicLong();
+
+	private final AtomicLong messagesBroadcast = new AtomicLong();
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private final AtomicLong writes = new AtomicLong();
+
+	private final TimeHistogram fanOutTime = new TimeHistogram();
+
+	private volatile String broadcasterId;
+
+	private volatile SlowConsumerMonitor slowConsumerMonitor;
+
+	/**
+	 * The id of the broadcaster whose suspended resources are counted.
+	 * Set by the {@link AsyncHttpRequestHandlingMessageAdapter} using these metrics.
+	 */
+	public void setBroadcasterId(String broadcasterId) {
+		this.broadcasterId = broadcasterId;
+	}
+
+	/**
+	 * The monitor whose eviction and degradation counts are reported with these metrics.
+	 */
+	public void setSlowConsumerMonitor(SlowConsumerMonitor slowConsumerMonitor) {
+		this.slowConsumerMonitor = slowConsumerMonitor;
+	}
+
+	// recording
+
+	void subscribed() {
+		subscribes.mark();
+	}
+
+	void resumed() {
+		resumes.mark();
+	}
+
+	void queued() {
+		messagesQueued.incrementAndGet();
+	}
+
+	void broadcast(int messages, long fanOutNanos) {
+		messagesBroadcast.addAndGet(messages);
+		fanOutTime.record(fanOutNanos);
+	}
+
+	void written(int bytes) {
+		writes.incrementAndGet();
+		bytesWritten.addAndGet(bytes);
+	}
+
+	// reporting
+
+	/**
+	 * The number of resources currently suspended, keyed by transport.
+	 * Counted on demand from the broadcaster, so reading this is proportional to the number of subscribers.
+	 */
+	@ManagedAttribute(description = "Suspended resources by transport")
+	public Map<String, Integer> getSuspendedResources() {
+		Map<String, Integer> suspended = new LinkedHashMap<String, Integer>();
+		suspended.put(LONG_POLLING, 0);
+		suspended.put(STREAMING, 0);
+		suspended.put(EVENT_STREAM, 0);
+		suspended.put(WEBSOCKET, 0);
+		String broadcasterId = this.broadcasterId;
+		Broadcaster broadcaster = broadcasterId != null ? BroadcasterFactory.getDefault().lookup(DefaultBroadcaster.class, broadcasterId) : null;
+		if (broadcaster != null) {
+			for (AtmosphereResource<?, ?> resource : broadcaster.getAtmosphereResources()) {
+				Object transport = ((ServletRequest) resource.getRequest()).getAttribute(TRANSPORT_ATTRIBUTE);
+				if (transport != null) {
+					suspended.put((String) transport, suspended.get(transport) + 1);
+				}
+			}
+		}
+		return suspended;
+	}
+
+	@ManagedAttribute(description = "Subscriptions since startup")
+	public long getSubscribeCount() {
+		return subscribes.getCount();
+	}
+
+	@ManagedAttribute(description = "Subscriptions per second over the last minute")
+	public double getSubscribeRate() {
+		return subscribes.getRate();
+	}
+
+	@ManagedAttribute(description = "Resources resumed after a broadcast since startup")
+	public long getResumeCount() {
+		return resumes.getCount();
+	}
+
+	@ManagedAttribute(description = "Resumes per second over the last minute")
+	public double getResumeRate() {
+		return resumes.getRate();
+	}
+
+	@ManagedAttribute(description = "Messages queued for broadcast since startup")
+	public long getMessagesQueued() {
+		return messagesQueued.get();
+	}
+
+	@ManagedAttribute(description = "Messages broadcast since startup")
+	public long getMessagesBroadcast() {
+		return messagesBroadcast.get();
+	}
+
+	@ManagedAttribute(description = "Bytes written to subscribers since startup")
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	@ManagedAttribute(description = "Writes to subscribers since startup")
+	public long getWrites() {
+		return writes.get();
+	}
+
+	@ManagedAttribute(description = "Broadcasts since startup")
+	public long getBroadcastCount() {
+		return fanOutTime.getCount();
+	}
+
+	@ManagedAttribute(description = "Mean time to fan a broadcast out to all subscribers, in milliseconds")
+	public double getFanOutTimeMean() {
+		return fanOutTime.getMean();
+	}
+
+	@ManagedAttribute(description = "99th percentile time to fan a broadcast out to all subscribers, in milliseconds")
+	public double getFanOutTime99thPercentile() {
+		return fanOutTime.percentile(0.99);
+	}
+
+	@ManagedAttribute(description = "Longest time to fan a broadcast out to all subscribers, in milliseconds")
+	public double getFanOutTimeMax() {
+		return fanOutTime.getMax();
+	}
+
+	@ManagedAttribute(description = "Subscribers evicted for being too slow since startup")
+	public long getSlowConsumerEvictions() {
+		SlowConsumerMonitor monitor = this.slowConsumerMonitor;
+		return monitor != null ? monitor.getEvictionCount() : 0;
+	}
+
+	/**
+	 * The fan-out time histogram.
+	 */
+	public TimeHistogram getFanOutTime() {
+		return fanOutTime;
+	}
+
+	/**
+	 * All metrics, suitable for rendering as JSON.
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("suspendedResources", getSuspendedResources());
+		snapshot.put("subscribeCount", getSubscribeCount());
+		snapshot.put("subscribeRate", getSubscribeRate());
+		snapshot.put("resumeCount", getResumeCount());
+		snapshot.put("resumeRate", getResumeRate());
+		snapshot.put("messagesQueued", getMessagesQueued());
+		snapshot.put("messagesBroadcast", getMessagesBroadcast());
+		snapshot.put("writes", getWrites());
+		snapshot.put("bytesWritten", getBytesWritten());
+		snapshot.put("fanOutTime", fanOutTime.summary());
+		snapshot.put("slowConsumerEvictions", getSlowConsumerEvictions());
+		SlowConsumerMonitor monitor = this.slowConsumerMonitor;
+		snapshot.put("slowConsumerDegradations", monitor != null ? monitor.getDegradationCount() : 0);
+		return snapshot;
+	}
+
+	/**
+	 * Counts events, and their rate over the last minute in one second slots.
+	 */
+	private static final class Rate {
+
+		private static final int SLOTS = 60;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLongArray slotCounts = new AtomicLongArray(SLOTS);
+
+		private final AtomicLongArray slotSeconds = new AtomicLongArray(SLOTS);
+
+		public void mark() {
+			count.incrementAndGet();
+			long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+			int slot = (int) (second % SLOTS);
+			long slotSecond = slotSeconds.get(slot);
+			if (slotSecond != second && slotSeconds.compareAndSet(slot, slotSecond, second)) {
+				slotCounts.set(slot, 0);
+			}
+			slotCounts.incrementAndGet(slot);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public double getRate() {
+			long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+			long total = 0;
+			for (int slot = 0; slot < SLOTS; slot++) {
+				if (now - slotSeconds.get(slot) < SLOTS) {
+					total += slotCounts.get(slot);
+				}
+			}
+			return (double) total / SLOTS;
+		}
+
+	}
+
+}
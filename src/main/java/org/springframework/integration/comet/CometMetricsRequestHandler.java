@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Renders {@link CometMetrics} as JSON.
+ * @author Jeremy Grelle
+ */
+public class CometMetricsRequestHandler implements HttpRequestHandler {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final CometMetrics metrics;
+
+	public CometMetricsRequestHandler(CometMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		response.setContentType("application/json");
+		response.setHeader("Cache-Control", "no-cache");
+		objectMapper.writeValue(response.getOutputStream(), metrics.snapshot());
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * HttpMessageConverter writing the same object tree Jackson would write as JSON in a compact, length-prefixed binary form,
+ * negotiated with <code>Accept: application/x-compact</code>.
+ * Strings, including field names, are dictionary encoded: the first occurrence of a string in a message is written literally and
+ * every later occurrence as a reference to it, so field names repeated across the items of a broadcast batch cost a byte or two each.
+ * URLs are split at path boundaries so URLs sharing a prefix, such as the picture URLs of different members, reference the prefix
+ * rather than repeat it.  The dictionary may be {@link #setDictionary(List) seeded} with strings clients know up front.
+ * <p>
+ * Format: a <code>0xC1</code> version byte, the varint CRC32 of the seeded dictionary, then one value, where each value is a tag byte followed by:
+ * <ul>
+ * <li>0 null, 1 false, 2 true - nothing</li>
+ * <li>3 integer - zig-zag varint</li>
+ * <li>4 floating point - 8 byte IEEE 754 double</li>
+ * <li>5 string - varint UTF-8 length and bytes; appended to the dictionary</li>
+ * <li>6 string reference - varint dictionary index</li>
+ * <li>7 concatenated string - a string value for the prefix then one for the suffix; the result is appended to the dictionary</li>
+ * <li>8 array - varint element count, then the elements</li>
+ * <li>9 object - varint field count, then each field's name as a string value followed by its value</li>
+ * </ul>
+ * Varints are unsigned little-endian base 128.  The dictionary starts with the seeded strings and holds at most 4096 entries.
+ * <p>
+ * The converter is write-only: publishes must be sent as JSON or any other readable type, so the server never decodes
+ * client-supplied compact input.
+ * @author Jeremy Grelle
+ */
+public class CompactHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+	public static final MediaType COMPACT = new MediaType("application", "x-compact");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int VERSION = 0xC1;
+
+	private static final int MAX_DICTIONARY_SIZE = 4096;
+
+	private static final int NULL = 0, FALSE = 1, TRUE = 2, INTEGER = 3, DOUBLE = 4, STRING = 5, REFERENCE = 6, CONCATENATION = 7, ARRAY = 8, OBJECT = 9;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private volatile List<String> dictionary = Collections.emptyList();
+
+	private volatile long dictionaryChecksum = checksum(dictionary);
+
+	public CompactHttpMessageConverter() {
+		super(COMPACT);
+	}
+
+	/**
+	 * Strings both ends know in advance, such as field names and common URL prefixes; these are never written literally.
+	 * Clients must seed their decoder with the same strings in the same order.
+	 */
+	public void setDictionary(List<String> dictionary) {
+		this.dictionary = new ArrayList<String>(dictionary);
+		this.dictionaryChecksum = checksum(this.dictionary);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return true;
+	}
+
+	/**
+	 * Always false: the encoding is only written to subscribers, never accepted from clients.
+	 */
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected Object readInternal(Class<? extends Object> clazz, HttpInputMessage inputMessage) throws IOException {
+		throw new HttpMessageNotReadableException("The compact encoding is write-only");
+	}
+
+	@Override
+	protected void writeInternal(Object content, HttpOutputMessage outputMessage) throws IOException {
+		OutputStream out = new BufferedOutputStream(outputMessage.getBody(), 1024);
+		out.write(VERSION);
+		writeVarint(out, dictionaryChecksum);
+		new Encoder(out, dictionary).writeValue(objectMapper.valueToTree(content));
+		out.flush();
+	}
+
+	// internal helpers
+
+	private static long checksum(List<String> dictionary) {
+		CRC32 crc = new CRC32();
+		for (String entry : dictionary) {
+			crc.update(entry.getBytes(UTF_8));
+			crc.update('\n');
+		}
+		return crc.getValue();
+	}
+
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static final class Encoder {
+
+		private final OutputStream out;
+
+		private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+		public Encoder(OutputStream out, List<String> seed) {
+			this.out = out;
+			for (String entry : seed) {
+				add(entry);
+			}
+		}
+
+		public void writeValue(JsonNode node) throws IOException {
+			if (node == null || node.isNull()) {
+				out.write(NULL);
+			} else if (node.isBoolean()) {
+				out.write(node.getBooleanValue() ? TRUE : FALSE);
+			} else if (node.isIntegralNumber() && !node.isBigInteger()) {
+				long value = node.getLongValue();
+				out.write(INTEGER);
+				writeVarint(out, (value << 1) ^ (value >> 63));
+			} else if (node.isNumber()) {
+				long bits = Double.doubleToLongBits(node.getDoubleValue());
+				out.write(DOUBLE);
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					out.write((int) (bits >>> shift));
+				}
+			} else if (node.isArray()) {
+				out.write(ARRAY);
+				writeVarint(out, node.size());
+				for (Iterator<JsonNode> elements = node.getElements(); elements.hasNext();) {
+					writeValue(elements.next());
+				}
+			} else if (node.isObject()) {
+				out.write(OBJECT);
+				writeVarint(out, node.size());
+				for (Iterator<Map.Entry<String, JsonNode>> fields = node.getFields(); fields.hasNext();) {
+					Map.Entry<String, JsonNode> field = fields.next();
+					writeString(field.getKey());
+					writeValue(field.getValue());
+				}
+			} else {
+				writeString(node.getValueAsText());
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			Integer index = dictionary.get(value);
+			if (index != null) {
+				out.write(REFERENCE);
+				writeVarint(out, index);
+				return;
+			}
+			int split = splitPoint(value);
+			if (split > 0) {
+				out.write(CONCATENATION);
+				writeString(value.substring(0, split + 1));
+				writeString(value.substring(split + 1));
+			} else {
+				byte[] bytes = value.getBytes(UTF_8);
+				out.write(STRING);
+				writeVarint(out, bytes.length);
+				out.write(bytes);
+			}
+			add(value);
+		}
+
+		/**
+		 * The index of the path separator to split a URL at: the longest prefix already in the dictionary, else the last path separator.
+		 * Returns -1 for strings that are not URLs or have no path to split.
+		 */
+		private int splitPoint(String value) {
+			int scheme = value.indexOf("://");
+			if (scheme == -1) {
+				return -1;
+			}
+			int last = value.lastIndexOf('/', value.length() - 2);
+			for (int i = last; i > scheme + 2; i = value.lastIndexOf('/', i - 1)) {
+				if (dictionary.containsKey(value.substring(0, i + 1))) {
+					return i;
+				}
+			}
+			return last > scheme + 2 ? last : -1;
+		}
+
+		private void add(String value) {
+			if (dictionary.size() < MAX_DICTIONARY_SIZE && !dictionary.containsKey(value)) {
+				dictionary.put(value, dictionary.size());
+			}
+		}
+
+	}
+
+}
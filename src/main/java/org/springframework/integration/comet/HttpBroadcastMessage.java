@@ -30,10 +30,17 @@ public class HttpBroadcastMessage {
 	
 	private final HeaderMapper<HttpHeaders> headerMapper;
 	
+	private final long sequence;
+	
 	public HttpBroadcastMessage(Message<?> message, boolean extractPayload, HeaderMapper<HttpHeaders> headerMapper) {
+		this(message, extractPayload, headerMapper, 0);
+	}
+
+	public HttpBroadcastMessage(Message<?> message, boolean extractPayload, HeaderMapper<HttpHeaders> headerMapper, long sequence) {
 		this.message = message;
 		this.extractPayload = extractPayload;
 		this.headerMapper = headerMapper;
+		this.sequence = sequence;
 	}
 
 	public boolean isExtractPayload() {
@@ -47,4 +54,12 @@ public class HttpBroadcastMessage {
 	public HeaderMapper<HttpHeaders> getHeaderMapper() {
 		return headerMapper;
 	}
+
+	/**
+	 * The position of this message in the sequence of messages received by the endpoint.
+	 * Used as the event id by the Server-Sent Events transport.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
 }
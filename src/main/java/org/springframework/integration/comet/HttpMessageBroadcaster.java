@@ -25,8 +25,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.cpr.AtmosphereServlet;
@@ -43,12 +41,16 @@ import org.springframework.integration.support.MessageBuilder;
  */
 public class HttpMessageBroadcaster extends DefaultBroadcaster {
 
-	private static final Log log = LogFactory.getLog(HttpMessageBroadcaster.class);
-	
 	private final HttpMessageMapper messageMapper = new HttpMessageMapper();
 	
 	private volatile HeaderMapper<HttpHeaders> headerMapper = new DefaultHttpHeaderMapper();
 	
+	private volatile SlowConsumerMonitor slowConsumerMonitor = new SlowConsumerMonitor();
+	
+	private volatile TopicIndex topicIndex;
+	
+	private volatile CometMetrics metrics;
+	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	protected void broadcast(AtmosphereResource<?, ?> resource, AtmosphereResourceEvent event) { 
@@ -68,8 +70,15 @@ public class HttpMessageBroadcaster extends DefaultBroadcaster {
 			return;
 		}
 		
-		Message<?> broadcastMessage = mergeMessagesForBroadcast(messages);
 		HttpServletRequest request = (HttpServletRequest) resource.getRequest();
+		Long replayedSequence = (Long) request.getAttribute(ServerSentEvents.REPLAYED_SEQUENCE_ATTRIBUTE);
+		if (replayedSequence != null) {
+			messages = notReplayed(messages, replayedSequence);
+			if (messages.isEmpty()) {
+				return;
+			}
+		}
+		Message<?> broadcastMessage = mergeMessagesForBroadcast(messages);
 		HttpServletResponse response = (HttpServletResponse) resource.getResponse();
 		try {
 			response.getOutputStream();
@@ -80,23 +89,109 @@ public class HttpMessageBroadcaster extends DefaultBroadcaster {
 		
 		HttpMessageBroadcasterResponseWrapper responseWrapper = new HttpMessageBroadcasterResponseWrapper(response); 
 		messageMapper.writeMessage(request, responseWrapper, broadcastMessage, true, headerMapper);
+		byte[] content = responseWrapper.toByteArray();
+		if (ServerSentEvents.isEventStream(request)) {
+			content = ServerSentEvents.frame(lastSequence(messages), content);
+		}
+		SlowConsumerMonitor monitor = this.slowConsumerMonitor;
+		monitor.beginWrite(resource, content.length);
+		long writeStart = System.nanoTime();
 		try {
-			response.getOutputStream().write(responseWrapper.toByteArray());
-			if (log.isInfoEnabled()) {
-				log.info("Wrote "+responseWrapper.toByteArray().length+" bytes to response.");
-			}
+			response.getOutputStream().write(content);
 			response.getOutputStream().flush();
 		} catch (IOException ex) {
+			monitor.abortWrite(resource, content.length);
 			throw new MessagingException("Failed to write async Message to browser client.", ex);
 		}
+		boolean keptUp = monitor.endWrite(resource, content.length, System.nanoTime() - writeStart);
+		CometMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.written(content.length);
+		}
 		
 		Boolean resumeOnBroadcast = (Boolean) request.getAttribute(AtmosphereServlet.RESUME_ON_BROADCAST);
         if (resumeOnBroadcast != null && resumeOnBroadcast) {
+        	monitor.resumed(resource);
+        	if (metrics != null) {
+        		metrics.resumed();
+        	}
+        	unregisterTopics(resource);
             resource.resume();
+        } else if (!keptUp) {
+        	handleSlowConsumer(resource, request, monitor);
         }
 	}
 	
-	private Message<?> mergeMessagesForBroadcast(List<HttpBroadcastMessage> messages) {
+	/**
+	 * Sets the monitor used to detect subscribers that cannot keep up with broadcasts.
+	 * Normally shared by all broadcasters of an {@link AsyncHttpRequestHandlingMessageAdapter}.
+	 */
+	public void setSlowConsumerMonitor(SlowConsumerMonitor slowConsumerMonitor) {
+		this.slowConsumerMonitor = slowConsumerMonitor;
+	}
+	
+	/**
+	 * Sets the index of topics the subscribers of this broadcaster registered for.
+	 * Resources removed from this broadcaster are removed from the index.
+	 */
+	public void setTopicIndex(TopicIndex topicIndex) {
+		this.topicIndex = topicIndex;
+	}
+	
+	/**
+	 * Sets the metrics that writes and resumes are recorded in.
+	 */
+	public void setMetrics(CometMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public AtmosphereResource<?, ?> removeAtmosphereResource(AtmosphereResource<?, ?> resource) {
+		unregisterTopics(resource);
+		return super.removeAtmosphereResource(resource);
+	}
+	
+	private void unregisterTopics(AtmosphereResource<?, ?> resource) {
+		TopicIndex topicIndex = this.topicIndex;
+		if (topicIndex != null) {
+			topicIndex.unregister(resource);
+		}
+	}
+	
+	private void handleSlowConsumer(AtmosphereResource<?, ?> resource, HttpServletRequest request, SlowConsumerMonitor monitor) {
+		if (monitor.getPolicy() == SlowConsumerPolicy.LONG_POLL) {
+			request.setAttribute(AtmosphereServlet.RESUME_ON_BROADCAST, Boolean.TRUE);
+			monitor.degraded(resource);
+		} else {
+			evict(resource, monitor);
+		}
+	}
+
+	private void evict(AtmosphereResource<?, ?> resource, SlowConsumerMonitor monitor) {
+		removeAtmosphereResource(resource);
+		monitor.evicted(resource);
+		resource.resume();
+	}
+	
+	private List<HttpBroadcastMessage> notReplayed(List<HttpBroadcastMessage> messages, long replayedSequence) {
+		List<HttpBroadcastMessage> notReplayed = new ArrayList<HttpBroadcastMessage>(messages.size());
+		for (HttpBroadcastMessage message : messages) {
+			if (message.getSequence() > replayedSequence) {
+				notReplayed.add(message);
+			}
+		}
+		return notReplayed;
+	}
+	
+	private long lastSequence(List<HttpBroadcastMessage> messages) {
+		long sequence = 0;
+		for (HttpBroadcastMessage message : messages) {
+			sequence = Math.max(sequence, message.getSequence());
+		}
+		return sequence;
+	}
+	
+	static Message<?> mergeMessagesForBroadcast(List<HttpBroadcastMessage> messages) {
 		List<Object> payloads = new ArrayList<Object>();
 		for(HttpBroadcastMessage message : messages) {
 			payloads.add(message.getMessage().getPayload());
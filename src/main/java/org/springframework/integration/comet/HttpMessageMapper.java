@@ -15,9 +15,13 @@
  */
 package org.springframework.integration.comet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -26,6 +30,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
@@ -43,9 +48,9 @@ import org.springframework.integration.http.MultipartAwareFormHttpMessageConvert
 import org.springframework.integration.http.SerializingHttpMessageConverter;
 import org.springframework.integration.mapping.HeaderMapper;
 import org.springframework.util.ClassUtils;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Jeremy Grelle
@@ -68,14 +73,23 @@ public class HttpMessageMapper {
 			"com.sun.syndication.feed.WireFeed",
 			HttpMessageMapper.class.getClassLoader());
 
+	private static final String DEFAULT_ACCEPT = "application/json";
+
+	private static final int MAX_NEGOTIATED_CONVERTERS = 256;
+
 	private volatile List<HttpMessageConverter<?>> messageConverters = new ArrayList<HttpMessageConverter<?>>();
 	
+	private final CompactHttpMessageConverter compactConverter = jacksonPresent ? new CompactHttpMessageConverter() : null;
+	
+	private final ConcurrentMap<NegotiationKey, NegotiatedConverter> negotiatedConverters = new ConcurrentHashMap<NegotiationKey, NegotiatedConverter>();
+	
 	@SuppressWarnings("unchecked")
 	public HttpMessageMapper() {
 		this.messageConverters.add(new MultipartAwareFormHttpMessageConverter());
 		this.messageConverters.add(new SerializingHttpMessageConverter());
 		if (jacksonPresent) {
 			this.messageConverters.add(new MappingJacksonHttpMessageConverter());
+			this.messageConverters.add(this.compactConverter);
 		}
 		this.messageConverters.add(new ByteArrayHttpMessageConverter());
 		this.messageConverters.add(new StringHttpMessageConverter());
@@ -91,6 +105,16 @@ public class HttpMessageMapper {
 		}
 	}
 	
+	/**
+	 * Seed the dictionary of the compact binary encoding with strings clients know up front.
+	 * @see CompactHttpMessageConverter#setDictionary(List)
+	 */
+	public void setCompactDictionary(List<String> dictionary) {
+		if (this.compactConverter != null) {
+			this.compactConverter.setDictionary(dictionary);
+		}
+	}
+	
 	public Message<?> readMessage(HttpServletRequest servletRequest, Class<?> expectedType, HeaderMapper<HttpHeaders> headerMapper) {
 		ServletServerHttpRequest request = new ServletServerHttpRequest(servletRequest);
 		Object payload = null;
@@ -109,34 +133,117 @@ public class HttpMessageMapper {
 				.build();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void writeMessage(HttpServletRequest servletRequest, HttpServletResponse servletResponse, Message<?> message, boolean extractPayload, HeaderMapper<HttpHeaders> headerMapper) {
-		ServletServerHttpRequest request = new ServletServerHttpRequest(servletRequest);
+		NegotiatedConverter negotiated = (NegotiatedConverter) servletRequest.getAttribute(NegotiatedConverter.NEGOTIATED_CONVERTER_ATTRIBUTE);
+		if (negotiated == null) {
+			Class<?> contentType = extractPayload ? message.getPayload().getClass() : message.getClass();
+			negotiated = negotiate(servletRequest.getHeader("Accept"), contentType);
+			if (negotiated == null) {
+				throw new MessagingException("Could not convert reply: no suitable HttpMessageConverter found for type [" +
+						contentType.getName() + "] and accept types [" + acceptTypes(servletRequest.getHeader("Accept")) + "]");
+			}
+		}
+		writeMessage(servletResponse, message, extractPayload, headerMapper, negotiated);
+	}
+
+	/**
+	 * Write the message with a converter that was already negotiated for the subscriber; no negotiation takes place.
+	 */
+	public void writeMessage(HttpServletResponse servletResponse, Message<?> message, boolean extractPayload, HeaderMapper<HttpHeaders> headerMapper, NegotiatedConverter negotiated) {
 		ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
 		Object content = message;
 		if(extractPayload) {
 			headerMapper.fromHeaders(message.getHeaders(), response.getHeaders());
 			content = message.getPayload();
 		}
-		for (HttpMessageConverter converter : this.getMessageConverters()) {
-			if (CollectionUtils.isEmpty(request.getHeaders().getAccept())) {
-				//TODO - This is needed because the headers never get set with WebSocket.  Make this configurable.
-				request.getHeaders().set("Accept", "application/json");
+		try {
+			negotiated.getConverter().write(content, negotiated.getMediaType(), response);
+		} catch (Exception e) {
+			throw new MessagingException("Could not convert reply: failed to convert response of type [" +
+					content.getClass().getName() + "] to accepted type [" + negotiated.getMediaType() + "]");
+		}
+	}
+
+	/**
+	 * Render the content with a negotiated converter into a byte array rather than a response.
+	 */
+	public byte[] writeContent(Object content, NegotiatedConverter negotiated) {
+		final HttpHeaders headers = new HttpHeaders();
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		HttpOutputMessage outputMessage = new HttpOutputMessage() {
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+			public OutputStream getBody() {
+				return body;
+			}
+		};
+		try {
+			negotiated.getConverter().write(content, negotiated.getMediaType(), outputMessage);
+		} catch (Exception e) {
+			throw new MessagingException("Could not convert reply: failed to convert response of type [" +
+					content.getClass().getName() + "] to accepted type [" + negotiated.getMediaType() + "]");
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Choose the converter and media type for writing content of the given type to a client that sent the given Accept header.
+	 * Results are cached by Accept header value and content type, so a subscriber population sharing a handful of distinct Accept headers
+	 * is negotiated a handful of times.
+	 * Returns null if no configured converter can write the content type in any accepted media type.
+	 * @param acceptHeader the raw Accept header value; application/json is assumed if empty
+	 * @param contentType the type of the content to be written
+	 */
+	public NegotiatedConverter negotiate(String acceptHeader, Class<?> contentType) {
+		NegotiationKey key = new NegotiationKey(acceptHeader, contentType);
+		NegotiatedConverter negotiated = this.negotiatedConverters.get(key);
+		if (negotiated == null) {
+			negotiated = doNegotiate(acceptTypes(acceptHeader), contentType);
+			if (negotiated != null && this.negotiatedConverters.size() < MAX_NEGOTIATED_CONVERTERS) {
+				this.negotiatedConverters.putIfAbsent(key, negotiated);
 			}
-			for (MediaType acceptType : request.getHeaders().getAccept()) {
-				if (converter.canWrite(content.getClass(), acceptType)) {
-					try {
-						converter.write(content, acceptType, response);
-					} catch (Exception e) {
-						throw new MessagingException("Could not convert reply: failed to convert response of type [" +
-								content.getClass().getName() + "] to accepted type [" + acceptType + "]");
+		}
+		return negotiated;
+	}
+	
+	private NegotiatedConverter doNegotiate(List<MediaType> acceptTypes, Class<?> contentType) {
+		for (HttpMessageConverter<?> converter : this.getMessageConverters()) {
+			for (MediaType acceptType : acceptTypes) {
+				if (converter.canWrite(contentType, acceptType)) {
+					NegotiatedConverter negotiated = new NegotiatedConverter(converter, acceptType, concreteContentType(converter, acceptType));
+					if (log.isDebugEnabled()) {
+						log.debug("Negotiated " + negotiated + " for type [" + contentType.getName() + "] and accept types " + acceptTypes);
 					}
-					return;
+					return negotiated;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Guess the concrete media type the converter will write for the accepted type, preferring the converter's "default" type for wildcards.
+	 */
+	private MediaType concreteContentType(HttpMessageConverter<?> converter, MediaType acceptType) {
+		for (MediaType supportedMediaType : converter.getSupportedMediaTypes()) {
+			if (!MediaType.ALL.equals(supportedMediaType) && supportedMediaType.isCompatibleWith(acceptType)) {
+				if (!supportedMediaType.isWildcardType() && !supportedMediaType.isWildcardSubtype()) {
+					return supportedMediaType;
+				}
+				MediaType defaultType = converter.getSupportedMediaTypes().get(0);
+				if (!defaultType.isWildcardType() && !defaultType.isWildcardSubtype()) {
+					return defaultType;
 				}
+				return null;
 			}
 		}
-		throw new MessagingException("Could not convert reply: no suitable HttpMessageConverter found for type [" +
-				content.getClass().getName() + "] and accept types [" + request.getHeaders().getAccept() + "]");
+		return null;
+	}
+
+	private List<MediaType> acceptTypes(String acceptHeader) {
+		//TODO - The default is needed because the headers never get set with WebSocket.  Make this configurable.
+		return MediaType.parseMediaTypes(StringUtils.hasText(acceptHeader) ? acceptHeader : DEFAULT_ACCEPT);
 	}
 	
 	/**
@@ -190,4 +297,29 @@ public class HttpMessageMapper {
 		return this.messageConverters;
 	}
 
+	private static final class NegotiationKey {
+
+		private final String acceptHeader;
+
+		private final Class<?> contentType;
+
+		public NegotiationKey(String acceptHeader, Class<?> contentType) {
+			this.acceptHeader = acceptHeader != null ? acceptHeader : "";
+			this.contentType = contentType;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof NegotiationKey)) {
+				return false;
+			}
+			NegotiationKey other = (NegotiationKey) o;
+			return acceptHeader.equals(other.acceptHeader) && contentType.equals(other.contentType);
+		}
+
+		public int hashCode() {
+			return acceptHeader.hashCode() * 29 + contentType.hashCode();
+		}
+
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds the most recently broadcast messages so that reconnecting event stream subscribers can be sent what they missed.
+ * @author Jeremy Grelle
+ * @see ServerSentEvents#lastEventId(javax.servlet.http.HttpServletRequest)
+ */
+class MessageReplayBuffer {
+
+	private final LinkedList<HttpBroadcastMessage> messages = new LinkedList<HttpBroadcastMessage>();
+
+	private volatile int capacity;
+
+	public MessageReplayBuffer(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Add a batch of broadcast messages, evicting the oldest messages if the buffer is full.
+	 */
+	public synchronized void add(List<HttpBroadcastMessage> broadcastMessages) {
+		messages.addAll(broadcastMessages);
+		while (messages.size() > capacity) {
+			messages.removeFirst();
+		}
+	}
+
+	/**
+	 * The buffered messages with a sequence number greater than the one given that a subscriber to the topics should receive, oldest first.
+	 * @see TopicIndex#matches(Set, HttpBroadcastMessage)
+	 */
+	public synchronized List<HttpBroadcastMessage> since(long sequence, Set<String> topics) {
+		List<HttpBroadcastMessage> missed = new ArrayList<HttpBroadcastMessage>();
+		for (HttpBroadcastMessage message : messages) {
+			if (message.getSequence() > sequence && TopicIndex.matches(topics, message)) {
+				missed.add(message);
+			}
+		}
+		return missed;
+	}
+
+}
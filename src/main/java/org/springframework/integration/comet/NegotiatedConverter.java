@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+
+/**
+ * The outcome of content negotiation for a subscriber: the converter to write with and the media type to write.
+ * Resolved once per subscription by the {@link HttpMessageMapper} and attached to the suspended request,
+ * so writing a broadcast to the subscriber involves no further negotiation.
+ * @author Jeremy Grelle
+ */
+public class NegotiatedConverter {
+
+	/**
+	 * The name of the request attribute the negotiated converter of a suspended subscriber is stored under.
+	 */
+	public static final String NEGOTIATED_CONVERTER_ATTRIBUTE = NegotiatedConverter.class.getName();
+
+	private final HttpMessageConverter<Object> converter;
+
+	private final MediaType mediaType;
+
+	private final MediaType contentType;
+
+	@SuppressWarnings("unchecked")
+	public NegotiatedConverter(HttpMessageConverter<?> converter, MediaType mediaType, MediaType contentType) {
+		this.converter = (HttpMessageConverter<Object>) converter;
+		this.mediaType = mediaType;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * The converter chosen to write messages.
+	 */
+	public HttpMessageConverter<Object> getConverter() {
+		return converter;
+	}
+
+	/**
+	 * The media type to pass to the converter when writing; concrete if the converter declares a concrete type compatible with the request.
+	 */
+	public MediaType getMediaType() {
+		return contentType != null ? contentType : mediaType;
+	}
+
+	/**
+	 * The concrete Content-Type to send to the subscriber, or null if none could be determined.
+	 */
+	public MediaType getContentType() {
+		return contentType;
+	}
+
+	public String toString() {
+		return converter.getClass().getSimpleName() + " [" + getMediaType() + "]";
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Enumeration;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+
+/**
+ * Static helper for the Server-Sent Events (text/event-stream) transport.
+ * An event stream subscriber is held open like a streaming subscriber, but each broadcast is framed as an event carrying a sequence id.
+ * Browsers reconnect automatically and send the id of the last event they saw in the Last-Event-ID header, so missed broadcasts can be replayed.
+ * Event ids are sequence numbers local to the node that issued them, so a clustered deployment must route a reconnecting client back
+ * to the same node (sticky sessions) for the replay to be meaningful.
+ * @author Jeremy Grelle
+ */
+public final class ServerSentEvents {
+
+	/**
+	 * The media type clients send in the Accept header to request an event stream.
+	 */
+	public static final MediaType EVENT_STREAM = new MediaType("text", "event-stream");
+
+	/**
+	 * The Content-Type written to event stream subscribers.
+	 */
+	public static final String CONTENT_TYPE = "text/event-stream;charset=UTF-8";
+
+	/**
+	 * The media type the data of each event is written in.
+	 */
+	public static final String DATA_TYPE = "application/json";
+
+	/**
+	 * Request attribute holding the sequence of the last message replayed to a reconnecting subscriber; broadcasts of messages up to it are skipped.
+	 */
+	public static final String REPLAYED_SEQUENCE_ATTRIBUTE = ServerSentEvents.class.getName() + ".REPLAYED_SEQUENCE";
+
+	/**
+	 * True if the client asked for an event stream.
+	 */
+	public static boolean isEventStream(HttpServletRequest request) {
+		Enumeration<?> accepts = request.getHeaders("Accept");
+		while (accepts.hasMoreElements()) {
+			String accept = (String) accepts.nextElement();
+			if (accept != null && accept.indexOf(EVENT_STREAM.toString()) != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The id of the last event the reconnecting client received; -1 if the client is not reconnecting.
+	 * Read from the Last-Event-ID header, falling back to a lastEventId parameter for polyfills that cannot set headers.
+	 */
+	public static long lastEventId(HttpServletRequest request) {
+		String lastEventId = request.getHeader("Last-Event-ID");
+		if (!StringUtils.hasText(lastEventId)) {
+			lastEventId = request.getParameter("lastEventId");
+		}
+		if (!StringUtils.hasText(lastEventId)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(lastEventId.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Frame the data as an event with the given id.
+	 * Each line of the data becomes its own data field, as the event stream format requires.
+	 */
+	public static byte[] frame(long id, byte[] data) {
+		ByteArrayOutputStream event = new ByteArrayOutputStream(data.length + 32);
+		writeAscii(event, "id: " + id + "\n");
+		writeAscii(event, "data: ");
+		for (int i = 0; i < data.length; i++) {
+			byte b = data[i];
+			if (b == '\r') {
+				continue;
+			}
+			event.write(b);
+			if (b == '\n') {
+				writeAscii(event, "data: ");
+			}
+		}
+		writeAscii(event, "\n\n");
+		return event.toByteArray();
+	}
+
+	/**
+	 * A field telling the client how long to wait before reconnecting, in milliseconds.
+	 */
+	public static byte[] retry(long millis) {
+		ByteArrayOutputStream field = new ByteArrayOutputStream(16);
+		writeAscii(field, "retry: " + millis + "\n\n");
+		return field.toByteArray();
+	}
+
+	private static void writeAscii(ByteArrayOutputStream out, String string) {
+		for (int i = 0; i < string.length(); i++) {
+			out.write(string.charAt(i));
+		}
+	}
+
+	private ServerSentEvents() {
+	}
+
+}
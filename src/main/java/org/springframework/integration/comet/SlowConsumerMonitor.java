@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.atmosphere.cpr.AtmosphereResource;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Detects subscribers that cannot keep up with the broadcast.
+ * Times every write and flush to a subscriber and tracks the bytes of the write in progress.
+ * A subscriber is slow once a single write takes longer than the {@link #setMaxWriteTime(long) maximum write time}.
+ * The {@link HttpMessageBroadcaster} then applies the configured {@link SlowConsumerPolicy} so that one stalled client does not delay delivery to everyone behind it.
+ * Statistics are held with weak keys so they go away with the resources they describe.
+ * @author Jeremy Grelle
+ */
+public class SlowConsumerMonitor {
+
+	private static final Log log = LogFactory.getLog(SlowConsumerMonitor.class);
+
+	private final ConcurrentMap<AtmosphereResource<?, ?>, SubscriberStatistics> subscribers = new MapMaker().weakKeys().makeMap();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong degradations = new AtomicLong();
+
+	private volatile long maxWriteTimeNanos = TimeUnit.SECONDS.toNanos(5);
+
+	private volatile SlowConsumerPolicy policy = SlowConsumerPolicy.DISCONNECT;
+
+	/**
+	 * The longest a single write and flush to a subscriber may take, in milliseconds, before the subscriber is considered slow.
+	 * Defaults to 5 seconds.
+	 */
+	public void setMaxWriteTime(long maxWriteTime) {
+		this.maxWriteTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxWriteTime);
+	}
+
+	/**
+	 * What to do with slow subscribers.
+	 * Defaults to {@link SlowConsumerPolicy#DISCONNECT}.
+	 */
+	public void setPolicy(SlowConsumerPolicy policy) {
+		this.policy = policy;
+	}
+
+	public SlowConsumerPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * The number of subscribers disconnected for being too slow.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * The number of subscribers moved to long-polling for being too slow.
+	 */
+	public long getDegradationCount() {
+		return degradations.get();
+	}
+
+	/**
+	 * The statistics of a suspended subscriber; null if nothing has been written to the subscriber yet.
+	 */
+	public SubscriberStatistics getStatistics(AtmosphereResource<?, ?> resource) {
+		return subscribers.get(resource);
+	}
+
+	/**
+	 * A snapshot of the lag of every subscriber being tracked, in milliseconds, keyed by the subscriber's remote address.
+	 * Subscribers connecting from the same address are reported with the largest lag among them.
+	 */
+	public Map<String, Long> getSubscriberLag() {
+		Map<String, Long> lag = new HashMap<String, Long>();
+		for (Map.Entry<AtmosphereResource<?, ?>, SubscriberStatistics> entry : subscribers.entrySet()) {
+			String address = remoteAddress(entry.getKey());
+			Long current = lag.get(address);
+			long lastWriteTime = entry.getValue().getLastWriteTime();
+			if (current == null || current < lastWriteTime) {
+				lag.put(address, lastWriteTime);
+			}
+		}
+		return Collections.unmodifiableMap(lag);
+	}
+
+	/**
+	 * Called before writing a broadcast of the given size to the subscriber.
+	 */
+	public void beginWrite(AtmosphereResource<?, ?> resource, int bytes) {
+		statisticsFor(resource).beginWrite(bytes);
+	}
+
+	/**
+	 * Called once the write and flush started by {@link #beginWrite(AtmosphereResource, int)} completes.
+	 * Returns false if the write took longer than allowed.
+	 */
+	public boolean endWrite(AtmosphereResource<?, ?> resource, int bytes, long elapsedNanos) {
+		statisticsFor(resource).endWrite(bytes, elapsedNanos);
+		return elapsedNanos <= maxWriteTimeNanos;
+	}
+
+	/**
+	 * Called if the write started by {@link #beginWrite(AtmosphereResource, int)} failed.
+	 */
+	public void abortWrite(AtmosphereResource<?, ?> resource, int bytes) {
+		statisticsFor(resource).abortWrite(bytes);
+	}
+
+	/**
+	 * Record that the subscriber was disconnected and stop tracking it.
+	 */
+	public void evicted(AtmosphereResource<?, ?> resource) {
+		SubscriberStatistics statistics = subscribers.remove(resource);
+		evictions.incrementAndGet();
+		if (log.isWarnEnabled()) {
+			log.warn("Disconnected slow subscriber at " + remoteAddress(resource) + (statistics != null ? " after a " + statistics.getLastWriteTime() + "ms write" : ""));
+		}
+	}
+
+	/**
+	 * Record that the subscriber was moved to long-polling.
+	 */
+	public void degraded(AtmosphereResource<?, ?> resource) {
+		SubscriberStatistics statistics = statisticsFor(resource);
+		if (!statistics.isDegraded()) {
+			statistics.degrade();
+			degradations.incrementAndGet();
+			if (log.isWarnEnabled()) {
+				log.warn("Moved slow subscriber at " + remoteAddress(resource) + " to long-polling after a " + statistics.getLastWriteTime() + "ms write");
+			}
+		}
+	}
+
+	/**
+	 * Stop tracking a subscriber whose response has been resumed.
+	 */
+	public void resumed(AtmosphereResource<?, ?> resource) {
+		subscribers.remove(resource);
+	}
+
+	// internal helpers
+
+	private SubscriberStatistics statisticsFor(AtmosphereResource<?, ?> resource) {
+		SubscriberStatistics statistics = subscribers.get(resource);
+		if (statistics == null) {
+			statistics = new SubscriberStatistics();
+			SubscriberStatistics existing = subscribers.putIfAbsent(resource, statistics);
+			if (existing != null) {
+				statistics = existing;
+			}
+		}
+		return statistics;
+	}
+
+	private String remoteAddress(AtmosphereResource<?, ?> resource) {
+		Object request = resource.getRequest();
+		if (request instanceof ServletRequest) {
+			return ((ServletRequest) request).getRemoteAddr();
+		}
+		return String.valueOf(request);
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+/**
+ * What to do with a subscriber that cannot keep up with the rate of broadcasts.
+ * @author Jeremy Grelle
+ * @see SlowConsumerMonitor
+ */
+public enum SlowConsumerPolicy {
+
+	/**
+	 * Resume the suspended response and stop broadcasting to it.
+	 * Completing the response tells the client to reconnect.
+	 */
+	DISCONNECT,
+
+	/**
+	 * Keep the subscriber, but resume its response after the next broadcast, as if it had subscribed with long-polling.
+	 * The client then pays for a new request per batch instead of stalling a held-open stream.
+	 */
+	LONG_POLL
+
+}
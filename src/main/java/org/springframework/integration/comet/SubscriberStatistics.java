@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write statistics for a single suspended subscriber.
+ * Updated by the broadcaster thread around each write and flush to the subscriber's response.
+ * @author Jeremy Grelle
+ */
+public class SubscriberStatistics {
+
+	private final AtomicLong outstandingBytes = new AtomicLong();
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private final AtomicLong messagesWritten = new AtomicLong();
+
+	private volatile long lastWriteNanos;
+
+	private volatile long maxWriteNanos;
+
+	private volatile boolean degraded;
+
+	/**
+	 * The number of bytes being written and flushed to the subscriber's response.
+	 * Greater than zero only while a write to the subscriber is in progress; broadcasts are written synchronously.
+	 */
+	public long getOutstandingBytes() {
+		return outstandingBytes.get();
+	}
+
+	/**
+	 * The total number of bytes flushed to the subscriber.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * The number of broadcasts flushed to the subscriber.
+	 */
+	public long getMessagesWritten() {
+		return messagesWritten.get();
+	}
+
+	/**
+	 * How long the last write and flush to the subscriber took, in milliseconds.
+	 * This is the subscriber's current lag behind the broadcast.
+	 */
+	public long getLastWriteTime() {
+		return lastWriteNanos / 1000000;
+	}
+
+	/**
+	 * The longest write and flush to the subscriber so far, in milliseconds.
+	 */
+	public long getMaxWriteTime() {
+		return maxWriteNanos / 1000000;
+	}
+
+	/**
+	 * True if the subscriber has been moved to long-polling because it could not keep up.
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	// package private methods used by SlowConsumerMonitor
+
+	void beginWrite(int bytes) {
+		outstandingBytes.addAndGet(bytes);
+	}
+
+	void endWrite(int bytes, long elapsedNanos) {
+		outstandingBytes.addAndGet(-bytes);
+		bytesWritten.addAndGet(bytes);
+		messagesWritten.incrementAndGet();
+		lastWriteNanos = elapsedNanos;
+		if (elapsedNanos > maxWriteNanos) {
+			maxWriteNanos = elapsedNanos;
+		}
+	}
+
+	void abortWrite(int bytes) {
+		outstandingBytes.addAndGet(-bytes);
+	}
+
+	void degrade() {
+		degraded = true;
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets, from 1 microsecond up to about 17 seconds.
+ * Recording is a couple of atomic increments, so it is cheap enough for every broadcast.
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ * @author Jeremy Grelle
+ */
+public class TimeHistogram {
+
+	private static final int BUCKETS = 26;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record a duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(nanos, 0) / 1000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		counts.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * The mean duration in milliseconds.
+	 */
+	public double getMean() {
+		long count = this.count.get();
+		return count > 0 ? totalNanos.get() / 1000000.0 / count : 0;
+	}
+
+	/**
+	 * The longest duration in milliseconds.
+	 */
+	public double getMax() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * The duration in milliseconds below which the given fraction of durations fall.
+	 */
+	public double percentile(double fraction) {
+		long count = this.count.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * The number of durations in each bucket, keyed by the bucket's upper bound in milliseconds; the last bucket is unbounded.
+	 */
+	public Map<String, Long> getBuckets() {
+		Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucketCount = counts.get(i);
+			if (bucketCount > 0) {
+				buckets.put(i < BUCKETS - 1 ? String.valueOf(upperBound(i)) : "+Inf", bucketCount);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * A summary of count, mean, 50th, 90th and 99th percentile and max, suitable for rendering as JSON.
+	 */
+	public Map<String, Object> summary() {
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("count", getCount());
+		summary.put("mean", getMean());
+		summary.put("p50", percentile(0.50));
+		summary.put("p90", percentile(0.90));
+		summary.put("p99", percentile(0.99));
+		summary.put("max", getMax());
+		summary.put("buckets", getBuckets());
+		return summary;
+	}
+
+	// bucket i holds durations under 2^i microseconds
+	private double upperBound(int bucket) {
+		return (1L << bucket) / 1000.0;
+	}
+
+}
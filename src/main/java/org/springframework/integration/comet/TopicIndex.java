@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+
+/**
+ * Routes broadcasts only to the subscribers interested in them.
+ * A subscriber may register a set of topics when it subscribes, for example <code>event:12</code> or <code>member:3</code>;
+ * it then only receives messages whose {@link AsyncHttpRequestHandlingMessageAdapter#TOPICS_HEADER topics header} names one of those topics.
+ * Subscribers that register no topics receive every message.
+ * Routing looks each message's topics up in a topic to subscriber set index,
+ * so the cost of a broadcast is proportional to the number of interested subscribers rather than the number of connections.
+ * Subscribers are removed from the index when their resource is removed from the {@link HttpMessageBroadcaster}.
+ * @author Jeremy Grelle
+ */
+public class TopicIndex {
+
+	private final ConcurrentMap<AtmosphereResource<?, ?>, Set<String>> subscriptions = new ConcurrentHashMap<AtmosphereResource<?, ?>, Set<String>>();
+
+	private final Set<AtmosphereResource<?, ?>> unfiltered = concurrentSet();
+
+	private final ConcurrentMap<String, Set<AtmosphereResource<?, ?>>> subscribersByTopic = new ConcurrentHashMap<String, Set<AtmosphereResource<?, ?>>>();
+
+	/**
+	 * Build a topic name, such as <code>event:12</code>, from a kind of topic and a value.
+	 */
+	public static String topic(String kind, Object value) {
+		return kind + ":" + value;
+	}
+
+	/**
+	 * The topics a message is about, as set in its topics header; empty if the message carries no topics.
+	 */
+	public static Collection<?> topicsOf(HttpBroadcastMessage message) {
+		Object topics = message.getMessage().getHeaders().get(AsyncHttpRequestHandlingMessageAdapter.TOPICS_HEADER);
+		if (topics instanceof Collection) {
+			return (Collection<?>) topics;
+		} else if (topics != null) {
+			return Collections.singleton(topics);
+		}
+		return Collections.emptySet();
+	}
+
+	/**
+	 * True if a subscriber registered with the given topics should receive the message.
+	 */
+	public static boolean matches(Set<String> topics, HttpBroadcastMessage message) {
+		if (topics.isEmpty()) {
+			return true;
+		}
+		for (Object topic : topicsOf(message)) {
+			if (topics.contains(topic)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Register a subscriber with the topics it is interested in; an empty set subscribes it to everything.
+	 * Replaces any earlier registration of the same subscriber.
+	 */
+	public void register(AtmosphereResource<?, ?> resource, Set<String> topics) {
+		unregister(resource);
+		subscriptions.put(resource, topics);
+		if (topics.isEmpty()) {
+			unfiltered.add(resource);
+			return;
+		}
+		for (String topic : topics) {
+			addSubscriber(topic, resource);
+		}
+	}
+
+	/**
+	 * Remove a subscriber from the index.
+	 */
+	public void unregister(AtmosphereResource<?, ?> resource) {
+		Set<String> topics = subscriptions.remove(resource);
+		if (topics == null) {
+			return;
+		}
+		unfiltered.remove(resource);
+		for (String topic : topics) {
+			Set<AtmosphereResource<?, ?>> subscribers = subscribersByTopic.get(topic);
+			if (subscribers != null) {
+				subscribers.remove(resource);
+				if (subscribers.isEmpty()) {
+					subscribersByTopic.remove(topic, subscribers);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The number of subscribers registered with at least one topic.
+	 */
+	public int getFilteredSubscriberCount() {
+		return subscriptions.size() - unfiltered.size();
+	}
+
+	/**
+	 * The number of topics with at least one subscriber.
+	 */
+	public int getTopicCount() {
+		return subscribersByTopic.size();
+	}
+
+	/**
+	 * Broadcast a batch of messages through the broadcaster, delivering to each subscriber only the messages it is interested in.
+	 * Subscribers receiving the same messages are sent them in a single broadcast.
+	 * @return the futures of the broadcasts that were issued
+	 */
+	public List<Future<Object>> broadcast(Broadcaster broadcaster, List<HttpBroadcastMessage> messages) {
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		if (subscribersByTopic.isEmpty()) {
+			futures.add(broadcaster.broadcast(messages));
+			return futures;
+		}
+		if (!unfiltered.isEmpty()) {
+			futures.add(broadcaster.broadcast(messages, new LinkedHashSet<AtmosphereResource<?, ?>>(unfiltered)));
+		}
+		Map<AtmosphereResource<?, ?>, List<HttpBroadcastMessage>> deliveries = new HashMap<AtmosphereResource<?, ?>, List<HttpBroadcastMessage>>();
+		for (HttpBroadcastMessage message : messages) {
+			for (Object topic : topicsOf(message)) {
+				Set<AtmosphereResource<?, ?>> subscribers = subscribersByTopic.get(topic);
+				if (subscribers == null) {
+					continue;
+				}
+				for (AtmosphereResource<?, ?> subscriber : subscribers) {
+					List<HttpBroadcastMessage> delivery = deliveries.get(subscriber);
+					if (delivery == null) {
+						delivery = new ArrayList<HttpBroadcastMessage>(messages.size());
+						deliveries.put(subscriber, delivery);
+					}
+					// a message about several topics is delivered once to a subscriber interested in more than one of them
+					if (delivery.isEmpty() || delivery.get(delivery.size() - 1) != message) {
+						delivery.add(message);
+					}
+				}
+			}
+		}
+		Map<List<HttpBroadcastMessage>, Set<AtmosphereResource<?, ?>>> groups = new HashMap<List<HttpBroadcastMessage>, Set<AtmosphereResource<?, ?>>>();
+		for (Map.Entry<AtmosphereResource<?, ?>, List<HttpBroadcastMessage>> delivery : deliveries.entrySet()) {
+			Set<AtmosphereResource<?, ?>> group = groups.get(delivery.getValue());
+			if (group == null) {
+				group = new LinkedHashSet<AtmosphereResource<?, ?>>();
+				groups.put(delivery.getValue(), group);
+			}
+			group.add(delivery.getKey());
+		}
+		for (Map.Entry<List<HttpBroadcastMessage>, Set<AtmosphereResource<?, ?>>> group : groups.entrySet()) {
+			futures.add(broadcaster.broadcast(group.getKey(), group.getValue()));
+		}
+		return futures;
+	}
+
+	// internal helpers
+
+	private void addSubscriber(String topic, AtmosphereResource<?, ?> resource) {
+		while (true) {
+			Set<AtmosphereResource<?, ?>> subscribers = subscribersByTopic.get(topic);
+			if (subscribers == null) {
+				subscribers = concurrentSet();
+				Set<AtmosphereResource<?, ?>> existing = subscribersByTopic.putIfAbsent(topic, subscribers);
+				if (existing != null) {
+					subscribers = existing;
+				}
+			}
+			subscribers.add(resource);
+			// retry if the set was dropped from the index by a concurrent unregister while we added to it
+			if (subscribersByTopic.get(topic) == subscribers) {
+				return;
+			}
+		}
+	}
+
+	private static Set<AtmosphereResource<?, ?>> concurrentSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<AtmosphereResource<?, ?>, Boolean>());
+	}
+
+}
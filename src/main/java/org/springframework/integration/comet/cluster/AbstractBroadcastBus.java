@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.Message;
+
+/**
+ * Base class for BroadcastBus implementations.
+ * Queues published messages and hands them to {@link #transmit(List)} in batches from a single sender thread,
+ * so publishing never blocks the caller on the network.
+ * A batch is sent once it reaches the {@link #setBatchSize(int) batch size}, or once the first message in it has waited the {@link #setBatchDelay(long) batch delay}.
+ * @author Jeremy Grelle
+ */
+public abstract class AbstractBroadcastBus implements BroadcastBus {
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private final BlockingQueue<Message<?>> outbound;
+
+	private final AtomicLong publishedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong receivedCount = new AtomicLong();
+
+	private volatile BroadcastBusListener listener;
+
+	private volatile int batchSize = 100;
+
+	private volatile long batchDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private volatile boolean running;
+
+	private volatile Thread sender;
+
+	protected AbstractBroadcastBus() {
+		this(10000);
+	}
+
+	/**
+	 * Creates a bus that queues at most the given number of unsent messages; messages published while the queue is full are dropped.
+	 */
+	protected AbstractBroadcastBus(int queueCapacity) {
+		this.outbound = new LinkedBlockingQueue<Message<?>>(queueCapacity);
+	}
+
+	/**
+	 * The most messages sent in one batch.  Defaults to 100.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * How long, in milliseconds, to wait for more messages to fill a batch before sending it.  Defaults to 10.
+	 */
+	public void setBatchDelay(long batchDelay) {
+		this.batchDelayNanos = TimeUnit.MILLISECONDS.toNanos(batchDelay);
+	}
+
+	public void setListener(BroadcastBusListener listener) {
+		this.listener = listener;
+	}
+
+	public void publish(Message<?> message) {
+		if (outbound.offer(message)) {
+			publishedCount.incrementAndGet();
+		} else {
+			droppedCount.incrementAndGet();
+			if (log.isWarnEnabled()) {
+				log.warn("Broadcast bus queue is full; message " + message.getHeaders().getId() + " was not sent to other nodes.");
+			}
+		}
+	}
+
+	/**
+	 * The number of messages queued for the other nodes.
+	 */
+	public long getPublishedCount() {
+		return publishedCount.get();
+	}
+
+	/**
+	 * The number of messages that could not be queued or sent.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * The number of batches transmitted.
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * The number of messages received from other nodes.
+	 */
+	public long getReceivedCount() {
+		return receivedCount.get();
+	}
+
+	// implementing Lifecycle
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		try {
+			doStart();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to start broadcast bus", e);
+		}
+		running = true;
+		sender = new Thread(new Runnable() {
+			public void run() {
+				sendBatches();
+			}
+		}, getClass().getSimpleName() + "-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		sender.interrupt();
+		doStop();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Acquire the resources needed to send and receive messages.
+	 */
+	protected void doStart() throws Exception {
+	}
+
+	/**
+	 * Release the resources acquired in {@link #doStart()}.
+	 */
+	protected void doStop() {
+	}
+
+	/**
+	 * Send a batch of messages published on this node to the other nodes.
+	 */
+	protected abstract void transmit(List<Message<?>> batch) throws Exception;
+
+	/**
+	 * Called by subclasses with a batch of messages received from another node.
+	 */
+	protected void received(List<Message<?>> batch) {
+		receivedCount.addAndGet(batch.size());
+		BroadcastBusListener listener = this.listener;
+		if (listener != null) {
+			listener.onMessages(batch);
+		}
+	}
+
+	/**
+	 * Called by subclasses when messages could not be delivered to a node.
+	 */
+	protected void dropped(int messages) {
+		droppedCount.addAndGet(messages);
+	}
+
+	// internal helpers
+
+	private void sendBatches() {
+		while (running) {
+			List<Message<?>> batch;
+			try {
+				batch = nextBatch();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				transmit(batch);
+				batchCount.incrementAndGet();
+			} catch (Exception e) {
+				dropped(batch.size());
+				log.warn("Unable to transmit a batch of " + batch.size() + " messages", e);
+			}
+		}
+	}
+
+	private List<Message<?>> nextBatch() throws InterruptedException {
+		List<Message<?>> batch = new ArrayList<Message<?>>();
+		batch.add(outbound.take());
+		long deadline = System.nanoTime() + batchDelayNanos;
+		while (batch.size() < batchSize) {
+			outbound.drainTo(batch, batchSize - batch.size());
+			long remaining = deadline - System.nanoTime();
+			if (batch.size() >= batchSize || remaining <= 0) {
+				break;
+			}
+			Message<?> next = outbound.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+		return batch;
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet.cluster;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.Message;
+
+/**
+ * SPI for fanning comet messages out to the other nodes of a cluster.
+ * Messages published on one node are delivered to the {@link BroadcastBusListener} of every other node,
+ * which broadcasts them to its own suspended subscribers.
+ * Implementations batch outgoing messages; receivers de-duplicate by message id, so delivery may be at-least-once.
+ * @author Jeremy Grelle
+ */
+public interface BroadcastBus extends Lifecycle {
+
+	/**
+	 * Publish a message received on this node to the other nodes.
+	 * Should not block on the network.
+	 */
+	void publish(Message<?> message);
+
+	/**
+	 * Set the listener that receives batches of messages published by other nodes.
+	 */
+	void setListener(BroadcastBusListener listener);
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet.cluster;
+
+import java.util.List;
+
+import org.springframework.integration.Message;
+
+/**
+ * Callback receiving the messages other nodes published on a {@link BroadcastBus}.
+ * @author Jeremy Grelle
+ */
+public interface BroadcastBusListener {
+
+	/**
+	 * Called with a batch of messages published by another node, in the order they were published.
+	 */
+	void onMessages(List<Message<?>> messages);
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet.cluster;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.springframework.integration.Message;
+
+/**
+ * In-process BroadcastBus that connects the buses joined to the same named group within one JVM.
+ * Useful for running several logical nodes in one process, such as in tests, and as the degenerate single-node case.
+ * Batches are handed to the other members as-is, without serialization.
+ * @author Jeremy Grelle
+ */
+public class LoopbackBroadcastBus extends AbstractBroadcastBus {
+
+	private static final ConcurrentMap<String, Set<LoopbackBroadcastBus>> groups = new ConcurrentHashMap<String, Set<LoopbackBroadcastBus>>();
+
+	private final String group;
+
+	/**
+	 * Creates a bus joined to the default group.
+	 */
+	public LoopbackBroadcastBus() {
+		this("default");
+	}
+
+	/**
+	 * Creates a bus joined to the named group.
+	 */
+	public LoopbackBroadcastBus(String group) {
+		this.group = group;
+	}
+
+	@Override
+	protected void doStart() {
+		Set<LoopbackBroadcastBus> members = groups.get(group);
+		if (members == null) {
+			members = new CopyOnWriteArraySet<LoopbackBroadcastBus>();
+			Set<LoopbackBroadcastBus> existing = groups.putIfAbsent(group, members);
+			if (existing != null) {
+				members = existing;
+			}
+		}
+		members.add(this);
+	}
+
+	@Override
+	protected void doStop() {
+		Set<LoopbackBroadcastBus> members = groups.get(group);
+		if (members != null) {
+			members.remove(this);
+		}
+	}
+
+	@Override
+	protected void transmit(List<Message<?>> batch) {
+		Set<LoopbackBroadcastBus> members = groups.get(group);
+		if (members == null) {
+			return;
+		}
+		for (LoopbackBroadcastBus member : members) {
+			if (member != this && member.isRunning()) {
+				member.received(batch);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.comet.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * BroadcastBus that exchanges message batches with a static list of peer nodes over plain TCP connections.
+ * Each node listens on its own {@link #setPort(int) port} and connects out to every configured {@link #setPeers(List) peer},
+ * so several nodes can run on one machine by giving each a different port.
+ * Each batch is serialized once and the same bytes are queued to every peer; a dedicated thread per peer writes them,
+ * so a slow or unreachable peer never delays the others.  Frames queued to an unreachable peer are dropped, and the connection is retried.
+ * Messages are exchanged with Java serialization, so their payloads and header values must be Serializable.
+ * Only the message, header and collection classes and the configured {@link #setPayloadTypes(Class[]) payload types} are accepted
+ * from peers, and never dynamic proxies.
+ * The bus listens on the loopback address unless a {@link #setBindAddress(String) bind address} is given; listening on any other
+ * address requires a {@link #setSharedSecret(String) shared secret}, and frames not signed with it are refused before they are read.
+ * @author Jeremy Grelle
+ */
+public class SocketBroadcastBus extends AbstractBroadcastBus {
+
+	private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	private static final int MAC_LENGTH = 32;
+
+	private volatile String bindAddress;
+
+	private volatile int port;
+
+	private volatile Set<String> allowedClasses = allowedClasses(new Class<?>[] { String.class });
+
+	private volatile byte[] sharedSecret;
+
+	private volatile int peerQueueCapacity = 1000;
+
+	private volatile long reconnectInterval = 1000;
+
+	private final List<Peer> peers = new CopyOnWriteArrayList<Peer>();
+
+	private final Set<Socket> inbound = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	private volatile ServerSocket serverSocket;
+
+	/**
+	 * The address to listen on.  Defaults to the loopback address, which only suits several nodes on one machine.
+	 * Any other address requires a {@link #setSharedSecret(String) shared secret}.
+	 */
+	public void setBindAddress(String bindAddress) {
+		this.bindAddress = bindAddress;
+	}
+
+	/**
+	 * The port to listen on for batches from peers.  0 listens on an ephemeral port; see {@link #getLocalPort()}.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * The other nodes of the cluster, as <code>host:port</code> strings.
+	 * May be changed while running.
+	 */
+	public void setPeers(List<String> addresses) {
+		List<Peer> replaced = new ArrayList<Peer>(this.peers);
+		List<Peer> peers = new ArrayList<Peer>();
+		for (String address : addresses) {
+			if (StringUtils.hasText(address)) {
+				peers.add(new Peer(address.trim()));
+			}
+		}
+		this.peers.clear();
+		this.peers.addAll(peers);
+		for (Peer peer : replaced) {
+			peer.stop();
+		}
+		if (isRunning()) {
+			for (Peer peer : peers) {
+				peer.start();
+			}
+		}
+	}
+
+	/**
+	 * The exact classes of the payloads that may be deserialized from peers, in addition to the message, header and collection classes.
+	 * Defaults to String.
+	 */
+	public void setPayloadTypes(Class<?>[] payloadTypes) {
+		this.allowedClasses = allowedClasses(payloadTypes);
+	}
+
+	/**
+	 * The secret every node of the cluster signs its frames with; frames from a connection without it are refused.
+	 * Required unless the bus listens on the loopback address.
+	 */
+	public void setSharedSecret(String sharedSecret) {
+		this.sharedSecret = StringUtils.hasText(sharedSecret) ? utf8(sharedSecret) : null;
+	}
+
+	/**
+	 * The most serialized batches queued to a single peer before further batches to that peer are dropped.  Defaults to 1000.
+	 */
+	public void setPeerQueueCapacity(int peerQueueCapacity) {
+		this.peerQueueCapacity = peerQueueCapacity;
+	}
+
+	/**
+	 * How long to wait, in milliseconds, before reconnecting to a peer whose connection failed.  Defaults to 1000.
+	 */
+	public void setReconnectInterval(long reconnectInterval) {
+		this.reconnectInterval = reconnectInterval;
+	}
+
+	/**
+	 * The port this node is listening on, or -1 if it is not running.
+	 */
+	public int getLocalPort() {
+		ServerSocket serverSocket = this.serverSocket;
+		return serverSocket != null ? serverSocket.getLocalPort() : -1;
+	}
+
+	@Override
+	protected void doStart() throws IOException {
+		InetAddress address = InetAddress.getByName(StringUtils.hasText(bindAddress) ? bindAddress : null);
+		if (sharedSecret == null && !address.isLoopbackAddress()) {
+			throw new IllegalStateException("A shared secret is required to listen on " + address);
+		}
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(address, port));
+		startThread(new Runnable() {
+			public void run() {
+				acceptConnections();
+			}
+		}, "SocketBroadcastBus-acceptor-" + serverSocket.getLocalPort());
+		for (Peer peer : peers) {
+			peer.start();
+		}
+		if (log.isInfoEnabled()) {
+			log.info("Broadcast bus listening on port " + serverSocket.getLocalPort() + " with peers " + peers);
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		closeQuietly(serverSocket);
+		for (Socket socket : inbound) {
+			closeQuietly(socket);
+		}
+		for (Peer peer : peers) {
+			peer.stop();
+		}
+	}
+
+	@Override
+	protected void transmit(List<Message<?>> batch) throws IOException {
+		if (peers.isEmpty()) {
+			return;
+		}
+		Frame frame = new Frame(sign(serialize(batch)), batch.size());
+		for (Peer peer : peers) {
+			if (!peer.send(frame)) {
+				dropped(batch.size());
+			}
+		}
+	}
+
+	// internal helpers
+
+	private void acceptConnections() {
+		ServerSocket serverSocket = this.serverSocket;
+		while (isRunning() && !serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				inbound.add(socket);
+				startThread(new Runnable() {
+					public void run() {
+						readFrames(socket);
+					}
+				}, "SocketBroadcastBus-reader-" + socket.getRemoteSocketAddress());
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					log.warn("Unable to accept broadcast bus connection", e);
+				}
+			}
+		}
+	}
+
+	private void readFrames(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			while (isRunning()) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				byte[] frame = new byte[length];
+				in.readFully(frame);
+				received(deserialize(verify(frame)));
+			}
+		} catch (EOFException e) {
+			// peer closed the connection
+		} catch (Exception e) {
+			if (isRunning()) {
+				log.warn("Closing broadcast bus connection from " + socket.getRemoteSocketAddress(), e);
+			}
+		} finally {
+			inbound.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	private byte[] serialize(List<Message<?>> batch) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(new ArrayList<Message<?>>(batch));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	// prefixes the serialized batch with its HMAC when a shared secret is configured
+	private byte[] sign(byte[] batch) throws IOException {
+		if (sharedSecret == null) {
+			return batch;
+		}
+		byte[] mac = mac(batch, 0, batch.length);
+		byte[] frame = new byte[mac.length + batch.length];
+		System.arraycopy(mac, 0, frame, 0, mac.length);
+		System.arraycopy(batch, 0, frame, mac.length, batch.length);
+		return frame;
+	}
+
+	// the serialized batch of a signed frame, checked before anything in it is deserialized
+	private byte[] verify(byte[] frame) throws IOException {
+		if (sharedSecret == null) {
+			return frame;
+		}
+		if (frame.length < MAC_LENGTH) {
+			throw new IOException("Broadcast bus frame is not signed");
+		}
+		byte[] mac = new byte[MAC_LENGTH];
+		System.arraycopy(frame, 0, mac, 0, MAC_LENGTH);
+		if (!MessageDigest.isEqual(mac, mac(frame, MAC_LENGTH, frame.length - MAC_LENGTH))) {
+			throw new IOException("Broadcast bus frame signature does not match the shared secret");
+		}
+		byte[] batch = new byte[frame.length - MAC_LENGTH];
+		System.arraycopy(frame, MAC_LENGTH, batch, 0, batch.length);
+		return batch;
+	}
+
+	private byte[] mac(byte[] bytes, int offset, int length) throws IOException {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(new SecretKeySpec(sharedSecret, MAC_ALGORITHM));
+			mac.update(bytes, offset, length);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to sign broadcast bus frame: " + e.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Message<?>> deserialize(byte[] frame) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new RestrictedObjectInputStream(new ByteArrayInputStream(frame), allowedClasses);
+		try {
+			return (List<Message<?>>) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Set<String> allowedClasses(Class<?>[] payloadTypes) {
+		Set<String> allowed = new HashSet<String>();
+		Class<?>[] messageTypes = { MessageBuilder.withPayload("").build().getClass(), MessageHeaders.class, ArrayList.class, HashMap.class,
+				LinkedHashMap.class, UUID.class, Number.class, Long.class, Integer.class, Boolean.class, String.class };
+		for (Class<?> type : messageTypes) {
+			allowed.add(type.getName());
+		}
+		for (Class<?> type : payloadTypes) {
+			allowed.add(type.getName());
+		}
+		return allowed;
+	}
+
+	private static byte[] utf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void startThread(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void closeQuietly(ServerSocket socket) {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void closeQuietly(Socket socket) {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private final class Peer implements Runnable {
+
+		private final String host;
+
+		private final int port;
+
+		private final BlockingQueue<Frame> frames = new LinkedBlockingQueue<Frame>(peerQueueCapacity);
+
+		private volatile Thread writer;
+
+		private Socket socket;
+
+		private DataOutputStream out;
+
+		public Peer(String address) {
+			int separator = address.lastIndexOf(':');
+			Assert.isTrue(separator > 0, "Peer address '" + address + "' is not of the form host:port");
+			this.host = address.substring(0, separator);
+			this.port = Integer.parseInt(address.substring(separator + 1));
+		}
+
+		public boolean send(Frame frame) {
+			return frames.offer(frame);
+		}
+
+		public synchronized void start() {
+			if (writer == null) {
+				writer = new Thread(this, "SocketBroadcastBus-peer-" + this);
+				writer.setDaemon(true);
+				writer.start();
+			}
+		}
+
+		public synchronized void stop() {
+			if (writer != null) {
+				writer.interrupt();
+				writer = null;
+			}
+		}
+
+		public void run() {
+			Thread current = Thread.currentThread();
+			try {
+				while (writer == current) {
+					Frame frame = frames.take();
+					try {
+						write(frame);
+						// coalesce frames already waiting into one flush
+						while ((frame = frames.poll()) != null) {
+							write(frame);
+						}
+						out.flush();
+					} catch (IOException e) {
+						disconnect();
+						int messages = frame.messages;
+						while ((frame = frames.poll()) != null) {
+							messages += frame.messages;
+						}
+						dropped(messages);
+						log.warn("Lost broadcast bus connection to " + this + "; reconnecting in " + reconnectInterval + "ms", e);
+						Thread.sleep(reconnectInterval);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				disconnect();
+			}
+		}
+
+		public String toString() {
+			return host + ":" + port;
+		}
+
+		private void write(Frame frame) throws IOException {
+			if (out == null) {
+				socket = new Socket(host, port);
+				socket.setTcpNoDelay(true);
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 8192));
+			}
+			out.writeInt(frame.bytes.length);
+			out.write(frame.bytes);
+		}
+
+		private void disconnect() {
+			closeQuietly(socket);
+			socket = null;
+			out = null;
+		}
+
+	}
+
+	// a serialized batch and the number of messages in it, queued to each peer
+	private static final class Frame {
+
+		private final byte[] bytes;
+
+		private final int messages;
+
+		public Frame(byte[] bytes, int messages) {
+			this.bytes = bytes;
+			this.messages = messages;
+		}
+
+	}
+
+	private static final class RestrictedObjectInputStream extends ObjectInputStream {
+
+		private final Set<String> allowedClasses;
+
+		public RestrictedObjectInputStream(InputStream in, Set<String> allowedClasses) throws IOException {
+			super(in);
+			this.allowedClasses = allowedClasses;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			String name = descriptor.getName();
+			int element = name.lastIndexOf('[');
+			if (element != -1 && name.endsWith(";")) {
+				// array of objects: [Lcom.example.Type;
+				name = name.substring(element + 2);
+			}
+			if (!isAllowed(name)) {
+				throw new IOException("Class " + descriptor.getName() + " is not allowed in broadcast bus messages");
+			}
+			return super.resolveClass(descriptor);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+			throw new IOException("Proxies are not allowed in broadcast bus messages");
+		}
+
+		private boolean isAllowed(String name) {
+			if (name.startsWith("[") || name.indexOf('.') == -1) {
+				// primitive arrays and primitive types
+				return true;
+			}
+			return allowedClasses.contains(name);
+		}
+
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Spring Integration extensions for fanning Comet broadcasts out across the nodes of a cluster.
+ */
+package org.springframework.integration.comet.cluster;
@@ -22,17 +22,43 @@ import java.security.NoSuchProviderException;
 /**
  * Helper for working with the MessageDigest API.
  * Performs 1024 iterations of the hashing algorithm per digest to aid in protecting against brute force attacks.
+ * MessageDigest instances are not thread-safe, so each thread digests with its own instance rather than contending for a shared one.
  * @author Keith Donald
  */
 public class Digester {
 
-	private final MessageDigest messageDigest;
+	private final String algorithm;
+
+	private final String provider;
+
+	private final ThreadLocal<MessageDigest> messageDigest = new ThreadLocal<MessageDigest>() {
+		protected MessageDigest initialValue() {
+			return createDigest();
+		}
+	};
 
 	private final int iterations = 1024;
 	
 	public Digester(String algorithm, String provider) {
+		this.algorithm = algorithm;
+		this.provider = provider;
+		// fail fast if the algorithm is not available
+		messageDigest.get();
+	}
+
+	public byte[] digest(byte[] value) {
+		MessageDigest messageDigest = this.messageDigest.get();
+		for (int i = 0; i < (iterations - 1); i++) {
+			invokeDigest(messageDigest, value);
+		}
+		return messageDigest.digest(value);
+	}
+
+	// internal helpers
+
+	private MessageDigest createDigest() {
 		try {
-			messageDigest = MessageDigest.getInstance(algorithm, provider);
+			return MessageDigest.getInstance(algorithm, provider);
 		} catch (NoSuchAlgorithmException e) {
 			throw new IllegalStateException("No such hashing algorithm", e);
 		} catch (NoSuchProviderException e) {
@@ -40,18 +66,9 @@ public class Digester {
 		}
 	}
 
-	public byte[] digest(byte[] value) {
-		synchronized (messageDigest) {
-			for (int i = 0; i < (iterations - 1); i++) {
-				invokeDigest(value);
-			}
-			return messageDigest.digest(value);
-		}
-	}
-	
-	private byte[] invokeDigest(byte[] value) {
+	private byte[] invokeDigest(MessageDigest messageDigest, byte[] value) {
 		messageDigest.reset();
 		return messageDigest.digest(value);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.encrypt;
+
+/**
+ * A string held in its encrypted form and decrypted on first read.
+ * Lets an object mapped from storage carry encrypted fields without paying to decrypt the ones that are never read.
+ * Thread-safe; concurrent first reads may each decrypt, but all see the same value.
+ * @author Keith Donald
+ */
+public final class EncryptedString {
+
+	private final String encrypted;
+
+	private final StringEncryptor encryptor;
+
+	private volatile String value;
+
+	private EncryptedString(String encrypted, StringEncryptor encryptor, String value) {
+		this.encrypted = encrypted;
+		this.encryptor = encryptor;
+		this.value = value;
+	}
+
+	/**
+	 * Creates a string that will be decrypted with the encryptor when first read.
+	 * @param encrypted the encrypted string; may be null
+	 * @param encryptor the encryptor that encrypted the string
+	 */
+	public static EncryptedString encrypted(String encrypted, StringEncryptor encryptor) {
+		return new EncryptedString(encrypted, encryptor, null);
+	}
+
+	/**
+	 * Creates a string whose value is already known and needs no decryption.
+	 */
+	public static EncryptedString decrypted(String value) {
+		return new EncryptedString(null, null, value);
+	}
+
+	/**
+	 * The decrypted value, or null if the encrypted string was null.
+	 */
+	public String getValue() {
+		String value = this.value;
+		if (value == null && encrypted != null) {
+			value = encryptor.decrypt(encrypted);
+			this.value = value;
+		}
+		return value;
+	}
+
+	public String toString() {
+		return "[encrypted]";
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.encrypt;
+
+import static org.springframework.security.encrypt.EncodingUtils.hexEncode;
+import static org.springframework.security.encrypt.EncodingUtils.utf8Encode;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A StringIndexer that computes the HMAC-SHA256 of a string, hex-encoded.
+ * Without the key an index cannot be computed for a guessed value, so the index does not expose the values it was computed from.
+ * The key should not be shared, and should differ from the key used to encrypt the indexed values.
+ * Thread-safe: each thread computes with its own Mac.
+ * @author Keith Donald
+ */
+public class HmacStringIndexer implements StringIndexer {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final SecretKeySpec secretKey;
+
+	private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+		protected Mac initialValue() {
+			return newMac();
+		}
+	};
+
+	public HmacStringIndexer(String key) {
+		this.secretKey = new SecretKeySpec(utf8Encode(key), ALGORITHM);
+		// fail fast if the algorithm is not available or the key is invalid
+		mac.get();
+	}
+
+	public String index(String string) {
+		return hexEncode(mac.get().doFinal(utf8Encode(string)));
+	}
+
+	// internal helpers
+
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(secretKey);
+			return mac;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No such MAC algorithm", e);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException("Not a valid MAC key", e);
+		}
+	}
+
+}
@@ -13,27 +13,28 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.springsource.greenhouse.activity.recent;
-
-import java.util.Collections;
-import java.util.List;
-
-import org.joda.time.DateTime;
-import org.springframework.stereotype.Repository;
+package org.springframework.security.encrypt;
 
 /**
- * In memory recent activity repository implementation. TODO.
+ * A String Indexer that does nothing; the index of a string is the string itself. Useful for testing.
  * @author Keith Donald
  */
-@Repository
-public class InMemoryRecentActivityRepository implements RecentActivityRepository {
+public class NoOpStringIndexer implements StringIndexer {
 
-	public List<RecentActivity> findInitial() {
-		return Collections.emptyList();
+	public String index(String string) {
+		return string;
 	}
 
-	public RecentActivity findNext(DateTime last) {
-		return null;
+	/**
+	 * Get the singleton {@link NoOpStringIndexer}.
+	 */
+	public static StringIndexer getInstance() {
+		return INSTANCE;
 	}
 
+	private static final StringIndexer INSTANCE = new NoOpStringIndexer();
+
+	private NoOpStringIndexer() {
+
+	}
 }
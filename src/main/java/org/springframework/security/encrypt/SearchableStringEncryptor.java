@@ -15,9 +15,6 @@
  */
 package org.springframework.security.encrypt;
 
-import static org.springframework.security.encrypt.CipherUtils.doFinal;
-import static org.springframework.security.encrypt.CipherUtils.initCipher;
-import static org.springframework.security.encrypt.CipherUtils.newCipher;
 import static org.springframework.security.encrypt.CipherUtils.newSecretKey;
 import static org.springframework.security.encrypt.EncodingUtils.hexDecode;
 import static org.springframework.security.encrypt.EncodingUtils.hexEncode;
@@ -31,31 +28,33 @@ import javax.crypto.SecretKey;
  * A string encryptor that applies password-based MD5 plus DES symmetric key encyption.
  * Note: this encryptor does not apply any salt.
  * Designed to be used to encrypt fields that are queryable; for example, a indexed field such as an OAuth apiKey.
+ * Thread-safe: since the salt is fixed, each thread initializes its own Cipher once and reuses it for every call.
  * @author Keith Donald
  */
 //TODO evaluate AES for higher-level of security
 public class SearchableStringEncryptor implements StringEncryptor {
 
-	private final Cipher encryptor;
+	private final ThreadLocalCipher encryptor;
 
-	private final Cipher decryptor;
+	private final ThreadLocalCipher decryptor;
 
 	public SearchableStringEncryptor(String password, String salt) {
 		String algorithm = "PBEWithMD5AndDES";
 		byte[] saltBytes = hexDecode(salt);
 		SecretKey secretKey = newSecretKey(algorithm, password);		
-		encryptor = newCipher(algorithm);
-		initCipher(encryptor, Cipher.ENCRYPT_MODE, secretKey, saltBytes, 1000);
-		decryptor = newCipher(algorithm);
-		initCipher(decryptor, Cipher.DECRYPT_MODE, secretKey, saltBytes, 1000);
+		encryptor = new ThreadLocalCipher(algorithm, Cipher.ENCRYPT_MODE, secretKey, saltBytes, 1000);
+		decryptor = new ThreadLocalCipher(algorithm, Cipher.DECRYPT_MODE, secretKey, saltBytes, 1000);
+		// fail fast if the key or salt is invalid
+		encryptor.get();
+		decryptor.get();
 	}
 	
 	public String encrypt(String text) {
-		return hexEncode(doFinal(encryptor, utf8Encode(text)));
+		return hexEncode(encryptor.doFinal(utf8Encode(text)));
 	}
 
 	public String decrypt(String encryptedText) {
-		return utf8Decode(doFinal(decryptor, hexDecode(encryptedText)));
+		return utf8Decode(decryptor.doFinal(hexDecode(encryptedText)));
 	}
 	
 }
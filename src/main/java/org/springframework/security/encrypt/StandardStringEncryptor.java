@@ -15,9 +15,6 @@
  */
 package org.springframework.security.encrypt;
 
-import static org.springframework.security.encrypt.CipherUtils.doFinal;
-import static org.springframework.security.encrypt.CipherUtils.initCipher;
-import static org.springframework.security.encrypt.CipherUtils.newCipher;
 import static org.springframework.security.encrypt.CipherUtils.newSecretKey;
 import static org.springframework.security.encrypt.EncodingUtils.concatenate;
 import static org.springframework.security.encrypt.EncodingUtils.hexDecode;
@@ -33,45 +30,36 @@ import javax.crypto.SecretKey;
  * A StringEncryptor that uses MD5 plus DES for symmetric password-based encryption.
  * Prepends a random salt to each encrypted value to aid in the prevention of password compromise with the aid of rainbow table.
  * The password should be not be shared.
+ * Thread-safe: each thread encrypts and decrypts with its own Cipher, so concurrent callers do not contend for a lock.
  * @author Keith Donald
  */
 // TODO evaluate AES for higher-level of security
 public class StandardStringEncryptor implements StringEncryptor {
 
-	private final SecretKey secretKey;
-
 	private final KeyGenerator saltGenerator;
 	
-	private final Cipher encryptor;
+	private final ThreadLocalCipher encryptor;
 
-	private final Cipher decryptor;
+	private final ThreadLocalCipher decryptor;
 
 	public StandardStringEncryptor(String password) {
 		String algorithm = "PBEWithMD5AndDES";		
-		secretKey = newSecretKey(algorithm, password);
+		SecretKey secretKey = newSecretKey(algorithm, password);
 		saltGenerator = new SecureRandomKeyGenerator();
-		encryptor = newCipher(algorithm);
-		decryptor = newCipher(algorithm);
+		encryptor = new ThreadLocalCipher(algorithm, Cipher.ENCRYPT_MODE, secretKey, 1000);
+		decryptor = new ThreadLocalCipher(algorithm, Cipher.DECRYPT_MODE, secretKey, 1000);
 	}
 	
 	public String encrypt(String text) {
 		byte[] salt = saltGenerator.generateKey();
-		byte[] encrypted;
-		synchronized (encryptor) {
-			initCipher(encryptor, Cipher.ENCRYPT_MODE, secretKey, salt, 1000);
-			encrypted = doFinal(encryptor, utf8Encode(text));
-		}
+		byte[] encrypted = encryptor.doFinal(salt, utf8Encode(text));
 		return hexEncode(concatenate(salt, encrypted));
 	}
 
 	public String decrypt(String encryptedText) {
 		byte[] encrypted = hexDecode(encryptedText);
 		byte[] salt = saltPart(encrypted);
-		byte[] decrypted;
-		synchronized (decryptor) {
-			initCipher(decryptor, Cipher.DECRYPT_MODE, secretKey, salt, 1000);
-			decrypted = doFinal(decryptor, cipherPart(encrypted, salt));
-		}
+		byte[] decrypted = decryptor.doFinal(salt, cipherPart(encrypted, salt));
 		return utf8Decode(decrypted);
 	}
 	
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.encrypt;
+
+/**
+ * Service interface for computing a blind index of a string.
+ * A blind index is a keyed one-way digest stored alongside an encrypted value so the value can be looked up by equality without encrypting the search term or decrypting stored values.
+ * @author Keith Donald
+ */
+public interface StringIndexer {
+
+	/**
+	 * Compute the index of the string.
+	 * Equal strings always have equal indexes.
+	 */
+	String index(String string);
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.encrypt;
+
+import static org.springframework.security.encrypt.CipherUtils.initCipher;
+import static org.springframework.security.encrypt.CipherUtils.newCipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Gives each thread its own Cipher, since Cipher instances are stateful and not thread-safe.
+ * When constructed with a salt, each thread's Cipher is initialized once on first use and reused thereafter; otherwise the Cipher is initialized with the salt given on each call.
+ * A Cipher that fails mid-operation is discarded so the thread starts over with a fresh one.
+ * @author Keith Donald
+ */
+class ThreadLocalCipher extends ThreadLocal<Cipher> {
+
+	private final String algorithm;
+
+	private final int mode;
+
+	private final SecretKey secretKey;
+
+	private final byte[] salt;
+
+	private final int iterationCount;
+
+	/**
+	 * Creates a per-thread Cipher initialized with a fixed salt.
+	 */
+	public ThreadLocalCipher(String algorithm, int mode, SecretKey secretKey, byte[] salt, int iterationCount) {
+		this.algorithm = algorithm;
+		this.mode = mode;
+		this.secretKey = secretKey;
+		this.salt = salt;
+		this.iterationCount = iterationCount;
+	}
+
+	/**
+	 * Creates a per-thread Cipher initialized with a different salt on each call.
+	 */
+	public ThreadLocalCipher(String algorithm, int mode, SecretKey secretKey, int iterationCount) {
+		this(algorithm, mode, secretKey, null, iterationCount);
+	}
+
+	/**
+	 * Encrypt or decrypt the input with this thread's Cipher, initialized with the fixed salt.
+	 */
+	public byte[] doFinal(byte[] input) {
+		return doFinal(get(), input);
+	}
+
+	/**
+	 * Encrypt or decrypt the input with this thread's Cipher, first initializing it with the salt provided.
+	 */
+	public byte[] doFinal(byte[] salt, byte[] input) {
+		Cipher cipher = get();
+		initCipher(cipher, mode, secretKey, salt, iterationCount);
+		return doFinal(cipher, input);
+	}
+
+	protected Cipher initialValue() {
+		Cipher cipher = newCipher(algorithm);
+		if (salt != null) {
+			initCipher(cipher, mode, secretKey, salt, iterationCount);
+		}
+		return cipher;
+	}
+
+	// internal helpers
+
+	private byte[] doFinal(Cipher cipher, byte[] input) {
+		try {
+			return CipherUtils.doFinal(cipher, input);
+		} catch (RuntimeException e) {
+			remove();
+			throw e;
+		}
+	}
+
+}
@@ -22,4 +22,19 @@ create table AwardedBadge(id identity,
 					foreign key (member) references Member(id),
 					foreign key (memberAction) references MemberAction(id));
 					
-insert into Badge (name, description, level) values ('Newbie', 'You joined!', 1);
\ No newline at end of file
+create table ActionArchiveSegment (name varchar,
+					startTime timestamp not null,
+					endTime timestamp not null,
+					actionCount int not null,
+					archiveTime timestamp not null default now(),
+					primary key (name));
+
+create table ArchivedActionCount (member bigint,
+					actionType varchar,
+					event bigint,
+					actionCount int not null,
+					primary key (member, actionType, event),
+					foreign key (member) references Member(id));
+
+insert into Badge (name, description, level) values ('Newbie', 'You joined!', 1);
+insert into Badge (name, description, level) values ('Chatterbox', 'You tweeted 10 times at an event!', 2);
\ No newline at end of file
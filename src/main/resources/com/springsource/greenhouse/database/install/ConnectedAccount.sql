@@ -12,10 +12,12 @@ create table ServiceProvider (name varchar,
 create table AccountConnection (member bigint,
 					provider varchar,
 					accessToken varchar not null,					
+					accessTokenIndex varchar,
 					secret varchar, 
 					accountId varchar,	
 					profileUrl varchar,
 					primary key (member, provider, accessToken),
 					foreign key (member) references Member(id),
 					foreign key (provider) references ServiceProvider(name));
-create index ProviderAccountKey on AccountConnection(accountId);
\ No newline at end of file
+create index ProviderAccountKey on AccountConnection(accountId);
+create index ProviderAccessToken on AccountConnection(provider, accessTokenIndex);
\ No newline at end of file
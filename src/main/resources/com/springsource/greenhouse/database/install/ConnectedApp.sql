@@ -5,6 +5,7 @@ create table App (id identity,
 				organization varchar,
 				website varchar,
 				apiKey varchar unique,
+				apiKeyIndex varchar unique,
 				secret varchar not null unique,
 				callbackUrl varchar,
 				primary key (id));
@@ -18,6 +19,7 @@ create table AppDeveloper (app bigint,
 create table AppConnection (app varchar,
 				member bigint,
 				accessToken varchar not null unique,					
+				accessTokenIndex varchar unique,
 				secret varchar not null,
 				primary key (app, member),
 				foreign key (member) references Member(id),
@@ -0,0 +1,3 @@
+create table IdSequence (name varchar,
+					nextValue bigint not null,
+					primary key (name));
\ No newline at end of file
@@ -0,0 +1,13 @@
+create table ActionArchiveSegment (name varchar,
+					startTime timestamp not null,
+					endTime timestamp not null,
+					actionCount int not null,
+					archiveTime timestamp not null default now(),
+					primary key (name));
+
+create table ArchivedActionCount (member bigint,
+					actionType varchar,
+					event bigint,
+					actionCount int not null,
+					primary key (member, actionType, event),
+					foreign key (member) references Member(id));
@@ -0,0 +1,6 @@
+alter table App add column apiKeyIndex varchar;
+create unique index AppApiKeyIndex on App(apiKeyIndex);
+alter table AppConnection add column accessTokenIndex varchar;
+create unique index AppConnectionAccessTokenIndex on AppConnection(accessTokenIndex);
+alter table AccountConnection add column accessTokenIndex varchar;
+create index ProviderAccessToken on AccountConnection(provider, accessTokenIndex);
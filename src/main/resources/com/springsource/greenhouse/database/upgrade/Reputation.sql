@@ -0,0 +1,4 @@
+update Member m set reputation = coalesce(reputation, 0)
+	+ coalesce((select sum(case a.actionType when 'SignedUp' then 1 when 'InviteAccept' then 3 when 'EventTweet' then 2 else 0 end) from MemberAction a where a.member = m.id), 0)
+	+ coalesce((select sum(case c.actionType when 'SignedUp' then 1 when 'InviteAccept' then 3 when 'EventTweet' then 2 else 0 end * c.actionCount) from ArchivedActionCount c where c.member = m.id and c.event = 0), 0)
+	+ coalesce((select count(*) * 10 from AwardedBadge b where b.member = m.id), 0);
@@ -0,0 +1 @@
+insert into Badge (name, description, level) values ('Chatterbox', 'You tweeted 10 times at an event!', 2);
@@ -20,11 +20,20 @@ $(document).ready(function() {
 		}
 	}
 
-	/* transport can be : long-polling, streaming or websocket */
-	$.atmosphere.subscribe(basePath + '/pubsub/recent/notifications', activityNotificationHandler,
-		$.atmosphere.request = {
-			transport : "long-polling",
-			headers : { "Accept" : "application/json" }
-		}
-	);
+	var notificationsUrl = basePath + '/pubsub/recent/notifications';
+	if (window.EventSource) {
+		/* native Server-Sent Events; the browser reconnects by itself and resumes after the last event id it saw */
+		var eventSource = new EventSource(notificationsUrl);
+		eventSource.onmessage = function(event) {
+			activityNotificationHandler({ responseBody : event.data });
+		};
+	} else {
+		/* transport can be : long-polling, streaming or websocket */
+		$.atmosphere.subscribe(notificationsUrl, activityNotificationHandler,
+			$.atmosphere.request = {
+				transport : "long-polling",
+				headers : { "Accept" : "application/json" }
+			}
+		);
+	}
 });
\ No newline at end of file
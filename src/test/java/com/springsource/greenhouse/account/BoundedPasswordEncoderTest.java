@@ -0,0 +1,79 @@
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.encrypt.PasswordEncoder;
+
+public class BoundedPasswordEncoderTest {
+
+	private final CountDownLatch started = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private BoundedPasswordEncoder passwordEncoder = new BoundedPasswordEncoder(new PasswordEncoder() {
+		public String encode(String rawPassword) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return rawPassword;
+		}
+
+		public boolean matches(String rawPassword, String encodedPassword) {
+			return rawPassword.equals(encodedPassword);
+		}
+	}, 1, 1);
+
+	@After
+	public void destroy() {
+		release.countDown();
+		passwordEncoder.destroy();
+	}
+
+	@Test
+	public void matches() {
+		assertTrue(passwordEncoder.matches("melbourne", "melbourne"));
+		assertFalse(passwordEncoder.matches("melbourne", "sydney"));
+	}
+
+	@Test
+	public void rejectWhenQueueFull() throws Exception {
+		Thread first = encodeInBackground();
+		started.await();
+		Thread second = encodeInBackground();
+		while (passwordEncoder.getQueued() == 0) {
+			Thread.sleep(1);
+		}
+		try {
+			passwordEncoder.matches("melbourne", "melbourne");
+			fail("Should have been rejected");
+		} catch (TaskRejectedException e) {
+		}
+		assertEquals(1, passwordEncoder.getRejected());
+		release.countDown();
+		first.join();
+		second.join();
+		assertTrue(passwordEncoder.matches("melbourne", "melbourne"));
+	}
+
+	private Thread encodeInBackground() {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				passwordEncoder.encode("melbourne");
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+}
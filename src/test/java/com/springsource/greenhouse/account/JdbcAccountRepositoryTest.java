@@ -13,6 +13,7 @@ import org.springframework.security.encrypt.NoOpPasswordEncoder;
 import org.springframework.test.transaction.TransactionalMethodRule;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 
 public class JdbcAccountRepositoryTest {
@@ -25,10 +26,10 @@ public class JdbcAccountRepositoryTest {
 
 	@Before
 	public void setup() {
-		db = new GreenhouseTestDatabaseBuilder().member().testData(getClass()).getDatabase();
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().testData(getClass()).getDatabase();
 		jdbcTemplate = new JdbcTemplate(db);
 		AccountMapper accountMapper = new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}");
-		accountRepository = new JdbcAccountRepository(jdbcTemplate, NoOpPasswordEncoder.getInstance(), accountMapper);
+		accountRepository = new JdbcAccountRepository(jdbcTemplate, NoOpPasswordEncoder.getInstance(), accountMapper, new BlockIdAllocator(db));
 	}
 
 	@After
@@ -0,0 +1,72 @@
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SigninThrottleTest {
+
+	private SigninThrottle throttle = new SigninThrottle();
+
+	@Test
+	public void throttleBySignin() {
+		for (int i = 0; i < 5; i++) {
+			assertTrue(throttle.tryAcquire("10.0.0." + i, "kdonald", 0));
+		}
+		assertFalse(throttle.tryAcquire("10.0.0.6", "KDonald", 0));
+		assertTrue(throttle.tryAcquire("10.0.0.6", "rclarkson", 0));
+		assertEquals(6, throttle.getAdmitted());
+		assertEquals(1, throttle.getThrottledBySignin());
+	}
+
+	@Test
+	public void throttleByAddress() {
+		for (int i = 0; i < 30; i++) {
+			assertTrue(throttle.tryAcquire("10.0.0.1", "member" + i, 0));
+		}
+		assertFalse(throttle.tryAcquire("10.0.0.1", "another", 0));
+		assertTrue(throttle.tryAcquire("10.0.0.2", "another", 0));
+		assertEquals(1, throttle.getThrottledByAddress());
+	}
+
+	@Test
+	public void refill() {
+		for (int i = 0; i < 5; i++) {
+			throttle.tryAcquire(null, "kdonald", 0);
+		}
+		assertFalse(throttle.tryAcquire(null, "kdonald", TimeUnit.SECONDS.toNanos(11)));
+		assertTrue(throttle.tryAcquire(null, "kdonald", TimeUnit.SECONDS.toNanos(13)));
+		assertFalse(throttle.tryAcquire(null, "kdonald", TimeUnit.SECONDS.toNanos(13)));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		throttle.setMaxTrackedKeys(2);
+		for (int i = 0; i < 5; i++) {
+			throttle.tryAcquire(null, "kdonald", 0);
+		}
+		throttle.tryAcquire(null, "rclarkson", 0);
+		assertFalse(throttle.tryAcquire(null, "kdonald", 0));
+		throttle.tryAcquire(null, "cbeams", 0);
+		assertEquals(2, throttle.getTrackedSignins());
+		assertEquals(1, throttle.getEvicted());
+		assertFalse(throttle.tryAcquire(null, "kdonald", 0));
+		assertTrue(throttle.tryAcquire(null, "rclarkson", 0));
+		assertEquals(2, throttle.getEvicted());
+	}
+
+	@Test
+	public void trackedKeysBounded() {
+		throttle.setMaxTrackedKeys(100);
+		for (int i = 0; i < 1000; i++) {
+			throttle.tryAcquire("10.0." + (i / 256) + "." + (i % 256), "member" + i, 0);
+		}
+		assertEquals(100, throttle.getTrackedAddresses());
+		assertEquals(100, throttle.getTrackedSignins());
+	}
+
+}
@@ -1,16 +1,32 @@
 package com.springsource.greenhouse.account;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.springframework.data.FileData;
 import org.springframework.data.FileStorage;
 
 public class StubFileStorage implements FileStorage {
 
+	private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+
 	public String absoluteUrl(String fileName) {
 		return "http://localhost:8080/resources/" + fileName;
 	}
 	
 	public String storeFile(FileData file) {
+		files.put(file.getName(), file.getBytes());
 		return absoluteUrl(file.getName());
 	}
+
+	public InputStream readFile(String fileName, long offset) {
+		byte[] bytes = files.get(fileName);
+		if (bytes == null) {
+			throw new IllegalArgumentException("No file named " + fileName);
+		}
+		return new ByteArrayInputStream(bytes, (int) offset, bytes.length - (int) offset);
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+package com.springsource.greenhouse.activity.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+import com.springsource.greenhouse.utils.Location;
+
+public class ActionJournalTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private ActionJournal actionJournal;
+
+	private File journalFile;
+
+	@Before
+	public void setup() throws Exception {
+		db = new GreenhouseTestDatabaseBuilder().member().activity().getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (1, 'Keith', 'Donald', 'keith@springsource.com', 'password', 'M', '1977-12-01')");
+		journalFile = File.createTempFile("actions", ".journal");
+		journalFile.delete();
+	}
+
+	@After
+	public void destroy() throws Exception {
+		if (actionJournal != null) {
+			actionJournal.destroy();
+		}
+		if (db != null) {
+			db.shutdown();
+		}
+		journalFile.delete();
+	}
+
+	@Test
+	public void writeBehind() throws Exception {
+		actionJournal = startJournal(null);
+		for (long id = 1; id <= 50; id++) {
+			actionJournal.writeBehind(id, "SignedUp", new DateTime(DateTimeZone.UTC), new Location(47.0, -122.0), 1L);
+		}
+		actionJournal.flush();
+		assertEquals(50, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+		assertEquals(47.0, jdbcTemplate.queryForObject("select latitude from MemberAction where id = 25", Double.class), 0.0);
+		assertEquals(50, actionJournal.getWrittenBehind() + actionJournal.getWrittenInline());
+	}
+
+	@Test
+	public void flushOne() throws Exception {
+		actionJournal = startJournal(null);
+		actionJournal.writeBehind(7L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+		actionJournal.flush(7L);
+		assertEquals("SignedUp", jdbcTemplate.queryForObject("select actionType from MemberAction where id = 7", String.class));
+		actionJournal.flush();
+		assertEquals(1, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+	}
+
+	@Test
+	public void retryAfterOutage() throws Exception {
+		final boolean[] down = new boolean[1];
+		DelegatingDataSource dataSource = new DelegatingDataSource(db) {
+			public Connection getConnection() throws SQLException {
+				if (down[0]) {
+					throw new SQLException("Database is down");
+				}
+				return super.getConnection();
+			}
+		};
+		actionJournal = new ActionJournal(new JdbcTemplate(dataSource));
+		actionJournal.setJournalFile(journalFile.getPath());
+		actionJournal.setRetryInterval(10);
+		actionJournal.afterPropertiesSet();
+		down[0] = true;
+		for (long id = 1; id <= 10; id++) {
+			actionJournal.writeBehind(id, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+		}
+		try {
+			actionJournal.flush();
+			fail("Should have failed");
+		} catch (RuntimeException e) {
+		}
+		assertEquals(0, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+		down[0] = false;
+		actionJournal.flush(5L);
+		assertEquals(1, jdbcTemplate.queryForInt("select count(*) from MemberAction where id = 5"));
+		actionJournal.flush();
+		assertEquals(10, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+	}
+
+	@Test
+	public void dropActionThatCanNeverBeWritten() throws Exception {
+		actionJournal = startJournal(null);
+		actionJournal.writeBehind(1L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+		actionJournal.writeBehind(2L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 99L);
+		actionJournal.writeBehind(3L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+		actionJournal.flush();
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+	}
+
+	@Test
+	public void writeInlineWhenStopped() {
+		actionJournal = new ActionJournal(jdbcTemplate);
+		actionJournal.writeBehind(3L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+		assertEquals(1, jdbcTemplate.queryForInt("select count(*) from MemberAction where id = 3"));
+		assertEquals(1, actionJournal.getWrittenInline());
+	}
+
+	@Test
+	public void replayJournal() throws Exception {
+		MappedActionJournal journal = new MappedActionJournal(journalFile, 4096);
+		journal.reset();
+		journal.append(new JournaledAction(1L, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L));
+		journal.append(new JournaledAction(2L, "Tweeted", new DateTime(DateTimeZone.UTC), new Location(1.5, 2.5), 1L));
+		journal.close();
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (1, 'SignedUp', now(), 1)");
+		actionJournal = startJournal(journalFile.getPath());
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+		assertEquals("Tweeted", jdbcTemplate.queryForObject("select actionType from MemberAction where id = 2", String.class));
+	}
+
+	@Test
+	public void journalWraps() throws Exception {
+		MappedActionJournal journal = new MappedActionJournal(journalFile, 512);
+		journal.reset();
+		for (long id = 1; id <= 100; id++) {
+			JournaledAction action = new JournaledAction(id, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L);
+			assertTrue(journal.append(action));
+			if (id % 3 == 0) {
+				journal.checkpoint(action.getJournalEnd());
+			}
+		}
+		List<JournaledAction> unwritten = journal.recover();
+		assertEquals(1, unwritten.size());
+		assertEquals(100L, (long) unwritten.get(0).getId());
+		journal.close();
+	}
+
+	@Test
+	public void journalFull() throws Exception {
+		MappedActionJournal journal = new MappedActionJournal(journalFile, 256);
+		journal.reset();
+		int appended = 0;
+		while (journal.append(new JournaledAction((long) appended, "SignedUp", new DateTime(DateTimeZone.UTC), null, 1L))) {
+			appended++;
+		}
+		assertTrue(appended > 0);
+		assertEquals(appended, journal.recover().size());
+		journal.close();
+	}
+
+	private ActionJournal startJournal(String journalFile) throws Exception {
+		ActionJournal actionJournal = new ActionJournal(jdbcTemplate);
+		actionJournal.setJournalFile(journalFile);
+		actionJournal.afterPropertiesSet();
+		return actionJournal;
+	}
+
+}
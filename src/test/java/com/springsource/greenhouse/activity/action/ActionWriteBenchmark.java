@@ -0,0 +1,93 @@
+package com.springsource.greenhouse.activity.action;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.database.BlockIdAllocator;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+/**
+ * Measures action write throughput under a burst of signups and tweets, first with every action inserted inline and then written behind by the ActionJournal.
+ * Run with <code>mvn test-compile exec:java -Dexec.mainClass=com.springsource.greenhouse.activity.action.ActionWriteBenchmark -Dexec.classpathScope=test</code>; configure with system properties:
+ * <ul>
+ * <li>bench.threads - the number of request threads (default 16)</li>
+ * <li>bench.actions - the actions each thread performs (default 5000)</li>
+ * </ul>
+ */
+public class ActionWriteBenchmark {
+
+	private static final int MEMBERS = 100;
+
+	private final int threads = Integer.getInteger("bench.threads", 16);
+
+	private final int actions = Integer.getInteger("bench.actions", 5000);
+
+	public static void main(String[] args) throws Exception {
+		ActionWriteBenchmark benchmark = new ActionWriteBenchmark();
+		benchmark.run("inline", false);
+		benchmark.run("write-behind", true);
+	}
+
+	private void run(String name, boolean writeBehind) throws Exception {
+		EmbeddedDatabase db = new GreenhouseTestDatabaseBuilder().member().activity().idSequence().getDatabase();
+		try {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
+			for (int i = 1; i <= MEMBERS; i++) {
+				jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (?, 'Member', 'Number', ?, 'password', 'M', '1977-12-01')", i, "member" + i + "@springsource.com");
+			}
+			ActionJournal actionJournal = new ActionJournal(jdbcTemplate);
+			if (writeBehind) {
+				actionJournal.afterPropertiesSet();
+			}
+			final JdbcActionRepository actionRepository = new JdbcActionRepository(new ActionGateway() {
+				public void actionPerformed(Action action) {
+				}
+			}, new BlockIdAllocator(db), actionJournal);
+			final UriTemplate profileUrl = new UriTemplate("http://localhost:8080/members/{id}");
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			final CountDownLatch done = new CountDownLatch(threads);
+			final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							for (int i = 0; i < actions; i++) {
+								long id = (thread * actions + i) % MEMBERS + 1;
+								Account account = new Account(id, "Member", "Number", "member" + id + "@springsource.com", null, null, profileUrl);
+								actionRepository.saveSimpleAction(i % 10 == 0 ? "SignedUp" : "Tweeted", account);
+							}
+						} catch (RuntimeException e) {
+							failure.compareAndSet(null, e);
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+			long performed = System.nanoTime() - start;
+			actionJournal.destroy();
+			long written = System.nanoTime() - start;
+			executor.shutdown();
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+			int total = threads * actions;
+			System.out.println(String.format("%-12s %d actions: performed in %d ms (%.0f/s), written in %d ms (%.0f/s), %d inline, %d behind in %d batches",
+					name, total, performed / 1000000, total * 1e9 / performed, written / 1000000, total * 1e9 / written,
+					actionJournal.getWrittenInline(), actionJournal.getWrittenBehind(), actionJournal.getBatches()));
+		} finally {
+			db.shutdown();
+		}
+	}
+
+}
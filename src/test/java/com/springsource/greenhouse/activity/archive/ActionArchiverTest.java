@@ -0,0 +1,122 @@
+package com.springsource.greenhouse.activity.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.account.StubFileStorage;
+import com.springsource.greenhouse.activity.badge.StripedActionCounter;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class ActionArchiverTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private StubFileStorage archiveStorage;
+
+	private ActionArchiver archiver;
+
+	private ActionArchive archive;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		archiveStorage = new StubFileStorage();
+		archiver = new ActionArchiver(jdbcTemplate, archiveStorage);
+		archiver.setArchiveInterval(0);
+		archiver.afterPropertiesSet();
+		archive = new ActionArchive(jdbcTemplate, archiveStorage);
+	}
+
+	@After
+	public void destroy() throws Exception {
+		archiver.destroy();
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void archive() {
+		assertEquals(2, archiver.archive());
+		assertEquals(4, archiver.getArchivedActions());
+		assertEquals(3, jdbcTemplate.queryForInt("select count(*) from MemberAction"));
+		assertEquals(3, jdbcTemplate.queryForInt("select count(*) from MemberAction where id in (1, 3, 7)"));
+		assertEquals(0, jdbcTemplate.queryForInt("select count(*) from EventTweetAction"));
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from ActionArchiveSegment"));
+		assertEquals(3, jdbcTemplate.queryForInt("select actionCount from ActionArchiveSegment where name = 'actions/2009/10/2-5.ndjson.gz'"));
+		assertEquals(2, jdbcTemplate.queryForInt("select actionCount from ArchivedActionCount where member = 1 and actionType = 'EventTweet' and event = 0"));
+		assertEquals(2, jdbcTemplate.queryForInt("select actionCount from ArchivedActionCount where member = 1 and actionType = 'EventTweet' and event = 1"));
+		assertEquals(1, jdbcTemplate.queryForInt("select actionCount from ArchivedActionCount where member = 2 and actionType = 'SignedUp' and event = 0"));
+		assertEquals(0, archiver.archive());
+	}
+
+	@Test
+	public void readByMember() {
+		archiver.archive();
+		List<ArchivedAction> actions = read(1L, new DateTime(2009, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC), new DateTime(2010, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+		assertEquals(2, actions.size());
+		ArchivedAction tweet = actions.get(0);
+		assertEquals(Long.valueOf(4), tweet.getId());
+		assertEquals("EventTweet", tweet.getType());
+		assertEquals(new DateTime(2009, 10, 20, 10, 0, 0, 0, DateTimeZone.UTC).getMillis(), tweet.getTime().getMillis());
+		assertEquals(Long.valueOf(1), tweet.getMember());
+		assertEquals(41.88, tweet.getLocation().getLatitude(), 0.0001);
+		assertEquals(Long.valueOf(1), tweet.getEvent());
+		assertNull(tweet.getSession());
+		assertEquals("Keynote was great #s2gx", tweet.getTweet());
+		assertEquals(Long.valueOf(6), actions.get(1).getId());
+	}
+
+	@Test
+	public void readByTimeRange() {
+		archiver.setBlockSize(1);
+		archiver.archive();
+		List<ArchivedAction> actions = read(null, new DateTime(2009, 10, 1, 0, 0, 0, 0, DateTimeZone.UTC), new DateTime(2009, 11, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+		assertEquals(3, actions.size());
+		assertEquals(Long.valueOf(4), actions.get(0).getId());
+		assertEquals(Long.valueOf(2), actions.get(1).getId());
+		assertEquals(Long.valueOf(5), actions.get(2).getId());
+		actions = read(2L, new DateTime(2009, 10, 15, 0, 0, 0, 0, DateTimeZone.UTC), new DateTime(2009, 12, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+		assertEquals(1, actions.size());
+		assertEquals(Long.valueOf(5), actions.get(0).getId());
+		assertNull(actions.get(0).getLocation());
+	}
+
+	@Test
+	public void archivedActionsStillCounted() throws Exception {
+		archiver.archive();
+		StripedActionCounter actionCounter = new StripedActionCounter(jdbcTemplate);
+		actionCounter.afterPropertiesSet();
+		assertEquals(2, actionCounter.count(1L, "EventTweet"));
+		assertEquals(2, actionCounter.count(1L, "EventTweet", 1L));
+		assertEquals(1, actionCounter.count(1L, "SignedIn"));
+		assertEquals(1, actionCounter.count(2L, "SignedUp"));
+		assertEquals(1, actionCounter.count(2L, "InviteAccept"));
+		actionCounter.destroy();
+	}
+
+	private List<ArchivedAction> read(Long member, DateTime start, DateTime end) {
+		final List<ArchivedAction> actions = new ArrayList<ArchivedAction>();
+		archive.readActions(member, start, end, new ArchivedActionHandler() {
+			public void handleAction(ArchivedAction action) {
+				actions.add(action);
+			}
+		});
+		return actions;
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.springsource.greenhouse.activity.badge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class AwardedBadgeIndexTest {
+
+	private EmbeddedDatabase db;
+
+	private AwardedBadgeIndex index;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		index = new AwardedBadgeIndex(new JdbcTemplate(db), 1 << 16);
+		index.afterPropertiesSet();
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void loadedFromAwardedBadges() {
+		assertEquals(2, index.size());
+		assertTrue(index.contains(1L, "Newbie", null));
+		assertTrue(index.contains(2L, "Newbie", 1L));
+		assertFalse(index.contains(2L, "Newbie", null));
+		assertFalse(index.contains(1L, "Newbie", 1L));
+		assertFalse(index.contains(1L, "Broadcaster", null));
+	}
+
+	@Test
+	public void add() {
+		index.add(1L, "Broadcaster", 1L);
+		index.add(1L, "Broadcaster", 1L);
+		assertEquals(3, index.size());
+		assertTrue(index.contains(1L, "Broadcaster", 1L));
+		assertFalse(index.contains(1L, "Broadcaster", 2L));
+	}
+
+	@Test
+	public void manyMembers() {
+		for (long member = 1; member <= 5000; member++) {
+			index.add(member, "Broadcaster", member % 7);
+		}
+		for (long member = 1; member <= 5000; member++) {
+			assertTrue(index.contains(member, "Broadcaster", member % 7));
+			assertFalse(index.contains(member, "Broadcaster", member % 7 + 1));
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.springsource.greenhouse.activity.badge;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.account.StubFileStorage;
+import com.springsource.greenhouse.activity.action.ActionJournal;
+import com.springsource.greenhouse.database.BlockIdAllocator;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class BadgeBackfillTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private AwardedBadgeIndex awardedBadgeIndex;
+
+	private File progressFile;
+
+	private List<AwardedBadge> published = Collections.synchronizedList(new ArrayList<AwardedBadge>());
+
+	@Before
+	public void setup() throws Exception {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().idSequence().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		awardedBadgeIndex = new AwardedBadgeIndex(jdbcTemplate, 1 << 16);
+		awardedBadgeIndex.afterPropertiesSet();
+		progressFile = File.createTempFile("backfill", ".progress");
+		progressFile.delete();
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+		progressFile.delete();
+	}
+
+	@Test
+	public void backfill() throws Exception {
+		BadgeBackfill backfill = backfill();
+		backfill.run();
+		assertEquals(5, backfill.getProcessedActions());
+		assertEquals(2, backfill.getAwardedBadges());
+		assertEquals(5, backfill.getLastActionId());
+		assertEquals(3, jdbcTemplate.queryForInt("select count(*) from AwardedBadge where badge = 'Newbie'"));
+		assertEquals(4L, jdbcTemplate.queryForLong("select memberAction from AwardedBadge where member = 3"));
+		assertEquals(2L, jdbcTemplate.queryForLong("select memberAction from AwardedBadge where member = 2"));
+		assertEquals(2, published.size());
+	}
+
+	@Test
+	public void rerunIsIdempotent() throws Exception {
+		backfill().run();
+		BadgeBackfill backfill = backfill();
+		backfill.reset();
+		backfill.run();
+		assertEquals(0, backfill.getAwardedBadges());
+		assertEquals(3, jdbcTemplate.queryForInt("select count(*) from AwardedBadge"));
+		assertEquals(2, published.size());
+	}
+
+	@Test
+	public void resumesAfterLastChunk() throws Exception {
+		backfill().run();
+		jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (4, 'Jeremy', 'Grelle', 'jgrelle@vmware.com', 'password', 'M', '1977-12-01')");
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (6, 'SignedUp', '2010-10-05 10:00:00Z', 4)");
+		BadgeBackfill backfill = backfill();
+		backfill.run();
+		assertEquals(1, backfill.getProcessedActions());
+		assertEquals(1, backfill.getAwardedBadges());
+		assertEquals(4, jdbcTemplate.queryForInt("select count(*) from AwardedBadge"));
+		assertEquals(4L, published.get(2).getAccount().getId().longValue());
+	}
+
+	private BadgeBackfill backfill() {
+		AccountMapper accountMapper = new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}");
+		AwardedBadgeGateway gateway = new AwardedBadgeGateway() {
+			public void badgeAwarded(AwardedBadge badge) {
+				published.add(badge);
+			}
+		};
+		BadgeBackfill backfill = new BadgeBackfill(jdbcTemplate, accountMapper, awardedBadgeIndex, new BlockIdAllocator(db), new ActionJournal(jdbcTemplate), gateway);
+		backfill.setThreads(2);
+		backfill.setChunkSize(2);
+		backfill.setProgressFile(progressFile.getPath());
+		return backfill;
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.springsource.greenhouse.activity.badge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.action.Action;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.ActionClassMatcher;
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.BadgeAwarderMatcher;
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.SimpleActionTypeMatcher;
+import com.springsource.greenhouse.activity.badge.StandardBadgeSystem.ThresholdMatcher;
+import com.springsource.greenhouse.utils.Location;
+
+public class StandardBadgeSystemTest {
+
+	private StandardBadgeSystem badgeSystem;
+
+	private Account account;
+
+	@Before
+	public void setup() {
+		badgeSystem = new StandardBadgeSystem();
+		account = new Account(1L, "Keith", "Donald", "keith@springsource.com", "kdonald", null, new UriTemplate("http://localhost:8080/members/{id}"));
+	}
+
+	@Test
+	public void simpleActionType() {
+		badgeSystem.add(new NamedBadgeAwarder("Newbie"), new SimpleActionTypeMatcher("SignedUp"));
+		assertEquals("Newbie", badgeSystem.awardBadgeForAction(new SimpleAction("SignedUp", 1L, new DateTime(), account, null)).getName());
+		assertNull(badgeSystem.awardBadgeForAction(new SimpleAction("SignedIn", 2L, new DateTime(), account, null)));
+		assertNull(badgeSystem.awardBadgeForAction(new TweetAction(3L, account)));
+	}
+
+	@Test
+	public void actionClassIncludesSubclasses() {
+		badgeSystem.add(new NamedBadgeAwarder("Tweeter"), new ActionClassMatcher(TweetAction.class));
+		assertEquals("Tweeter", badgeSystem.awardBadgeForAction(new TweetAction(1L, account)).getName());
+		assertEquals("Tweeter", badgeSystem.awardBadgeForAction(new SessionTweetAction(2L, account)).getName());
+		assertNull(badgeSystem.awardBadgeForAction(new SimpleAction("SignedUp", 3L, new DateTime(), account, null)));
+	}
+
+	@Test
+	public void awarderTypeResolved() {
+		badgeSystem.add(new TweetBadgeAwarder());
+		assertEquals("Chirp", badgeSystem.awardBadgeForAction(new SessionTweetAction(1L, account)).getName());
+		assertNull(badgeSystem.awardBadgeForAction(new SimpleAction("SignedUp", 2L, new DateTime(), account, null)));
+	}
+
+	@Test
+	public void threshold() {
+		final Map<Long, Long> counts = new HashMap<Long, Long>();
+		ActionCounter counter = new ActionCounter() {
+			public long countActions(Action action) {
+				Long count = counts.get(action.getAccount().getId());
+				count = count != null ? count + 1 : 1L;
+				counts.put(action.getAccount().getId(), count);
+				return count;
+			}
+			public long countEventActions(Action action) {
+				return 0;
+			}
+		};
+		badgeSystem.add(new NamedBadgeAwarder("Chatterbox"), new ThresholdMatcher(new ActionClassMatcher(TweetAction.class), 10, counter));
+		for (long id = 1; id < 10; id++) {
+			assertNull(badgeSystem.awardBadgeForAction(new TweetAction(id, account)));
+		}
+		assertEquals("Chatterbox", badgeSystem.awardBadgeForAction(new TweetAction(10L, account)).getName());
+		assertNull(badgeSystem.awardBadgeForAction(new TweetAction(11L, account)));
+	}
+
+	@Test
+	public void onlyCandidateRulesEvaluated() {
+		final int[] evaluated = new int[1];
+		badgeSystem.add(new NamedBadgeAwarder("Never"), new BadgeAwarderMatcher() {
+			public Class<? extends Action> getActionClass() {
+				return TweetAction.class;
+			}
+			public String getActionType() {
+				return null;
+			}
+			public boolean matches(Action action) {
+				evaluated[0]++;
+				return false;
+			}
+		});
+		badgeSystem.add(new NamedBadgeAwarder("Newbie"), new SimpleActionTypeMatcher("SignedUp"));
+		for (long id = 1; id <= 5; id++) {
+			badgeSystem.awardBadgeForAction(new SimpleAction("SignedUp", id, new DateTime(), account, null));
+		}
+		assertEquals(0, evaluated[0]);
+		badgeSystem.awardBadgeForAction(new TweetAction(6L, account));
+		assertEquals(1, evaluated[0]);
+	}
+
+	@Test
+	public void firstAwardWins() {
+		badgeSystem.add(new NamedBadgeAwarder("First"), new ActionClassMatcher(Action.class));
+		badgeSystem.add(new NamedBadgeAwarder("Second"), new ActionClassMatcher(TweetAction.class));
+		assertEquals("First", badgeSystem.awardBadgeForAction(new TweetAction(1L, account)).getName());
+	}
+
+	private static class TweetAction extends Action {
+
+		public TweetAction(Long id, Account account) {
+			super(id, new DateTime(), account, (Location) null);
+		}
+
+	}
+
+	private static class SessionTweetAction extends TweetAction {
+
+		public SessionTweetAction(Long id, Account account) {
+			super(id, account);
+		}
+
+	}
+
+	private static class NamedBadgeAwarder implements BadgeAwarder<Action> {
+
+		private final String name;
+
+		public NamedBadgeAwarder(String name) {
+			this.name = name;
+		}
+
+		public AwardedBadge awardBadgeForAction(Action action) {
+			return new AwardedBadge(action.getId(), name, new DateTime(), null, action.getAccount(), action);
+		}
+
+	}
+
+	private static class TweetBadgeAwarder implements BadgeAwarder<TweetAction> {
+
+		public AwardedBadge awardBadgeForAction(TweetAction action) {
+			return new AwardedBadge(action.getId(), "Chirp", new DateTime(), null, action.getAccount(), action);
+		}
+
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.springsource.greenhouse.activity.badge;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+import com.springsource.greenhouse.events.EventTweetAction;
+
+public class StripedActionCounterTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private StripedActionCounter actionCounter;
+
+	private File snapshotFile;
+
+	private Account keith;
+
+	@Before
+	public void setup() throws Exception {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		snapshotFile = File.createTempFile("counters", ".snapshot");
+		snapshotFile.delete();
+		actionCounter = new StripedActionCounter(jdbcTemplate);
+		actionCounter.setSnapshotFile(snapshotFile.getPath());
+		actionCounter.afterPropertiesSet();
+		keith = new Account(1L, "Keith", "Donald", "kdonald@vmware.com", "kdonald", null, new UriTemplate("http://localhost:8080/members/{id}"));
+	}
+
+	@After
+	public void destroy() throws Exception {
+		actionCounter.destroy();
+		if (db != null) {
+			db.shutdown();
+		}
+		snapshotFile.delete();
+	}
+
+	@Test
+	public void warmedFromMemberActions() {
+		assertEquals(1, actionCounter.count(1L, "SignedUp"));
+		assertEquals(3, actionCounter.count(1L, "EventTweet"));
+		assertEquals(2, actionCounter.count(1L, "EventTweet", 1L));
+		assertEquals(1, actionCounter.count(1L, "EventTweet", 2L));
+		assertEquals(1, actionCounter.count(2L, "EventTweet", 1L));
+		assertEquals(0, actionCounter.count(2L, "EventTweet", 2L));
+		assertEquals(0, actionCounter.count(1L, "Favorited"));
+	}
+
+	@Test
+	public void countingDoesNotRecord() {
+		EventTweetAction tweet = tweet(7L, 1L);
+		assertEquals(3, actionCounter.countActions(tweet));
+		actionCounter.actionPerformed(tweet);
+		assertEquals(4, actionCounter.countActions(tweet));
+		assertEquals(3, actionCounter.countEventActions(tweet));
+		assertEquals(4, actionCounter.countActions(tweet));
+		assertEquals(3, actionCounter.countEventActions(tweet));
+	}
+
+	@Test
+	public void outOfOrderActionsCounted() {
+		actionCounter.actionPerformed(tweet(9L, 1L));
+		actionCounter.actionPerformed(tweet(8L, 1L));
+		actionCounter.actionPerformed(tweet(7L, 1L));
+		assertEquals(6, actionCounter.count(1L, "EventTweet"));
+		assertEquals(5, actionCounter.count(1L, "EventTweet", 1L));
+	}
+
+	@Test
+	public void countNewType() {
+		SimpleAction favorite = new SimpleAction("Favorited", 7L, new DateTime(), keith, null);
+		assertEquals(0, actionCounter.countActions(favorite));
+		actionCounter.actionPerformed(favorite);
+		assertEquals(1, actionCounter.countActions(favorite));
+		assertEquals(0, actionCounter.countEventActions(favorite));
+		for (long id = 8; id < 100; id++) {
+			actionCounter.actionPerformed(new SimpleAction("Favorited", id, new DateTime(), keith, null));
+		}
+		assertEquals(93, actionCounter.count(1L, "Favorited"));
+	}
+
+	@Test
+	public void restoredFromCheckpoint() throws Exception {
+		actionCounter.actionPerformed(tweet(7L, 2L));
+		actionCounter.checkpoint();
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (7, 'EventTweet', now(), 1)");
+		jdbcTemplate.update("insert into EventTweetAction (memberAction, event, tweet) values (7, 2, 'Still here #s2gx')");
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (8, 'SignedIn', now(), 1)");
+		StripedActionCounter restored = restore();
+		assertEquals(4, restored.count(1L, "EventTweet"));
+		assertEquals(2, restored.count(1L, "EventTweet", 2L));
+		assertEquals(1, restored.count(1L, "SignedIn"));
+		assertEquals(1, restored.count(2L, "SignedUp"));
+		restored.destroy();
+	}
+
+	@Test
+	public void lowerIdAfterCheckpointRestored() throws Exception {
+		actionCounter.actionPerformed(tweet(20L, 2L));
+		actionCounter.checkpoint();
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (20, 'EventTweet', now(), 1)");
+		jdbcTemplate.update("insert into EventTweetAction (memberAction, event, tweet) values (20, 2, 'From node one #s2gx')");
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (10, 'EventTweet', now(), 1)");
+		jdbcTemplate.update("insert into EventTweetAction (memberAction, event, tweet) values (10, 2, 'From node two #s2gx')");
+		StripedActionCounter restored = restore();
+		assertEquals(5, restored.count(1L, "EventTweet"));
+		assertEquals(3, restored.count(1L, "EventTweet", 2L));
+		restored.checkpoint();
+		StripedActionCounter restoredAgain = restore();
+		assertEquals(5, restoredAgain.count(1L, "EventTweet"));
+		restored.destroy();
+		restoredAgain.destroy();
+	}
+
+	@Test
+	public void unknownSnapshotFormatWarmsFromScratch() throws Exception {
+		FileCopyUtils.copy(new byte[] { 0x41, 0x43, 0x54, 0x52, 0, 0, 0, 0 }, snapshotFile);
+		StripedActionCounter restored = restore();
+		assertEquals(3, restored.count(1L, "EventTweet"));
+		restored.destroy();
+	}
+
+	private StripedActionCounter restore() throws Exception {
+		StripedActionCounter restored = new StripedActionCounter(jdbcTemplate);
+		restored.setSnapshotFile(snapshotFile.getPath());
+		restored.afterPropertiesSet();
+		return restored;
+	}
+
+	private EventTweetAction tweet(Long id, Long event) {
+		return new EventTweetAction(id, new DateTime(), keith, null, event, "SpringOne2gx", "Tweet #s2gx");
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.springsource.greenhouse.activity.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+
+public class PartitionedPublishSubscribeChannelTest {
+
+	private PartitionedPublishSubscribeChannel channel;
+
+	@Before
+	public void setup() throws Exception {
+		channel = new PartitionedPublishSubscribeChannel("payload.account.id");
+		channel.setPartitions(4);
+		channel.setCapacity(10);
+		channel.setBeanName("actionChannel");
+		channel.afterPropertiesSet();
+	}
+
+	@After
+	public void destroy() throws Exception {
+		channel.destroy();
+	}
+
+	@Test
+	public void ordersActionsByMember() throws Exception {
+		final Map<Long, List<Long>> handled = Collections.synchronizedMap(new HashMap<Long, List<Long>>());
+		final CountDownLatch done = new CountDownLatch(500);
+		channel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				SimpleAction action = (SimpleAction) message.getPayload();
+				List<Long> actions = handled.get(action.getAccount().getId());
+				if (actions == null) {
+					actions = Collections.synchronizedList(new ArrayList<Long>());
+					handled.put(action.getAccount().getId(), actions);
+				}
+				actions.add(action.getId());
+				done.countDown();
+			}
+		});
+		for (long id = 0; id < 500; id++) {
+			channel.send(MessageBuilder.withPayload(action(id, id % 5)).build());
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(5, handled.size());
+		for (List<Long> actions : handled.values()) {
+			assertEquals(100, actions.size());
+			for (int i = 1; i < actions.size(); i++) {
+				assertTrue(actions.get(i - 1) < actions.get(i));
+			}
+		}
+		long total = 0;
+		for (long count : channel.getHandledCounts()) {
+			total += count;
+		}
+		assertEquals(500, total);
+	}
+
+	@Test
+	public void failingSubscriberDoesNotStopOthers() throws Exception {
+		final CountDownLatch done = new CountDownLatch(3);
+		channel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				throw new IllegalStateException("failed");
+			}
+		});
+		channel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				done.countDown();
+			}
+		});
+		for (long id = 0; id < 3; id++) {
+			channel.send(MessageBuilder.withPayload(action(id, 1L)).build());
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void membersHandledInParallel() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch other = new CountDownLatch(1);
+		channel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				SimpleAction action = (SimpleAction) message.getPayload();
+				if (action.getAccount().getId() == 1L) {
+					try {
+						blocked.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				} else {
+					other.countDown();
+				}
+			}
+		});
+		channel.send(MessageBuilder.withPayload(action(1L, 1L)).build());
+		channel.send(MessageBuilder.withPayload(action(2L, 2L)).build());
+		assertTrue(other.await(5, TimeUnit.SECONDS));
+		blocked.countDown();
+	}
+
+	private SimpleAction action(Long id, Long member) {
+		Account account = new Account(member, "Keith", "Donald", "keith@springsource.com", "kdonald", null, new UriTemplate("http://localhost:8080/members/{id}"));
+		return new SimpleAction("SignedUp", id, new DateTime(), account, null);
+	}
+
+}
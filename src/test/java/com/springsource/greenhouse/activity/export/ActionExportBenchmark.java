@@ -0,0 +1,105 @@
+package com.springsource.greenhouse.activity.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.springsource.greenhouse.database.EmbeddedDatabaseFactoryBean;
+
+/**
+ * Exports a large number of actions from a file-backed H2 database to a gzip stream that is thrown away, reporting throughput and the peak heap used.
+ * Run with a small heap to show the export runs in constant memory e.g.
+ * <code>MAVEN_OPTS=-Xmx64m mvn test-compile exec:java -Dexec.mainClass=com.springsource.greenhouse.activity.export.ActionExportBenchmark -Dexec.classpathScope=test -Dbench.rows=10000000</code>; configure with system properties:
+ * <ul>
+ * <li>bench.rows - the number of actions to export (default 1000000)</li>
+ * <li>bench.fetchSize - the number of rows fetched at a time (default 1000)</li>
+ * </ul>
+ */
+public class ActionExportBenchmark {
+
+	private final int rows = Integer.getInteger("bench.rows", 1000000);
+
+	private final int fetchSize = Integer.getInteger("bench.fetchSize", 1000);
+
+	public static void main(String[] args) throws Exception {
+		new ActionExportBenchmark().run();
+	}
+
+	private void run() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "greenhouse-export-bench");
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:" + new File(dir, "db").getPath() + ";LOG=0;UNDO_LOG=0", "sa", "");
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		if (jdbcTemplate.queryForInt("select count(*) from information_schema.tables where table_name = 'MEMBERACTION'") == 0) {
+			ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+			populator.addScript(new ClassPathResource("install/Member.sql", EmbeddedDatabaseFactoryBean.class));
+			populator.addScript(new ClassPathResource("install/Group.sql", EmbeddedDatabaseFactoryBean.class));
+			populator.addScript(new ClassPathResource("install/Activity.sql", EmbeddedDatabaseFactoryBean.class));
+			populator.addScript(new ClassPathResource("install/Invite.sql", EmbeddedDatabaseFactoryBean.class));
+			populator.addScript(new ClassPathResource("install/Venue.sql", EmbeddedDatabaseFactoryBean.class));
+			populator.addScript(new ClassPathResource("install/Event.sql", EmbeddedDatabaseFactoryBean.class));
+			DatabasePopulatorUtils.execute(populator, dataSource);
+			jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (1, 'Keith', 'Donald', 'kdonald@vmware.com', 'melbourne', 'M', '1977-12-01')");
+		}
+		int existing = jdbcTemplate.queryForInt("select count(*) from MemberAction");
+		if (existing < rows) {
+			long start = System.currentTimeMillis();
+			jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, latitude, longitude, member) select x, 'Tweeted', dateadd('SECOND', x, '2010-10-19 00:00:00'), 41.88, -87.63, 1 from system_range(?, ?)", existing + 1, rows);
+			System.out.println("Inserted " + (rows - existing) + " actions in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		final AtomicLong peakHeap = new AtomicLong();
+		Thread sampler = new Thread(new Runnable() {
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					long used = memory.getHeapMemoryUsage().getUsed();
+					if (used > peakHeap.get()) {
+						peakHeap.set(used);
+					}
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+		sampler.setDaemon(true);
+		sampler.start();
+		ActionExporter exporter = new ActionExporter(jdbcTemplate);
+		exporter.setFetchSize(fetchSize);
+		CountingOutputStream bytes = new CountingOutputStream();
+		long start = System.nanoTime();
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes, 65536);
+		long exported = exporter.export(null, null, null, gzip);
+		gzip.finish();
+		long elapsed = System.nanoTime() - start;
+		sampler.interrupt();
+		System.out.println(String.format("Exported %d actions (%d compressed bytes) in %d ms (%.0f/s); peak heap %d MB of %d MB max",
+				exported, bytes.count, elapsed / 1000000, exported * 1e9 / elapsed, peakHeap.get() / (1024 * 1024), memory.getHeapMemoryUsage().getMax() / (1024 * 1024)));
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		public void write(int b) throws IOException {
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.springsource.greenhouse.activity.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.account.StubFileStorage;
+import com.springsource.greenhouse.activity.archive.ActionArchive;
+import com.springsource.greenhouse.activity.archive.ActionArchiver;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class ActionExporterTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void exportAll() throws Exception {
+		ActionExporter exporter = new ActionExporter(jdbcTemplate);
+		exporter.setFetchSize(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(5, exporter.export(null, null, null, out));
+		String[] lines = out.toString("UTF-8").split("\n");
+		assertEquals(5, lines.length);
+		Map<?, ?> tweet = objectMapper.readValue(lines[1], Map.class);
+		assertEquals(2, tweet.get("id"));
+		assertEquals("EventTweet", tweet.get("type"));
+		assertEquals("2009-10-20T10:00:00.000Z", tweet.get("time"));
+		assertEquals(1, tweet.get("member"));
+		assertEquals(41.88, (Double) tweet.get("latitude"), 0.0001);
+		assertEquals(1, tweet.get("event"));
+		assertEquals("Keynote was \"great\" #s2gx", tweet.get("tweet"));
+		assertFalse(objectMapper.readValue(lines[0], Map.class).containsKey("event"));
+	}
+
+	@Test
+	public void exportEventInTimeRange() throws Exception {
+		ActionExporter exporter = new ActionExporter(jdbcTemplate);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(2, exporter.export(1L, null, null, out));
+		out.reset();
+		assertEquals(1, exporter.export(1L, new DateTime(2009, 10, 19, 0, 0, 0, 0, DateTimeZone.UTC), new DateTime(2009, 10, 23, 0, 0, 0, 0, DateTimeZone.UTC), out));
+		assertEquals(2, objectMapper.readValue(out.toString("UTF-8").trim(), Map.class).get("id"));
+	}
+
+	@Test
+	public void exportIncludesArchive() throws Exception {
+		StubFileStorage archiveStorage = new StubFileStorage();
+		ActionArchiver archiver = new ActionArchiver(jdbcTemplate, archiveStorage);
+		archiver.setArchiveInterval(0);
+		archiver.afterPropertiesSet();
+		assertEquals(1, archiver.archive());
+		ActionExporter exporter = new ActionExporter(jdbcTemplate, new ActionArchive(jdbcTemplate, archiveStorage));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(5, exporter.export(null, null, null, out));
+		out.reset();
+		assertEquals(2, exporter.export(1L, null, null, out));
+		String[] lines = out.toString("UTF-8").split("\n");
+		assertEquals(2, objectMapper.readValue(lines[0], Map.class).get("id"));
+		assertEquals(5, objectMapper.readValue(lines[1], Map.class).get("id"));
+		out.reset();
+		exporter.setEventArchiveMarginDays(0);
+		assertEquals(2, exporter.export(1L, null, null, out));
+		out.reset();
+		assertEquals(0, exporter.export(99L, null, null, out));
+		archiver.destroy();
+	}
+
+	@Test
+	public void organizer() {
+		ActionExporter exporter = new ActionExporter(jdbcTemplate);
+		assertTrue(exporter.isOrganizer(1L, 1L));
+		assertFalse(exporter.isOrganizer(1L, 2L));
+		assertFalse(exporter.isOrganizer(3L, 1L));
+	}
+
+}
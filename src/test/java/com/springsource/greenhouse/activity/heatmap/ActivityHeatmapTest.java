@@ -0,0 +1,79 @@
+package com.springsource.greenhouse.activity.heatmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.events.EventTweetAction;
+import com.springsource.greenhouse.utils.Location;
+
+public class ActivityHeatmapTest {
+
+	private static final long NOW = new DateTime(2010, 10, 20, 12, 30, 45, 0, DateTimeZone.UTC).getMillis();
+
+	private ActivityHeatmap activityHeatmap = new ActivityHeatmap();
+
+	private Account keith = new Account(1L, "Keith", "Donald", "kdonald@vmware.com", "kdonald", null, new UriTemplate("http://localhost:8080/members/{id}"));
+
+	private Location keynote = new Location(41.8781, -87.6298);
+
+	private Location hallway = new Location(41.8850, -87.6200);
+
+	@Test
+	public void countedByCell() {
+		activityHeatmap.actionPerformed(action(1L, NOW - 1000, keynote));
+		activityHeatmap.actionPerformed(action(2L, NOW - 2000, keynote));
+		activityHeatmap.actionPerformed(action(3L, NOW - 3000, hallway));
+		activityHeatmap.actionPerformed(action(4L, NOW - 4000, null));
+		List<HeatmapCell> cells = activityHeatmap.findHeatmap(null, 5, NOW);
+		assertEquals(2, cells.size());
+		assertEquals("dp3wjzt", cells.get(0).getGeohash());
+		assertEquals(2, cells.get(0).getCount());
+		assertEquals(41.8781, cells.get(0).getLatitude(), 0.001);
+		assertEquals(1, cells.get(1).getCount());
+	}
+
+	@Test
+	public void window() {
+		activityHeatmap.actionPerformed(action(1L, NOW - 30 * 1000, keynote));
+		activityHeatmap.actionPerformed(action(2L, NOW - 10 * 60 * 1000, keynote));
+		activityHeatmap.actionPerformed(action(3L, NOW - 3 * 60 * 60 * 1000, keynote));
+		activityHeatmap.actionPerformed(action(4L, NOW - 3 * 24 * 60 * 60 * 1000L, keynote));
+		assertEquals(1, activityHeatmap.findHeatmap(null, 1, NOW).get(0).getCount());
+		assertEquals(2, activityHeatmap.findHeatmap(null, 60, NOW).get(0).getCount());
+		assertEquals(3, activityHeatmap.findHeatmap(null, 24 * 60, NOW).get(0).getCount());
+		assertEquals(3, activityHeatmap.findHeatmap(null, 100 * 60, NOW).get(0).getCount());
+	}
+
+	@Test
+	public void event() {
+		activityHeatmap.actionPerformed(new EventTweetAction(1L, new DateTime(NOW - 1000, DateTimeZone.UTC), keith, keynote, 1L, "SpringOne2gx", "Keynote #s2gx"));
+		activityHeatmap.actionPerformed(action(2L, NOW - 2000, hallway));
+		List<HeatmapCell> cells = activityHeatmap.findHeatmap(1L, 60, NOW);
+		assertEquals(1, cells.size());
+		assertEquals("dp3wjzt", cells.get(0).getGeohash());
+		assertEquals(2, activityHeatmap.findHeatmap(null, 60, NOW).size());
+		assertEquals(0, activityHeatmap.findHeatmap(2L, 60, NOW).size());
+	}
+
+	@Test
+	public void slotsReused() {
+		activityHeatmap.actionPerformed(action(1L, NOW - 2 * 60 * 60 * 1000, keynote));
+		activityHeatmap.actionPerformed(action(2L, NOW, hallway));
+		List<HeatmapCell> cells = activityHeatmap.findHeatmap(null, 60, NOW);
+		assertEquals(1, cells.size());
+		assertEquals(1, cells.get(0).getCount());
+	}
+
+	private SimpleAction action(Long id, long time, Location location) {
+		return new SimpleAction("Favorited", id, new DateTime(time, DateTimeZone.UTC), keith, location);
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.springsource.greenhouse.activity.heatmap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GeoHashTest {
+
+	@Test
+	public void encode() {
+		assertEquals("u4pruydqqvj", GeoHash.toString(GeoHash.encode(57.64911, 10.40744, 11), 11));
+		assertEquals("dp3wjzt", GeoHash.toString(GeoHash.encode(41.8781, -87.6298, 7), 7));
+	}
+
+	@Test
+	public void decode() {
+		double[] center = GeoHash.decode(GeoHash.encode(57.64911, 10.40744, 11), 11);
+		assertEquals(57.64911, center[0], 0.00001);
+		assertEquals(10.40744, center[1], 0.00001);
+	}
+
+	@Test
+	public void nearbyLocationsShareCell() {
+		assertEquals(GeoHash.encode(41.87810, -87.62980, 6), GeoHash.encode(41.87820, -87.62990, 6));
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.springsource.greenhouse.activity.recent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+public class RingBufferRecentActivityRepositoryTest {
+
+	private RingBufferRecentActivityRepository repository = new RingBufferRecentActivityRepository(4, 3);
+
+	@Test
+	public void empty() {
+		assertEquals(0, repository.findInitial().size());
+		assertNull(repository.findNext(new DateTime(0)));
+	}
+
+	@Test
+	public void findInitialNewestFirst() {
+		add(1, 2, 3, 4, 5);
+		List<RecentActivity> initial = repository.findInitial();
+		assertEquals(3, initial.size());
+		assertEquals("5", initial.get(0).getText());
+		assertEquals("4", initial.get(1).getText());
+		assertEquals("3", initial.get(2).getText());
+	}
+
+	@Test
+	public void findNext() {
+		add(10, 20, 30);
+		assertEquals("10", repository.findNext(new DateTime(5)).getText());
+		assertEquals("20", repository.findNext(new DateTime(10)).getText());
+		assertEquals("30", repository.findNext(new DateTime(25)).getText());
+		assertNull(repository.findNext(new DateTime(30)));
+	}
+
+	@Test
+	public void findNextAfterWrap() {
+		add(10, 20, 30, 40, 50, 60);
+		// 10 and 20 have been overwritten; the oldest retained is 30
+		assertEquals("30", repository.findNext(new DateTime(0)).getText());
+		assertEquals("60", repository.findNext(new DateTime(55)).getText());
+	}
+
+	@Test
+	public void lateActivityMovedUpToLastTime() {
+		add(10, 30, 20);
+		// 20 arrived after 30, so it is recorded at 30
+		assertEquals("30", repository.findNext(new DateTime(10)).getText());
+		assertNull(repository.findNext(new DateTime(30)));
+		assertEquals("20", repository.findInitial().get(0).getText());
+	}
+
+	private void add(long... times) {
+		for (long time : times) {
+			repository.add(new RecentActivity("http://example.com/" + time + ".jpg", String.valueOf(time), null), time);
+		}
+	}
+
+}
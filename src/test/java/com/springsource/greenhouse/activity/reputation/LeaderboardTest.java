@@ -0,0 +1,75 @@
+package com.springsource.greenhouse.activity.reputation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LeaderboardTest {
+
+	private Leaderboard leaderboard = new Leaderboard();
+
+	@Test
+	public void rankedHighestFirst() {
+		leaderboard.add(1L, 5);
+		leaderboard.add(2L, 10);
+		leaderboard.add(3L, 5);
+		List<Leaderboard.Score> top = leaderboard.top(3);
+		assertEquals(3, top.size());
+		assertEquals(Long.valueOf(2), top.get(0).getMember());
+		assertEquals(Long.valueOf(1), top.get(1).getMember());
+		assertEquals(Long.valueOf(3), top.get(2).getMember());
+	}
+
+	@Test
+	public void scoreChangesRank() {
+		leaderboard.add(1L, 5);
+		leaderboard.add(2L, 10);
+		assertEquals(11, leaderboard.add(1L, 6));
+		List<Leaderboard.Score> top = leaderboard.top(1);
+		assertEquals(Long.valueOf(1), top.get(0).getMember());
+		assertEquals(11, top.get(0).getScore());
+		assertEquals(2, leaderboard.size());
+		assertEquals(2, leaderboard.top(10).size());
+	}
+
+	@Test
+	public void unknownMember() {
+		assertEquals(0, leaderboard.getScore(1L));
+		assertEquals(0, leaderboard.top(10).size());
+	}
+
+	@Test
+	public void concurrentUpdates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						leaderboard.add((long) (i % 10), 1);
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		assertEquals(10, leaderboard.size());
+		for (Leaderboard.Score score : leaderboard.top(20)) {
+			assertEquals(800, score.getScore());
+		}
+		assertEquals(10, leaderboard.top(20).size());
+	}
+
+}
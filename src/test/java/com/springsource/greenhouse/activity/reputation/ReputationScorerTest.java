@@ -0,0 +1,129 @@
+package com.springsource.greenhouse.activity.reputation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.account.StubFileStorage;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.activity.badge.AwardedBadge;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+import com.springsource.greenhouse.events.EventTweetAction;
+
+public class ReputationScorerTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private ReputationScorer reputationScorer;
+
+	private Account craig;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		reputationScorer = new ReputationScorer(jdbcTemplate, new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}"));
+		reputationScorer.setFlushInterval(3600);
+		reputationScorer.afterPropertiesSet();
+		craig = new Account(2L, "Craig", "Walls", "cwalls@vmware.com", "habuma", null, new UriTemplate("http://localhost:8080/members/{id}"));
+	}
+
+	@After
+	public void destroy() throws Exception {
+		reputationScorer.destroy();
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void warmed() {
+		List<Standing> standings = reputationScorer.findStandings(null, 10);
+		assertEquals(2, standings.size());
+		assertEquals(1, standings.get(0).getRank());
+		assertEquals("kdonald", standings.get(0).getMember().getId());
+		assertEquals(15, standings.get(0).getReputation());
+		assertEquals("habuma", standings.get(1).getMember().getId());
+		List<Standing> event = reputationScorer.findStandings(1L, 10);
+		assertEquals(2, event.size());
+		assertEquals("habuma", event.get(0).getMember().getId());
+		assertEquals(12, event.get(0).getReputation());
+		assertEquals(2, event.get(1).getReputation());
+		assertEquals(0, reputationScorer.findStandings(2L, 10).size());
+	}
+
+	@Test
+	public void scoredAndFlushed() {
+		EventTweetAction tweet = new EventTweetAction(5L, new DateTime(), craig, null, 1L, "SpringOne2gx", "Tweet #s2gx");
+		reputationScorer.actionPerformed(tweet);
+		reputationScorer.badgeAwarded(new AwardedBadge(3L, "Chatterbox", new DateTime(), null, craig, tweet));
+		reputationScorer.actionPerformed(new SimpleAction("Favorited", 6L, new DateTime(), craig, null));
+		assertEquals(15, reputationScorer.getReputation(2L));
+		assertEquals(3, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+		List<Standing> event = reputationScorer.findStandings(1L, 1);
+		assertEquals(1, event.size());
+		assertEquals(24, event.get(0).getReputation());
+		reputationScorer.flush();
+		assertEquals(15, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+		assertEquals(15, jdbcTemplate.queryForInt("select reputation from Member where id = 1"));
+	}
+
+	@Test
+	public void flushAddsToReputationWrittenElsewhere() {
+		reputationScorer.actionPerformed(new EventTweetAction(5L, new DateTime(), craig, null, 1L, "SpringOne2gx", "Tweet #s2gx"));
+		jdbcTemplate.update("update Member set reputation = reputation + 5 where id = 2");
+		reputationScorer.flush();
+		assertEquals(10, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+		reputationScorer.flush();
+		assertEquals(10, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+	}
+
+	@Test
+	public void flushRetriedAfterFailure() throws Exception {
+		final boolean[] down = new boolean[1];
+		DelegatingDataSource dataSource = new DelegatingDataSource(db) {
+			public Connection getConnection() throws SQLException {
+				if (down[0]) {
+					throw new SQLException("Database is down");
+				}
+				return super.getConnection();
+			}
+		};
+		ReputationScorer scorer = new ReputationScorer(new JdbcTemplate(dataSource), new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}"));
+		scorer.setFlushInterval(3600);
+		scorer.afterPropertiesSet();
+		try {
+			scorer.actionPerformed(new EventTweetAction(5L, new DateTime(), craig, null, 1L, "SpringOne2gx", "Tweet #s2gx"));
+			down[0] = true;
+			try {
+				scorer.flush();
+				fail("Should have failed");
+			} catch (RuntimeException e) {
+			}
+			down[0] = false;
+			assertEquals(3, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+			scorer.actionPerformed(new EventTweetAction(6L, new DateTime(), craig, null, 1L, "SpringOne2gx", "Tweet #s2gx"));
+			scorer.flush();
+			assertEquals(7, jdbcTemplate.queryForInt("select reputation from Member where id = 2"));
+		} finally {
+			scorer.destroy();
+		}
+	}
+
+}
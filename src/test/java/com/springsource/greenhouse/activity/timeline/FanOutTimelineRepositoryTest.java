@@ -0,0 +1,102 @@
+package com.springsource.greenhouse.activity.timeline;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.account.AccountMapper;
+import com.springsource.greenhouse.account.StubFileStorage;
+import com.springsource.greenhouse.activity.action.ActionJournal;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+import com.springsource.greenhouse.events.EventTweetAction;
+
+public class FanOutTimelineRepositoryTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private FanOutTimelineRepository timelineRepository;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		timelineRepository = new FanOutTimelineRepository(jdbcTemplate, new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}"), new ActionJournal(jdbcTemplate));
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void warmed() {
+		timelineRepository.afterPropertiesSet();
+		assertTimeline(timelineRepository.findTimeline(1L, null, 10), 5, 4, 3, 2, 1);
+		assertTimeline(timelineRepository.findTimeline(2L, null, 10), 5, 3, 2, 1);
+		assertTimeline(timelineRepository.findTimeline(3L, null, 10), 5, 4);
+	}
+
+	@Test
+	public void fanOutOnRead() {
+		timelineRepository.setFanOutLimit(0);
+		timelineRepository.afterPropertiesSet();
+		assertTimeline(timelineRepository.findTimeline(1L, null, 10), 5, 4, 3, 2, 1);
+		assertTimeline(timelineRepository.findTimeline(3L, null, 10), 5, 4);
+	}
+
+	@Test
+	public void paged() {
+		timelineRepository.afterPropertiesSet();
+		List<TimelineEntry> timeline = timelineRepository.findTimeline(1L, new DateTime(2010, 10, 20, 10, 30, 0, 0, DateTimeZone.UTC), 2);
+		assertTimeline(timeline, 4, 3);
+		assertEquals(new DateTime(2010, 10, 20, 10, 0, 0, 0, DateTimeZone.UTC).getMillis(), timeline.get(0).getTime().getMillis());
+	}
+
+	@Test
+	public void actionPublished() {
+		timelineRepository.afterPropertiesSet();
+		Account craig = new Account(2L, "Craig", "Walls", "cwalls@vmware.com", "habuma", null, new UriTemplate("http://localhost:8080/members/{id}"));
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (6, 'SignedIn', '2010-10-21 10:00:00Z', 2)");
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (7, 'EventTweet', '2010-10-21 11:00:00Z', 2)");
+		jdbcTemplate.update("insert into EventTweetAction (memberAction, event, tweet) values (7, 1, 'Groovy #s2gx')");
+		timelineRepository.actionPerformed(new SimpleAction("SignedIn", 6L, new DateTime(2010, 10, 21, 10, 0, 0, 0, DateTimeZone.UTC), craig, null));
+		timelineRepository.actionPerformed(new EventTweetAction(7L, new DateTime(2010, 10, 21, 11, 0, 0, 0, DateTimeZone.UTC), craig, null, 1L, "SpringOne2gx", "Groovy #s2gx"));
+		assertTimeline(timelineRepository.findTimeline(1L, null, 3), 7, 6, 5);
+		assertTimeline(timelineRepository.findTimeline(3L, null, 10), 7, 5, 4);
+		assertEquals(0, timelineRepository.findTimeline(4L, null, 10).size());
+	}
+
+	@Test
+	public void followedEvent() {
+		timelineRepository.afterPropertiesSet();
+		Account roy = new Account(3L, "Roy", "Clarkson", "rclarkson@vmware.com", "rclarkson", null, new UriTemplate("http://localhost:8080/members/{id}"));
+		timelineRepository.followEvent(2L, 1L);
+		jdbcTemplate.update("insert into MemberAction (id, actionType, performTime, member) values (6, 'EventTweet', '2010-10-21 11:00:00Z', 3)");
+		jdbcTemplate.update("insert into EventTweetAction (memberAction, event, tweet) values (6, 1, 'Roo #s2gx')");
+		timelineRepository.actionPerformed(new EventTweetAction(6L, new DateTime(2010, 10, 21, 11, 0, 0, 0, DateTimeZone.UTC), roy, null, 1L, "SpringOne2gx", "Roo #s2gx"));
+		assertTimeline(timelineRepository.findTimeline(2L, null, 10), 6, 5, 3, 2, 1);
+	}
+
+	private void assertTimeline(List<TimelineEntry> timeline, long... ids) {
+		assertEquals(ids.length, timeline.size());
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(Long.valueOf(ids[i]), timeline.get(i).getId());
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.springsource.greenhouse.activity.timeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimelineTest {
+
+	@Test
+	public void newestFirst() {
+		Timeline timeline = new Timeline(4);
+		timeline.add(1, 100);
+		timeline.add(2, 200);
+		long[] ids = new long[4];
+		long[] times = new long[4];
+		assertEquals(2, timeline.read(Long.MAX_VALUE, ids, times));
+		assertEquals(2, ids[0]);
+		assertEquals(200, times[0]);
+		assertEquals(1, ids[1]);
+	}
+
+	@Test
+	public void oldestOverwritten() {
+		Timeline timeline = new Timeline(3);
+		for (int i = 1; i <= 6; i++) {
+			timeline.add(i, i * 100);
+		}
+		long[] ids = new long[10];
+		long[] times = new long[10];
+		assertEquals(4, timeline.read(Long.MAX_VALUE, ids, times));
+		assertEquals(6, ids[0]);
+		assertEquals(3, ids[3]);
+	}
+
+	@Test
+	public void readBefore() {
+		Timeline timeline = new Timeline(8);
+		for (int i = 1; i <= 6; i++) {
+			timeline.add(i, i * 100);
+		}
+		long[] ids = new long[2];
+		long[] times = new long[2];
+		assertEquals(2, timeline.read(400, ids, times));
+		assertEquals(3, ids[0]);
+		assertEquals(2, ids[1]);
+	}
+
+}
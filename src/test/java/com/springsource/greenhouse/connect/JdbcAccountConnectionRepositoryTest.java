@@ -14,6 +14,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.encrypt.HmacStringIndexer;
 import org.springframework.security.encrypt.SearchableStringEncryptor;
 import org.springframework.security.encrypt.StringEncryptor;
 import org.springframework.social.twitter.TwitterOperations;
@@ -40,7 +41,7 @@ public class JdbcAccountConnectionRepositoryTest {
 		jdbcTemplate = new JdbcTemplate(db);
 		StringEncryptor encryptor = new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed");
 		AccountMapper accountMapper = new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}");
-		providerFactory = new JdbcServiceProviderFactory(jdbcTemplate, encryptor, accountMapper);
+		providerFactory = new JdbcServiceProviderFactory(jdbcTemplate, encryptor, new HmacStringIndexer("indexsecret"), accountMapper);
 		serviceProvider = providerFactory.getServiceProvider("twitter", TwitterOperations.class);
 	}
 
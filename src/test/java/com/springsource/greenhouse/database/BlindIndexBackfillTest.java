@@ -0,0 +1,53 @@
+package com.springsource.greenhouse.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.encrypt.HmacStringIndexer;
+import org.springframework.security.encrypt.SearchableStringEncryptor;
+
+public class BlindIndexBackfillTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private BlindIndexBackfill backfill;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().connectedApp().connectedAccount().testData(getClass()).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		backfill = new BlindIndexBackfill(jdbcTemplate, new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"), new HmacStringIndexer("indexsecret"));
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void backfill() {
+		backfill.run();
+		assertEquals("0c4ef10c3806b960e48652ce0b86f9758501aebe6c429ecc4ddb6b4076c813f1", jdbcTemplate.queryForObject("select apiKeyIndex from App where id = 1", String.class));
+		assertNull(jdbcTemplate.queryForObject("select apiKeyIndex from App where id = 2", String.class));
+		assertEquals("0790335bec3a7f21ba62b660af28574730fd026fb0b1a6fd88fe8e907e1c7705", jdbcTemplate.queryForObject("select accessTokenIndex from AppConnection where app = 1 and member = 1", String.class));
+		assertEquals("615e2217925fb2aa953b0dc3f47466055e9b7ba6f76d1767d5cbfe953c13e175", jdbcTemplate.queryForObject("select accessTokenIndex from AccountConnection where member = 2 and provider = 'twitter'", String.class));
+	}
+
+	@Test
+	public void backfillLeavesIndexedRowsAlone() {
+		jdbcTemplate.update("update App set apiKeyIndex = 'indexed' where id = 1");
+		backfill.run();
+		backfill.run();
+		assertEquals("indexed", jdbcTemplate.queryForObject("select apiKeyIndex from App where id = 1", String.class));
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.springsource.greenhouse.database;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+public class BlockIdAllocatorTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.update("insert into Member (id, firstName, lastName, email, password, gender, birthdate) values (5, 'Keith', 'Donald', 'keith@springsource.com', 'password', 'M', '1977-12-01')");
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void startsAfterGreatestId() {
+		BlockIdAllocator allocator = new BlockIdAllocator(db, 3);
+		assertEquals(6L, (long) allocator.nextId("Member"));
+		assertEquals(7L, (long) allocator.nextId("Member"));
+		assertEquals(8L, (long) allocator.nextId("Member"));
+		assertEquals(9L, (long) allocator.nextId("Member"));
+		assertEquals(13L, jdbcTemplate.queryForLong("select nextValue from IdSequence where name = 'Member'"));
+	}
+
+	@Test
+	public void allocatorsShareSequence() {
+		BlockIdAllocator allocator1 = new BlockIdAllocator(db, 3);
+		BlockIdAllocator allocator2 = new BlockIdAllocator(db, 3);
+		assertEquals(6L, (long) allocator1.nextId("Member"));
+		assertEquals(9L, (long) allocator2.nextId("Member"));
+		assertEquals(7L, (long) allocator1.nextId("Member"));
+		assertEquals(10L, (long) allocator2.nextId("Member"));
+	}
+
+}
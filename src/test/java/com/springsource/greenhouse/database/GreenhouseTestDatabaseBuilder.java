@@ -50,6 +50,11 @@ public class GreenhouseTestDatabaseBuilder {
 		return this;
 	}
 
+	public GreenhouseTestDatabaseBuilder idSequence() {
+		populator.addScript(new ClassPathResource("install/IdSequence.sql", EmbeddedDatabaseFactoryBean.class));
+		return this;
+	}
+
 	public GreenhouseTestDatabaseBuilder testData(Class<?> testClass) {
 		populator.addScript(new ClassPathResource(testClass.getSimpleName() + ".sql", testClass));
 		return this;
@@ -12,11 +12,13 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.encrypt.HmacStringIndexer;
 import org.springframework.security.encrypt.SearchableStringEncryptor;
 import org.springframework.test.transaction.TransactionalMethodRule;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.springsource.greenhouse.connect.NoSuchAccountConnectionException;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 
 public class JdbcAppRepositoryTest {
@@ -29,9 +31,9 @@ public class JdbcAppRepositoryTest {
 
 	@Before
 	public void setup() {
-		db = new GreenhouseTestDatabaseBuilder().member().connectedApp().testData(getClass()).getDatabase();
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().connectedApp().testData(getClass()).getDatabase();
 		jdbcTemplate = new JdbcTemplate(db);
-		appRepository = new JdbcAppRepository(jdbcTemplate, new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"));
+		appRepository = new JdbcAppRepository(jdbcTemplate, new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"), new HmacStringIndexer("indexsecret"), new BlockIdAllocator(db));
 	}
 
 	@After
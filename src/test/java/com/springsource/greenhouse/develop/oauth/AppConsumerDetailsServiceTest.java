@@ -7,10 +7,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.encrypt.HmacStringIndexer;
 import org.springframework.security.encrypt.SearchableStringEncryptor;
 import org.springframework.security.oauth.common.signature.SharedConsumerSecret;
 import org.springframework.security.oauth.provider.ConsumerDetails;
 
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 import com.springsource.greenhouse.develop.AppRepository;
 import com.springsource.greenhouse.develop.JdbcAppRepository;
@@ -24,8 +26,8 @@ public class AppConsumerDetailsServiceTest {
 
 	@Before
 	public void setUp() {
-		db = new GreenhouseTestDatabaseBuilder().member().connectedApp().testData(ConcurrentMapOAuthSessionManagerTest.class).getDatabase();
-		AppRepository appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"));
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().connectedApp().testData(ConcurrentMapOAuthSessionManagerTest.class).getDatabase();
+		AppRepository appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"), new HmacStringIndexer("indexsecret"), new BlockIdAllocator(db));
 		consumerDetailsService = new AppConsumerDetailsService(appRepository);
 	}
 
@@ -12,9 +12,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.encrypt.HmacStringIndexer;
 import org.springframework.security.encrypt.SearchableStringEncryptor;
 
 import com.springsource.greenhouse.connect.NoSuchAccountConnectionException;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 import com.springsource.greenhouse.develop.AppConnection;
 import com.springsource.greenhouse.develop.AppRepository;
@@ -33,8 +35,8 @@ public class ConcurrentMapOAuthSessionManagerTest {
 
 	@Before
 	public void setUp() {
-		db = new GreenhouseTestDatabaseBuilder().member().connectedApp().testData(getClass()).getDatabase();
-		appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"));		
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().connectedApp().testData(getClass()).getDatabase();
+		appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"), new HmacStringIndexer("indexsecret"), new BlockIdAllocator(db));		
 		sessionManager = new ConcurrentMapOAuthSessionManager(appRepository);
 	}
 
@@ -18,6 +18,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.encrypt.NoOpPasswordEncoder;
+import org.springframework.security.encrypt.HmacStringIndexer;
 import org.springframework.security.encrypt.SearchableStringEncryptor;
 import org.springframework.security.oauth.provider.token.InvalidOAuthTokenException;
 import org.springframework.security.oauth.provider.token.OAuthAccessProviderToken;
@@ -30,6 +31,7 @@ import com.springsource.greenhouse.account.AccountRepository;
 import com.springsource.greenhouse.account.JdbcAccountRepository;
 import com.springsource.greenhouse.account.StubFileStorage;
 import com.springsource.greenhouse.connect.NoSuchAccountConnectionException;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 import com.springsource.greenhouse.develop.AppRepository;
 import com.springsource.greenhouse.develop.JdbcAppRepository;
@@ -42,12 +44,12 @@ public class OAuthSessionManagerProviderTokenServicesTest {
 
 	@Before
 	public void setUp() {
-		db = new GreenhouseTestDatabaseBuilder().member().connectedApp().testData(ConcurrentMapOAuthSessionManagerTest.class).getDatabase();
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().connectedApp().testData(ConcurrentMapOAuthSessionManagerTest.class).getDatabase();
 		JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
-		AppRepository appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"));				
+		AppRepository appRepository = new JdbcAppRepository(new JdbcTemplate(db), new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed"), new HmacStringIndexer("indexsecret"), new BlockIdAllocator(db));				
 		OAuthSessionManager sessionManager = new ConcurrentMapOAuthSessionManager(appRepository);
 		AccountMapper accountMapper = new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}");
-		AccountRepository accountRepository = new JdbcAccountRepository(jdbcTemplate, NoOpPasswordEncoder.getInstance(), accountMapper);
+		AccountRepository accountRepository = new JdbcAccountRepository(jdbcTemplate, NoOpPasswordEncoder.getInstance(), accountMapper, new BlockIdAllocator(db));
 		tokenServices = new OAuthSessionManagerProviderTokenServices(sessionManager, accountRepository, appRepository);
 	}
 
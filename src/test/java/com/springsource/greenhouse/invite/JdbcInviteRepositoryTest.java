@@ -16,7 +16,9 @@ import org.springframework.web.util.UriTemplate;
 import com.springsource.greenhouse.account.Account;
 import com.springsource.greenhouse.activity.action.Action;
 import com.springsource.greenhouse.activity.action.ActionGateway;
+import com.springsource.greenhouse.activity.action.ActionJournal;
 import com.springsource.greenhouse.activity.action.JdbcActionRepository;
+import com.springsource.greenhouse.database.BlockIdAllocator;
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 
 public class JdbcInviteRepositoryTest {
@@ -29,12 +31,12 @@ public class JdbcInviteRepositoryTest {
 	
 	@Before
 	public void setUp() {
-		db = new GreenhouseTestDatabaseBuilder().member().activity().invite().testData(getClass()).getDatabase();
+		db = new GreenhouseTestDatabaseBuilder().member().idSequence().activity().invite().testData(getClass()).getDatabase();
 		jdbcTemplate = new JdbcTemplate(db);
-		JdbcActionRepository actionRepository = new JdbcActionRepository(jdbcTemplate, new ActionGateway() {
+		JdbcActionRepository actionRepository = new JdbcActionRepository(new ActionGateway() {
 			public void actionPerformed(Action action) {
 			}
-		});
+		}, new BlockIdAllocator(db), new ActionJournal(jdbcTemplate));
 		inviteRepository = new JdbcInviteRepository(jdbcTemplate, actionRepository);
 	}
 	
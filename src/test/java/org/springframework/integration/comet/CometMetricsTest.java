@@ -0,0 +1,55 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CometMetricsTest {
+
+	private CometMetrics metrics = new CometMetrics();
+
+	@Test
+	public void fanOutPercentiles() {
+		for (int i = 0; i < 99; i++) {
+			metrics.broadcast(2, TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		metrics.broadcast(2, TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(100, metrics.getBroadcastCount());
+		assertEquals(200, metrics.getMessagesBroadcast());
+		assertEquals(0.128, metrics.getFanOutTime99thPercentile(), 0);
+		assertEquals(32.768, metrics.getFanOutTime().percentile(1.0), 0);
+		assertEquals(20, metrics.getFanOutTimeMax(), 0);
+	}
+
+	@Test
+	public void counters() {
+		metrics.subscribed();
+		metrics.subscribed();
+		metrics.resumed();
+		metrics.queued();
+		metrics.written(100);
+		metrics.written(50);
+		assertEquals(2, metrics.getSubscribeCount());
+		assertEquals(1, metrics.getResumeCount());
+		assertEquals(1, metrics.getMessagesQueued());
+		assertEquals(2, metrics.getWrites());
+		assertEquals(150, metrics.getBytesWritten());
+		assertEquals(0, metrics.getSlowConsumerEvictions());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void snapshot() {
+		metrics.broadcast(1, TimeUnit.MICROSECONDS.toNanos(100));
+		Map<String, Object> snapshot = metrics.snapshot();
+		assertEquals(1L, snapshot.get("messagesBroadcast"));
+		Map<String, Object> fanOutTime = (Map<String, Object>) snapshot.get("fanOutTime");
+		assertEquals(0.128, (Double) fanOutTime.get("p50"), 0);
+		Map<String, Integer> suspended = (Map<String, Integer>) snapshot.get("suspendedResources");
+		assertEquals(Integer.valueOf(0), suspended.get(CometMetrics.EVENT_STREAM));
+	}
+
+}
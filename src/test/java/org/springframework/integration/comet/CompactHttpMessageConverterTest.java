@@ -0,0 +1,208 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+public class CompactHttpMessageConverterTest {
+
+	private CompactHttpMessageConverter converter = new CompactHttpMessageConverter();
+
+	@Test
+	public void roundTrip() throws IOException {
+		List<Map<String, Object>> batch = batch(20);
+		batch.get(0).put("count", -42);
+		batch.get(0).put("score", 1.5);
+		batch.get(0).put("verified", true);
+		batch.get(0).put("event", null);
+		assertEquals(batch, read(write(batch), new ArrayList<String>()));
+	}
+
+	@Test
+	public void smallerThanJson() throws IOException {
+		List<Map<String, Object>> batch = batch(20);
+		byte[] json = new ObjectMapper().writeValueAsBytes(batch);
+		assertTrue(write(batch).length * 3 < json.length);
+	}
+
+	@Test
+	public void seededDictionary() throws IOException {
+		List<Map<String, Object>> batch = batch(1);
+		int unseeded = write(batch).length;
+		converter.setDictionary(seed());
+		byte[] seeded = write(batch);
+		assertTrue(seeded.length * 2 < unseeded);
+		assertEquals(batch, read(seeded, seed()));
+	}
+
+	@Test
+	public void dictionaryChecksum() throws IOException {
+		byte[] written = write(batch(1));
+		converter.setDictionary(Arrays.asList("text"));
+		assertFalse(Arrays.equals(written, write(batch(1))));
+	}
+
+	@Test
+	public void writeOnly() {
+		assertFalse(converter.canRead(Object.class, CompactHttpMessageConverter.COMPACT));
+		assertFalse(converter.canRead(ArrayList.class, null));
+		assertTrue(converter.canWrite(ArrayList.class, CompactHttpMessageConverter.COMPACT));
+	}
+
+	private List<Map<String, Object>> batch(int size) {
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < size; i++) {
+			Map<String, Object> activity = new LinkedHashMap<String, Object>();
+			activity.put("memberPictureUrl", "http://images.greenhouse.springsource.org/profile-pics/" + (i % 5) + "/small.jpg");
+			activity.put("text", "Member " + (i % 5) + " tweeted from SpringOne2GX");
+			activity.put("imageUrl", "http://images.greenhouse.springsource.org/activity/icon-default-action.png");
+			batch.add(activity);
+		}
+		return batch;
+	}
+
+	private byte[] write(Object content) throws IOException {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		converter.write(content, CompactHttpMessageConverter.COMPACT, new HttpOutputMessage() {
+			public HttpHeaders getHeaders() {
+				return new HttpHeaders();
+			}
+			public OutputStream getBody() {
+				return body;
+			}
+		});
+		return body.toByteArray();
+	}
+
+	private List<String> seed() {
+		return Arrays.asList("memberPictureUrl", "text", "imageUrl", "http://images.greenhouse.springsource.org/",
+				"http://images.greenhouse.springsource.org/activity/icon-default-action.png");
+	}
+
+	// decodes the format as a client would; the converter itself is write-only
+	private Object read(byte[] content, List<String> dictionary) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+		assertEquals(0xC1, in.read());
+		CRC32 crc = new CRC32();
+		for (String entry : dictionary) {
+			crc.update(entry.getBytes(UTF_8));
+			crc.update('\n');
+		}
+		assertEquals(crc.getValue(), readVarint(in));
+		JsonNode tree = new Decoder(in, dictionary).readValue();
+		return new ObjectMapper().readValue(tree.traverse(), ArrayList.class);
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	private static final class Decoder {
+
+		private final DataInputStream in;
+
+		private final List<String> dictionary = new ArrayList<String>();
+
+		private final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+		public Decoder(DataInputStream in, List<String> seed) {
+			this.in = in;
+			for (String entry : seed) {
+				add(entry);
+			}
+		}
+
+		public JsonNode readValue() throws IOException {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 0:
+				return nodeFactory.nullNode();
+			case 1:
+				return nodeFactory.booleanNode(false);
+			case 2:
+				return nodeFactory.booleanNode(true);
+			case 3:
+				long encoded = readVarint(in);
+				long value = (encoded >>> 1) ^ -(encoded & 1);
+				return value == (int) value ? nodeFactory.numberNode((int) value) : nodeFactory.numberNode(value);
+			case 4:
+				return nodeFactory.numberNode(in.readDouble());
+			case 8:
+				ArrayNode array = nodeFactory.arrayNode();
+				for (long i = readVarint(in); i > 0; i--) {
+					array.add(readValue());
+				}
+				return array;
+			case 9:
+				ObjectNode object = nodeFactory.objectNode();
+				for (long i = readVarint(in); i > 0; i--) {
+					String name = readString(in.readUnsignedByte());
+					object.put(name, readValue());
+				}
+				return object;
+			default:
+				return nodeFactory.textNode(readString(tag));
+			}
+		}
+
+		private String readString(int tag) throws IOException {
+			String value;
+			switch (tag) {
+			case 6:
+				return dictionary.get((int) readVarint(in));
+			case 5:
+				byte[] bytes = new byte[(int) readVarint(in)];
+				in.readFully(bytes);
+				value = new String(bytes, UTF_8);
+				break;
+			case 7:
+				String prefix = readString(in.readUnsignedByte());
+				value = prefix + readString(in.readUnsignedByte());
+				break;
+			default:
+				throw new IllegalStateException("Unknown tag " + tag);
+			}
+			add(value);
+			return value;
+		}
+
+		private void add(String value) {
+			if (dictionary.size() < 4096 && !dictionary.contains(value)) {
+				dictionary.add(value);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.integration.support.MessageBuilder;
+
+public class MessageReplayBufferTest {
+
+	private MessageReplayBuffer buffer = new MessageReplayBuffer(5);
+
+	@Test
+	public void replaySinceSequence() {
+		buffer.add(messages(1, 3));
+		buffer.add(messages(4, 4));
+		assertSequences(buffer.since(2, noTopics()), 3, 4);
+		assertSequences(buffer.since(0, noTopics()), 1, 2, 3, 4);
+		assertEquals(0, buffer.since(4, noTopics()).size());
+	}
+
+	@Test
+	public void gapAfterEviction() {
+		buffer.add(messages(1, 8));
+		// messages 1 to 3 have been evicted; a client that saw 1 gets what is left
+		assertSequences(buffer.since(1, noTopics()), 4, 5, 6, 7, 8);
+		assertSequences(buffer.since(6, noTopics()), 7, 8);
+	}
+
+	@Test
+	public void capacityReduced() {
+		buffer.add(messages(1, 5));
+		buffer.setCapacity(2);
+		buffer.add(messages(6, 6));
+		assertSequences(buffer.since(0, noTopics()), 5, 6);
+	}
+
+	@Test
+	public void replayFilteredByTopic() {
+		List<HttpBroadcastMessage> messages = new ArrayList<HttpBroadcastMessage>();
+		messages.add(message(1, "event:1"));
+		messages.add(message(2, "member:3"));
+		messages.add(message(3, "event:1"));
+		buffer.add(messages);
+		assertSequences(buffer.since(0, new HashSet<String>(Arrays.asList("event:1"))), 1, 3);
+		assertSequences(buffer.since(1, new HashSet<String>(Arrays.asList("member:3", "event:1"))), 2, 3);
+		assertEquals(0, buffer.since(0, new HashSet<String>(Arrays.asList("event:2"))).size());
+	}
+
+	private Set<String> noTopics() {
+		return Collections.emptySet();
+	}
+
+	private List<HttpBroadcastMessage> messages(long first, long last) {
+		List<HttpBroadcastMessage> messages = new ArrayList<HttpBroadcastMessage>();
+		for (long sequence = first; sequence <= last; sequence++) {
+			messages.add(new HttpBroadcastMessage(MessageBuilder.withPayload("message " + sequence).build(), true, null, sequence));
+		}
+		return messages;
+	}
+
+	private HttpBroadcastMessage message(long sequence, String topic) {
+		return new HttpBroadcastMessage(MessageBuilder.withPayload("message " + sequence).setHeader(AsyncHttpRequestHandlingMessageAdapter.TOPICS_HEADER, Collections.singleton(topic)).build(), true, null, sequence);
+	}
+
+	private void assertSequences(List<HttpBroadcastMessage> messages, long... sequences) {
+		assertEquals(sequences.length, messages.size());
+		for (int i = 0; i < sequences.length; i++) {
+			assertEquals(sequences[i], messages.get(i).getSequence());
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ServerSentEventsTest {
+
+	@Test
+	public void frameSingleLine() throws UnsupportedEncodingException {
+		assertEquals("id: 7\ndata: [\"hello\"]\n\n", frame(7, "[\"hello\"]"));
+	}
+
+	@Test
+	public void frameMultipleLines() throws UnsupportedEncodingException {
+		assertEquals("id: 8\ndata: [\ndata:   \"hello\",\ndata:   \"world\"\ndata: ]\n\n", frame(8, "[\n  \"hello\",\n  \"world\"\n]"));
+	}
+
+	@Test
+	public void frameCarriageReturns() throws UnsupportedEncodingException {
+		assertEquals("id: 9\ndata: first\ndata: second\n\n", frame(9, "first\r\nsecond"));
+	}
+
+	@Test
+	public void frameTrailingNewline() throws UnsupportedEncodingException {
+		assertEquals("id: 10\ndata: line\ndata: \n\n", frame(10, "line\n"));
+	}
+
+	@Test
+	public void retry() throws UnsupportedEncodingException {
+		assertEquals("retry: 3000\n\n", new String(ServerSentEvents.retry(3000), "UTF-8"));
+	}
+
+	@Test
+	public void eventStreamRequested() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept", "application/json");
+		assertFalse(ServerSentEvents.isEventStream(request));
+		request.addHeader("Accept", "text/event-stream");
+		assertTrue(ServerSentEvents.isEventStream(request));
+	}
+
+	@Test
+	public void lastEventId() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		assertEquals(-1, ServerSentEvents.lastEventId(request));
+		request.addParameter("lastEventId", "12");
+		assertEquals(12, ServerSentEvents.lastEventId(request));
+		request.addHeader("Last-Event-ID", " 15 ");
+		assertEquals(15, ServerSentEvents.lastEventId(request));
+	}
+
+	@Test
+	public void invalidLastEventId() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Last-Event-ID", "abc");
+		assertEquals(-1, ServerSentEvents.lastEventId(request));
+	}
+
+	private String frame(long id, String data) throws UnsupportedEncodingException {
+		return new String(ServerSentEvents.frame(id, data.getBytes("UTF-8")), "UTF-8");
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class SlowConsumerMonitorTest {
+
+	private SlowConsumerMonitor monitor;
+
+	@Before
+	public void setup() {
+		monitor = new SlowConsumerMonitor();
+		monitor.setMaxWriteTime(100);
+	}
+
+	@Test
+	public void writeTracked() {
+		AtmosphereResource<?, ?> resource = resource("10.0.0.1");
+		monitor.beginWrite(resource, 512);
+		SubscriberStatistics statistics = monitor.getStatistics(resource);
+		assertEquals(512, statistics.getOutstandingBytes());
+		assertTrue(monitor.endWrite(resource, 512, TimeUnit.MILLISECONDS.toNanos(20)));
+		assertEquals(0, statistics.getOutstandingBytes());
+		assertEquals(512, statistics.getBytesWritten());
+		assertEquals(1, statistics.getMessagesWritten());
+		assertEquals(20, statistics.getLastWriteTime());
+	}
+
+	@Test
+	public void slowWrite() {
+		AtmosphereResource<?, ?> resource = resource("10.0.0.1");
+		monitor.beginWrite(resource, 512);
+		assertFalse(monitor.endWrite(resource, 512, TimeUnit.MILLISECONDS.toNanos(150)));
+		monitor.beginWrite(resource, 512);
+		assertTrue(monitor.endWrite(resource, 512, TimeUnit.MILLISECONDS.toNanos(10)));
+		assertEquals(150, monitor.getStatistics(resource).getMaxWriteTime());
+	}
+
+	@Test
+	public void abortedWrite() {
+		AtmosphereResource<?, ?> resource = resource("10.0.0.1");
+		monitor.beginWrite(resource, 512);
+		monitor.abortWrite(resource, 512);
+		assertEquals(0, monitor.getStatistics(resource).getOutstandingBytes());
+		assertEquals(0, monitor.getStatistics(resource).getBytesWritten());
+	}
+
+	@Test
+	public void evicted() {
+		AtmosphereResource<?, ?> resource = resource("10.0.0.1");
+		monitor.beginWrite(resource, 512);
+		monitor.endWrite(resource, 512, TimeUnit.MILLISECONDS.toNanos(150));
+		monitor.evicted(resource);
+		assertEquals(1, monitor.getEvictionCount());
+		assertNull(monitor.getStatistics(resource));
+	}
+
+	@Test
+	public void degradedOnce() {
+		AtmosphereResource<?, ?> resource = resource("10.0.0.1");
+		monitor.degraded(resource);
+		monitor.degraded(resource);
+		assertEquals(1, monitor.getDegradationCount());
+		assertTrue(monitor.getStatistics(resource).isDegraded());
+		monitor.resumed(resource);
+		assertNull(monitor.getStatistics(resource));
+	}
+
+	@Test
+	public void lagByAddress() {
+		AtmosphereResource<?, ?> first = resource("10.0.0.1");
+		AtmosphereResource<?, ?> second = resource("10.0.0.1");
+		AtmosphereResource<?, ?> third = resource("10.0.0.2");
+		monitor.endWrite(first, 10, TimeUnit.MILLISECONDS.toNanos(30));
+		monitor.endWrite(second, 10, TimeUnit.MILLISECONDS.toNanos(70));
+		monitor.endWrite(third, 10, TimeUnit.MILLISECONDS.toNanos(5));
+		Map<String, Long> lag = monitor.getSubscriberLag();
+		assertEquals(2, lag.size());
+		assertEquals(Long.valueOf(70), lag.get("10.0.0.1"));
+		assertEquals(Long.valueOf(5), lag.get("10.0.0.2"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private AtmosphereResource<?, ?> resource(String remoteAddress) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr(remoteAddress);
+		AtmosphereResource resource = mock(AtmosphereResource.class);
+		when(resource.getRequest()).thenReturn(request);
+		return resource;
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeHistogramTest {
+
+	private TimeHistogram histogram = new TimeHistogram();
+
+	@Test
+	public void empty() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.percentile(0.99), 0);
+	}
+
+	@Test
+	public void percentiles() {
+		record(90, TimeUnit.MICROSECONDS.toNanos(100));
+		record(9, TimeUnit.MILLISECONDS.toNanos(5));
+		record(1, TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(100, histogram.getCount());
+		// reported as the upper bound of the power-of-two microsecond bucket each percentile falls in
+		assertEquals(0.128, histogram.percentile(0.50), 0);
+		assertEquals(0.128, histogram.percentile(0.90), 0);
+		assertEquals(8.192, histogram.percentile(0.99), 0);
+		assertEquals(131.072, histogram.percentile(0.999), 0);
+		assertEquals(100, histogram.getMax(), 0);
+		assertEquals(1.54, histogram.getMean(), 0.0001);
+	}
+
+	@Test
+	public void overflowBucket() {
+		record(1, TimeUnit.MICROSECONDS.toNanos(10));
+		record(1, TimeUnit.SECONDS.toNanos(60));
+		assertEquals(0.016, histogram.percentile(0.5), 0);
+		assertEquals(60000, histogram.percentile(1.0), 0);
+		Map<String, Long> buckets = histogram.getBuckets();
+		assertEquals(2, buckets.size());
+		assertEquals(Long.valueOf(1), buckets.get("0.016"));
+		assertEquals(Long.valueOf(1), buckets.get("+Inf"));
+	}
+
+	@Test
+	public void subMicrosecond() {
+		record(1, 500);
+		assertEquals(0.001, histogram.percentile(0.5), 0);
+	}
+
+	@Test
+	public void summary() {
+		record(10, TimeUnit.MICROSECONDS.toNanos(100));
+		Map<String, Object> summary = histogram.summary();
+		assertEquals(10L, summary.get("count"));
+		assertEquals(0.128, (Double) summary.get("p99"), 0);
+	}
+
+	private void record(int times, long nanos) {
+		for (int i = 0; i < times; i++) {
+			histogram.record(nanos);
+		}
+	}
+
+}
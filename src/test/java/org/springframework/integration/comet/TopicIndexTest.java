@@ -0,0 +1,107 @@
+package org.springframework.integration.comet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.junit.Test;
+import org.springframework.integration.support.MessageBuilder;
+
+public class TopicIndexTest {
+
+	private TopicIndex topicIndex = new TopicIndex();
+
+	@Test
+	public void register() {
+		AtmosphereResource<?, ?> first = resource();
+		AtmosphereResource<?, ?> second = resource();
+		topicIndex.register(first, topics("event:1", "member:3"));
+		topicIndex.register(second, topics("event:1"));
+		assertEquals(2, topicIndex.getFilteredSubscriberCount());
+		assertEquals(2, topicIndex.getTopicCount());
+	}
+
+	@Test
+	public void registerReplacesEarlierTopics() {
+		AtmosphereResource<?, ?> resource = resource();
+		topicIndex.register(resource, topics("event:1", "member:3"));
+		topicIndex.register(resource, topics("event:2"));
+		assertEquals(1, topicIndex.getFilteredSubscriberCount());
+		assertEquals(1, topicIndex.getTopicCount());
+	}
+
+	@Test
+	public void unregister() {
+		AtmosphereResource<?, ?> first = resource();
+		AtmosphereResource<?, ?> second = resource();
+		topicIndex.register(first, topics("event:1", "member:3"));
+		topicIndex.register(second, topics("event:1"));
+		topicIndex.unregister(first);
+		assertEquals(1, topicIndex.getFilteredSubscriberCount());
+		assertEquals(1, topicIndex.getTopicCount());
+		topicIndex.unregister(second);
+		assertEquals(0, topicIndex.getFilteredSubscriberCount());
+		assertEquals(0, topicIndex.getTopicCount());
+		topicIndex.unregister(second);
+		assertEquals(0, topicIndex.getFilteredSubscriberCount());
+	}
+
+	@Test
+	public void unfiltered() {
+		AtmosphereResource<?, ?> resource = resource();
+		topicIndex.register(resource, Collections.<String>emptySet());
+		assertEquals(0, topicIndex.getFilteredSubscriberCount());
+		assertEquals(0, topicIndex.getTopicCount());
+		topicIndex.unregister(resource);
+		assertEquals(0, topicIndex.getFilteredSubscriberCount());
+	}
+
+	@Test
+	public void matches() {
+		HttpBroadcastMessage message = message("event:1", "member:3");
+		assertTrue(TopicIndex.matches(Collections.<String>emptySet(), message));
+		assertTrue(TopicIndex.matches(topics("member:3"), message));
+		assertFalse(TopicIndex.matches(topics("event:2"), message));
+		assertFalse(TopicIndex.matches(topics("event:2"), new HttpBroadcastMessage(MessageBuilder.withPayload("untagged").build(), true, null)));
+	}
+
+	@Test
+	public void broadcastToInterestedSubscribers() {
+		AtmosphereResource<?, ?> eventSubscriber = resource();
+		AtmosphereResource<?, ?> memberSubscriber = resource();
+		topicIndex.register(eventSubscriber, topics("event:1"));
+		topicIndex.register(memberSubscriber, topics("member:3"));
+		Broadcaster broadcaster = mock(Broadcaster.class);
+		List<HttpBroadcastMessage> messages = Arrays.asList(message("event:1"));
+		assertEquals(1, topicIndex.broadcast(broadcaster, messages).size());
+		verify(broadcaster).broadcast(eq(messages), eq(Collections.<AtmosphereResource<?, ?>>singleton(eventSubscriber)));
+		topicIndex.unregister(eventSubscriber);
+		assertEquals(0, topicIndex.broadcast(broadcaster, Arrays.asList(message("event:1"))).size());
+		verifyNoMoreInteractions(broadcaster);
+	}
+
+	private AtmosphereResource<?, ?> resource() {
+		return mock(AtmosphereResource.class);
+	}
+
+	private Set<String> topics(String... topics) {
+		return new HashSet<String>(Arrays.asList(topics));
+	}
+
+	private HttpBroadcastMessage message(String... topics) {
+		return new HttpBroadcastMessage(MessageBuilder.withPayload("message").setHeader(AsyncHttpRequestHandlingMessageAdapter.TOPICS_HEADER, topics(topics)).build(), true, null);
+	}
+
+}
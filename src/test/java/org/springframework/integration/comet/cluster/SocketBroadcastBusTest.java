@@ -0,0 +1,164 @@
+package org.springframework.integration.comet.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.support.MessageBuilder;
+
+public class SocketBroadcastBusTest {
+
+	private SocketBroadcastBus[] nodes = new SocketBroadcastBus[3];
+
+	private List<List<Message<?>>> received = new ArrayList<List<Message<?>>>();
+
+	private CountDownLatch latch;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < nodes.length; i++) {
+			final List<Message<?>> messages = new ArrayList<Message<?>>();
+			received.add(messages);
+			nodes[i] = new SocketBroadcastBus();
+			nodes[i].setBindAddress("127.0.0.1");
+			nodes[i].setListener(new BroadcastBusListener() {
+				public void onMessages(List<Message<?>> batch) {
+					synchronized (messages) {
+						messages.addAll(batch);
+					}
+					for (int j = 0; j < batch.size(); j++) {
+						latch.countDown();
+					}
+				}
+			});
+			nodes[i].start();
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			List<String> peers = new ArrayList<String>();
+			for (int j = 0; j < nodes.length; j++) {
+				if (i != j) {
+					peers.add("127.0.0.1:" + nodes[j].getLocalPort());
+				}
+			}
+			nodes[i].setPeers(peers);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (SocketBroadcastBus node : nodes) {
+			node.stop();
+		}
+	}
+
+	@Test
+	public void fanOutToPeers() throws InterruptedException {
+		latch = new CountDownLatch(4);
+		Message<String> first = MessageBuilder.withPayload("first").build();
+		Message<String> second = MessageBuilder.withPayload("second").build();
+		nodes[0].publish(first);
+		nodes[0].publish(second);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, received.get(0).size());
+		for (int i = 1; i < nodes.length; i++) {
+			List<Message<?>> messages = received.get(i);
+			assertEquals(2, messages.size());
+			assertEquals(first.getHeaders().getId(), messages.get(0).getHeaders().getId());
+			assertEquals("first", messages.get(0).getPayload());
+			assertEquals(second.getHeaders().getId(), messages.get(1).getHeaders().getId());
+		}
+	}
+
+	@Test
+	public void payloadTypeNotAllowed() throws InterruptedException {
+		nodes[1].setPayloadTypes(new Class<?>[] { String.class, Date.class });
+		latch = new CountDownLatch(2);
+		nodes[0].publish(MessageBuilder.withPayload(new Date()).build());
+		assertFalse(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(1, received.get(1).size());
+		assertEquals(0, received.get(2).size());
+	}
+
+	@Test
+	public void sharedSecret() throws InterruptedException {
+		for (SocketBroadcastBus node : nodes) {
+			node.setSharedSecret("s3cret");
+		}
+		latch = new CountDownLatch(2);
+		nodes[0].publish(MessageBuilder.withPayload("signed").build());
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		nodes[0].setSharedSecret("guess");
+		latch = new CountDownLatch(2);
+		nodes[0].publish(MessageBuilder.withPayload("forged").build());
+		assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+		assertEquals(1, received.get(1).size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void secretRequiredOffLoopback() {
+		SocketBroadcastBus bus = new SocketBroadcastBus();
+		bus.setBindAddress("0.0.0.0");
+		bus.start();
+	}
+
+	@Test
+	public void droppedCountsMessages() throws Exception {
+		ServerSocket closed = new ServerSocket(0);
+		int port = closed.getLocalPort();
+		closed.close();
+		SocketBroadcastBus bus = new SocketBroadcastBus();
+		bus.setBatchDelay(1000);
+		bus.setReconnectInterval(10000);
+		bus.setPeers(Arrays.asList("127.0.0.1:" + port));
+		bus.start();
+		try {
+			for (int i = 0; i < 3; i++) {
+				bus.publish(MessageBuilder.withPayload("lost").build());
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (bus.getDroppedCount() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, bus.getDroppedCount());
+		} finally {
+			bus.stop();
+		}
+	}
+
+	@Test
+	public void loopback() throws InterruptedException {
+		latch = new CountDownLatch(1);
+		LoopbackBroadcastBus one = new LoopbackBroadcastBus("test");
+		LoopbackBroadcastBus two = new LoopbackBroadcastBus("test");
+		final List<Message<?>> messages = new ArrayList<Message<?>>();
+		two.setListener(new BroadcastBusListener() {
+			public void onMessages(List<Message<?>> batch) {
+				messages.addAll(batch);
+				latch.countDown();
+			}
+		});
+		one.start();
+		two.start();
+		try {
+			one.publish(MessageBuilder.withPayload("hello").build());
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("hello"), Arrays.asList(messages.get(0).getPayload()));
+		} finally {
+			one.stop();
+			two.stop();
+		}
+	}
+
+}
@@ -0,0 +1,288 @@
+package org.springframework.integration.comet.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.atmosphere.cpr.DefaultBroadcaster;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.joda.time.DateTime;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.util.UriTemplate;
+
+import com.springsource.greenhouse.account.Account;
+import com.springsource.greenhouse.activity.action.ActionGateway;
+import com.springsource.greenhouse.activity.action.SimpleAction;
+import com.springsource.greenhouse.database.BlockIdAllocator;
+
+/**
+ * Boots the application in an embedded Jetty, opens simulated long-poll and event stream subscribers to /pubsub/recent/notifications over loopback,
+ * publishes actions through the ActionGateway at a fixed rate, and reports fan-out latency percentiles, bytes received, heap per connection and dropped messages.
+ * Each action is a LoadTest action with an id allocated like any other; its sequence number and publish time travel in the member's last name, which subscribers receive as part of the activity text.
+ * Run with <code>mvn -P comet-load test-compile exec:java</code>; configure with system properties:
+ * <ul>
+ * <li>load.subscribers - the number of simulated subscribers (default 1000)</li>
+ * <li>load.streaming - the fraction of subscribers using an event stream instead of long-polling (default 0.5)</li>
+ * <li>load.rate - actions published per second (default 20)</li>
+ * <li>load.duration - seconds to publish for (default 30)</li>
+ * </ul>
+ * Clients share the server's JVM, so heap per connection includes the small client-side state; raise the open file limit before simulating tens of thousands of subscribers.
+ */
+public class CometLoadHarness {
+
+	private static final String PATH = "/pubsub/recent/notifications";
+
+	private static final String ACTION_TYPE = "LoadTest";
+
+	private static final Pattern MARKER = Pattern.compile("load#(\\d+)#(\\d+)#");
+
+	private final int subscribers = Integer.getInteger("load.subscribers", 1000);
+
+	private final double streaming = Double.parseDouble(System.getProperty("load.streaming", "0.5"));
+
+	private final int rate = Integer.getInteger("load.rate", 20);
+
+	private final int duration = Integer.getInteger("load.duration", 30);
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final List<SimulatedClient> clients = new ArrayList<SimulatedClient>();
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+	private Selector selector;
+
+	private InetSocketAddress address;
+
+	private long bytesReceived;
+
+	private long reconnects;
+
+	private volatile boolean publishing;
+
+	public static void main(String[] args) throws Exception {
+		new CometLoadHarness().run();
+		System.exit(0);
+	}
+
+	public void run() throws Exception {
+		Server server = new Server();
+		SelectChannelConnector connector = new SelectChannelConnector();
+		connector.setHost("127.0.0.1");
+		connector.setPort(0);
+		connector.setAcceptQueueSize(4096);
+		server.addConnector(connector);
+		WebAppContext webapp = new WebAppContext(new File("src/main/webapp").getAbsolutePath(), "/");
+		webapp.setParentLoaderPriority(true);
+		server.setHandler(webapp);
+		server.start();
+		address = new InetSocketAddress("127.0.0.1", connector.getLocalPort());
+		ActionGateway actionGateway = WebApplicationContextUtils.getRequiredWebApplicationContext(webapp.getServletContext()).getBean(ActionGateway.class);
+		BlockIdAllocator idAllocator = WebApplicationContextUtils.getRequiredWebApplicationContext(webapp.getServletContext()).getBean(BlockIdAllocator.class);
+		selector = Selector.open();
+		try {
+			long heapBefore = usedHeap();
+			connectClients();
+			long heapPerConnection = (usedHeap() - heapBefore) / Math.max(subscribers, 1);
+			publish(actionGateway, idAllocator);
+			report(heapPerConnection);
+		} finally {
+			selector.close();
+			server.stop();
+		}
+	}
+
+	// internal helpers
+
+	private void connectClients() throws IOException {
+		System.out.println("Connecting " + subscribers + " subscribers to " + address);
+		int streamingClients = (int) (subscribers * streaming);
+		for (int i = 0; i < subscribers; i++) {
+			SimulatedClient client = new SimulatedClient(i < streamingClients);
+			clients.add(client);
+			client.connect();
+			if (i % 500 == 499) {
+				// let the server drain its accept queue
+				pump(50);
+			}
+		}
+		long deadline = System.currentTimeMillis() + 60000;
+		while (suspendedResources() < subscribers && System.currentTimeMillis() < deadline) {
+			pump(100);
+		}
+		System.out.println(suspendedResources() + " subscribers suspended (" + streamingClients + " event stream, " + (subscribers - streamingClients) + " long-poll)");
+	}
+
+	private void publish(final ActionGateway actionGateway, final BlockIdAllocator idAllocator) throws IOException {
+		final UriTemplate profileUrlTemplate = new UriTemplate("http://localhost/members/{profileKey}");
+		ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+		publishing = true;
+		publisher.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				long sequence = published.incrementAndGet();
+				Account account = new Account(1L, "Load", "load#" + sequence + "#" + System.nanoTime() + "#", "load@springsource.com", "loadtester",
+						"http://images.greenhouse.springsource.org/profile-pics/1/small.jpg", profileUrlTemplate);
+				actionGateway.actionPerformed(new SimpleAction(ACTION_TYPE, idAllocator.nextId("MemberAction"), new DateTime(), account, null));
+			}
+		}, 0, 1000000 / Math.max(rate, 1), TimeUnit.MICROSECONDS);
+		long end = System.currentTimeMillis() + duration * 1000L;
+		while (System.currentTimeMillis() < end) {
+			pump(100);
+		}
+		publisher.shutdown();
+		publishing = false;
+		// drain in-flight deliveries
+		long drain = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < drain) {
+			pump(100);
+		}
+	}
+
+	private void report(long heapPerConnection) {
+		long delivered = 0;
+		long dropped = 0;
+		for (SimulatedClient client : clients) {
+			delivered += client.received.cardinality();
+			dropped += client.dropped(published.get());
+		}
+		System.out.println("Published " + published.get() + " actions at " + rate + "/s for " + duration + "s");
+		System.out.println("Delivered " + delivered + " messages; dropped " + dropped + "; long-poll reconnects " + reconnects);
+		System.out.printf("Fan-out latency ms: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				latency.percentile(0.50), latency.percentile(0.90), latency.percentile(0.99), latency.percentile(0.999), latency.getMax());
+		System.out.println("Bytes received " + bytesReceived + " (" + (delivered > 0 ? bytesReceived / delivered : 0) + " per delivered message)");
+		System.out.println("Heap per connection ~" + heapPerConnection + " bytes");
+	}
+
+	private int suspendedResources() {
+		Broadcaster broadcaster = BroadcasterFactory.getDefault().lookup(DefaultBroadcaster.class, "/recent/notifications");
+		return broadcaster != null ? broadcaster.getAtmosphereResources().size() : 0;
+	}
+
+	private void pump(long timeout) throws IOException {
+		selector.select(timeout);
+		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			SimulatedClient client = (SimulatedClient) key.attachment();
+			try {
+				if (key.isConnectable()) {
+					client.finishConnect();
+				} else if (key.isReadable()) {
+					client.read();
+				}
+			} catch (IOException e) {
+				client.close();
+			}
+		}
+	}
+
+	private long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private final class SimulatedClient {
+
+		private final boolean eventStream;
+
+		private final BitSet received = new BitSet();
+
+		private long firstSequence = -1;
+
+		private String carry = "";
+
+		private SocketChannel channel;
+
+		public SimulatedClient(boolean eventStream) {
+			this.eventStream = eventStream;
+		}
+
+		public void connect() throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.connect(address);
+			channel.register(selector, SelectionKey.OP_CONNECT, this);
+		}
+
+		public void finishConnect() throws IOException {
+			channel.finishConnect();
+			// HTTP/1.0 so the body is delimited by the connection closing
+			String accept = eventStream ? "text/event-stream" : "application/json";
+			String request = "GET " + PATH + " HTTP/1.0\r\nHost: " + address.getHostName() + "\r\nAccept: " + accept + "\r\n" +
+					(eventStream ? "" : "X-Atmosphere-Transport: long-polling\r\n") + "\r\n";
+			channel.write(ByteBuffer.wrap(request.getBytes("ISO-8859-1")));
+			channel.register(selector, SelectionKey.OP_READ, this);
+		}
+
+		public void read() throws IOException {
+			readBuffer.clear();
+			int read = channel.read(readBuffer);
+			if (read == -1) {
+				close();
+				if (!eventStream && publishing) {
+					// long-poll: resubscribe once the broadcast resumed the response
+					reconnects++;
+					connect();
+				}
+				return;
+			}
+			bytesReceived += read;
+			long now = System.nanoTime();
+			String text = carry + new String(readBuffer.array(), 0, read, "ISO-8859-1");
+			Matcher matcher = MARKER.matcher(text);
+			int end = 0;
+			while (matcher.find()) {
+				long sequence = Long.parseLong(matcher.group(1));
+				if (!received.get((int) sequence)) {
+					received.set((int) sequence);
+					latency.record(now - Long.parseLong(matcher.group(2)));
+				}
+				if (firstSequence == -1) {
+					firstSequence = sequence;
+				}
+				end = matcher.end();
+			}
+			carry = text.substring(Math.max(end, text.length() - 48));
+		}
+
+		public long dropped(long published) {
+			if (firstSequence == -1) {
+				return published;
+			}
+			return (published - firstSequence + 1) - received.cardinality();
+		}
+
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+
+	}
+
+}
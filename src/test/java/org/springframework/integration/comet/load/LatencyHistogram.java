@@ -0,0 +1,52 @@
+package org.springframework.integration.comet.load;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-resolution latency histogram: 100 microsecond buckets up to one minute, with one overflow bucket.
+ * Not thread safe; record from a single thread.
+ */
+class LatencyHistogram {
+
+	private static final long BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final long[] counts = new long[600000 + 1];
+
+	private long total;
+
+	private long max;
+
+	public void record(long nanos) {
+		int bucket = (int) Math.min(Math.max(nanos, 0) / BUCKET_NANOS, counts.length - 1);
+		counts[bucket]++;
+		total++;
+		max = Math.max(max, nanos);
+	}
+
+	public long getCount() {
+		return total;
+	}
+
+	/**
+	 * The latency, in milliseconds, below which the given fraction of recorded values fall.
+	 */
+	public double percentile(double fraction) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return (i + 1) * BUCKET_NANOS / 1000000.0;
+			}
+		}
+		return getMax();
+	}
+
+	public double getMax() {
+		return max / 1000000.0;
+	}
+
+}
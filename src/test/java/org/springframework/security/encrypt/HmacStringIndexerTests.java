@@ -0,0 +1,24 @@
+package org.springframework.security.encrypt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class HmacStringIndexerTests {
+
+	private HmacStringIndexer indexer = new HmacStringIndexer("indexsecret");
+
+	@Test
+	public void index() {
+		assertEquals("0c4ef10c3806b960e48652ce0b86f9758501aebe6c429ecc4ddb6b4076c813f1", indexer.index("123456789"));
+		assertEquals(indexer.index("123456789"), indexer.index("123456789"));
+		assertFalse(indexer.index("123456789").equals(indexer.index("234567890")));
+	}
+
+	@Test
+	public void indexDependsOnKey() {
+		assertFalse(indexer.index("123456789").equals(new HmacStringIndexer("othersecret").index("123456789")));
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.springframework.security.encrypt;
+
+/**
+ * Measures password matching throughput as the number of signin threads grows.
+ * Throughput should scale with the thread count since each thread digests with its own MessageDigest.
+ * A standalone program rather than a JUnit test, so the test build compiles it but never runs it.
+ * Run with <code>mvn test-compile exec:java -Dexec.mainClass=org.springframework.security.encrypt.PasswordEncoderBenchmark -Dexec.classpathScope=test</code>; configure with system properties:
+ * <ul>
+ * <li>bench.matches - the matches each thread performs (default 2000)</li>
+ * <li>bench.maxThreads - the largest number of signin threads (default the available processors)</li>
+ * </ul>
+ * @see ThreadScalingBenchmark
+ */
+public class PasswordEncoderBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final StandardPasswordEncoder passwordEncoder = new StandardPasswordEncoder("secret");
+		final String encodedPassword = passwordEncoder.encode("melbourne");
+		ThreadScalingBenchmark benchmark = new ThreadScalingBenchmark(Integer.getInteger("bench.matches", 2000), "matches");
+		benchmark.run("standard", new ThreadScalingBenchmark.Operation() {
+			public void perform(int iteration) {
+				if (!passwordEncoder.matches("melbourne", encodedPassword)) {
+					throw new IllegalStateException("Password did not match");
+				}
+			}
+		});
+	}
+
+}
@@ -2,6 +2,13 @@ package org.springframework.security.encrypt;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 
 public class SearchableStringEncryptorTests {
@@ -14,4 +21,46 @@ public class SearchableStringEncryptorTests {
 		String plainText = encryptor.decrypt(cipherText);
 		assertEquals("123456789", plainText);
 	}
+
+	@Test
+	public void encryptIsRepeatable() {
+		assertEquals("76926d574e7ff5dabb94b5df23b6add6", encryptor.encrypt("123456789"));
+		assertEquals("76926d574e7ff5dabb94b5df23b6add6", encryptor.encrypt("123456789"));
+		assertEquals("123456789", encryptor.decrypt("76926d574e7ff5dabb94b5df23b6add6"));
+	}
+
+	@Test
+	public void decryptAfterFailure() {
+		try {
+			encryptor.decrypt("76926d574e7ff5da");
+		} catch (IllegalStateException e) {
+		}
+		assertEquals("123456789", encryptor.decrypt("76926d574e7ff5dabb94b5df23b6add6"));
+	}
+
+	@Test
+	public void encryptConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 64; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					public String call() {
+						String cipherText = null;
+						for (int j = 0; j < 100; j++) {
+							cipherText = encryptor.encrypt("123456789");
+							assertEquals("123456789", encryptor.decrypt(cipherText));
+						}
+						return cipherText;
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertEquals("76926d574e7ff5dabb94b5df23b6add6", result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 }
@@ -1,7 +1,16 @@
 package org.springframework.security.encrypt;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 
 public class StandardPasswordEncoderTest {
@@ -13,5 +22,34 @@ public class StandardPasswordEncoderTest {
 		String encodedPassword = passwordEncoder.encode("melbourne");
  		assertTrue(passwordEncoder.matches("melbourne", encodedPassword));
 	}
-		
+
+	@Test
+	public void matchesPreviouslyEncodedPassword() {
+		String encodedPassword = "0102030405060708f840d6b1c5e59bbd97614f1c1a59e96976d4aaa51c24a15d3921e7ead9458122";
+		assertTrue(passwordEncoder.matches("melbourne", encodedPassword));
+		assertFalse(passwordEncoder.matches("sydney", encodedPassword));
+	}
+
+	@Test
+	public void matchConcurrently() throws Exception {
+		final String encodedPassword = passwordEncoder.encode("melbourne");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 64; i++) {
+				final String rawPassword = i % 2 == 0 ? "melbourne" : "sydney";
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						return passwordEncoder.matches(rawPassword, encodedPassword);
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(i % 2 == 0, results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 }
@@ -3,6 +3,13 @@ package org.springframework.security.encrypt;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 
 public class StandardStringEncryptorTests {
@@ -19,4 +26,29 @@ public class StandardStringEncryptorTests {
 		assertFalse(cipherText.equals(cipherText2));
 		assertEquals("123456789", encryptor.decrypt(cipherText));		
 	}
+
+	@Test
+	public void encryptConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 64; i++) {
+				final String text = "secret-" + i;
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						for (int j = 0; j < 20; j++) {
+							assertEquals(text, encryptor.decrypt(encryptor.encrypt(text)));
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 }
@@ -0,0 +1,31 @@
+package org.springframework.security.encrypt;
+
+/**
+ * Measures encrypt plus decrypt throughput of the standard and searchable string encryptors as the number of threads grows.
+ * Run with <code>mvn test-compile exec:java -Dexec.mainClass=org.springframework.security.encrypt.StringEncryptorBenchmark -Dexec.classpathScope=test</code>; configure with system properties:
+ * <ul>
+ * <li>bench.operations - the encrypt and decrypt round trips each thread performs (default 5000)</li>
+ * <li>bench.maxThreads - the largest number of threads (default the available processors)</li>
+ * </ul>
+ * @see ThreadScalingBenchmark
+ */
+public class StringEncryptorBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		ThreadScalingBenchmark benchmark = new ThreadScalingBenchmark(Integer.getInteger("bench.operations", 5000), "round trips");
+		benchmark.run("standard", roundTrip(new StandardStringEncryptor("secret")));
+		benchmark.run("searchable", roundTrip(new SearchableStringEncryptor("secret", "5b8bd7612cdab5ed")));
+	}
+
+	private static ThreadScalingBenchmark.Operation roundTrip(final StringEncryptor encryptor) {
+		return new ThreadScalingBenchmark.Operation() {
+			public void perform(int iteration) {
+				String text = "oauth-token-" + iteration;
+				if (!text.equals(encryptor.decrypt(encryptor.encrypt(text)))) {
+					throw new IllegalStateException("Round trip failed");
+				}
+			}
+		};
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.springframework.security.encrypt;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures the throughput of an operation as the number of threads doubles from one up to the number of available processors, printing each result and its ratio to the single thread result.
+ * Shared by the standalone benchmark programs in this package; the largest number of threads is configured with the bench.maxThreads system property.
+ */
+class ThreadScalingBenchmark {
+
+	private final int maxThreads = Integer.getInteger("bench.maxThreads", Runtime.getRuntime().availableProcessors());
+
+	private final int operations;
+
+	private final String unit;
+
+	/**
+	 * Creates a benchmark where each thread performs the given number of operations.
+	 * @param operations the operations each thread performs
+	 * @param unit what an operation is called in the results, e.g. "matches"
+	 */
+	public ThreadScalingBenchmark(int operations, String unit) {
+		this.operations = operations;
+		this.unit = unit;
+	}
+
+	/**
+	 * Warms the operation up on one thread, then measures it at each thread count.
+	 * The first failure of any thread is rethrown.
+	 */
+	public void run(String name, Operation operation) throws Exception {
+		measure(operation, 1);
+		double single = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			double throughput = measure(operation, threads);
+			if (threads == 1) {
+				single = throughput;
+			}
+			System.out.println(String.format("%s, %d threads: %.0f %s/s (%.2fx)", name, threads, throughput, unit, throughput / single));
+		}
+	}
+
+	/**
+	 * An operation under measurement.
+	 */
+	public interface Operation {
+
+		/**
+		 * Performs the operation once.
+		 * @param iteration the number of operations this thread has already performed
+		 */
+		void perform(int iteration);
+
+	}
+
+	// internal helpers
+
+	private double measure(final Operation operation, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < operations; i++) {
+							operation.perform(i);
+						}
+					} catch (RuntimeException e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return (double) threads * operations * 1e9 / elapsed;
+	}
+
+}
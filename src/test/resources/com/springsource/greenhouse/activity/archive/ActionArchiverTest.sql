@@ -0,0 +1,24 @@
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Keith' , 'Donald', 'kdonald@vmware.com', 'melbourne', 'kdonald', 'M', '1977-12-01');
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Craig' , 'Walls', 'cwalls@vmware.com', 'plano', 'habuma', 'M', '1977-12-01');
+
+insert into MemberGroup (name, slug, description, hashtag, leader) values ('SpringOne2gx', 's2gx', 'The premier Spring Framework event', '#s2gx', 1);
+
+insert into Event (title, timeZone, startTime, endTime, slug, description, memberGroup) values ('SpringOne2gx', 'America/Chicago', '2009-10-19 22:00:00Z', '2009-10-22 22:00:00Z', 'chicago', 'SpringOne 2GX', 1);
+
+insert into Invite (token, email, firstName, lastName, sentBy) values ('abc', 'cwalls@vmware.com', 'Craig', 'Walls', 1);
+
+insert into MemberAction (id, actionType, performTime, member) values (1, 'SignedUp', '2009-10-01 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (2, 'SignedUp', '2009-10-02 10:00:00Z', 2);
+insert into MemberAction (id, actionType, performTime, member) values (3, 'InviteAccept', '2009-10-02 10:00:00Z', 2);
+insert into MemberAction (id, actionType, performTime, latitude, longitude, member) values (4, 'EventTweet', '2009-10-20 10:00:00Z', 41.88, -87.63, 1);
+insert into MemberAction (id, actionType, performTime, member) values (5, 'EventTweet', '2009-10-21 10:00:00Z', 2);
+insert into MemberAction (id, actionType, performTime, member) values (6, 'EventTweet', '2009-11-05 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (7, 'SignedIn', now(), 1);
+
+insert into InviteAcceptAction (invite, memberAction) values ('abc', 3);
+
+insert into EventTweetAction (memberAction, event, tweet) values (4, 1, 'Keynote was great #s2gx');
+insert into EventTweetAction (memberAction, event, tweet) values (5, 1, 'Groovy #s2gx');
+insert into EventTweetAction (memberAction, event, tweet) values (6, 1, 'Still thinking about #s2gx');
+
+insert into AwardedBadge (badge, awardTime, member, memberAction) values ('Newbie', '2009-10-01 10:00:00Z', 1, 1);
@@ -0,0 +1,11 @@
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Keith' , 'Donald', 'kdonald@vmware.com', 'melbourne', 'kdonald', 'M', '1977-12-01');
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Craig' , 'Walls', 'cwalls@vmware.com', 'plano', 'habuma', 'M', '1977-12-01');
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Roy', 'Clarkson', 'rclarkson@vmware.com', 'atlanta', 'rclarkson', 'M', '1977-12-01');
+
+insert into MemberAction (id, actionType, performTime, member) values (1, 'SignedUp', '2010-10-01 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (2, 'SignedUp', '2010-10-01 11:00:00Z', 2);
+insert into MemberAction (id, actionType, performTime, member) values (3, 'SignedIn', '2010-10-02 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (4, 'SignedUp', '2010-10-03 10:00:00Z', 3);
+insert into MemberAction (id, actionType, performTime, member) values (5, 'SignedUp', '2010-10-04 10:00:00Z', 2);
+
+insert into AwardedBadge (id, badge, awardTime, member, memberAction) values (1, 'Newbie', '2010-10-01 10:00:00Z', 1, 1);
@@ -0,0 +1,17 @@
+insert into Member (firstName, lastName, email, password, username, gender, birthdate, reputation) values ('Keith' , 'Donald', 'kdonald@vmware.com', 'melbourne', 'kdonald', 'M', '1977-12-01', 15);
+insert into Member (firstName, lastName, email, password, username, gender, birthdate, reputation) values ('Craig' , 'Walls', 'cwalls@vmware.com', 'plano', 'habuma', 'M', '1977-12-01', 3);
+
+insert into MemberGroup (name, slug, description, hashtag, leader) values ('SpringOne2gx', 's2gx', 'The premier Spring Framework event', '#s2gx', 1);
+
+insert into Event (title, timeZone, startTime, endTime, slug, description, memberGroup) values ('SpringOne2gx', 'America/Chicago', '2010-10-19 22:00:00Z', '2010-10-22 22:00:00Z', 'chicago', 'SpringOne 2GX', 1);
+
+insert into MemberAction (id, actionType, performTime, member) values (1, 'SignedUp', '2010-10-01 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (2, 'SignedUp', '2010-10-01 11:00:00Z', 2);
+insert into MemberAction (id, actionType, performTime, member) values (3, 'EventTweet', '2010-10-20 10:00:00Z', 1);
+insert into MemberAction (id, actionType, performTime, member) values (4, 'EventTweet', '2010-10-20 11:00:00Z', 2);
+
+insert into EventTweetAction (memberAction, event, tweet) values (3, 1, 'Keynote was great #s2gx');
+insert into EventTweetAction (memberAction, event, tweet) values (4, 1, 'Groovy #s2gx');
+
+insert into AwardedBadge (badge, awardTime, member, memberAction) values ('Newbie', '2010-10-01 10:00:00Z', 1, 1);
+insert into AwardedBadge (badge, awardTime, member, memberAction) values ('Chirp', '2010-10-20 11:00:00Z', 2, 4);
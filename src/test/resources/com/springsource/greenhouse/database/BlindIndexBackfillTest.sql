@@ -0,0 +1,7 @@
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Keith', 'Donald', 'kdonald@vmware.com', 'password', 'kdonald', 'M', '1977-12-01');
+insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Roy', 'Clarkson', 'rclarkson@vmware.com', 'password', 'rclarkson', 'M', '1977-12-01');
+insert into App (name, slug, description, organization, website, apiKey, secret, callbackUrl) values ('Greenhouse for the iPhone', 'greenhouse-for-the-iphone', 'Awesome', 'SpringSource', 'http://www.springsource.com', '76926d574e7ff5dabb94b5df23b6add6', '017c9bdbb1c08c870e4c0697ddc04abe', 'x-com-springsource-greenhouse://oauth-response');
+insert into App (name, slug, description, organization, website, apiKey, secret, callbackUrl) values ('Greenhouse for the Android', 'greenhouse-for-the-android', 'Awesome', 'SpringSource', 'http://www.springsource.com', 'apikey2', 'secret2', null);
+insert into AppConnection (app, member, accessToken, secret) values (1, 1, 'ea448a2cc81b84da29b3eeaf1e0242a1', '8d4c8b1930b25c4ea1a923fb9c213f4d');
+insert into ServiceProvider (name, displayName, implementation, apiKey, secret, requestTokenUrl, authorizeUrl, accessTokenUrl) values ('twitter', 'Twitter', 'com.springsource.greenhouse.connect.providers.TwitterServiceProvider', '76926d574e7ff5dabb94b5df23b6add6', 'ea448a2cc81b84da29b3eeaf1e0242a1', 'http://www.twitter.com', 'http://www.twitter.com', 'http://www.twitter.com');
+insert into AccountConnection (member, accountId, provider, accessToken, secret) values (2, 'rclarkson', 'twitter', 'df007a91474c6fb314afce38943f2ae7', '4925a46855cf18a22e5cf0e41c6aff9f');
@@ -5,9 +5,9 @@ insert into App (name, slug, description, organization, website, apiKey, secret,
 insert into AppDeveloper (app, member) values (1, 2);
 
 insert into Member (firstName, lastName, email, password, username, gender, birthdate) values ('Roy' , 'Clarkson', 'roy@vmware.com', 'password', 'roy', 'M', '1977-12-01');
-insert into App (name, slug, description, organization, website, apiKey, secret, callbackUrl) values ('Greenhouse for the iPhone', 'greenhouse-for-the-iphone', 'Awesome', 'SpringSource', 'http://www.springsource.com', '76926d574e7ff5dabb94b5df23b6add6', '017c9bdbb1c08c870e4c0697ddc04abe', 'x-com-springsource-greenhouse://oauth-response');
+insert into App (name, slug, description, organization, website, apiKey, apiKeyIndex, secret, callbackUrl) values ('Greenhouse for the iPhone', 'greenhouse-for-the-iphone', 'Awesome', 'SpringSource', 'http://www.springsource.com', '76926d574e7ff5dabb94b5df23b6add6', '0c4ef10c3806b960e48652ce0b86f9758501aebe6c429ecc4ddb6b4076c813f1', '017c9bdbb1c08c870e4c0697ddc04abe', 'x-com-springsource-greenhouse://oauth-response');
 insert into AppDeveloper (app, member) values (2, 3);
 insert into App (name, slug, description, organization, website, apiKey, secret, callbackUrl) values ('Greenhouse for the Android', 'greenhouse-for-the-android', 'Awesome', 'SpringSource', 'http://www.springsource.com', 'apikey2', 'secret2', null);
 insert into AppDeveloper (app, member) values (3, 3);
 
-insert into AppConnection (app, member, accessToken, secret) values (2, 1, 'ea448a2cc81b84da29b3eeaf1e0242a1', '8d4c8b1930b25c4ea1a923fb9c213f4d');
+insert into AppConnection (app, member, accessToken, accessTokenIndex, secret) values (2, 1, 'ea448a2cc81b84da29b3eeaf1e0242a1', '0790335bec3a7f21ba62b660af28574730fd026fb0b1a6fd88fe8e907e1c7705', '8d4c8b1930b25c4ea1a923fb9c213f4d');